@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2020 Nicolas Dagnas
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.github.ndagnas.pickers;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Defines the helpers of the files kept in the private cache directory of the application, like
+ * the listing snapshots, the json snapshots and the json search indexes. Each kind of file has its
+ * own directory, holding a bounded number of files named by the hash of their key. A file is
+ * written to a temporary file first, then renamed, so that a file is never read half written.
+ * Each writer has its own temporary file, so that two writers of a same key never mix their
+ * writes.
+ */
+final class CacheFiles {
+    /** Extension of the cache files. */
+    private static final String EXTENSION = ".bin";
+
+    /** Extension of the temporary files. */
+    private static final String TEMP_EXTENSION = ".tmp";
+
+    /** Age of the temporary files left by an interrupted writer, deleted when pruning. */
+    private static final long TEMP_MAX_AGE = 60L * 60 * 1000;
+
+    /** Object initialisation. */
+    private CacheFiles() {}
+
+    /**
+     * Get the file of a key.
+     *
+     * @param context the parent context.
+     * @param directoryName name of the directory of the files, in the cache directory.
+     * @param key key of the file.
+     * @return a file.
+     */
+    static @NonNull File getFile(
+            @NonNull Context context, @NonNull String directoryName, @NonNull String key) {
+        File directory = new File(context.getCacheDir(), directoryName);
+
+        long hash = 1125899906842597L;
+
+        for (int index = 0; index < key.length(); index++) {
+            hash = 31 * hash + key.charAt(index);
+        }
+
+        return new File(directory, Long.toHexString(hash) + EXTENSION);
+    }
+
+    /**
+     * Create a new temporary file written before a file, creating the directory of the files if
+     * needed.
+     *
+     * @param file file to write.
+     * @return a file, or null if the temporary file cannot be created.
+     */
+    static @Nullable File getTempFile(@NonNull File file) {
+        File parent = file.getParentFile();
+
+        if (parent == null || (!parent.isDirectory() && !parent.mkdirs())) return null;
+
+        String name = file.getName();
+
+        if (name.endsWith(EXTENSION)) name = name.substring(0, name.length() - EXTENSION.length());
+
+        try {
+            return File.createTempFile(name + "-", TEMP_EXTENSION, parent);
+        } catch (Exception Err) {
+            Log.e("CacheFiles.getTempFile", "Exception: " + Err.toString());
+        }
+
+        return null;
+    }
+
+    /**
+     * Delete a temporary file which could not be written.
+     *
+     * @param tempFile temporary file.
+     */
+    static void discard(@NonNull File tempFile) {
+        if (tempFile.exists() && !tempFile.delete())
+            Log.e("CacheFiles.discard", "Cannot delete " + tempFile);
+    }
+
+    /**
+     * Replace a file by its written temporary file, then delete the oldest files of its directory.
+     *
+     * @param tempFile written temporary file.
+     * @param file file to replace.
+     * @param maxFiles maximum number of files kept in the directory.
+     */
+    static void commit(@NonNull File tempFile, @NonNull File file, int maxFiles) {
+        if (!tempFile.renameTo(file)) {
+            Log.e("CacheFiles.commit", "Cannot rename " + tempFile);
+
+            discard(tempFile);
+
+            return;
+        }
+
+        File parent = file.getParentFile();
+
+        if (parent != null) prune(parent, maxFiles);
+    }
+
+    /**
+     * Delete the oldest files of a directory. The temporary files being written are kept, only
+     * the ones left for a long time by an interrupted writer are deleted.
+     *
+     * @param directory directory of the files.
+     * @param maxFiles maximum number of files kept.
+     */
+    private static void prune(@NonNull File directory, int maxFiles) {
+        final long now = System.currentTimeMillis();
+
+        File[] files =
+                directory.listFiles(
+                        new FileFilter() {
+                            @Override
+                            public boolean accept(File file) {
+                                String name = file.getName();
+
+                                if (name.endsWith(TEMP_EXTENSION)
+                                        && now - file.lastModified() > TEMP_MAX_AGE
+                                        && !file.delete())
+                                    Log.e("CacheFiles.prune", "Cannot delete " + file);
+
+                                return name.endsWith(EXTENSION);
+                            }
+                        });
+
+        if (files == null || files.length <= maxFiles) return;
+
+        final long[] lastModified = new long[files.length];
+
+        Integer[] order = new Integer[files.length];
+
+        for (int index = 0; index < files.length; index++) {
+            lastModified[index] = files[index].lastModified();
+            order[index] = index;
+        }
+
+        Arrays.sort(
+                order,
+                new Comparator<Integer>() {
+                    @Override
+                    public int compare(Integer lht, Integer rht) {
+                        return Long.compare(lastModified[rht], lastModified[lht]);
+                    }
+                });
+
+        for (int index = maxFiles; index < order.length; index++) {
+            if (!files[order[index]].delete())
+                Log.e("CacheFiles.prune", "Cannot delete " + files[order[index]]);
+        }
+    }
+}
@@ -0,0 +1,356 @@
+/*
+ * Copyright (C) 2020 Nicolas Dagnas
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.ndagnas.pickers;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Defines a json tree parsed in a single streaming pass, holding only the title, the sub-title, the
+ * children and the children reference of each node in parallel arrays. The other fields are
+ * skipped without being decoded, and the children of all the nodes share a single array of node
+ * ids.
+ */
+final class CompactJSonTree implements JSonTree {
+    // Attributes
+
+    private final JSonFieldPath[] mPaths;
+    private String[] mTitles = new String[1024];
+    private String[] mSubTitles = new String[1024];
+    private String[] mChildrenReferences;
+    private int[] mFirstChildren = new int[1024];
+    private int[] mChildCounts = new int[1024];
+    private int mCount = 0;
+    private int[] mChildren = new int[1024];
+    private int mChildrenCount = 0;
+
+    /**
+     * Object initialisation.
+     *
+     * @param paths paths of the title, sub-title, children and children reference fields, by
+     *     field.
+     */
+    private CompactJSonTree(@NonNull JSonFieldPath[] paths) {
+        this.mPaths = paths;
+        this.mChildrenReferences =
+                (paths.length > CHILDREN_REFERENCE_FIELD && paths[CHILDREN_REFERENCE_FIELD] != null)
+                        ? new String[1024]
+                        : null;
+    }
+
+    /**
+     * Parse a json document, whose root is a node. The reader is closed once read.
+     *
+     * @param reader reader of the json document.
+     * @param paths paths of the title, sub-title, children and children reference fields, by
+     *     field, the sub-title and children reference paths being null if there are none.
+     * @return a json tree.
+     * @throws IOException if the document cannot be read or is not valid.
+     */
+    static @NonNull CompactJSonTree parse(
+            @NonNull Reader reader, @NonNull JSonFieldPath[] paths) throws IOException {
+        CompactJSonTree tree = new CompactJSonTree(paths);
+
+        try (JsonReader jsonReader = new JsonReader(reader)) {
+            if (jsonReader.peek() != JsonToken.BEGIN_OBJECT)
+                throw new IOException("The root of the document is not an object");
+
+            tree.readNode(jsonReader);
+        }
+
+        tree.trim();
+
+        return tree;
+    }
+
+    /**
+     * Get the number of nodes.
+     *
+     * @return a integer contains the number of nodes.
+     */
+    @Override
+    public int size() {
+        return this.mCount;
+    }
+
+    /**
+     * Get the title of a node.
+     *
+     * @param node id of the node.
+     * @return a string contains the title, or null if the node has no title.
+     */
+    @Override
+    public @Nullable String getTitle(int node) {
+        return this.mTitles[node];
+    }
+
+    /**
+     * Get the sub-title of a node.
+     *
+     * @param node id of the node.
+     * @return a string contains the sub-title, or null if the node has no sub-title.
+     */
+    @Override
+    public @Nullable String getSubTitle(int node) {
+        return this.mSubTitles[node];
+    }
+
+    /**
+     * Get the children reference of a node.
+     *
+     * @param node id of the node.
+     * @return a string contains the reference, or null if the node has no children reference.
+     */
+    @Override
+    public @Nullable String getChildrenReference(int node) {
+        return (this.mChildrenReferences != null) ? this.mChildrenReferences[node] : null;
+    }
+
+    /**
+     * Get the number of children of a node.
+     *
+     * @param node id of the node.
+     * @return the number of children, or -1 if the node has no children field.
+     */
+    @Override
+    public int getChildCount(int node) {
+        return this.mChildCounts[node];
+    }
+
+    /**
+     * Get a child of a node.
+     *
+     * @param node id of the node.
+     * @param index position of the child.
+     * @return the id of the child.
+     */
+    @Override
+    public int getChild(int node, int index) {
+        return this.mChildren[this.mFirstChildren[node] + index];
+    }
+
+    /**
+     * Get a node as a json object, holding its title, its sub-title and its id.
+     *
+     * @param node id of the node.
+     * @return a json object.
+     */
+    @Override
+    public @NonNull JSONObject toJSONObject(int node) {
+        JSONObject object = new JSONObject();
+
+        try {
+            if (this.mTitles[node] != null)
+                this.mPaths[TITLE_FIELD].put(object, this.mTitles[node]);
+
+            if (this.mPaths[SUB_TITLE_FIELD] != null && this.mSubTitles[node] != null)
+                this.mPaths[SUB_TITLE_FIELD].put(object, this.mSubTitles[node]);
+
+            object.put(JSonPickerDialog.NODE_ID_NAME, node);
+        } catch (Exception Err) {
+            Log.e("CompactJSonTree.toJSON", "Exception: " + Err.toString());
+        }
+
+        return object;
+    }
+
+    /**
+     * Read a node, and its children.
+     *
+     * @param reader json reader, positioned on the beginning of the node.
+     * @return the id of the node.
+     * @throws IOException if the document cannot be read or is not valid.
+     */
+    private int readNode(@NonNull JsonReader reader) throws IOException {
+        int node = this.addNode();
+
+        this.readMember(reader, node, JSonFieldPath.all(this.mPaths), 0);
+
+        return node;
+    }
+
+    /**
+     * Read a value reached by the first segments of the paths of some fields of a node: the value
+     * of the fields whose path ends here, or else the values it contains along the paths.
+     *
+     * @param reader json reader, positioned on the value.
+     * @param node id of the node.
+     * @param fields bit mask of the fields whose paths lead to the value.
+     * @param depth number of segments of the paths leading to the value.
+     * @throws IOException if the document cannot be read or is not valid.
+     */
+    private void readMember(@NonNull JsonReader reader, int node, int fields, int depth)
+            throws IOException {
+        int ended = JSonFieldPath.ended(this.mPaths, fields, depth);
+
+        JsonToken token = reader.peek();
+
+        if ((ended & (1 << CHILDREN_FIELD)) != 0 && token == JsonToken.BEGIN_ARRAY) {
+            this.readChildren(reader, node);
+        } else if ((ended & ~(1 << CHILDREN_FIELD)) != 0) {
+            String value = readString(reader);
+
+            if ((ended & (1 << TITLE_FIELD)) != 0) this.mTitles[node] = value;
+            if ((ended & (1 << SUB_TITLE_FIELD)) != 0) this.mSubTitles[node] = value;
+            if ((ended & (1 << CHILDREN_REFERENCE_FIELD)) != 0)
+                this.mChildrenReferences[node] = value;
+        } else if (ended == 0 && token == JsonToken.BEGIN_OBJECT) {
+            reader.beginObject();
+
+            while (reader.hasNext()) {
+                int matched = JSonFieldPath.match(this.mPaths, fields, depth, reader.nextName());
+
+                if (matched != 0) {
+                    this.readMember(reader, node, matched, depth + 1);
+                } else {
+                    reader.skipValue();
+                }
+            }
+
+            reader.endObject();
+        } else if (ended == 0 && token == JsonToken.BEGIN_ARRAY) {
+            reader.beginArray();
+
+            for (int index = 0; reader.hasNext(); index++) {
+                int matched = JSonFieldPath.match(this.mPaths, fields, depth, index);
+
+                if (matched != 0) {
+                    this.readMember(reader, node, matched, depth + 1);
+                } else {
+                    reader.skipValue();
+                }
+            }
+
+            reader.endArray();
+        } else {
+            reader.skipValue();
+        }
+    }
+
+    /**
+     * Read the children of a node. The ids of the children are gathered first, then copied at the
+     * end of the shared array, once the nested nodes are read.
+     *
+     * @param reader json reader, positioned on the beginning of the children array.
+     * @param node id of the parent node.
+     * @throws IOException if the document cannot be read or is not valid.
+     */
+    private void readChildren(@NonNull JsonReader reader, int node) throws IOException {
+        int[] children = new int[8];
+        int count = 0;
+
+        reader.beginArray();
+
+        while (reader.hasNext()) {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+
+                continue;
+            }
+
+            if (count == children.length) children = Arrays.copyOf(children, count * 2);
+
+            children[count++] = this.readNode(reader);
+        }
+
+        reader.endArray();
+
+        if (this.mChildrenCount + count > this.mChildren.length)
+            this.mChildren =
+                    Arrays.copyOf(
+                            this.mChildren,
+                            Math.max(this.mChildren.length * 2, this.mChildrenCount + count));
+
+        System.arraycopy(children, 0, this.mChildren, this.mChildrenCount, count);
+
+        this.mFirstChildren[node] = this.mChildrenCount;
+        this.mChildCounts[node] = count;
+
+        this.mChildrenCount += count;
+    }
+
+    /**
+     * Read a value as a string.
+     *
+     * @param reader json reader, positioned on the value.
+     * @return a string contains the value, or null if the value is null or not a scalar.
+     * @throws IOException if the document cannot be read or is not valid.
+     */
+    private static @Nullable String readString(@NonNull JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case STRING:
+            case NUMBER:
+                return reader.nextString();
+            case BOOLEAN:
+                return String.valueOf(reader.nextBoolean());
+            case NULL:
+                reader.nextNull();
+
+                return null;
+            default:
+                reader.skipValue();
+
+                return null;
+        }
+    }
+
+    /**
+     * Add a node, without title, sub-title, children nor children reference field.
+     *
+     * @return the id of the node.
+     */
+    private int addNode() {
+        if (this.mCount == this.mTitles.length) {
+            int capacity = this.mCount * 2;
+
+            this.mTitles = Arrays.copyOf(this.mTitles, capacity);
+            this.mSubTitles = Arrays.copyOf(this.mSubTitles, capacity);
+            this.mFirstChildren = Arrays.copyOf(this.mFirstChildren, capacity);
+            this.mChildCounts = Arrays.copyOf(this.mChildCounts, capacity);
+
+            if (this.mChildrenReferences != null)
+                this.mChildrenReferences = Arrays.copyOf(this.mChildrenReferences, capacity);
+        }
+
+        this.mChildCounts[this.mCount] = -1;
+
+        return this.mCount++;
+    }
+
+    /** Release the unused capacity of the arrays, once the document is read. */
+    private void trim() {
+        this.mTitles = Arrays.copyOf(this.mTitles, this.mCount);
+        this.mSubTitles = Arrays.copyOf(this.mSubTitles, this.mCount);
+        this.mFirstChildren = Arrays.copyOf(this.mFirstChildren, this.mCount);
+        this.mChildCounts = Arrays.copyOf(this.mChildCounts, this.mCount);
+        this.mChildren = Arrays.copyOf(this.mChildren, this.mChildrenCount);
+
+        if (this.mChildrenReferences != null)
+            this.mChildrenReferences = Arrays.copyOf(this.mChildrenReferences, this.mCount);
+    }
+}
@@ -0,0 +1,584 @@
+/*
+ * Copyright (C) 2020 Nicolas Dagnas
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.ndagnas.pickers;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Defines a search of the files containing a text, under a root directory (grep mode).
+ *
+ * <p>The files are mapped in memory, read-only, and scanned in parallel. A literal query is
+ * searched on the bytes with the Boyer-Moore-Horspool algorithm, ignoring the case of ASCII
+ * letters. A query enclosed in slashes is a regular expression, matched on the decoded text. The
+ * binary files are skipped, and the bytes read per second are bounded. The symbolic links are
+ * not followed, so that a file is scanned once.
+ */
+final class ContentSearcher {
+    /** Maximum number of matching files. */
+    static final int MAX_RESULTS = 500;
+
+    /** Maximum size of the scanned files. */
+    private static final long MAX_FILE_SIZE = 64L * 1024 * 1024;
+
+    /** Maximum size of the files matched with a regular expression. */
+    private static final long MAX_REGEX_FILE_SIZE = 8L * 1024 * 1024;
+
+    /** Size of the mapped windows of a file. */
+    private static final int WINDOW_SIZE = 4 * 1024 * 1024;
+
+    /** Number of bytes checked to detect the binary files. */
+    private static final int BINARY_CHECK_SIZE = 1024;
+
+    /** Maximum number of bytes read per second, by all the searches. */
+    private static final long MAX_BYTES_PER_SECOND = 32L * 1024 * 1024;
+
+    /** Maximum number of characters of a snippet. */
+    private static final int SNIPPET_LENGTH = 80;
+
+    private static ExecutorService sExecutor = null;
+    private static long sRateTime = 0;
+    private static long sRateBytes = 0;
+
+    /** Interface used to receive the matching files, called from background threads. */
+    interface Listener {
+        /**
+         * Called for each matching file.
+         *
+         * @param file matching file.
+         * @param lineNumber number of the line of the first match, from 1.
+         * @param snippet text around the first match.
+         */
+        void onMatch(@NonNull File file, int lineNumber, @NonNull String snippet);
+
+        /** Called once the search is finished, if it has not been cancelled. */
+        void onFinished();
+    }
+
+    // Attributes
+
+    private final File mRoot;
+    private final FileFilter mFilter;
+    private final byte[] mLiteral;
+    private final int[] mShifts;
+    private final Pattern mPattern;
+    private final AtomicInteger mGeneration;
+    private final int mExpectedGeneration;
+    private final Listener mListener;
+    private final ArrayDeque<File> mFiles = new ArrayDeque<>();
+    private final AtomicInteger mResultCount = new AtomicInteger();
+    private boolean mWalkFinished = false;
+    private int mRunningWorkers = 0;
+
+    /**
+     * Object initialisation.
+     *
+     * @param root root directory.
+     * @param filter filter of the files and directories to scan.
+     * @param query literal query, or regular expression enclosed in slashes.
+     * @param generation generation counter of the searches.
+     * @param expectedGeneration generation of this search, the search is cancelled as soon as the
+     *     counter differs.
+     * @param listener listener receiving the matching files.
+     */
+    ContentSearcher(
+            @NonNull File root,
+            @NonNull FileFilter filter,
+            @NonNull String query,
+            @NonNull AtomicInteger generation,
+            int expectedGeneration,
+            @NonNull Listener listener) {
+        this.mRoot = root;
+        this.mFilter = filter;
+        this.mGeneration = generation;
+        this.mExpectedGeneration = expectedGeneration;
+        this.mListener = listener;
+
+        Pattern pattern = null;
+
+        if (query.length() > 2 && query.startsWith("/") && query.endsWith("/")) {
+            try {
+                pattern = Pattern.compile(query.substring(1, query.length() - 1));
+            } catch (Exception Err) {
+                Log.e("ContentSearcher", "Exception: " + Err.toString());
+            }
+        }
+
+        this.mPattern = pattern;
+
+        if (pattern == null) {
+            this.mLiteral = query.getBytes(StandardCharsets.UTF_8);
+
+            for (int index = 0; index < this.mLiteral.length; index++) {
+                this.mLiteral[index] = toLowerCase(this.mLiteral[index]);
+            }
+
+            this.mShifts = createShifts(this.mLiteral);
+        } else {
+            this.mLiteral = null;
+            this.mShifts = null;
+        }
+    }
+
+    /** Start the search in background. */
+    void start() {
+        final int workerCount = PickerExecutors.getComputeThreadCount();
+
+        synchronized (this) {
+            this.mRunningWorkers = workerCount;
+        }
+
+        ExecutorService executor = getExecutor();
+
+        executor.execute(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        ContentSearcher.this.walk();
+                    }
+                });
+
+        for (int index = 0; index < workerCount; index++) {
+            executor.execute(
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            ContentSearcher.this.work();
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Indicates if the search has been cancelled, or has found enough files.
+     *
+     * @return a boolean value who indicates if the search has to stop.
+     */
+    private boolean isStopped() {
+        return (this.mGeneration.get() != this.mExpectedGeneration
+                || this.mResultCount.get() >= MAX_RESULTS);
+    }
+
+    /** Walk the directories, and queue the files to scan. */
+    private void walk() {
+        ArrayDeque<File> directories = new ArrayDeque<>();
+
+        directories.push(this.mRoot);
+
+        try {
+            while (!directories.isEmpty() && !this.isStopped()) {
+                File directory = directories.pop();
+
+                if (VolumeGovernor.isSlow(directory)) continue;
+
+                File[] files = directory.listFiles(this.mFilter);
+
+                if (files == null) continue;
+
+                for (File file : files) {
+                    BasicFileAttributes attributes;
+
+                    try {
+                        attributes =
+                                Files.readAttributes(
+                                        file.toPath(),
+                                        BasicFileAttributes.class,
+                                        LinkOption.NOFOLLOW_LINKS);
+                    } catch (Exception Err) {
+                        Log.e("ContentSearcher.walk", "Exception: " + Err.toString());
+
+                        continue;
+                    }
+
+                    if (attributes.isDirectory()) {
+                        directories.push(file);
+                    } else if (attributes.isRegularFile()) {
+                        synchronized (this) {
+                            this.mFiles.add(file);
+
+                            this.notify();
+                        }
+                    }
+                }
+            }
+        } catch (Exception Err) {
+            Log.e("ContentSearcher.walk", "Exception: " + Err.toString());
+        } finally {
+            synchronized (this) {
+                this.mWalkFinished = true;
+
+                this.notifyAll();
+            }
+        }
+    }
+
+    /** Scan the queued files, until the walk is finished and the queue is empty. */
+    private void work() {
+        try {
+            while (!this.isStopped()) {
+                File file;
+
+                synchronized (this) {
+                    while (this.mFiles.isEmpty() && !this.mWalkFinished) {
+                        this.wait(100);
+
+                        if (this.isStopped()) return;
+                    }
+
+                    file = this.mFiles.poll();
+                }
+
+                if (file == null) break;
+
+                this.scan(file);
+            }
+        } catch (InterruptedException Err) {
+            Thread.currentThread().interrupt();
+        } finally {
+            boolean finished;
+
+            synchronized (this) {
+                finished = (--this.mRunningWorkers == 0);
+            }
+
+            if (finished && this.mGeneration.get() == this.mExpectedGeneration)
+                this.mListener.onFinished();
+        }
+    }
+
+    /**
+     * Scan a file.
+     *
+     * @param file file to scan.
+     */
+    private void scan(@NonNull File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+
+            if (size == 0 || size > MAX_FILE_SIZE) return;
+
+            if (this.mPattern != null && size > MAX_REGEX_FILE_SIZE) return;
+
+            // Overlap the windows so that a match is never split.
+
+            int overlap = (this.mLiteral != null) ? this.mLiteral.length - 1 : 0;
+
+            long position = 0;
+
+            while (position < size && !this.isStopped()) {
+                long windowSize = Math.min(size - position, WINDOW_SIZE);
+
+                if (this.mPattern != null) windowSize = size;
+
+                acquireBytes(windowSize);
+
+                MappedByteBuffer buffer =
+                        channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+
+                if (position == 0 && isBinary(buffer)) return;
+
+                int offset =
+                        (this.mPattern != null)
+                                ? this.findPattern(buffer)
+                                : this.findLiteral(buffer);
+
+                if (offset >= 0) {
+                    this.publish(file, channel, position + offset);
+
+                    return;
+                }
+
+                if (position + windowSize >= size) break;
+
+                position += windowSize - overlap;
+            }
+        } catch (Exception Err) {
+            Log.e("ContentSearcher.scan", "Exception: " + Err.toString());
+        }
+    }
+
+    /**
+     * Publish a matching file.
+     *
+     * @param file matching file.
+     * @param channel channel of the file.
+     * @param offset position of the match in the file.
+     */
+    private void publish(@NonNull File file, @NonNull FileChannel channel, long offset) {
+        if (this.mResultCount.incrementAndGet() > MAX_RESULTS || this.isCancelled()) return;
+
+        int lineNumber = 1;
+        String snippet = "";
+
+        try {
+            // Count the lines before the match, and read the line around it.
+
+            long lineStart = 0;
+            long position = 0;
+
+            while (position < offset) {
+                long windowSize = Math.min(offset - position, WINDOW_SIZE);
+
+                MappedByteBuffer buffer =
+                        channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+
+                for (int index = 0; index < windowSize; index++) {
+                    if (buffer.get(index) == '\n') {
+                        lineNumber++;
+                        lineStart = position + index + 1;
+                    }
+                }
+
+                position += windowSize;
+            }
+
+            lineStart = Math.max(lineStart, offset - SNIPPET_LENGTH / 2);
+
+            long snippetSize = Math.min(channel.size() - lineStart, SNIPPET_LENGTH * 4);
+
+            MappedByteBuffer buffer =
+                    channel.map(FileChannel.MapMode.READ_ONLY, lineStart, snippetSize);
+
+            snippet = decodeLine(buffer);
+        } catch (Exception Err) {
+            Log.e("ContentSearcher.publish", "Exception: " + Err.toString());
+        }
+
+        this.mListener.onMatch(file, lineNumber, snippet);
+    }
+
+    /**
+     * Indicates if the search has been cancelled.
+     *
+     * @return a boolean value who indicates if the search has been cancelled.
+     */
+    private boolean isCancelled() {
+        return (this.mGeneration.get() != this.mExpectedGeneration);
+    }
+
+    /**
+     * Search the literal query, ignoring the case of ASCII letters.
+     *
+     * @param buffer bytes to search.
+     * @return the position of the first match, or -1.
+     */
+    private int findLiteral(@NonNull ByteBuffer buffer) {
+        byte[] literal = this.mLiteral;
+
+        int length = literal.length;
+        int limit = buffer.limit();
+
+        if (length == 0) return -1;
+
+        int position = 0;
+
+        while (position <= limit - length) {
+            int index = length - 1;
+
+            while (index >= 0 && toLowerCase(buffer.get(position + index)) == literal[index]) {
+                index--;
+            }
+
+            if (index < 0) return position;
+
+            position += this.mShifts[toLowerCase(buffer.get(position + length - 1)) & 0xFF];
+        }
+
+        return -1;
+    }
+
+    /**
+     * Search the regular expression.
+     *
+     * @param buffer bytes to search.
+     * @return the position of the first match in bytes, or -1.
+     */
+    private int findPattern(@NonNull ByteBuffer buffer) {
+        CharsetDecoder decoder =
+                StandardCharsets.UTF_8
+                        .newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        CharBuffer text;
+
+        try {
+            text = decoder.decode(buffer.duplicate());
+        } catch (Exception Err) {
+            return -1;
+        }
+
+        Matcher matcher = this.mPattern.matcher(text);
+
+        if (!matcher.find()) return -1;
+
+        return text.subSequence(0, matcher.start())
+                .toString()
+                .getBytes(StandardCharsets.UTF_8)
+                .length;
+    }
+
+    /**
+     * Create the shift table of the Boyer-Moore-Horspool algorithm.
+     *
+     * @param literal searched bytes, in lower case.
+     * @return an array of shifts, by byte value.
+     */
+    private static int[] createShifts(@NonNull byte[] literal) {
+        int[] shifts = new int[256];
+
+        int length = literal.length;
+
+        for (int index = 0; index < 256; index++) {
+            shifts[index] = Math.max(1, length);
+        }
+
+        for (int index = 0; index < length - 1; index++) {
+            shifts[literal[index] & 0xFF] = length - 1 - index;
+        }
+
+        return shifts;
+    }
+
+    /**
+     * Convert an ASCII letter to lower case.
+     *
+     * @param value byte to convert.
+     * @return the lower case byte.
+     */
+    private static byte toLowerCase(byte value) {
+        return (value >= 'A' && value <= 'Z') ? (byte) (value + 32) : value;
+    }
+
+    /**
+     * Indicates if a file is binary: a null byte in its first bytes.
+     *
+     * @param buffer first bytes of the file.
+     * @return a boolean value who indicates if the file is binary.
+     */
+    private static boolean isBinary(@NonNull ByteBuffer buffer) {
+        int limit = Math.min(buffer.limit(), BINARY_CHECK_SIZE);
+
+        for (int index = 0; index < limit; index++) {
+            if (buffer.get(index) == 0) return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Decode the first line of bytes, trimmed and shortened.
+     *
+     * @param buffer bytes to decode.
+     * @return a string contains the line.
+     */
+    private static @NonNull String decodeLine(@NonNull ByteBuffer buffer) {
+        int end = 0;
+
+        while (end < buffer.limit() && buffer.get(end) != '\n' && buffer.get(end) != '\r') {
+            end++;
+        }
+
+        ByteBuffer line = buffer.duplicate();
+
+        line.limit(end);
+
+        String text = StandardCharsets.UTF_8.decode(line).toString().trim();
+
+        if (text.length() > SNIPPET_LENGTH) text = text.substring(0, SNIPPET_LENGTH) + "\u2026";
+
+        return text;
+    }
+
+    /**
+     * Wait until bytes can be read without exceeding the rate limit, shared by all the searches
+     * and the duplicate finders.
+     *
+     * @param bytes number of bytes to read.
+     */
+    static void acquireBytes(long bytes) {
+        long delay;
+
+        synchronized (ContentSearcher.class) {
+            long now = SystemClock.elapsedRealtime();
+
+            // The budget is refilled with the elapsed time.
+
+            long refill = (now - sRateTime) * MAX_BYTES_PER_SECOND / 1000;
+
+            sRateBytes = Math.max(0, sRateBytes - refill);
+            sRateTime = now;
+
+            sRateBytes += bytes;
+
+            delay = (sRateBytes - MAX_BYTES_PER_SECOND) * 1000 / MAX_BYTES_PER_SECOND;
+        }
+
+        if (delay > 0) SystemClock.sleep(delay);
+    }
+
+    /**
+     * Get the executor running the searches.
+     *
+     * @return a executor service.
+     */
+    private static synchronized ExecutorService getExecutor() {
+        if (sExecutor == null) {
+            int threadCount = PickerExecutors.getComputeThreadCount() + 1;
+
+            ThreadPoolExecutor executor =
+                    new ThreadPoolExecutor(
+                            threadCount,
+                            threadCount,
+                            30,
+                            TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<Runnable>(),
+                            new PickerExecutors.PickerThreadFactory("pickers-grep"));
+
+            executor.allowCoreThreadTimeOut(true);
+
+            sExecutor = executor;
+        }
+
+        return sExecutor;
+    }
+}
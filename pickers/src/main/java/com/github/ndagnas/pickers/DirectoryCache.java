@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2020 Nicolas Dagnas
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.ndagnas.pickers;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Defines a memory cache of filtered directory listings, shared by all file pickers. An entry is
+ * only valid as long as the modification date of its directory is unchanged.
+ */
+final class DirectoryCache {
+    /** Maximum number of listings kept in memory. */
+    private static final int MAX_ENTRIES = 64;
+
+    private static final LinkedHashMap<String, Entry> sEntries =
+            new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    return (this.size() > MAX_ENTRIES);
+                }
+            };
+
+    /** Defines a cached listing. */
+    static class Entry {
+        /** Modification date of the directory when it was listed. */
+        final long lastModified;
+
+        /** Filtered content of the directory. */
+        final File[] files;
+
+        /**
+         * Object initialisation.
+         *
+         * @param lastModified modification date of the directory when it was listed.
+         * @param files filtered content of the directory.
+         */
+        Entry(long lastModified, @NonNull File[] files) {
+            this.lastModified = lastModified;
+            this.files = files;
+        }
+    }
+
+    /** Object initialisation. */
+    private DirectoryCache() {}
+
+    /**
+     * Get the cached listing of a directory.
+     *
+     * @param configKey key of the picker configuration used to filter the listing.
+     * @param directory listed directory.
+     * @return the filtered content of the directory, or null if not cached or outdated.
+     */
+    static @Nullable File[] get(@NonNull String configKey, @NonNull File directory) {
+        String key = createKey(configKey, directory);
+
+        Entry entry;
+
+        synchronized (sEntries) {
+            entry = sEntries.get(key);
+        }
+
+        if (entry == null) return null;
+
+        long start = IoStats.start();
+
+        long lastModified = directory.lastModified();
+
+        IoStats.record(IoStats.STAT, directory, start);
+
+        if (entry.lastModified != lastModified) {
+            synchronized (sEntries) {
+                if (sEntries.get(key) == entry) sEntries.remove(key);
+            }
+
+            return null;
+        }
+
+        return entry.files;
+    }
+
+    /**
+     * Add the listing of a directory in cache.
+     *
+     * @param configKey key of the picker configuration used to filter the listing.
+     * @param directory listed directory.
+     * @param lastModified modification date of the directory read before the listing.
+     * @param files filtered content of the directory.
+     */
+    static void put(
+            @NonNull String configKey,
+            @NonNull File directory,
+            long lastModified,
+            @NonNull File[] files) {
+        if (lastModified == 0) return;
+
+        synchronized (sEntries) {
+            sEntries.put(createKey(configKey, directory), new Entry(lastModified, files));
+        }
+    }
+
+    /**
+     * Create the key of a cache entry.
+     *
+     * @param configKey key of the picker configuration.
+     * @param directory listed directory.
+     * @return a string contains the key of the entry.
+     */
+    private static String createKey(@NonNull String configKey, @NonNull File directory) {
+        return configKey + '\u0000' + directory.getAbsolutePath();
+    }
+}
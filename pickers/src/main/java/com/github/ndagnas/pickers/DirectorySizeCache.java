@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2020 Nicolas Dagnas
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.ndagnas.pickers;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Defines a memory cache of the total size of the files under directories, at any depth, shared by
+ * all file pickers. The size of the files of each summed directory is remembered, so that a tree is
+ * walked only once. The entry of a directory only holds the size of its own files, and is only
+ * valid as long as the modification date of the directory is unchanged: the total size of a tree
+ * is summed again from the entries of all its directories, each one validated by its own date.
+ */
+final class DirectorySizeCache {
+    /** Maximum number of directories kept in memory. */
+    private static final int MAX_ENTRIES = 4096;
+
+    private static final LinkedHashMap<String, Entry> sEntries =
+            new LinkedHashMap<String, Entry>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    return (this.size() > MAX_ENTRIES);
+                }
+            };
+
+    /** Defines a cached size. */
+    static class Entry {
+        /** Modification date of the directory when it was summed. */
+        final long lastModified;
+
+        /** Total size of the files directly in the directory. */
+        final long length;
+
+        /** Sub-directories of the directory. */
+        final File[] directories;
+
+        /**
+         * Object initialisation.
+         *
+         * @param lastModified modification date of the directory when it was summed.
+         * @param length total size of the files directly in the directory.
+         * @param directories sub-directories of the directory.
+         */
+        Entry(long lastModified, long length, @NonNull File[] directories) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.directories = directories;
+        }
+    }
+
+    /** Object initialisation. */
+    private DirectorySizeCache() {}
+
+    /**
+     * Get the total size of the files under a directory, at any depth. Must be called from a
+     * background thread. The symbolic links are not followed, and the directories on slow volumes
+     * are not summed. An interrupted sum is partial, and not cached.
+     *
+     * @param directory directory to sum.
+     * @return the total size of the files, in bytes.
+     */
+    static long getSize(@NonNull File directory) {
+        String key = directory.getAbsolutePath();
+
+        Entry entry;
+
+        synchronized (sEntries) {
+            entry = sEntries.get(key);
+        }
+
+        long lastModified = directory.lastModified();
+
+        if (entry != null && entry.lastModified == lastModified) {
+            long length = entry.length;
+
+            for (File subDirectory : entry.directories) {
+                if (Thread.currentThread().isInterrupted()) break;
+
+                length += getSize(subDirectory);
+            }
+
+            return length;
+        }
+
+        if (VolumeGovernor.isSlow(directory)) return 0;
+
+        File[] files = directory.listFiles();
+
+        if (files == null) return 0;
+
+        ArrayList<File> directories = new ArrayList<>();
+
+        long filesLength = 0;
+
+        for (File file : files) {
+            try {
+                BasicFileAttributes attributes =
+                        Files.readAttributes(
+                                file.toPath(),
+                                BasicFileAttributes.class,
+                                LinkOption.NOFOLLOW_LINKS);
+
+                if (attributes.isDirectory()) {
+                    directories.add(file);
+                } else if (attributes.isRegularFile()) {
+                    filesLength += attributes.size();
+                }
+            } catch (Exception Err) {
+                Log.e("DirectorySizeCache.getSize", "Exception: " + Err.toString());
+            }
+        }
+
+        if (lastModified != 0 && !Thread.currentThread().isInterrupted()) {
+            entry = new Entry(lastModified, filesLength, directories.toArray(new File[0]));
+
+            synchronized (sEntries) {
+                sEntries.put(key, entry);
+            }
+        }
+
+        long length = filesLength;
+
+        for (File subDirectory : directories) {
+            if (Thread.currentThread().isInterrupted()) break;
+
+            length += getSize(subDirectory);
+        }
+
+        return length;
+    }
+}
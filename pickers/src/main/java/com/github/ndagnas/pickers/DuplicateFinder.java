@@ -0,0 +1,428 @@
+/*
+ * Copyright (C) 2020 Nicolas Dagnas
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.ndagnas.pickers;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileFilter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Defines the finder of the duplicate files under a root directory. The files are grouped by size
+ * first, then the files of a same size are grouped by a hash of their first and last bytes, and
+ * only the remaining candidates are fully hashed. The hashes are computed in parallel by a small
+ * pool, and the reads share the rate limit of the content searches. The symbolic links are not
+ * followed, a file reached twice, like through a hard link, is kept once, and the walk stops after
+ * MAX_FILES entries.
+ */
+final class DuplicateFinder implements Runnable {
+    /** Maximum number of entries walked. */
+    static final int MAX_FILES = TopFilesWalker.MAX_FILES;
+
+    /** Number of bytes hashed at the start and at the end of a file, for the partial hash. */
+    private static final int CHUNK_SIZE = 4096;
+
+    /** Size of the buffer used for the full hash. */
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    /** Number of files hashed at the same time. */
+    private static final int HASH_THREADS = 2;
+
+    /** Algorithm of the hashes. */
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    private static ExecutorService sExecutor = null;
+
+    /** Defines the listener of the finder. */
+    interface Listener {
+        /**
+         * Called from a background thread for each group of identical files.
+         *
+         * @param files identical files.
+         * @param length size of each file.
+         */
+        void onGroup(@NonNull List<File> files, long length);
+
+        /** Called from a background thread when the search is finished or cancelled. */
+        void onFinished();
+    }
+
+    // Attributes
+
+    private final File mRoot;
+    private final FileFilter mFilter;
+    private final AtomicInteger mGeneration;
+    private final int mExpectedGeneration;
+    private final Listener mListener;
+
+    /**
+     * Object initialisation.
+     *
+     * @param root root directory.
+     * @param filter filter of the files and the directories.
+     * @param generation generation counter of the searches.
+     * @param expectedGeneration generation of this search, it is cancelled when it changes.
+     * @param listener listener of the finder.
+     */
+    DuplicateFinder(
+            @NonNull File root,
+            @NonNull FileFilter filter,
+            @NonNull AtomicInteger generation,
+            int expectedGeneration,
+            @NonNull Listener listener) {
+        this.mRoot = root;
+        this.mFilter = filter;
+        this.mGeneration = generation;
+        this.mExpectedGeneration = expectedGeneration;
+        this.mListener = listener;
+    }
+
+    /** Search the duplicate files, the largest first. */
+    @Override
+    public void run() {
+        try {
+            HashMap<Long, List<File>> filesBySize = this.groupBySize();
+
+            ArrayList<Long> lengths = new ArrayList<>();
+
+            for (Map.Entry<Long, List<File>> entry : filesBySize.entrySet()) {
+                if (entry.getValue().size() > 1) lengths.add(entry.getKey());
+            }
+
+            Collections.sort(lengths, Collections.<Long>reverseOrder());
+
+            for (Long length : lengths) {
+                if (this.isCancelled()) break;
+
+                this.findDuplicates(filesBySize.get(length), length);
+            }
+        } catch (Exception Err) {
+            Log.e("DuplicateFinder.run", "Exception: " + Err.toString());
+        } finally {
+            this.mListener.onFinished();
+        }
+    }
+
+    /**
+     * Indicates if the search has been cancelled.
+     *
+     * @return a boolean value who indicates if the search has to stop.
+     */
+    private boolean isCancelled() {
+        return (this.mGeneration.get() != this.mExpectedGeneration);
+    }
+
+    /**
+     * Walk the directories, and group the non-empty files by size. A file is only reported as a
+     * duplicate of another file, never of itself reached by another path.
+     *
+     * @return a map of the files, by size.
+     */
+    private HashMap<Long, List<File>> groupBySize() {
+        HashMap<Long, List<File>> filesBySize = new HashMap<>();
+
+        HashSet<Object> fileKeys = new HashSet<>();
+
+        ArrayDeque<File> directories = new ArrayDeque<>();
+
+        directories.push(this.mRoot);
+
+        int fileCount = 0;
+
+        while (!directories.isEmpty() && fileCount < MAX_FILES && !this.isCancelled()) {
+            File directory = directories.pop();
+
+            // The volumes found slow are skipped, their listings would block the search.
+
+            if (VolumeGovernor.isSlow(directory)) continue;
+
+            File[] files = directory.listFiles(this.mFilter);
+
+            if (files == null) continue;
+
+            for (File file : files) {
+                if (++fileCount > MAX_FILES) break;
+
+                try {
+                    BasicFileAttributes attributes =
+                            Files.readAttributes(
+                                    file.toPath(),
+                                    BasicFileAttributes.class,
+                                    LinkOption.NOFOLLOW_LINKS);
+
+                    Object fileKey = attributes.fileKey();
+
+                    if (fileKey != null && !fileKeys.add(fileKey)) continue;
+
+                    if (attributes.isDirectory()) {
+                        directories.push(file);
+                    } else if (attributes.isRegularFile() && attributes.size() > 0) {
+                        List<File> sameSizeFiles = filesBySize.get(attributes.size());
+
+                        if (sameSizeFiles == null) {
+                            sameSizeFiles = new ArrayList<>(2);
+
+                            filesBySize.put(attributes.size(), sameSizeFiles);
+                        }
+
+                        sameSizeFiles.add(file);
+                    }
+                } catch (Exception Err) {
+                    Log.e("DuplicateFinder.walk", "Exception: " + Err.toString());
+                }
+            }
+        }
+
+        return filesBySize;
+    }
+
+    /**
+     * Find the identical files among files of a same size.
+     *
+     * @param files files of a same size.
+     * @param length size of the files.
+     */
+    private void findDuplicates(@NonNull List<File> files, long length) throws Exception {
+        // A partial hash covers the whole content of the small files.
+
+        boolean partialIsFull = (length <= 2L * CHUNK_SIZE);
+
+        for (List<File> candidates : this.groupByHash(files, length, true)) {
+            if (this.isCancelled()) return;
+
+            if (partialIsFull) {
+                this.mListener.onGroup(candidates, length);
+
+                continue;
+            }
+
+            for (List<File> group : this.groupByHash(candidates, length, false)) {
+                this.mListener.onGroup(group, length);
+            }
+        }
+    }
+
+    /**
+     * Hash files in parallel, and group them by hash.
+     *
+     * @param files files to hash.
+     * @param length size of the files.
+     * @param partial indicates if only the first and last bytes are hashed.
+     * @return the groups of at least two files with the same hash.
+     */
+    private List<List<File>> groupByHash(
+            @NonNull List<File> files, final long length, final boolean partial)
+            throws Exception {
+        ArrayList<Future<String>> hashes = new ArrayList<>(files.size());
+
+        for (final File file : files) {
+            hashes.add(
+                    getExecutor()
+                            .submit(
+                                    new Callable<String>() {
+                                        @Override
+                                        public String call() {
+                                            if (DuplicateFinder.this.isCancelled()) return null;
+
+                                            return DuplicateFinder.this.hash(
+                                                    file, length, partial);
+                                        }
+                                    }));
+        }
+
+        HashMap<String, List<File>> filesByHash = new HashMap<>();
+
+        for (int index = 0; index < files.size(); index++) {
+            String hash = hashes.get(index).get();
+
+            if (hash == null) continue;
+
+            List<File> sameHashFiles = filesByHash.get(hash);
+
+            if (sameHashFiles == null) {
+                sameHashFiles = new ArrayList<>(2);
+
+                filesByHash.put(hash, sameHashFiles);
+            }
+
+            sameHashFiles.add(files.get(index));
+        }
+
+        ArrayList<List<File>> groups = new ArrayList<>();
+
+        for (List<File> group : filesByHash.values()) {
+            if (group.size() > 1) groups.add(group);
+        }
+
+        return groups;
+    }
+
+    /**
+     * Hash a file.
+     *
+     * @param file file to hash.
+     * @param length size of the file.
+     * @param partial indicates if only the first and last bytes are hashed.
+     * @return a string contains the hash, or null if the file cannot be read or the search is
+     *     cancelled.
+     */
+    private @Nullable String hash(@NonNull File file, long length, boolean partial) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // A file whose size has changed is not a duplicate.
+
+            if (channel.size() != length) return null;
+
+            MessageDigest digest = MessageDigest.getInstance(HASH_ALGORITHM);
+
+            if (partial) {
+                ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(length, 2L * CHUNK_SIZE));
+
+                if (length <= 2L * CHUNK_SIZE) {
+                    read(channel, buffer, 0);
+                } else {
+                    buffer.limit(CHUNK_SIZE);
+
+                    read(channel, buffer, 0);
+
+                    buffer.limit(2 * CHUNK_SIZE);
+
+                    read(channel, buffer, length - CHUNK_SIZE);
+                }
+
+                buffer.flip();
+
+                digest.update(buffer);
+            } else {
+                ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+                long position = 0;
+
+                while (position < length) {
+                    // A large file is not read to its end once the search is cancelled.
+
+                    if (this.isCancelled()) return null;
+
+                    buffer.clear();
+
+                    buffer.limit((int) Math.min(BUFFER_SIZE, length - position));
+
+                    read(channel, buffer, position);
+
+                    position += buffer.position();
+
+                    buffer.flip();
+
+                    digest.update(buffer);
+                }
+            }
+
+            return toHex(digest.digest());
+        } catch (Exception Err) {
+            Log.e("DuplicateFinder.hash", "Exception: " + Err.toString());
+        }
+
+        return null;
+    }
+
+    /**
+     * Read bytes until the buffer is full, under the shared rate limit.
+     *
+     * @param channel channel of the file.
+     * @param buffer buffer receiving the bytes, up to its limit.
+     * @param position position of the first byte in the file.
+     */
+    private static void read(
+            @NonNull FileChannel channel, @NonNull ByteBuffer buffer, long position)
+            throws Exception {
+        ContentSearcher.acquireBytes(buffer.remaining());
+
+        while (buffer.hasRemaining()) {
+            int count = channel.read(buffer, position);
+
+            if (count < 0) throw new EOFException();
+
+            position += count;
+        }
+    }
+
+    /**
+     * Convert bytes to an hexadecimal string.
+     *
+     * @param bytes bytes to convert.
+     * @return a string contains the hexadecimal digits.
+     */
+    private static String toHex(@NonNull byte[] bytes) {
+        char[] digits = new char[bytes.length * 2];
+
+        for (int index = 0; index < bytes.length; index++) {
+            digits[index * 2] = Character.forDigit((bytes[index] >> 4) & 0x0F, 16);
+            digits[index * 2 + 1] = Character.forDigit(bytes[index] & 0x0F, 16);
+        }
+
+        return new String(digits);
+    }
+
+    /**
+     * Get the executor hashing the files. Its few threads bound the concurrent reads.
+     *
+     * @return a executor service.
+     */
+    private static synchronized ExecutorService getExecutor() {
+        if (sExecutor == null) {
+            ThreadPoolExecutor executor =
+                    new ThreadPoolExecutor(
+                            HASH_THREADS,
+                            HASH_THREADS,
+                            30,
+                            TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<Runnable>(),
+                            new PickerExecutors.PickerThreadFactory("pickers-hash"));
+
+            executor.allowCoreThreadTimeOut(true);
+
+            sExecutor = executor;
+        }
+
+        return sExecutor;
+    }
+}
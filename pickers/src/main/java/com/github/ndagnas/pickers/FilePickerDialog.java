@@ -29,11 +29,17 @@ import android.app.Activity;
 import android.content.Context;
 import android.content.pm.PackageManager;
 import android.graphics.drawable.Drawable;
+import android.os.Looper;
 import android.os.Parcelable;
+import android.os.SystemClock;
 import android.text.TextUtils;
+import android.util.Log;
 import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
 import android.widget.LinearLayout;
+import android.widget.PopupMenu;
 import android.widget.RelativeLayout;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -46,6 +52,9 @@ import androidx.annotation.StyleRes;
 
 import java.io.File;
 import java.io.FileFilter;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.text.SimpleDateFormat;
@@ -55,7 +64,15 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 /** Defines a file picker dialog. */
@@ -107,7 +124,7 @@ public class FilePickerDialog extends ListPickerDialogBase implements PickerInte
     /** Defines an item of the list. */
     static class FileItem {
         /**
-         * Object initialisation.
+         * Object initialisation, the attributes of the file are read once.
          *
          * @param object json node object.
          */
@@ -115,11 +132,62 @@ public class FilePickerDialog extends ListPickerDialogBase implements PickerInte
             this.object = object;
             this.parent = parent;
             this.listViewState = null;
+
+            BasicFileAttributes attributes = null;
+
+            long start = IoStats.start();
+
+            try {
+                attributes = Files.readAttributes(object.toPath(), BasicFileAttributes.class);
+            } catch (Exception Err) {
+                Log.e("FileItem", "Exception: " + Err.toString());
+            }
+
+            IoStats.record(IoStats.STAT, object, start);
+
+            this.isDirectory = (attributes != null) && attributes.isDirectory();
+            this.length = (attributes != null) ? attributes.size() : 0;
+            this.lastModified = (attributes != null) ? attributes.lastModifiedTime().toMillis() : 0;
+        }
+
+        /**
+         * Object initialisation, with known attributes.
+         *
+         * @param object json node object.
+         * @param parent json node parent.
+         * @param entry attributes of the file.
+         */
+        public FileItem(File object, FileItem parent, ListingSnapshotStore.Entry entry) {
+            this.object = object;
+            this.parent = parent;
+            this.listViewState = null;
+            this.isDirectory = entry.isDirectory;
+            this.length = entry.length;
+            this.lastModified = entry.lastModified;
+        }
+
+        /**
+         * Get the attributes of the file, as a snapshot entry.
+         *
+         * @return a snapshot entry.
+         */
+        ListingSnapshotStore.Entry toEntry() {
+            return new ListingSnapshotStore.Entry(
+                    this.object.getName(), this.isDirectory, this.length, this.lastModified);
         }
 
         /** Json node object. */
         public File object;
 
+        /** Indicates if the file is a directory. */
+        public final boolean isDirectory;
+
+        /** Size of the file. */
+        public final long length;
+
+        /** Modification date of the file. */
+        public final long lastModified;
+
         /** List view state. */
         public Parcelable listViewState;
 
@@ -127,19 +195,45 @@ public class FilePickerDialog extends ListPickerDialogBase implements PickerInte
         public FileItem parent;
     }
 
-    /** Class to filter the list of files. */
+    /** Defines the virtual directory merging the content of several source directories. */
+    static class MergedRoot {
+        /**
+         * Object initialisation.
+         *
+         * @param sources merged directories.
+         */
+        MergedRoot(@NonNull File[] sources) {
+            this.sources = sources;
+            this.listViewState = null;
+        }
+
+        /** Merged directories. */
+        final File[] sources;
+
+        /** List view state. */
+        Parcelable listViewState;
+    }
+
+    /**
+     * Class to filter the list of files. The checks only using the name of the file are done first,
+     * so that most of the rejected files cost no system call, then the attributes of the file are
+     * read once.
+     */
     static class ExtensionFilter implements FileFilter {
         // Attributes
 
         private final FilePickerDialog mDialog;
+        private final FilePickerFilter mFilesFilter;
 
         /**
          * Object initialisation.
          *
          * @param dialog owner of this object.
+         * @param filesFilter additional filter of the files, or null.
          */
-        ExtensionFilter(@NonNull FilePickerDialog dialog) {
+        ExtensionFilter(@NonNull FilePickerDialog dialog, @Nullable FilePickerFilter filesFilter) {
             this.mDialog = dialog;
+            this.mFilesFilter = (filesFilter != null) ? filesFilter.compile() : null;
         }
 
         /**
@@ -149,35 +243,73 @@ public class FilePickerDialog extends ListPickerDialogBase implements PickerInte
          */
         @Override
         public boolean accept(File File) {
-            // All directories are added in the least that can be read by the Application
+            return this.accept(new FilePickerFilter.Entry(File));
+        }
+
+        /**
+         * Function to filter files based on defined rules. The attributes read to check the entry
+         * are kept by the entry.
+         *
+         * @param entry entry to check.
+         * @return a boolean value who indicates if the entry is accepted.
+         */
+        boolean accept(@NonNull FilePickerFilter.Entry entry) {
+            String entryName = entry.getName();
 
-            if (File.isDirectory()
-                    && File.canRead()
-                    && this.mDialog.mShowMode == FILES_AND_DIRECTORIES) return true;
+            // Hidden files are never displayed.
 
-            // False for files, If the show type is Directory type, ie.
+            if (entryName.startsWith(".")) return false;
 
-            if (File.isFile() && File.canRead() && this.mDialog.mShowMode == DIRECTORIES)
-                return false;
+            // All readable directories are added if both can be shown, others have to match a path
+            // pattern.
 
-            // Check whether name of the file ends with the extension. Added if it does.
+            boolean directoryAccepted =
+                    (this.mDialog.mShowMode == FILES_AND_DIRECTORIES
+                            || matches(this.mDialog.mPathsPatterns, entryName));
 
-            String entryName = File.getName();
+            // Files are never added if the show type is Directory type, others have to match a
+            // file pattern and the files filter.
 
-            if (File.isFile()) {
-                if (this.mDialog.mFilesPatterns == null || this.mDialog.mFilesPatterns.length == 0)
-                    return true;
+            int fileAccepted = FilePickerFilter.REJECTED;
 
-                for (Pattern pattern : this.mDialog.mFilesPatterns) {
-                    if (pattern.matcher(entryName).matches()) return true;
-                }
-            } else if (File.isDirectory()) {
-                if (this.mDialog.mPathsPatterns == null || this.mDialog.mPathsPatterns.length == 0)
-                    return true;
+            if (this.mDialog.mShowMode != DIRECTORIES
+                    && matches(this.mDialog.mFilesPatterns, entryName)) {
+                fileAccepted =
+                        (this.mFilesFilter != null)
+                                ? this.mFilesFilter.acceptName(entry)
+                                : FilePickerFilter.ACCEPTED;
+            }
 
-                for (Pattern pattern : this.mDialog.mPathsPatterns) {
-                    if (pattern.matcher(entryName).matches()) return true;
-                }
+            if (!directoryAccepted && fileAccepted == FilePickerFilter.REJECTED) return false;
+
+            // The name is not enough, attributes of the file are needed.
+
+            if (entry.isDirectory()) {
+                if (!directoryAccepted) return false;
+            } else if (entry.isFile()) {
+                if (fileAccepted == FilePickerFilter.REJECTED) return false;
+
+                if (fileAccepted == FilePickerFilter.UNKNOWN && !this.mFilesFilter.accept(entry))
+                    return false;
+            } else {
+                return false;
+            }
+
+            return entry.canRead();
+        }
+
+        /**
+         * Check whether a name matches one of the patterns.
+         *
+         * @param patterns patterns to check, all names match if there is none.
+         * @param entryName name to check.
+         * @return a boolean value who indicates if the name matches.
+         */
+        private static boolean matches(Pattern[] patterns, @NonNull String entryName) {
+            if (patterns == null || patterns.length == 0) return true;
+
+            for (Pattern pattern : patterns) {
+                if (pattern.matcher(entryName).matches()) return true;
             }
 
             return false;
@@ -188,6 +320,25 @@ public class FilePickerDialog extends ListPickerDialogBase implements PickerInte
 
     private static java.util.Locale DEF_LOCAL = java.util.Locale.getDefault();
 
+    private static final int MENU_ID_RECENT_DIR = 0x100;
+
+    private static final int MENU_ID_CONTENT_SEARCH = 0x200;
+
+    private static final int MENU_ID_NEWEST_FILES = 0x201;
+
+    private static final int MENU_ID_LARGEST_FILES = 0x202;
+
+    private static final int MENU_ID_DUPLICATES = 0x203;
+
+    /** Delay before starting a content search, so that it is not started on each keystroke. */
+    private static final long CONTENT_SEARCH_DELAY = 300;
+
+    /** Delay before listing again a directory whose listing was incomplete, in milliseconds. */
+    private static final long MIN_RELIST_DELAY = 1000;
+
+    /** Maximum delay before listing again a directory, doubled on each incomplete listing. */
+    private static final long MAX_RELIST_DELAY = 30 * 1000;
+
     // Attributes
 
     private final Context mContext;
@@ -197,6 +348,7 @@ public class FilePickerDialog extends ListPickerDialogBase implements PickerInte
     private final File mRootDir;
     private final File mErrorDir;
     private final File mOffsetDir;
+    private final boolean mOffsetDirDefined;
     private final Pattern[] mFilesPatterns;
     private final Pattern[] mPathsPatterns;
     private int mSortBy;
@@ -205,10 +357,51 @@ public class FilePickerDialog extends ListPickerDialogBase implements PickerInte
     private final boolean mToolbarIsVisible;
     private final OnSingleChoiceValidationListener<String> mOnSingleChoiceValidationListener;
     private final OnMultiChoiceValidationListener<String> mOnMultiChoiceValidationListener;
+    private final OnSingleChoiceValidationListener<PickedFile> mOnSingleChoicePickedFileListener;
+    private final OnMultiChoiceValidationListener<PickedFile> mOnMultiChoicePickedFileListener;
+    private final OnNavigationStatsListener mOnNavigationStatsListener;
+    private final int mRecentDirsCount;
+    private final boolean mQuickOpenEnabled;
+    private final boolean mContentSearchEnabled;
+    private final boolean mPreviewEnabled;
+    private final long mListingTimeout;
+    private final boolean mSnapshotsEnabled;
+    private final int mTopFilesCount;
+    private final boolean mPruneEmptyDirs;
+    private final MergedRoot mMergedRoot;
+    private final boolean mFlatMode;
+    private final boolean mDuplicatesEnabled;
+    private final String mConfigKey;
     private final boolean mOneClickMode;
     private final ExtensionFilter mFilter;
     private Comparator<FileItem> mSorter;
+    private List<File> mRecentDirs = null;
+    private boolean mRecentDirsWarmed = false;
+    private PickerExecutors.ListenableTask<PathIndex> mPathIndex = null;
+    private boolean mContentSearchMode;
+    private final AtomicInteger mSearchGeneration = new AtomicInteger();
+    private Future<?> mTopFilesTask = null;
+    private List<PickerItem> mNewestFiles = new ArrayList<>();
+    private List<PickerItem> mLargestFiles = new ArrayList<>();
+    private boolean mTopFilesFinished = false;
+    private int mTopFilesView = Menu.NONE;
+    private int mTopFilesGeneration = 0;
+    private int mMergeGeneration = 0;
+    private Future<?> mFlatTask = null;
+    private File mFlatDirectory = null;
+    private FlatFileWalker.Snapshot mFlatSnapshot = null;
+    private int mFlatGeneration = 0;
+    private final HashMap<File, Future<MappedByteBuffer>> mReadAheads = new HashMap<>();
+    private final HashMap<File, long[]> mRelistBackoffs = new HashMap<>();
+    private final AtomicInteger mPendingGeneration = new AtomicInteger();
+    private long mPickedFilesLength = 0;
+    private final IdentityHashMap<PickerItem, Long> mPickedDirsLengths = new IdentityHashMap<>();
+    private final IdentityHashMap<PickerItem, Future<?>> mDirectorySums = new IdentityHashMap<>();
     private LinearLayout mToolbarView = null;
+    private LinearLayout mPreviewView = null;
+    private TextView mPreviewTitle = null;
+    private TextView mPreviewText = null;
+    private File mPreviewedFile = null;
     private TextView mNameColumn = null;
     private TextView mDateColumn = null;
     private TextView mSizeColumn = null;
@@ -229,6 +422,11 @@ public class FilePickerDialog extends ListPickerDialogBase implements PickerInte
         this.mRootDir = builder.mRootDir;
         this.mErrorDir = builder.mErrorDir;
         this.mOffsetDir = builder.mOffsetDir;
+        this.mOffsetDirDefined =
+                builder.mOffsetDirDefined
+                        && !builder.mOffsetDir
+                                .getAbsolutePath()
+                                .equals(builder.mRootDir.getAbsolutePath());
         this.mFilesPatterns = builder.mFilesPatterns;
         this.mPathsPatterns = builder.mPathsPatterns;
         this.mSortBy = builder.mSortBy;
@@ -237,10 +435,28 @@ public class FilePickerDialog extends ListPickerDialogBase implements PickerInte
         this.mToolbarIsVisible = builder.mToolbarIsVisible;
         this.mOnSingleChoiceValidationListener = builder.mOnSingleChoiceValidationListener;
         this.mOnMultiChoiceValidationListener = builder.mOnMultiChoiceValidationListener;
+        this.mOnSingleChoicePickedFileListener = builder.mOnSingleChoicePickedFileListener;
+        this.mOnMultiChoicePickedFileListener = builder.mOnMultiChoicePickedFileListener;
+        this.mOnNavigationStatsListener = builder.mOnNavigationStatsListener;
+        this.mRecentDirsCount = builder.mRecentDirsCount;
+        this.mQuickOpenEnabled = builder.mQuickOpenEnabled;
+        this.mContentSearchEnabled = builder.mContentSearchEnabled;
+        this.mContentSearchMode = !builder.mQuickOpenEnabled;
+        this.mPreviewEnabled = builder.mPreviewEnabled;
+        this.mListingTimeout = builder.mListingTimeout;
+        this.mSnapshotsEnabled = builder.mSnapshotsEnabled;
+        this.mTopFilesCount = builder.mTopFilesCount;
+        this.mPruneEmptyDirs = builder.mPruneEmptyDirs && (builder.mShowMode == FILES);
+        this.mMergedRoot =
+                (builder.mMergedRoots.length > 0) ? new MergedRoot(builder.mMergedRoots) : null;
+        this.mFlatMode = builder.mFlatMode;
+        this.mDuplicatesEnabled = builder.mDuplicatesEnabled;
+
+        this.mConfigKey = createConfigKey(builder);
 
         this.mOneClickMode = (builder.P.positiveButtonVisibility != View.VISIBLE);
 
-        this.mFilter = new ExtensionFilter(this);
+        this.mFilter = new ExtensionFilter(this, builder.mFilesFilter);
         this.mSorter = createComparator(this);
     }
 
@@ -257,10 +473,53 @@ public class FilePickerDialog extends ListPickerDialogBase implements PickerInte
                             new String[] {Manifest.permission.READ_EXTERNAL_STORAGE},
                             this.mRequestCode);
         } else {
+            this.warmRecentDirectories();
+            this.startPathIndex();
+
             super.show();
         }
     }
 
+    /**
+     * Start loading the content of the first directory in background, so that the dialog is
+     * already populated when it is shown. Does nothing if the storage permission is not granted.
+     */
+    @Override
+    public void prefetch() {
+        if (this.checkStorageAccessPermissions()) {
+            this.warmRecentDirectories();
+            this.startPathIndex();
+
+            // The merged and flat views stream their children once displayed.
+
+            if (this.mMergedRoot == null && !this.mFlatMode) super.prefetch();
+        }
+    }
+
+    /** Called on dialog dismiss, stops the background work of the dialog. */
+    @Override
+    protected void onStop() {
+        super.onStop();
+
+        this.mPendingGeneration.incrementAndGet();
+
+        // The searches, including the duplicates one, stop once their generation is outdated.
+
+        this.mSearchGeneration.incrementAndGet();
+
+        for (Future<?> sum : this.mDirectorySums.values()) sum.cancel(true);
+
+        this.mDirectorySums.clear();
+
+        this.cancelTopFiles();
+
+        // The read-aheads handed to the listeners have already been removed.
+
+        for (Future<MappedByteBuffer> readAhead : this.mReadAheads.values()) readAhead.cancel(true);
+
+        this.mReadAheads.clear();
+    }
+
     /* ---- Privates Methods ---- */
 
     /**
@@ -276,6 +535,31 @@ public class FilePickerDialog extends ListPickerDialogBase implements PickerInte
                 == PackageManager.PERMISSION_GRANTED);
     }
 
+    /**
+     * Create the key identifying the configuration of a picker, used to share listings and recent
+     * directories between pickers which display the same content.
+     *
+     * @param builder a builder object contains dialog parameters.
+     * @return a string contains the key of the configuration.
+     */
+    private static String createConfigKey(@NonNull Builder builder) {
+        StringBuilder configKey = new StringBuilder(builder.mRootDir.getAbsolutePath());
+
+        configKey.append('|').append(builder.mShowMode);
+
+        for (Pattern pattern : builder.mFilesPatterns) {
+            configKey.append("|f:").append(pattern.flags()).append(':').append(pattern.pattern());
+        }
+
+        for (Pattern pattern : builder.mPathsPatterns) {
+            configKey.append("|p:").append(pattern.flags()).append(':').append(pattern.pattern());
+        }
+
+        if (builder.mFilesFilter != null) configKey.append("|").append(builder.mFilesFilter);
+
+        return configKey.toString();
+    }
+
     /**
      * Create comparator for sort objects in list.
      *
@@ -293,25 +577,21 @@ public class FilePickerDialog extends ListPickerDialogBase implements PickerInte
                             new Comparator<FileItem>() {
                                 @Override
                                 public int compare(FileItem lht, FileItem rht) {
-                                    if (rht.object.isDirectory() && lht.object.isDirectory()) {
+                                    if (rht.isDirectory && lht.isDirectory) {
                                         if (lht.object.getName().equals("..."))
                                             return -1 * reversed;
                                         if (rht.object.getName().equals("...")) return reversed;
 
-                                        return Long.compare(
-                                                        lht.object.lastModified(),
-                                                        rht.object.lastModified())
+                                        return Long.compare(lht.lastModified, rht.lastModified)
                                                 * reversed;
                                     }
 
                                     // If the comparison is not between two directories, return the
                                     // file with alphabetic order first.
 
-                                    if (!rht.object.isDirectory() && !lht.object.isDirectory()) {
+                                    if (!rht.isDirectory && !lht.isDirectory) {
                                         int result =
-                                                Long.compare(
-                                                                lht.object.lastModified(),
-                                                                rht.object.lastModified())
+                                                Long.compare(lht.lastModified, rht.lastModified)
                                                         * reversed;
 
                                         if (result == 0)
@@ -327,10 +607,8 @@ public class FilePickerDialog extends ListPickerDialogBase implements PickerInte
                                     // If the comparison is between a directory and a file, return
                                     // the directory.
 
-                                    if (lht.object.isDirectory() && !rht.object.isDirectory())
-                                        return -1 * reversed;
-                                    if (!lht.object.isDirectory() && rht.object.isDirectory())
-                                        return reversed;
+                                    if (lht.isDirectory && !rht.isDirectory) return -1 * reversed;
+                                    if (!lht.isDirectory && rht.isDirectory) return reversed;
 
                                     // Same as above but order of occurrence is different.
 
@@ -347,7 +625,7 @@ public class FilePickerDialog extends ListPickerDialogBase implements PickerInte
                             new Comparator<FileItem>() {
                                 @Override
                                 public int compare(FileItem lht, FileItem rht) {
-                                    if (rht.object.isDirectory() && lht.object.isDirectory()) {
+                                    if (rht.isDirectory && lht.isDirectory) {
                                         if (lht.object.getName().equals("..."))
                                             return -1 * reversed;
                                         if (rht.object.getName().equals("...")) return reversed;
@@ -361,12 +639,9 @@ public class FilePickerDialog extends ListPickerDialogBase implements PickerInte
                                     // If the comparison is not between two directories, return the
                                     // file with alphabetic order first.
 
-                                    if (!rht.object.isDirectory() && !lht.object.isDirectory()) {
+                                    if (!rht.isDirectory && !lht.isDirectory) {
                                         int result =
-                                                Long.compare(
-                                                                lht.object.length(),
-                                                                rht.object.length())
-                                                        * reversed;
+                                                Long.compare(lht.length, rht.length) * reversed;
 
                                         if (result == 0)
                                             return lht.object
@@ -381,10 +656,8 @@ public class FilePickerDialog extends ListPickerDialogBase implements PickerInte
                                     // If the comparison is between a directory and a file, return
                                     // the directory.
 
-                                    if (lht.object.isDirectory() && !rht.object.isDirectory())
-                                        return -1 * reversed;
-                                    if (!lht.object.isDirectory() && rht.object.isDirectory())
-                                        return reversed;
+                                    if (lht.isDirectory && !rht.isDirectory) return -1 * reversed;
+                                    if (!lht.isDirectory && rht.isDirectory) return reversed;
 
                                     // Same as above but order of occurrence is different.
 
@@ -401,7 +674,7 @@ public class FilePickerDialog extends ListPickerDialogBase implements PickerInte
                             new Comparator<FileItem>() {
                                 @Override
                                 public int compare(FileItem lht, FileItem rht) {
-                                    if (rht.object.isDirectory() && lht.object.isDirectory()) {
+                                    if (rht.isDirectory && lht.isDirectory) {
                                         if (lht.object.getName().equals("..."))
                                             return -1 * reversed;
                                         if (rht.object.getName().equals("...")) return reversed;
@@ -415,7 +688,7 @@ public class FilePickerDialog extends ListPickerDialogBase implements PickerInte
                                     // If the comparison is not between two directories, return the
                                     // file with alphabetic order first.
 
-                                    if (!rht.object.isDirectory() && !lht.object.isDirectory())
+                                    if (!rht.isDirectory && !lht.isDirectory)
                                         return lht.object
                                                         .getName()
                                                         .compareToIgnoreCase(rht.object.getName())
@@ -424,10 +697,8 @@ public class FilePickerDialog extends ListPickerDialogBase implements PickerInte
                                     // If the comparison is between a directory and a file, return
                                     // the directory.
 
-                                    if (lht.object.isDirectory() && !rht.object.isDirectory())
-                                        return -1 * reversed;
-                                    if (!lht.object.isDirectory() && rht.object.isDirectory())
-                                        return reversed;
+                                    if (lht.isDirectory && !rht.isDirectory) return -1 * reversed;
+                                    if (!lht.isDirectory && rht.isDirectory) return reversed;
 
                                     // Same as above but order of occurrence is different.
 
@@ -582,13 +853,193 @@ public class FilePickerDialog extends ListPickerDialogBase implements PickerInte
                 new View.OnClickListener() {
                     @Override
                     public void onClick(View view) {
+                        FilePickerDialog.this.mPathIndex = null;
+
+                        FilePickerDialog.this.cancelTopFiles();
+
+                        FilePickerDialog.this.mFlatSnapshot = null;
+
                         FilePickerDialog.this.reload();
                     }
                 });
 
+        // Menu button
+
+        View menuContainer = this.mToolbarView.findViewById(R.id.file_picker_dialog_menu_container);
+
+        boolean menuIsVisible =
+                (this.mRecentDirsCount > 0
+                        || this.mTopFilesCount > 0
+                        || this.mDuplicatesEnabled
+                        || (this.mQuickOpenEnabled && this.mContentSearchEnabled));
+
+        menuContainer.setVisibility((menuIsVisible) ? View.VISIBLE : View.GONE);
+
+        RelativeLayout menuButton = this.mToolbarView.findViewById(R.id.file_picker_dialog_menu);
+
+        menuButton.setOnClickListener(
+                new View.OnClickListener() {
+                    @Override
+                    public void onClick(View view) {
+                        FilePickerDialog.this.showToolbarMenu(view);
+                    }
+                });
+
         return toolbar;
     }
 
+    /**
+     * Show the toolbar menu, which contains the search mode, the views of the newest, the largest
+     * and the duplicate files and the recent directories.
+     *
+     * @param anchor view used as anchor of the menu.
+     */
+    private void showToolbarMenu(@NonNull View anchor) {
+        PopupMenu popupMenu = new PopupMenu(this.mContext, anchor);
+
+        Menu menu = popupMenu.getMenu();
+
+        if (this.mQuickOpenEnabled && this.mContentSearchEnabled) {
+            menu.add(
+                            Menu.NONE,
+                            MENU_ID_CONTENT_SEARCH,
+                            Menu.NONE,
+                            this.mContext.getString(R.string.file_picker_dialog_content_search))
+                    .setCheckable(true)
+                    .setChecked(this.mContentSearchMode);
+        }
+
+        if (this.mTopFilesCount > 0) {
+            menu.add(
+                    Menu.NONE,
+                    MENU_ID_NEWEST_FILES,
+                    Menu.NONE,
+                    this.mContext.getString(R.string.file_picker_dialog_newest_files));
+
+            menu.add(
+                    Menu.NONE,
+                    MENU_ID_LARGEST_FILES,
+                    Menu.NONE,
+                    this.mContext.getString(R.string.file_picker_dialog_largest_files));
+        }
+
+        if (this.mDuplicatesEnabled) {
+            menu.add(
+                    Menu.NONE,
+                    MENU_ID_DUPLICATES,
+                    Menu.NONE,
+                    this.mContext.getString(R.string.file_picker_dialog_duplicates));
+        }
+
+        final List<File> recentDirs =
+                (this.mRecentDirsCount > 0) ? this.getRecentDirs() : new ArrayList<File>();
+
+        if (this.mRecentDirsCount > 0 && recentDirs.isEmpty()) {
+            menu.add(
+                            Menu.NONE,
+                            Menu.NONE,
+                            Menu.NONE,
+                            this.mContext.getString(R.string.file_picker_dialog_no_recent_dirs))
+                    .setEnabled(false);
+        }
+
+        for (int index = 0; index < recentDirs.size(); index++) {
+            menu.add(
+                    Menu.NONE,
+                    MENU_ID_RECENT_DIR + index,
+                    index,
+                    this.getRelativePath(recentDirs.get(index)));
+        }
+
+        popupMenu.setOnMenuItemClickListener(
+                new PopupMenu.OnMenuItemClickListener() {
+                    @Override
+                    public boolean onMenuItemClick(MenuItem menuItem) {
+                        if (menuItem.getItemId() == MENU_ID_CONTENT_SEARCH) {
+                            FilePickerDialog.this.mContentSearchMode =
+                                    !FilePickerDialog.this.mContentSearchMode;
+
+                            FilePickerDialog.this.onSearchQueryChanged(
+                                    FilePickerDialog.this.getSearchQuery());
+
+                            return true;
+                        }
+
+                        if (menuItem.getItemId() == MENU_ID_NEWEST_FILES
+                                || menuItem.getItemId() == MENU_ID_LARGEST_FILES) {
+                            FilePickerDialog.this.showTopFiles(menuItem.getItemId());
+
+                            return true;
+                        }
+
+                        if (menuItem.getItemId() == MENU_ID_DUPLICATES) {
+                            FilePickerDialog.this.showDuplicates();
+
+                            return true;
+                        }
+
+                        int index = menuItem.getItemId() - MENU_ID_RECENT_DIR;
+
+                        if (index >= 0 && index < recentDirs.size()) {
+                            FilePickerDialog.this.openRecentDir(recentDirs.get(index));
+
+                            return true;
+                        }
+
+                        return false;
+                    }
+                });
+
+        popupMenu.show();
+    }
+
+    /**
+     * Navigate to a recent directory, with the items of its parent directories up to the root
+     * directory. The directory is checked and its item created in background.
+     *
+     * @param directory a recent directory.
+     */
+    private void openRecentDir(@NonNull final File directory) {
+        PickerExecutors.io()
+                .execute(
+                        new Runnable() {
+                            @Override
+                            public void run() {
+                                final FileItem fileItem =
+                                        (directory.isDirectory() && directory.canRead())
+                                                ? FilePickerDialog.this.createPathItem(directory)
+                                                : null;
+
+                                PickerExecutors.runOnUiThread(
+                                        new Runnable() {
+                                            @Override
+                                            public void run() {
+                                                FilePickerDialog.this.onRecentDirOpened(fileItem);
+                                            }
+                                        });
+                            }
+                        });
+    }
+
+    /**
+     * Called from the main thread once a recent directory is checked.
+     *
+     * @param fileItem item of the directory, or null if the directory cannot be read.
+     */
+    private void onRecentDirOpened(@Nullable FileItem fileItem) {
+        if (!this.isShowing()) return;
+
+        if (fileItem != null) {
+            this.navigateTo(this.createItem(fileItem));
+        } else {
+            Toast.makeText(
+                            this.mContext,
+                            R.string.file_picker_dialog_error_dir_access,
+                            Toast.LENGTH_SHORT)
+                    .show();
+        }
+    }
+
     /* ---- Derived Methods ---- */
 
     /**
@@ -605,18 +1056,41 @@ public class FilePickerDialog extends ListPickerDialogBase implements PickerInte
             if (itemTag instanceof FileItem) {
                 FileItem fileItem = (FileItem) itemTag;
 
-                if (fileItem.object.isDirectory() && fileItem.object.canRead()) {
-                    String rootPath = this.mRootDir.getAbsolutePath();
+                if (fileItem.isDirectory) {
+                    String rootPath = this.getRootPath(fileItem.object);
                     String otherPath = fileItem.object.getAbsolutePath();
 
+                    // The merged directories go back to the virtual directory merging them.
+
+                    if (this.mMergedRoot != null && otherPath.equals(rootPath)) {
+                        if (!(item instanceof BackItem))
+                            this.mMergedRoot.listViewState = super.getListViewState();
+
+                        return new BackItem(
+                                this.mContext.getString(
+                                        R.string.file_picker_dialog_parent_directory),
+                                this.mContext.getString(
+                                        R.string.file_picker_dialog_parent_directory_text),
+                                R.drawable.ic_file_picker_folder,
+                                this.mMergedRoot.listViewState,
+                                this.mMergedRoot);
+                    }
+
                     if (!otherPath.equals(rootPath) && otherPath.startsWith(rootPath)) {
                         FileItem parentItem = fileItem.parent;
 
-                        if (parentItem == null || !parentItem.object.canRead()) {
+                        // No file system operation on the main thread, the parent is a directory.
+
+                        if (parentItem == null) {
                             File parent = fileItem.object.getParentFile();
 
-                            if (parent != null && parent.canRead()) {
-                                parentItem = new FileItem(parent, null);
+                            if (parent != null) {
+                                parentItem =
+                                        new FileItem(
+                                                parent,
+                                                null,
+                                                new ListingSnapshotStore.Entry(
+                                                        parent.getName(), true, 0, 0));
                             }
                         }
 
@@ -642,169 +1116,1926 @@ public class FilePickerDialog extends ListPickerDialogBase implements PickerInte
     }
 
     /**
-     * Obtains an item list of items corresponding to the children of the root item.
+     * Obtains an item list of items corresponding to the children of the root item. On the main
+     * thread, a directory is listed in background and its children are displayed once listed.
      *
      * @param item item of the list to display.
      * @return a collection of PickerItem objects to load in list.
      */
     @Override
     protected Collection<PickerItem> getChildrenFor(ItemBase item) {
+        // The checks of the pending directories of the previous level are outdated.
+
+        this.mPendingGeneration.incrementAndGet();
+
+        if (item != null
+                && item.getTag() instanceof FileItem
+                && !this.mFlatMode
+                && Looper.myLooper() == Looper.getMainLooper()) {
+            return this.listChildrenLater(item);
+        }
+
+        ArrayList<Runnable> checks = new ArrayList<>();
+
+        Collection<PickerItem> items = this.readChildren(item, checks);
+
+        for (Runnable check : checks) check.run();
+
+        return items;
+    }
+
+    /**
+     * List the children of a directory in background, then display them. The listing of a
+     * directory recently found incomplete is delayed, the delay doubling on each incomplete
+     * listing. Must be called from the main thread.
+     *
+     * @param item item of the directory.
+     * @return the children displayed at once, the incomplete listing item while the listing is
+     *     delayed, none otherwise.
+     */
+    private Collection<PickerItem> listChildrenLater(@NonNull final ItemBase item) {
+        final FileItem fileItem = (FileItem) item.getTag();
+
+        final Runnable task =
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        final ArrayList<Runnable> checks = new ArrayList<>();
+
+                        final Collection<PickerItem> items =
+                                FilePickerDialog.this.readChildren(item, checks);
+
+                        PickerExecutors.runOnUiThread(
+                                new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        FilePickerDialog.this.replaceChildren(item, items);
+                                    }
+                                });
+
+                        // The changes found by the checks are posted after the children.
+
+                        for (Runnable check : checks) check.run();
+                    }
+                };
+
+        long[] backoff = this.mRelistBackoffs.get(fileItem.object);
+
+        long delay = (backoff != null) ? backoff[0] - SystemClock.elapsedRealtime() : 0;
+
+        if (delay <= 0) {
+            PickerExecutors.io().execute(task);
+
+            return new ArrayList<>();
+        }
+
+        PickerExecutors.postOnUiThread(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        if (FilePickerDialog.this.getCurrentItem() == item)
+                            PickerExecutors.io().execute(task);
+                    }
+                },
+                delay);
+
+        ArrayList<PickerItem> itemList = new ArrayList<>();
+
+        itemList.add(this.createIncompleteItem(fileItem));
+
+        return itemList;
+    }
+
+    /**
+     * Called on the main thread once a directory is listed, to compute the delay before listing it
+     * again if its listing was incomplete.
+     *
+     * @param directory listed directory.
+     * @param complete indicates if all the entries of the directory have been read.
+     */
+    private void onDirectoryListed(@NonNull File directory, boolean complete) {
+        if (complete) {
+            this.mRelistBackoffs.remove(directory);
+
+            return;
+        }
+
+        long[] backoff = this.mRelistBackoffs.get(directory);
+
+        long delay =
+                (backoff != null) ? Math.min(backoff[1] * 2, MAX_RELIST_DELAY) : MIN_RELIST_DELAY;
+
+        this.mRelistBackoffs.put(
+                directory, new long[] {SystemClock.elapsedRealtime() + delay, delay});
+    }
+
+    /**
+     * Read the children of an item. When the statistics of the navigations are requested, the
+     * file system operations of the listing of a directory are recorded.
+     *
+     * @param item item of the list to display.
+     * @param checks list receiving the background checks of the children, to start once the
+     *     children are displayed.
+     * @return a collection of PickerItem objects to load in list.
+     */
+    private Collection<PickerItem> readChildren(ItemBase item, @NonNull List<Runnable> checks) {
+        if (this.mOnNavigationStatsListener == null
+                || item == null
+                || !(item.getTag() instanceof FileItem)) return this.listChildren(item, checks);
+
+        final IoStats stats = new IoStats(((FileItem) item.getTag()).object.getPath());
+
+        IoStats previous = IoStats.begin(stats);
+
+        try {
+            return this.listChildren(item, checks);
+        } finally {
+            IoStats.end(previous);
+
+            stats.finish();
+
+            PickerExecutors.postOnUiThread(
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            FilePickerDialog.this.mOnNavigationStatsListener.onNavigationStats(
+                                    FilePickerDialog.this, stats);
+                        }
+                    });
+        }
+    }
+
+    /**
+     * List the children of an item.
+     *
+     * @param item item of the list to display.
+     * @param checks list receiving the background checks of the children, to start once the
+     *     children are displayed.
+     * @return a collection of PickerItem objects to load in list.
+     */
+    private Collection<PickerItem> listChildren(
+            final ItemBase item, @NonNull List<Runnable> checks) {
         ArrayList<PickerItem> itemList = new ArrayList<>();
 
         if (item != null) {
             Object itemTag = item.getTag();
 
-            if (itemTag instanceof FileItem) {
-                FileItem fileItem = (FileItem) itemTag;
+            if (itemTag instanceof MergedRoot) return this.getMergedChildren(item);
+
+            if (this.mFlatMode && itemTag instanceof FileItem)
+                return this.getFlatChildren(item, ((FileItem) itemTag).object);
+
+            if (itemTag instanceof FileItem) {
+                FileItem fileItem = (FileItem) itemTag;
+
+                if (isReadableDirectory(fileItem.object)) {
+                    final int generation = this.mPendingGeneration.get();
+
+                    String rootPath = this.getRootPath(fileItem.object);
+                    String otherPath = fileItem.object.getAbsolutePath();
+
+                    if (otherPath.equals(rootPath) || otherPath.startsWith(rootPath)) {
+                        // The snapshot of the directory is displayed at once, then revalidated.
+
+                        final ListingSnapshotStore.Snapshot snapshot =
+                                this.loadSnapshot(fileItem.object);
+
+                        if (snapshot != null) {
+                            ArrayList<FileItem> sortedObjects = new ArrayList<>();
+
+                            for (ListingSnapshotStore.Entry entry : snapshot.entries) {
+                                File file = new File(fileItem.object, entry.name);
+
+                                sortedObjects.add(new FileItem(file, fileItem, entry));
+                            }
+
+                            Collections.sort(sortedObjects, this.mSorter);
+
+                            final HashMap<String, PickerItem> displayedItems = new HashMap<>();
+                            final ArrayList<PickerItem> pendingItems = new ArrayList<>();
+
+                            for (FileItem newObject : sortedObjects) {
+                                PickerItem newItem = this.createChildItem(newObject, pendingItems);
+
+                                if (newItem == null) continue;
+
+                                itemList.add(newItem);
+
+                                displayedItems.put(newObject.object.getName(), newItem);
+                            }
+
+                            final FileItem directoryItem = fileItem;
+
+                            checks.add(
+                                    new Runnable() {
+                                        @Override
+                                        public void run() {
+                                            FilePickerDialog.this.revalidateSnapshot(
+                                                    item,
+                                                    directoryItem,
+                                                    snapshot,
+                                                    displayedItems,
+                                                    generation);
+
+                                            FilePickerDialog.this.checkPendingItems(
+                                                    item, pendingItems, generation);
+                                        }
+                                    });
+
+                            return itemList;
+                        }
+
+                        long lastModified = 0;
+
+                        if (this.mSnapshotsEnabled) {
+                            long start = IoStats.start();
+
+                            lastModified = fileItem.object.lastModified();
+
+                            IoStats.record(IoStats.STAT, fileItem.object, start);
+                        }
+
+                        VolumeGovernor.Listing listing = this.listDirectory(fileItem.object);
+
+                        ArrayList<FileItem> sortedObjects = new ArrayList<>();
+                        final ArrayList<PickerItem> pendingItems = new ArrayList<>();
+
+                        if (listing != null) {
+                            for (int index = 0; index < listing.files.length; index++) {
+                                sortedObjects.add(createFileItem(listing, index, fileItem));
+                            }
+
+                            Collections.sort(sortedObjects, this.mSorter);
+
+                            for (FileItem newObject : sortedObjects) {
+                                PickerItem newItem = this.createChildItem(newObject, pendingItems);
+
+                                if (newItem != null) itemList.add(newItem);
+                            }
+
+                            checks.add(
+                                    new Runnable() {
+                                        @Override
+                                        public void run() {
+                                            FilePickerDialog.this.checkPendingItems(
+                                                    item, pendingItems, generation);
+                                        }
+                                    });
+
+                            if (this.mSnapshotsEnabled && listing.complete)
+                                this.saveSnapshot(fileItem.object, lastModified, sortedObjects);
+
+                            // A slow listing is partial, the last item allows to list again.
+
+                            if (!listing.complete)
+                                itemList.add(this.createIncompleteItem(fileItem));
+
+                            final File directory = fileItem.object;
+                            final boolean complete = listing.complete;
+
+                            PickerExecutors.runOnUiThread(
+                                    new Runnable() {
+                                        @Override
+                                        public void run() {
+                                            FilePickerDialog.this.onDirectoryListed(
+                                                    directory, complete);
+                                        }
+                                    });
+                        }
+                    }
+                } else {
+                    this.showMessage(R.string.file_picker_dialog_error_dir_access);
+                }
+            }
+        }
+
+        return itemList;
+    }
+
+    /**
+     * Obtains an item used to initialize the selector.
+     *
+     * @return a ItemBase object to used to initialize the selector.
+     */
+    @Override
+    protected ItemBase getRootItem() {
+        if (this.checkStorageAccessPermissions()) {
+            if (this.mMergedRoot != null) {
+                return new PickerItem(
+                        this.mContext.getString(R.string.file_picker_dialog_merged_root),
+                        null,
+                        R.drawable.ic_file_picker_folder,
+                        this.mMergedRoot,
+                        true,
+                        false);
+            }
+
+            // An explicit offset directory comes before the recent directories.
+
+            if (this.mRecentDirsCount > 0
+                    && !this.mOffsetDirDefined
+                    && this.mRootDir.isDirectory()) {
+                String rootPath = this.mRootDir.getAbsolutePath();
+
+                for (File recentDir : this.getRecentDirs()) {
+                    if (isInside(recentDir.getAbsolutePath(), rootPath)) {
+                        if (recentDir.isDirectory() && recentDir.canRead())
+                            return this.createItem(this.createPathItem(recentDir));
+                    }
+                }
+            }
+
+            if (this.mRootDir.isDirectory() && this.mOffsetDir.isDirectory()) {
+                String rootPath = this.mRootDir.getAbsolutePath();
+
+                if (isInside(this.mOffsetDir.getAbsolutePath(), rootPath)) {
+                    if (this.mOffsetDir.canRead())
+                        return this.createItem(this.createPathItem(this.mOffsetDir));
+                }
+            }
+
+            if (this.mRootDir.isDirectory() && this.mRootDir.canRead())
+                return this.createItem(new FileItem(this.mRootDir, null));
+            if (this.mErrorDir.isDirectory() && this.mErrorDir.canRead())
+                return this.createItem(new FileItem(this.mErrorDir, null));
+        }
+
+        Toast.makeText(
+                        this.mContext,
+                        R.string.file_picker_dialog_error_dir_access,
+                        Toast.LENGTH_SHORT)
+                .show();
+
+        return null;
+    }
+
+    /**
+     * Obtains an item to display dialog header.
+     *
+     * @param item item of the list to display.
+     * @return a ItemBase object to define title, sub-title and icon of dialog header.
+     */
+    @Override
+    protected ItemBase getTitleItem(ItemBase item) {
+        if (item != null) {
+            Object itemTag = item.getTag();
+
+            if (itemTag instanceof MergedRoot) {
+                StringBuilder subTitle = new StringBuilder();
+
+                for (File source : ((MergedRoot) itemTag).sources) {
+                    if (subTitle.length() > 0) subTitle.append(", ");
+
+                    subTitle.append(source.getName());
+                }
+
+                return new ItemBase(
+                        this.mContext.getString(R.string.file_picker_dialog_merged_root),
+                        subTitle.toString(),
+                        R.drawable.ic_file_picker_header);
+            }
+
+            if (itemTag instanceof FileItem) {
+                FileItem fileItem = (FileItem) itemTag;
+
+                return new ItemBase(
+                        fileItem.object.getName(),
+                        fileItem.object.getAbsolutePath(),
+                        R.drawable.ic_file_picker_header);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Obtains a toolbar view which will be placed between the title bar and the list.
+     *
+     * @return a view object.
+     */
+    @SuppressLint("InflateParams")
+    @Override
+    protected View getToolBarView() {
+        if (!this.mToolbarIsVisible) return null;
+
+        if (this.mToolbarView == null) {
+            LayoutInflater inflater = LayoutInflater.from(this.mContext);
+
+            return this.getToolbarView(inflater.inflate(R.layout.file_picker_dialog_toolbar, null));
+        }
+
+        return this.mToolbarView;
+    }
+
+    /**
+     * Obtains a footer view which will be placed between the list and the buttons.
+     *
+     * @return a view object.
+     */
+    @SuppressLint("InflateParams")
+    @Override
+    protected View getFooterView() {
+        if (!this.mPreviewEnabled) return null;
+
+        if (this.mPreviewView == null) {
+            LayoutInflater inflater = LayoutInflater.from(this.mContext);
+
+            this.mPreviewView =
+                    (LinearLayout) inflater.inflate(R.layout.file_picker_dialog_preview, null);
+
+            this.mPreviewTitle =
+                    this.mPreviewView.findViewById(R.id.file_picker_dialog_preview_title);
+            this.mPreviewText =
+                    this.mPreviewView.findViewById(R.id.file_picker_dialog_preview_text);
+
+            this.mPreviewView.setOnClickListener(
+                    new View.OnClickListener() {
+                        @Override
+                        public void onClick(View view) {
+                            FilePickerDialog.this.hidePreview();
+                        }
+                    });
+        }
+
+        return this.mPreviewView;
+    }
+
+    /**
+     * Called on item long click, shows the preview of the file.
+     *
+     * @param item item clicked.
+     * @return a boolean value who indicates if the click has been consumed.
+     */
+    @Override
+    protected boolean onItemLongClick(ItemBase item) {
+        if (!this.mPreviewEnabled || this.mPreviewView == null) return false;
+
+        if (item == null || !(item.getTag() instanceof FileItem)) return false;
+
+        final File file = ((FileItem) item.getTag()).object;
+
+        if (file.isDirectory()) return false;
+
+        this.mPreviewedFile = file;
+
+        this.mPreviewTitle.setText(file.getName());
+        this.mPreviewText.setText("");
+        this.mPreviewView.setVisibility(View.VISIBLE);
+
+        PickerExecutors.io()
+                .execute(
+                        new Runnable() {
+                            @Override
+                            public void run() {
+                                final String text = FilePreviewLoader.load(file);
+
+                                PickerExecutors.runOnUiThread(
+                                        new Runnable() {
+                                            @Override
+                                            public void run() {
+                                                FilePickerDialog.this.showPreview(file, text);
+                                            }
+                                        });
+                            }
+                        });
+
+        return true;
+    }
+
+    /**
+     * Indicates if the picker is in multiple selection mode.
+     *
+     * @return a boolean value who indicates if the picker is in multiple selection mode.
+     */
+    @Override
+    protected boolean isMultiSelectionMode() {
+        return (this.mOnMultiChoiceValidationListener != null
+                || this.mOnMultiChoicePickedFileListener != null);
+    }
+
+    /**
+     * Called when an item is picked or unpicked. The total size of the picked items is updated,
+     * the size of a picked directory is summed in background. When the picked files are
+     * requested, a picked file starts to be read ahead, so that its content is in memory on
+     * validation.
+     *
+     * @param item item whose picked status has changed.
+     * @param picked new picked status of the item.
+     */
+    @Override
+    protected void onItemPicked(@NonNull PickerItem item, boolean picked) {
+        if (!(item.getTag() instanceof FileItem)) return;
+
+        FileItem fileItem = (FileItem) item.getTag();
+
+        if (fileItem.isDirectory) {
+            if (picked) {
+                this.mPickedDirsLengths.put(item, null);
+
+                this.sumDirectory(item, fileItem.object);
+            } else {
+                this.mPickedDirsLengths.remove(item);
+
+                Future<?> sum = this.mDirectorySums.remove(item);
+
+                if (sum != null) sum.cancel(true);
+            }
+
+            return;
+        }
+
+        this.mPickedFilesLength += (picked) ? fileItem.length : -fileItem.length;
+
+        if (this.mOnSingleChoicePickedFileListener == null
+                && this.mOnMultiChoicePickedFileListener == null) return;
+
+        if (picked) {
+            if (!this.mReadAheads.containsKey(fileItem.object))
+                this.mReadAheads.put(fileItem.object, PickedFile.readAhead(fileItem.object));
+        } else {
+            Future<MappedByteBuffer> readAhead = this.mReadAheads.remove(fileItem.object);
+
+            if (readAhead != null) readAhead.cancel(true);
+        }
+    }
+
+    /**
+     * Get the total size of the picked items, displayed next to their count in multiple selection
+     * mode. The size is followed by an ellipsis while picked directories are still summed.
+     *
+     * @return a string contains the total size, or null in single selection mode.
+     */
+    @Override
+    protected @Nullable String getPickedItemsDetail() {
+        if (!this.isMultiSelectionMode()) return null;
+
+        long length = this.mPickedFilesLength;
+
+        boolean pending = false;
+
+        for (Long dirLength : this.mPickedDirsLengths.values()) {
+            if (dirLength != null) {
+                length += dirLength;
+            } else {
+                pending = true;
+            }
+        }
+
+        return this.formatSize(length) + ((pending) ? "\u2026" : "");
+    }
+
+    /**
+     * Indicates if the search view is displayed under the toolbar.
+     *
+     * @return a boolean value who indicates if the search view is displayed.
+     */
+    @Override
+    protected boolean isSearchEnabled() {
+        return (this.mQuickOpenEnabled || this.mContentSearchEnabled);
+    }
+
+    /**
+     * Called on each change of the search query. The previous search is cancelled, and the paths
+     * under the root directory best matching the query, or the files containing the query, are
+     * searched in background.
+     *
+     * @param query new search query, trimmed.
+     */
+    @Override
+    protected void onSearchQueryChanged(@NonNull final String query) {
+        final int generation = this.mSearchGeneration.incrementAndGet();
+
+        if (query.isEmpty()) return;
+
+        if (this.mContentSearchMode) {
+            PickerExecutors.postOnUiThread(
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            FilePickerDialog.this.searchContents(query, generation);
+                        }
+                    },
+                    CONTENT_SEARCH_DELAY);
+
+            return;
+        }
+
+        final PickerExecutors.ListenableTask<PathIndex> pathIndex = this.startPathIndex();
+
+        if (pathIndex == null) return;
+
+        // No thread waits for the index: only the last query is searched once it is built.
+
+        pathIndex.whenDone(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        if (FilePickerDialog.this.mSearchGeneration.get() != generation) return;
+
+                        PickerExecutors.io()
+                                .execute(
+                                        new Runnable() {
+                                            @Override
+                                            public void run() {
+                                                FilePickerDialog.this.searchPaths(
+                                                        pathIndex, query, generation);
+                                            }
+                                        });
+                    }
+                });
+    }
+
+    /**
+     * Called for validation of the selection.
+     *
+     * @param items collection of picked items.
+     */
+    @Override
+    protected void onValidateSelection(Collection<PickerItem> items) {
+        if (items.size() > 0) {
+            ArrayList<String> result = new ArrayList<>();
+
+            for (PickerItem item : items) {
+                Object itemTag = item.getTag();
+
+                if (itemTag instanceof FileItem)
+                    result.add(((FileItem) itemTag).object.getAbsolutePath());
+            }
+
+            this.rememberCurrentDirectory();
+
+            if (this.mOnSingleChoiceValidationListener != null)
+                this.mOnSingleChoiceValidationListener.onClick(this, result.get(0));
+
+            if (this.mOnMultiChoiceValidationListener != null)
+                this.mOnMultiChoiceValidationListener.onClick(this, result.toArray(new String[0]));
+
+            if (this.mOnSingleChoicePickedFileListener != null
+                    || this.mOnMultiChoicePickedFileListener != null) {
+                PickedFile[] pickedFiles = new PickedFile[result.size()];
+
+                for (int index = 0; index < pickedFiles.length; index++) {
+                    File file = new File(result.get(index));
+
+                    pickedFiles[index] = new PickedFile(file, this.mReadAheads.remove(file));
+                }
+
+                if (this.mOnSingleChoicePickedFileListener != null)
+                    this.mOnSingleChoicePickedFileListener.onClick(this, pickedFiles[0]);
+
+                if (this.mOnMultiChoicePickedFileListener != null)
+                    this.mOnMultiChoicePickedFileListener.onClick(this, pickedFiles);
+            }
+        }
+    }
+
+    /* ---- Privates Methods ---- */
+
+    /**
+     * Create the last item of a partial listing, which allows to list the directory again.
+     *
+     * @param fileItem listed directory.
+     * @return a picker item.
+     */
+    private PickerItem createIncompleteItem(@NonNull FileItem fileItem) {
+        String title = this.mContext.getString(R.string.file_picker_dialog_incomplete);
+        String subTitle = this.mContext.getString(R.string.file_picker_dialog_incomplete_text);
+
+        return new PickerItem(
+                title,
+                subTitle,
+                R.drawable.ic_file_picker_folder,
+                new FileItem(fileItem.object, fileItem.parent, fileItem.toEntry()),
+                true,
+                false);
+    }
+
+    /**
+     * Check whether a file is a readable directory, the checks are recorded in the statistics of
+     * the navigation.
+     *
+     * @param file file to check.
+     * @return a boolean value who indicates if the file is a readable directory.
+     */
+    private static boolean isReadableDirectory(@NonNull File file) {
+        long start = IoStats.start();
+
+        boolean isDirectory = file.isDirectory();
+
+        IoStats.record(IoStats.STAT, file, start);
+
+        if (!isDirectory) return false;
+
+        start = IoStats.start();
+
+        boolean canRead = file.canRead();
+
+        IoStats.record(IoStats.ACCESS, file, start);
+
+        return canRead;
+    }
+
+    /**
+     * Sum the size of a picked directory in background, the total size of the picked items is
+     * updated once it is known, if the directory is still picked.
+     *
+     * @param item picked item of the directory.
+     * @param directory picked directory.
+     */
+    private void sumDirectory(@NonNull final PickerItem item, @NonNull final File directory) {
+        Future<?> sum =
+                PickerExecutors.io()
+                        .submit(
+                                new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        final long length = DirectorySizeCache.getSize(directory);
+
+                                        // A cancelled sum is partial.
+
+                                        if (Thread.currentThread().isInterrupted()) return;
+
+                                        PickerExecutors.runOnUiThread(
+                                                new Runnable() {
+                                                    @Override
+                                                    public void run() {
+                                                        FilePickerDialog.this.onDirectorySummed(
+                                                                item, length);
+                                                    }
+                                                });
+                                    }
+                                });
+
+        this.mDirectorySums.put(item, sum);
+    }
+
+    /**
+     * Called on the main thread once the size of a picked directory is known.
+     *
+     * @param item picked item of the directory.
+     * @param length total size of the files under the directory.
+     */
+    private void onDirectorySummed(@NonNull PickerItem item, long length) {
+        this.mDirectorySums.remove(item);
+
+        if (!this.mPickedDirsLengths.containsKey(item)) return;
+
+        this.mPickedDirsLengths.put(item, length);
+
+        this.actualizePickedItemsDetail();
+    }
+
+    /**
+     * Create the item of a listed file, with the attributes read by the filter during the listing,
+     * or else with its attributes read now.
+     *
+     * @param listing listing of a directory.
+     * @param index position of the file in the listing.
+     * @param parent item of the directory.
+     * @return a FileItem object.
+     */
+    private static @NonNull FileItem createFileItem(
+            @NonNull VolumeGovernor.Listing listing, int index, @Nullable FileItem parent) {
+        File file = listing.files[index];
+
+        return (listing.attributes != null)
+                ? new FileItem(file, parent, listing.attributes[index])
+                : new FileItem(file, parent);
+    }
+
+    /**
+     * List the content of a directory, using the listing cache when it is still valid. A listing
+     * longer than the listing timeout is partial.
+     *
+     * @param directory directory to list.
+     * @return the listing of the directory, or null if it cannot be listed.
+     */
+    private VolumeGovernor.Listing listDirectory(@NonNull File directory) {
+        File[] files = DirectoryCache.get(this.mConfigKey, directory);
+
+        if (files != null) return new VolumeGovernor.Listing(files, null, true);
+
+        return VolumeGovernor.list(directory, this.mFilter, this.mListingTimeout, this.mConfigKey);
+    }
+
+    /**
+     * Start indexing the paths under the root directory in background, if the quick-open search is
+     * enabled and the index does not exist yet.
+     *
+     * @return the future index, or null if the quick-open search is disabled.
+     */
+    private PickerExecutors.ListenableTask<PathIndex> startPathIndex() {
+        if (!this.mQuickOpenEnabled) return null;
+
+        if (this.mPathIndex == null) {
+            final File rootDir = this.mRootDir;
+
+            PickerExecutors.ListenableTask<PathIndex> task =
+                    new PickerExecutors.ListenableTask<>(
+                            new Callable<PathIndex>() {
+                                @Override
+                                public PathIndex call() {
+                                    return PathIndex.build(rootDir, FilePickerDialog.this.mFilter);
+                                }
+                            });
+
+            this.mPathIndex = task;
+
+            PickerExecutors.io().execute(task);
+        }
+
+        return this.mPathIndex;
+    }
+
+    /**
+     * Search the paths matching a query and display them. Must be called from a background thread.
+     *
+     * @param pathIndex future index of the paths.
+     * @param query search query.
+     * @param generation generation of this search.
+     */
+    private void searchPaths(
+            @NonNull Future<PathIndex> pathIndex, @NonNull String query, final int generation) {
+        if (this.mSearchGeneration.get() != generation) return;
+
+        try {
+            List<File> files = pathIndex.get().search(query, this.mSearchGeneration, generation);
+
+            if (files == null || this.mSearchGeneration.get() != generation) return;
+
+            final ArrayList<PickerItem> items = new ArrayList<>(files.size());
+
+            for (File file : files) {
+                File parent = file.getParentFile();
+
+                String subTitle = (parent != null) ? this.getRelativePath(parent) : null;
+
+                items.add(this.createItem(new FileItem(file, null), subTitle));
+            }
+
+            PickerExecutors.runOnUiThread(
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            if (FilePickerDialog.this.mSearchGeneration.get() == generation)
+                                FilePickerDialog.this.showSearchResults(items);
+                        }
+                    });
+        } catch (Exception Err) {
+            Log.e("FilePicker.searchPaths", "Exception: " + Err.toString());
+        }
+    }
+
+    /**
+     * Display the preview of a file, if it is still the previewed file.
+     *
+     * @param file previewed file.
+     * @param text beginning of the file, or null if there is no preview.
+     */
+    private void showPreview(@NonNull File file, @Nullable String text) {
+        if (!file.equals(this.mPreviewedFile)) return;
+
+        if (text != null) this.mPreviewText.setText(text);
+        else this.mPreviewText.setText(R.string.file_picker_dialog_no_preview);
+    }
+
+    /** Hide the preview of the file. */
+    private void hidePreview() {
+        this.mPreviewedFile = null;
+
+        if (this.mPreviewView != null) this.mPreviewView.setVisibility(View.GONE);
+    }
+
+    /**
+     * Load the snapshot of a directory, if the snapshots are enabled and the listing is not
+     * already in memory.
+     *
+     * @param directory directory to list.
+     * @return a snapshot, or null if there is none.
+     */
+    private ListingSnapshotStore.Snapshot loadSnapshot(@NonNull File directory) {
+        if (!this.mSnapshotsEnabled) return null;
+
+        if (DirectoryCache.get(this.mConfigKey, directory) != null) return null;
+
+        return ListingSnapshotStore.load(this.mContext, this.mConfigKey, directory);
+    }
+
+    /**
+     * Save the snapshot of a directory in background.
+     *
+     * @param directory listed directory.
+     * @param lastModified modification date of the directory read before the listing.
+     * @param fileItems entries of the directory.
+     */
+    private void saveSnapshot(
+            @NonNull final File directory,
+            final long lastModified,
+            @NonNull Collection<FileItem> fileItems) {
+        final ArrayList<ListingSnapshotStore.Entry> entries = new ArrayList<>(fileItems.size());
+
+        for (FileItem fileItem : fileItems) {
+            entries.add(fileItem.toEntry());
+        }
+
+        PickerExecutors.io()
+                .execute(
+                        new Runnable() {
+                            @Override
+                            public void run() {
+                                ListingSnapshotStore.save(
+                                        FilePickerDialog.this.mContext,
+                                        FilePickerDialog.this.mConfigKey,
+                                        directory,
+                                        lastModified,
+                                        entries);
+                            }
+                        });
+    }
+
+    /**
+     * Check in background whether a directory displayed from its snapshot has changed, and apply
+     * the differences to the list.
+     *
+     * @param item item whose children are displayed.
+     * @param fileItem listed directory.
+     * @param snapshot displayed snapshot.
+     * @param displayedItems displayed items, by file name.
+     * @param generation generation of the checks of the displayed directory.
+     */
+    private void revalidateSnapshot(
+            @NonNull final ItemBase item,
+            @NonNull final FileItem fileItem,
+            @NonNull final ListingSnapshotStore.Snapshot snapshot,
+            @NonNull final HashMap<String, PickerItem> displayedItems,
+            final int generation) {
+        PickerExecutors.io()
+                .execute(
+                        new Runnable() {
+                            @Override
+                            public void run() {
+                                try {
+                                    FilePickerDialog.this.applySnapshotChanges(
+                                            item, fileItem, snapshot, displayedItems, generation);
+                                } catch (Exception Err) {
+                                    Log.e("FilePicker.revalidate", "Exception: " + Err.toString());
+                                }
+                            }
+                        });
+    }
+
+    /**
+     * List again a directory displayed from its snapshot, if its modification date has changed,
+     * and apply the differences to the list. Must be called from a background thread.
+     *
+     * @param item item whose children are displayed.
+     * @param fileItem listed directory.
+     * @param snapshot displayed snapshot.
+     * @param displayedItems displayed items, by file name.
+     * @param generation generation of the checks of the displayed directory.
+     */
+    private void applySnapshotChanges(
+            @NonNull final ItemBase item,
+            @NonNull FileItem fileItem,
+            @NonNull ListingSnapshotStore.Snapshot snapshot,
+            @NonNull HashMap<String, PickerItem> displayedItems,
+            int generation) {
+        File directory = fileItem.object;
+
+        long lastModified = directory.lastModified();
+
+        if (lastModified == snapshot.lastModified) return;
+
+        VolumeGovernor.Listing listing = this.listDirectory(directory);
+
+        if (listing == null || !listing.complete) return;
+
+        HashMap<String, ListingSnapshotStore.Entry> oldEntries = new HashMap<>();
+
+        for (ListingSnapshotStore.Entry entry : snapshot.entries) {
+            oldEntries.put(entry.name, entry);
+        }
+
+        ArrayList<FileItem> fileItems = new ArrayList<>(listing.files.length);
+
+        final ArrayList<PickerItem> removedItems = new ArrayList<>();
+        final ArrayList<PickerItem> addedItems = new ArrayList<>();
+        final ArrayList<PickerItem> pendingItems = new ArrayList<>();
+
+        HashSet<String> names = new HashSet<>();
+
+        for (int index = 0; index < listing.files.length; index++) {
+            FileItem newObject = createFileItem(listing, index, fileItem);
+
+            String name = newObject.object.getName();
+
+            fileItems.add(newObject);
+            names.add(name);
+
+            // New or modified files replace the displayed ones.
+
+            ListingSnapshotStore.Entry oldEntry = oldEntries.get(name);
+
+            if (oldEntry == null
+                    || oldEntry.isDirectory != newObject.isDirectory
+                    || oldEntry.length != newObject.length
+                    || oldEntry.lastModified != newObject.lastModified) {
+                PickerItem displayedItem = displayedItems.get(name);
+
+                if (displayedItem != null) removedItems.add(displayedItem);
+
+                PickerItem newItem = this.createChildItem(newObject, pendingItems);
+
+                if (newItem != null) addedItems.add(newItem);
+            }
+        }
+
+        for (String name : displayedItems.keySet()) {
+            if (!names.contains(name)) removedItems.add(displayedItems.get(name));
+        }
+
+        this.saveSnapshot(directory, lastModified, fileItems);
+
+        if (removedItems.isEmpty() && addedItems.isEmpty()) return;
+
+        final Comparator<PickerItem> comparator = this.createItemComparator();
+
+        PickerExecutors.runOnUiThread(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        FilePickerDialog.this.applyChildrenChanges(
+                                item, removedItems, addedItems, comparator);
+                    }
+                });
+
+        this.checkPendingItems(item, pendingItems, generation);
+    }
+
+    /**
+     * Get the root directory containing a file: the merged directory containing it if any, the
+     * root directory otherwise.
+     *
+     * @param file a file.
+     * @return a string contains the path of the root directory.
+     */
+    private String getRootPath(@NonNull File file) {
+        if (this.mMergedRoot != null) {
+            String filePath = file.getAbsolutePath();
+
+            for (File source : this.mMergedRoot.sources) {
+                String sourcePath = source.getAbsolutePath();
+
+                if (filePath.equals(sourcePath)
+                        || filePath.startsWith(sourcePath + DIRECTORY_SEPERATOR)) return sourcePath;
+            }
+        }
+
+        return this.mRootDir.getAbsolutePath();
+    }
+
+    /**
+     * List the merged directories concurrently in background, and display their content as each
+     * one is listed. Each directory is sorted alone, then the sorted listings are merged.
+     *
+     * @param item item of the virtual directory.
+     * @return the children displayed at once, none.
+     */
+    private Collection<PickerItem> getMergedChildren(@NonNull final ItemBase item) {
+        final int generation = ++this.mMergeGeneration;
+
+        final File[] sources = this.mMergedRoot.sources;
+
+        final List<List<PickerItem>> listings =
+                new ArrayList<>(Collections.<List<PickerItem>>nCopies(sources.length, null));
+
+        for (int index = 0; index < sources.length; index++) {
+            final int sourceIndex = index;
+
+            PickerExecutors.io()
+                    .execute(
+                            new Runnable() {
+                                @Override
+                                public void run() {
+                                    final List<PickerItem> items =
+                                            FilePickerDialog.this.listMergedSource(
+                                                    sources[sourceIndex]);
+
+                                    PickerExecutors.runOnUiThread(
+                                            new Runnable() {
+                                                @Override
+                                                public void run() {
+                                                    FilePickerDialog.this.onMergedSourceListed(
+                                                            item,
+                                                            generation,
+                                                            listings,
+                                                            sourceIndex,
+                                                            items);
+                                                }
+                                            });
+                                }
+                            });
+        }
+
+        return new ArrayList<>();
+    }
+
+    /**
+     * Walk a directory in background, and display all the files under it in a single lazy list,
+     * updated as the walk progresses. The files of the last walk are sorted again when only the
+     * sort has changed.
+     *
+     * @param item item of the directory.
+     * @param directory walked directory.
+     * @return the children displayed at once, none.
+     */
+    private Collection<PickerItem> getFlatChildren(
+            @NonNull final ItemBase item, @NonNull final File directory) {
+        final int generation = ++this.mFlatGeneration;
+
+        final int sortBy = this.mSortBy;
+        final boolean reversed = (this.mSortOrder == FilePickerDialog.SORT_ORDER_REVERSE);
+
+        if (this.mFlatTask != null) this.mFlatTask.cancel(true);
+
+        final FlatFileWalker.Listener listener =
+                new FlatFileWalker.Listener() {
+                    @Override
+                    public void onUpdate(
+                            @NonNull final FlatFileWalker.Snapshot snapshot,
+                            final boolean finished) {
+                        PickerExecutors.runOnUiThread(
+                                new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        FilePickerDialog.this.onFlatUpdate(
+                                                item, directory, generation, snapshot, finished);
+                                    }
+                                });
+                    }
+                };
+
+        if (this.mFlatSnapshot != null && directory.equals(this.mFlatDirectory)) {
+            final FlatFileWalker.Snapshot snapshot = this.mFlatSnapshot;
+
+            this.mFlatTask =
+                    PickerExecutors.compute()
+                            .submit(
+                                    new Runnable() {
+                                        @Override
+                                        public void run() {
+                                            listener.onUpdate(
+                                                    snapshot.sort(sortBy, reversed), true);
+                                        }
+                                    });
+        } else {
+            this.mFlatSnapshot = null;
+
+            this.mFlatTask =
+                    PickerExecutors.io()
+                            .submit(
+                                    new FlatFileWalker(
+                                            directory, this.mFilter, sortBy, reversed, listener));
+        }
+
+        return new ArrayList<>();
+    }
+
+    /**
+     * Called on the main thread with the files gathered so far by the walk of a directory.
+     *
+     * @param item item of the directory.
+     * @param directory walked directory.
+     * @param generation generation of the walk.
+     * @param snapshot sorted snapshot of the files.
+     * @param finished indicates if the walk is finished.
+     */
+    private void onFlatUpdate(
+            @NonNull ItemBase item,
+            @NonNull final File directory,
+            int generation,
+            @NonNull final FlatFileWalker.Snapshot snapshot,
+            boolean finished) {
+        if (generation != this.mFlatGeneration) return;
+
+        if (finished) {
+            this.mFlatDirectory = directory;
+            this.mFlatSnapshot = snapshot;
+        }
+
+        this.replaceChildren(
+                item,
+                new LazyItemList() {
+                    @Override
+                    public int size() {
+                        return snapshot.size();
+                    }
+
+                    @NonNull
+                    @Override
+                    public Object getKey(int index) {
+                        return snapshot.getPath(index);
+                    }
+
+                    @NonNull
+                    @Override
+                    public PickerItem createItem(int index) {
+                        return FilePickerDialog.this.createFlatItem(directory, snapshot, index);
+                    }
+                });
+
+        if (finished && snapshot.size() == 0)
+            this.showMessage(R.string.file_picker_dialog_no_match);
+    }
+
+    /**
+     * Create the picker item of a file of the flat view, with its directory as sub-title.
+     *
+     * @param directory walked directory.
+     * @param snapshot sorted snapshot of the files.
+     * @param index position of the file.
+     * @return a picker item.
+     */
+    private PickerItem createFlatItem(
+            @NonNull File directory, @NonNull FlatFileWalker.Snapshot snapshot, int index) {
+        String path = snapshot.getPath(index);
+
+        File file = new File(directory, path);
+
+        ListingSnapshotStore.Entry entry =
+                new ListingSnapshotStore.Entry(
+                        file.getName(),
+                        false,
+                        snapshot.getLength(index),
+                        snapshot.getLastModified(index));
+
+        int separator = path.lastIndexOf(DIRECTORY_SEPERATOR);
+
+        String subTitle = (separator > 0) ? path.substring(0, separator) : null;
+
+        return this.createItem(new FileItem(file, null, entry), subTitle);
+    }
+
+    /**
+     * List and sort a merged directory. Must be called from a background thread.
+     *
+     * @param source merged directory.
+     * @return the sorted items of the directory, with the directory as sub-title.
+     */
+    private List<PickerItem> listMergedSource(@NonNull File source) {
+        ArrayList<PickerItem> items = new ArrayList<>();
+
+        try {
+            if (!source.isDirectory() || !source.canRead()) return items;
+
+            VolumeGovernor.Listing listing = this.listDirectory(source);
+
+            if (listing == null) return items;
+
+            FileItem sourceItem = new FileItem(source, null);
+
+            ArrayList<FileItem> sortedObjects = new ArrayList<>(listing.files.length);
+
+            for (int index = 0; index < listing.files.length; index++) {
+                sortedObjects.add(createFileItem(listing, index, sourceItem));
+            }
+
+            Collections.sort(sortedObjects, this.mSorter);
+
+            for (FileItem newObject : sortedObjects) {
+                items.add(this.createItem(newObject, source.getName()));
+            }
+        } catch (Exception Err) {
+            Log.e("FilePicker.listMerged", "Exception: " + Err.toString());
+        }
+
+        return items;
+    }
+
+    /**
+     * Called on the main thread when a merged directory is listed, display the merge of the
+     * listings received so far.
+     *
+     * @param item item of the virtual directory.
+     * @param generation generation of the listings.
+     * @param listings sorted listings of the merged directories, null if not received yet.
+     * @param index index of the listed directory.
+     * @param items sorted items of the listed directory.
+     */
+    private void onMergedSourceListed(
+            @NonNull ItemBase item,
+            int generation,
+            @NonNull List<List<PickerItem>> listings,
+            int index,
+            @NonNull List<PickerItem> items) {
+        if (generation != this.mMergeGeneration) return;
+
+        listings.set(index, items);
+
+        this.replaceChildren(item, mergeSorted(listings, this.createItemComparator()));
+    }
+
+    /**
+     * Merge sorted lists, by a k-way merge: a heap holds the head of each list.
+     *
+     * @param lists sorted lists, the null ones are ignored.
+     * @param comparator order of the lists.
+     * @return a sorted list contains the items of all the lists.
+     */
+    private static List<PickerItem> mergeSorted(
+            @NonNull final List<List<PickerItem>> lists,
+            @NonNull final Comparator<PickerItem> comparator) {
+        int size = 0;
+
+        // A cursor is the index of a list and the position of its head.
+
+        PriorityQueue<int[]> heads =
+                new PriorityQueue<>(
+                        Math.max(1, lists.size()),
+                        new Comparator<int[]>() {
+                            @Override
+                            public int compare(int[] lht, int[] rht) {
+                                int result =
+                                        comparator.compare(
+                                                lists.get(lht[0]).get(lht[1]),
+                                                lists.get(rht[0]).get(rht[1]));
+
+                                return (result != 0) ? result : Integer.compare(lht[0], rht[0]);
+                            }
+                        });
+
+        for (int index = 0; index < lists.size(); index++) {
+            List<PickerItem> list = lists.get(index);
+
+            if (list == null || list.isEmpty()) continue;
+
+            size += list.size();
+
+            heads.add(new int[] {index, 0});
+        }
+
+        ArrayList<PickerItem> result = new ArrayList<>(size);
+
+        while (!heads.isEmpty()) {
+            int[] head = heads.poll();
+
+            List<PickerItem> list = lists.get(head[0]);
+
+            result.add(list.get(head[1]));
+
+            if (++head[1] < list.size()) heads.add(head);
+        }
+
+        return result;
+    }
+
+    /**
+     * Create the comparator of the displayed items, using the current sort.
+     *
+     * @return a comparator of picker items.
+     */
+    private Comparator<PickerItem> createItemComparator() {
+        final Comparator<FileItem> sorter = this.mSorter;
+
+        return new Comparator<PickerItem>() {
+            @Override
+            public int compare(PickerItem lht, PickerItem rht) {
+                if (lht.getTag() instanceof FileItem && rht.getTag() instanceof FileItem)
+                    return sorter.compare((FileItem) lht.getTag(), (FileItem) rht.getTag());
+
+                return 0;
+            }
+        };
+    }
+
+    /**
+     * Create the picker item of a child of the displayed directory. When the empty directories are
+     * pruned, a directory not known to contain matching files is hidden, or displayed as pending
+     * if it has not been checked yet.
+     *
+     * @param fileItem the child.
+     * @param pendingItems list receiving the pending items.
+     * @return a picker item, or null if the child is hidden.
+     */
+    private @Nullable PickerItem createChildItem(
+            @NonNull FileItem fileItem, @NonNull List<PickerItem> pendingItems) {
+        if (!this.mPruneEmptyDirs || !fileItem.isDirectory) return this.createItem(fileItem);
+
+        Boolean containsMatch = SubtreeMatchCache.get(this.mConfigKey, fileItem.object);
+
+        if (containsMatch != null) return (containsMatch) ? this.createItem(fileItem) : null;
+
+        String subTitle = this.mContext.getString(R.string.file_picker_dialog_pending);
+
+        PickerItem pendingItem = this.createItem(fileItem, subTitle);
+
+        pendingItems.add(pendingItem);
+
+        return pendingItem;
+    }
+
+    /**
+     * Check in background whether the pending directories contain matching files, then hide
+     * them or display them as usual. The checks stop once another directory is displayed or the
+     * dialog is dismissed.
+     *
+     * @param item item whose children are displayed.
+     * @param pendingItems pending items.
+     * @param generation generation of the checks of the displayed directory.
+     */
+    private void checkPendingItems(
+            @NonNull final ItemBase item,
+            @NonNull final List<PickerItem> pendingItems,
+            final int generation) {
+        if (pendingItems.isEmpty()) return;
+
+        final Comparator<PickerItem> comparator = this.createItemComparator();
+
+        PickerExecutors.io()
+                .execute(
+                        new Runnable() {
+                            @Override
+                            public void run() {
+                                for (PickerItem pendingItem : pendingItems) {
+                                    if (FilePickerDialog.this.mPendingGeneration.get()
+                                            != generation) return;
+
+                                    try {
+                                        FilePickerDialog.this.checkPendingItem(
+                                                item, pendingItem, comparator, generation);
+                                    } catch (Exception Err) {
+                                        Log.e("FilePicker.prune", "Exception: " + Err.toString());
+                                    }
+                                }
+                            }
+                        });
+    }
+
+    /**
+     * Check whether a pending directory contains matching files, then hide it or display it as
+     * usual. Must be called from a background thread.
+     *
+     * @param item item whose children are displayed.
+     * @param pendingItem pending item.
+     * @param comparator comparator of the displayed items.
+     * @param generation generation of the checks of the displayed directory.
+     */
+    private void checkPendingItem(
+            @NonNull final ItemBase item,
+            @NonNull final PickerItem pendingItem,
+            @NonNull final Comparator<PickerItem> comparator,
+            int generation) {
+        FileItem fileItem = (FileItem) pendingItem.getTag();
+
+        Boolean containsMatch =
+                SubtreeMatchCache.containsMatch(
+                        this.mConfigKey,
+                        fileItem.object,
+                        this.mFilter,
+                        this.mPendingGeneration,
+                        generation);
+
+        if (containsMatch == null) return;
+
+        final List<PickerItem> removedItems = Collections.singletonList(pendingItem);
+        final List<PickerItem> addedItems =
+                (containsMatch)
+                        ? Collections.singletonList(this.createItem(fileItem))
+                        : Collections.<PickerItem>emptyList();
+
+        PickerExecutors.runOnUiThread(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        FilePickerDialog.this.applyChildrenChanges(
+                                item, removedItems, addedItems, comparator);
+                    }
+                });
+    }
+
+    /**
+     * Search the files containing a query and display them as they are found. Must be called from
+     * the main thread.
+     *
+     * @param query search query, a regular expression if enclosed in slashes.
+     * @param generation generation of this search.
+     */
+    private void searchContents(@NonNull String query, final int generation) {
+        if (this.mSearchGeneration.get() != generation) return;
+
+        this.showSearchResults(new ArrayList<PickerItem>());
+
+        final ArrayList<PickerItem> pendingItems = new ArrayList<>();
+        final AtomicInteger matchCount = new AtomicInteger();
+
+        // The matches are displayed by batches, a batch is posted with the first pending item.
+
+        final Runnable flushTask =
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        ArrayList<PickerItem> items;
+
+                        synchronized (pendingItems) {
+                            items = new ArrayList<>(pendingItems);
+
+                            pendingItems.clear();
+                        }
+
+                        if (FilePickerDialog.this.mSearchGeneration.get() == generation)
+                            FilePickerDialog.this.appendSearchResults(items);
+                    }
+                };
+
+        new ContentSearcher(
+                        this.mRootDir,
+                        this.mFilter,
+                        query,
+                        this.mSearchGeneration,
+                        generation,
+                        new ContentSearcher.Listener() {
+                            @Override
+                            public void onMatch(
+                                    @NonNull File file, int lineNumber, @NonNull String snippet) {
+                                matchCount.incrementAndGet();
+
+                                PickerItem item =
+                                        FilePickerDialog.this.createItem(
+                                                new FileItem(file, null),
+                                                lineNumber + ": " + snippet);
+
+                                synchronized (pendingItems) {
+                                    pendingItems.add(item);
+
+                                    if (pendingItems.size() == 1)
+                                        PickerExecutors.postOnUiThread(flushTask);
+                                }
+                            }
+
+                            @Override
+                            public void onFinished() {
+                                if (matchCount.get() == 0)
+                                    FilePickerDialog.this.showMessage(
+                                            R.string.file_picker_dialog_no_match);
+                            }
+                        })
+                .start();
+    }
+
+    /**
+     * Display the newest or the largest files under the root directory. The files are searched
+     * in background by a single walk for both views, and the view is updated as the walk
+     * progresses. Must be called from the main thread.
+     *
+     * @param menuId identifier of the menu item of the view.
+     */
+    private void showTopFiles(int menuId) {
+        this.mTopFilesView = menuId;
+        this.mTopFilesGeneration = this.mSearchGeneration.incrementAndGet();
+
+        if (this.mTopFilesTask == null) {
+            final Future<?>[] task = new Future<?>[1];
+
+            TopFilesWalker walker =
+                    new TopFilesWalker(
+                            this.mRootDir,
+                            this.mFilter,
+                            this.mTopFilesCount,
+                            new TopFilesWalker.Listener() {
+                                @Override
+                                public void onUpdate(
+                                        @NonNull TopFilesWalker.Candidate[] newest,
+                                        @NonNull TopFilesWalker.Candidate[] largest,
+                                        final boolean finished) {
+                                    final List<PickerItem> newestFiles =
+                                            FilePickerDialog.this.createItems(newest);
+                                    final List<PickerItem> largestFiles =
+                                            FilePickerDialog.this.createItems(largest);
+
+                                    PickerExecutors.runOnUiThread(
+                                            new Runnable() {
+                                                @Override
+                                                public void run() {
+                                                    FilePickerDialog.this.onTopFilesUpdate(
+                                                            task[0],
+                                                            newestFiles,
+                                                            largestFiles,
+                                                            finished);
+                                                }
+                                            });
+                                }
+                            });
+
+            this.mTopFilesFinished = false;
+
+            this.mTopFilesTask = task[0] = PickerExecutors.io().submit(walker);
+        }
+
+        this.displayTopFiles();
+    }
+
+    /**
+     * Called on the main thread with the files found so far by the walk.
+     *
+     * @param task the walk.
+     * @param newestFiles the most recently modified files, the newest first.
+     * @param largestFiles the largest files, the largest first.
+     * @param finished indicates if the walk is finished.
+     */
+    private void onTopFilesUpdate(
+            @Nullable Future<?> task,
+            @NonNull List<PickerItem> newestFiles,
+            @NonNull List<PickerItem> largestFiles,
+            boolean finished) {
+        if (task == null || task != this.mTopFilesTask) return;
+
+        this.mNewestFiles = newestFiles;
+        this.mLargestFiles = largestFiles;
+        this.mTopFilesFinished = finished;
+
+        this.displayTopFiles();
+    }
+
+    /** Display the current view of the newest or the largest files, if it is still displayed. */
+    private void displayTopFiles() {
+        if (this.mSearchGeneration.get() != this.mTopFilesGeneration) return;
+
+        boolean newest = (this.mTopFilesView == MENU_ID_NEWEST_FILES);
+
+        List<PickerItem> items = (newest) ? this.mNewestFiles : this.mLargestFiles;
+
+        this.showResults(items);
+
+        if (this.mTopFilesFinished && items.isEmpty())
+            this.showMessage(R.string.file_picker_dialog_no_match);
+    }
+
+    /** Cancel the walk searching the newest and the largest files, and forget its results. */
+    private void cancelTopFiles() {
+        if (this.mTopFilesTask != null) this.mTopFilesTask.cancel(true);
+
+        this.mTopFilesTask = null;
+        this.mNewestFiles = new ArrayList<>();
+        this.mLargestFiles = new ArrayList<>();
+        this.mTopFilesFinished = false;
+    }
+
+    /**
+     * Create the picker items of ranked files, with their directory as sub-title.
+     *
+     * @param candidates ranked files.
+     * @return a list of picker items.
+     */
+    private List<PickerItem> createItems(@NonNull TopFilesWalker.Candidate[] candidates) {
+        ArrayList<PickerItem> items = new ArrayList<>(candidates.length);
+
+        for (TopFilesWalker.Candidate candidate : candidates) {
+            File parent = candidate.file.getParentFile();
+
+            String subTitle = (parent != null) ? this.getRelativePath(parent) : null;
+
+            // The attributes read by the walk are used, the file is not read again.
+
+            ListingSnapshotStore.Entry entry =
+                    new ListingSnapshotStore.Entry(
+                            candidate.file.getName(),
+                            false,
+                            candidate.length,
+                            candidate.lastModified);
+
+            items.add(this.createItem(new FileItem(candidate.file, null, entry), subTitle));
+        }
+
+        return items;
+    }
+
+    /**
+     * Search the duplicate files under the root directory, and display them by group as they are
+     * found. Must be called from the main thread.
+     */
+    private void showDuplicates() {
+        final int generation = this.mSearchGeneration.incrementAndGet();
+
+        this.showResults(new ArrayList<PickerItem>());
 
-                if (fileItem.object.isDirectory() && fileItem.object.canRead()) {
-                    String rootPath = this.mRootDir.getAbsolutePath();
-                    String otherPath = fileItem.object.getAbsolutePath();
+        this.showMessage(R.string.file_picker_dialog_duplicates_searching);
 
-                    if (otherPath.equals(rootPath) || otherPath.startsWith(rootPath)) {
-                        File[] files = fileItem.object.listFiles(this.mFilter);
+        final ArrayList<PickerItem> pendingItems = new ArrayList<>();
+        final AtomicInteger groupCount = new AtomicInteger();
 
-                        ArrayList<FileItem> sortedObjects = new ArrayList<>();
+        // The groups are displayed by batches, a batch is posted with the first pending item.
 
-                        if (files != null) {
-                            for (File file : files) {
-                                if (!file.isHidden() && file.canRead())
-                                    sortedObjects.add(new FileItem(file, fileItem));
-                            }
+        final Runnable flushTask =
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        ArrayList<PickerItem> items;
 
-                            Collections.sort(sortedObjects, this.mSorter);
+                        synchronized (pendingItems) {
+                            items = new ArrayList<>(pendingItems);
 
-                            for (FileItem newObject : sortedObjects) {
-                                itemList.add(this.createItem(newObject));
-                            }
+                            pendingItems.clear();
                         }
+
+                        if (FilePickerDialog.this.mSearchGeneration.get() == generation)
+                            FilePickerDialog.this.appendResults(items);
                     }
-                } else {
-                    Toast.makeText(
-                                    this.mContext,
-                                    R.string.file_picker_dialog_error_dir_access,
-                                    Toast.LENGTH_SHORT)
-                            .show();
-                }
-            }
-        }
+                };
+
+        final String label = this.mContext.getString(R.string.file_picker_dialog_duplicate_group);
+
+        PickerExecutors.io()
+                .execute(
+                        new DuplicateFinder(
+                                this.mRootDir,
+                                this.mFilter,
+                                this.mSearchGeneration,
+                                generation,
+                                new DuplicateFinder.Listener() {
+                                    @Override
+                                    public void onGroup(@NonNull List<File> files, long length) {
+                                        int group = groupCount.incrementAndGet();
+
+                                        String size = FilePickerDialog.this.formatSize(length);
+
+                                        ArrayList<PickerItem> items = new ArrayList<>();
+
+                                        for (File file : files) {
+                                            File parent = file.getParentFile();
+
+                                            String path =
+                                                    (parent != null)
+                                                            ? FilePickerDialog.this
+                                                                    .getRelativePath(parent)
+                                                            : "";
+
+                                            items.add(
+                                                    FilePickerDialog.this.createItem(
+                                                            new FileItem(file, null),
+                                                            String.format(
+                                                                    DEF_LOCAL,
+                                                                    label,
+                                                                    group,
+                                                                    size,
+                                                                    path)));
+                                        }
+
+                                        synchronized (pendingItems) {
+                                            pendingItems.addAll(items);
+
+                                            if (pendingItems.size() == items.size())
+                                                PickerExecutors.postOnUiThread(flushTask);
+                                        }
+                                    }
 
-        return itemList;
+                                    @Override
+                                    public void onFinished() {
+                                        if (groupCount.get() == 0
+                                                && FilePickerDialog.this.mSearchGeneration.get()
+                                                        == generation)
+                                            FilePickerDialog.this.showMessage(
+                                                    R.string.file_picker_dialog_no_duplicates);
+                                    }
+                                }));
     }
 
     /**
-     * Obtains an item used to initialize the selector.
+     * Get the most recently used directories of this picker configuration.
      *
-     * @return a ItemBase object to used to initialize the selector.
+     * @return a list of directories, the last used first.
      */
-    @Override
-    protected ItemBase getRootItem() {
-        if (this.checkStorageAccessPermissions()) {
-            if (this.mRootDir.isDirectory() && this.mOffsetDir.isDirectory()) {
-                String rootPath = this.mRootDir.getAbsolutePath();
-                String offsetPath = this.mOffsetDir.getAbsolutePath();
+    private List<File> getRecentDirs() {
+        if (this.mRecentDirs == null)
+            this.mRecentDirs = RecentDirectories.load(this.mContext, this.mConfigKey);
 
-                if (offsetPath.equals(rootPath) || offsetPath.startsWith(rootPath)) {
-                    if (this.mOffsetDir.canRead())
-                        return this.createItem(new FileItem(this.mOffsetDir, null));
-                }
-            }
+        return this.mRecentDirs;
+    }
 
-            if (this.mRootDir.isDirectory() && this.mRootDir.canRead())
-                return this.createItem(new FileItem(this.mRootDir, null));
-            if (this.mErrorDir.isDirectory() && this.mErrorDir.canRead())
-                return this.createItem(new FileItem(this.mErrorDir, null));
-        }
+    /** Remember the current directory as the most recently used one. */
+    private void rememberCurrentDirectory() {
+        if (this.mRecentDirsCount <= 0) return;
 
-        Toast.makeText(
-                        this.mContext,
-                        R.string.file_picker_dialog_error_dir_access,
-                        Toast.LENGTH_SHORT)
-                .show();
+        ItemBase currentItem = this.getCurrentItem();
 
-        return null;
+        if (currentItem != null && currentItem.getTag() instanceof FileItem) {
+            File directory = ((FileItem) currentItem.getTag()).object;
+
+            RecentDirectories.push(
+                    this.mContext, this.mConfigKey, directory, this.mRecentDirsCount);
+
+            this.mRecentDirs = null;
+        }
     }
 
     /**
-     * Obtains an item to display dialog header.
-     *
-     * @param item item of the list to display.
-     * @return a ItemBase object to define title, sub-title and icon of dialog header.
+     * Fill the listing cache with the content of the recent directories, except the last used one
+     * which is listed when the dialog opens.
      */
-    @Override
-    protected ItemBase getTitleItem(ItemBase item) {
-        if (item != null) {
-            Object itemTag = item.getTag();
+    private void warmRecentDirectories() {
+        if (this.mRecentDirsCount <= 1 || this.mRecentDirsWarmed) return;
 
-            if (itemTag instanceof FileItem) {
-                FileItem fileItem = (FileItem) itemTag;
+        this.mRecentDirsWarmed = true;
 
-                return new ItemBase(
-                        fileItem.object.getName(),
-                        fileItem.object.getAbsolutePath(),
-                        R.drawable.ic_file_picker_header);
-            }
-        }
+        final List<File> recentDirs = new ArrayList<>(this.getRecentDirs());
 
-        return null;
+        if (recentDirs.size() <= 1) return;
+
+        PickerExecutors.io()
+                .execute(
+                        new Runnable() {
+                            @Override
+                            public void run() {
+                                for (int index = 1; index < recentDirs.size(); index++) {
+                                    File directory = recentDirs.get(index);
+
+                                    try {
+                                        if (VolumeGovernor.isSlow(directory)) continue;
+
+                                        if (directory.isDirectory() && directory.canRead())
+                                            FilePickerDialog.this.listDirectory(directory);
+                                    } catch (Exception Err) {
+                                        Log.e("FilePicker.warm", "Exception: " + Err.toString());
+                                    }
+                                }
+                            }
+                        });
     }
 
     /**
-     * Obtains a toolbar view which will be placed between the title bar and the list.
+     * Create the item of a directory under the root directory, with the items of its parent
+     * directories up to the root directory, so that the back navigation goes through them. The
+     * attributes of the parent directories are not read.
      *
-     * @return a view object.
+     * @param directory a directory under the root directory.
+     * @return a FileItem object.
      */
-    @SuppressLint("InflateParams")
-    @Override
-    protected View getToolBarView() {
-        if (!this.mToolbarIsVisible) return null;
+    private @NonNull FileItem createPathItem(@NonNull File directory) {
+        String rootPath = this.mRootDir.getAbsolutePath();
 
-        if (this.mToolbarView == null) {
-            LayoutInflater inflater = LayoutInflater.from(this.mContext);
+        ArrayList<File> parents = new ArrayList<>();
 
-            return this.getToolbarView(inflater.inflate(R.layout.file_picker_dialog_toolbar, null));
+        File parent = directory.getParentFile();
+
+        if (!directory.getAbsolutePath().equals(rootPath)) {
+            while (parent != null && isInside(parent.getAbsolutePath(), rootPath)) {
+                parents.add(parent);
+
+                if (parent.getAbsolutePath().equals(rootPath)) break;
+
+                parent = parent.getParentFile();
+            }
         }
 
-        return this.mToolbarView;
+        FileItem parentItem = null;
+
+        for (int index = parents.size() - 1; index >= 0; index--) {
+            File file = parents.get(index);
+
+            parentItem =
+                    new FileItem(
+                            file,
+                            parentItem,
+                            new ListingSnapshotStore.Entry(file.getName(), true, 0, 0));
+        }
+
+        return new FileItem(directory, parentItem);
     }
 
     /**
-     * Indicates if the picker is in multiple selection mode.
+     * Check if a path is a directory or a file under a directory.
      *
-     * @return a boolean value who indicates if the picker is in multiple selection mode.
+     * @param path a path.
+     * @param directoryPath path of the directory.
+     * @return true if the path is the directory or is under it.
      */
-    @Override
-    protected boolean isMultiSelectionMode() {
-        return (this.mOnMultiChoiceValidationListener != null);
+    private static boolean isInside(@NonNull String path, @NonNull String directoryPath) {
+        if (path.equals(directoryPath)) return true;
+
+        return path.startsWith(
+                (directoryPath.endsWith(DIRECTORY_SEPERATOR))
+                        ? directoryPath
+                        : directoryPath + DIRECTORY_SEPERATOR);
     }
 
     /**
-     * Called for validation of the selection.
+     * Get the path of a file relative to the root directory.
      *
-     * @param items collection of picked items.
+     * @param file a file.
+     * @return a string contains the relative path of the file.
      */
-    @Override
-    protected void onValidateSelection(Collection<PickerItem> items) {
-        if (items.size() > 0) {
-            ArrayList<String> result = new ArrayList<>();
+    private String getRelativePath(@NonNull File file) {
+        String rootPath = this.mRootDir.getAbsolutePath();
+        String filePath = file.getAbsolutePath();
 
-            for (PickerItem item : items) {
-                Object itemTag = item.getTag();
+        if (filePath.equals(rootPath) || !filePath.startsWith(rootPath)) return filePath;
 
-                if (itemTag instanceof FileItem)
-                    result.add(((FileItem) itemTag).object.getAbsolutePath());
-            }
+        String relativePath = filePath.substring(rootPath.length());
 
-            if (this.mOnSingleChoiceValidationListener != null)
-                this.mOnSingleChoiceValidationListener.onClick(this, result.get(0));
+        if (relativePath.startsWith(DIRECTORY_SEPERATOR)) relativePath = relativePath.substring(1);
 
-            if (this.mOnMultiChoiceValidationListener != null)
-                this.mOnMultiChoiceValidationListener.onClick(this, result.toArray(new String[0]));
-        }
+        return relativePath;
     }
 
-    /* ---- Privates Methods ---- */
-
     /**
      * Create picker item corresponding to the specified file.
      *
@@ -812,11 +3043,22 @@ public class FilePickerDialog extends ListPickerDialogBase implements PickerInte
      * @return a picker item corresponding to the specified file.
      */
     private PickerItem createItem(FileItem fileItem) {
+        return this.createItem(fileItem, null);
+    }
+
+    /**
+     * Create picker item corresponding to the specified file.
+     *
+     * @param fileItem fileItem.
+     * @param subTitle sub-title of the item, or null for the default one.
+     * @return a picker item corresponding to the specified file.
+     */
+    private PickerItem createItem(FileItem fileItem, @Nullable String subTitle) {
         String strDateFormat = this.mContext.getString(R.string.file_picker_dialog_date_format);
 
         SimpleDateFormat dateFormat = new SimpleDateFormat(strDateFormat, Locale.getDefault());
 
-        String itemDate = dateFormat.format(new Date(fileItem.object.lastModified()));
+        String itemDate = dateFormat.format(new Date(fileItem.lastModified));
 
         // Mode Sélectionnable ?
 
@@ -826,10 +3068,10 @@ public class FilePickerDialog extends ListPickerDialogBase implements PickerInte
 
         if (!this.mShowExtensions) fileName = fileName.replaceFirst("[.][^.]+$", "");
 
-        if (fileItem.object.isDirectory()) {
+        if (fileItem.isDirectory) {
             String Label = this.mContext.getString(R.string.file_picker_dialog_last_edit_directory);
 
-            String subTitle = String.format(Locale.getDefault(), Label, itemDate);
+            if (subTitle == null) subTitle = String.format(Locale.getDefault(), Label, itemDate);
 
             switch (this.mSelectionMode) {
                 case FilePickerDialog.DIRECTORIES:
@@ -853,9 +3095,9 @@ public class FilePickerDialog extends ListPickerDialogBase implements PickerInte
         } else {
             String Label = this.mContext.getString(R.string.file_picker_dialog_last_edit_file);
 
-            String fileSize = this.formatSize(fileItem.object.length());
+            String fileSize = this.formatSize(fileItem.length);
 
-            String subTitle = String.format(DEF_LOCAL, Label, fileSize, itemDate);
+            if (subTitle == null) subTitle = String.format(DEF_LOCAL, Label, fileSize, itemDate);
 
             return new PickerItem(
                     fileName,
@@ -874,22 +3116,27 @@ public class FilePickerDialog extends ListPickerDialogBase implements PickerInte
      * @return A string representing the size of the file.
      */
     private String formatSize(long bytes) {
-        if (mSizeDecimalFormat == null) {
-            mSizeDecimalFormat = new DecimalFormat("#.##");
-
-            mSizeDecimalFormat.setDecimalFormatSymbols(DecimalFormatSymbols.getInstance(Locale.US));
-        }
-
         String[] units =
                 super.getContext()
                         .getResources()
                         .getStringArray(R.array.file_picker_dialog_size_units);
 
-        for (int Index = 0; Index < units.length; Index++) {
-            float size = (float) bytes / (float) Math.pow(1024, Index);
+        // Items can be created in background, the shared format has to be protected.
+
+        synchronized (FilePickerDialog.class) {
+            if (mSizeDecimalFormat == null) {
+                mSizeDecimalFormat = new DecimalFormat("#.##");
 
-            if (size < 1024)
-                return String.format("%s %s", mSizeDecimalFormat.format(size), units[Index]);
+                mSizeDecimalFormat.setDecimalFormatSymbols(
+                        DecimalFormatSymbols.getInstance(Locale.US));
+            }
+
+            for (int Index = 0; Index < units.length; Index++) {
+                float size = (float) bytes / (float) Math.pow(1024, Index);
+
+                if (size < 1024)
+                    return String.format("%s %s", mSizeDecimalFormat.format(size), units[Index]);
+            }
         }
 
         return bytes + " B";
@@ -907,6 +3154,7 @@ public class FilePickerDialog extends ListPickerDialogBase implements PickerInte
         private File mRootDir = new File(FilePickerDialog.DEFAULT_DIR);
         private File mErrorDir = new File(FilePickerDialog.DEFAULT_DIR);
         private File mOffsetDir = new File(FilePickerDialog.DEFAULT_DIR);
+        private boolean mOffsetDirDefined = false;
         private Pattern[] mFilesPatterns = new Pattern[0];
         private Pattern[] mPathsPatterns = new Pattern[0];
         private int mSortBy = FilePickerDialog.SORT_BY_NAME;
@@ -915,6 +3163,24 @@ public class FilePickerDialog extends ListPickerDialogBase implements PickerInte
         private boolean mToolbarIsVisible = true;
         private OnSingleChoiceValidationListener<String> mOnSingleChoiceValidationListener = null;
         private OnMultiChoiceValidationListener<String> mOnMultiChoiceValidationListener = null;
+        private OnSingleChoiceValidationListener<PickedFile> mOnSingleChoicePickedFileListener =
+                null;
+        private OnMultiChoiceValidationListener<PickedFile> mOnMultiChoicePickedFileListener =
+                null;
+        private OnNavigationStatsListener mOnNavigationStatsListener = null;
+        private int mRecentDirsCount = 0;
+        private FilePickerFilter mFilesFilter = null;
+        private boolean mQuickOpenEnabled = false;
+        private boolean mContentSearchEnabled = false;
+        private boolean mPreviewEnabled = false;
+        private long mListingTimeout = VolumeGovernor.DEFAULT_TIMEOUT;
+        private boolean mSnapshotsEnabled = false;
+        private int mTopFilesCount = 0;
+        private boolean mPruneEmptyDirs = false;
+        private File[] mMergedRoots = new File[0];
+        private boolean mFlatMode = false;
+        private boolean mDuplicatesEnabled = false;
+        private FilePickerDialog mPrefetchedDialog = null;
 
         /**
          * Creates a builder for a file picker dialog that uses the default dialog dialog theme.
@@ -1215,6 +3481,7 @@ public class FilePickerDialog extends ListPickerDialogBase implements PickerInte
          */
         public Builder setOffsetDir(@NonNull CharSequence offsetDir) {
             this.mOffsetDir = new File(offsetDir.toString());
+            this.mOffsetDirDefined = true;
             return this;
         }
 
@@ -1230,6 +3497,7 @@ public class FilePickerDialog extends ListPickerDialogBase implements PickerInte
          */
         public Builder setOffsetDir(@NonNull File offsetDir) {
             this.mOffsetDir = offsetDir;
+            this.mOffsetDirDefined = true;
             return this;
         }
 
@@ -1275,6 +3543,7 @@ public class FilePickerDialog extends ListPickerDialogBase implements PickerInte
             this.mRootDir = new File(rootDir.toString());
             this.mErrorDir = new File(errorDir.toString());
             this.mOffsetDir = new File(offsetDir.toString());
+            this.mOffsetDirDefined = true;
 
             return this;
         }
@@ -1293,6 +3562,7 @@ public class FilePickerDialog extends ListPickerDialogBase implements PickerInte
             this.mRootDir = rootDir;
             this.mErrorDir = errorDir;
             this.mOffsetDir = offsetDir;
+            this.mOffsetDirDefined = true;
 
             return this;
         }
@@ -1353,6 +3623,19 @@ public class FilePickerDialog extends ListPickerDialogBase implements PickerInte
             return this;
         }
 
+        /**
+         * Sets an additional filter of the files, combining globs, extensions, mime types, size
+         * and modification date ranges. Directories are not filtered.
+         *
+         * <p>Ex. FilePickerFilter.extensions("pdf").and(FilePickerFilter.sizeBetween(0, 1 << 20))
+         *
+         * @return this builder object to allow for chaining of calls to set methods
+         */
+        public Builder setFilesFilter(@Nullable FilePickerFilter filesFilter) {
+            this.mFilesFilter = filesFilter;
+            return this;
+        }
+
         /**
          * Sort by defines the sort order of the items. Default value is SORT_BY_NAME.
          *
@@ -1397,6 +3680,163 @@ public class FilePickerDialog extends ListPickerDialogBase implements PickerInte
             return this;
         }
 
+        /**
+         * Sets the number of recently used directories remembered for this picker configuration
+         * (root directory, show mode and patterns). When greater than 0, the dialog opens in the
+         * last used directory, unless an offset directory other than the root directory is set,
+         * the toolbar menu offers the recent directories and their content is loaded in
+         * background when the dialog opens. Default value is 0 (disabled).
+         *
+         * @return this builder object to allow for chaining of calls to set methods
+         */
+        public Builder setRecentDirsCount(int recentDirsCount) {
+            this.mRecentDirsCount = Math.max(0, recentDirsCount);
+            return this;
+        }
+
+        /**
+         * Show/Hide the quick-open search view. When shown, all the paths under the root directory
+         * are indexed in background, and typing a few characters displays the best matching
+         * paths, like fzf does. Default value is false.
+         *
+         * @return this builder object to allow for chaining of calls to set methods
+         */
+        public Builder setQuickOpenEnabled(boolean quickOpenEnabled) {
+            this.mQuickOpenEnabled = quickOpenEnabled;
+            return this;
+        }
+
+        /**
+         * Show/Hide the content search. When shown, the search view displays the files under the
+         * root directory containing the query, with the line of the first match. A query enclosed
+         * in slashes is a regular expression. If the quick-open search is shown too, the toolbar
+         * menu switches between both. Default value is false.
+         *
+         * @return this builder object to allow for chaining of calls to set methods
+         */
+        public Builder setContentSearchEnabled(boolean contentSearchEnabled) {
+            this.mContentSearchEnabled = contentSearchEnabled;
+            return this;
+        }
+
+        /**
+         * Enable/Disable the preview of the files. When enabled, a long click on a file shows its
+         * first lines under the list, a click on the preview hides it. Default value is false.
+         *
+         * @return this builder object to allow for chaining of calls to set methods
+         */
+        public Builder setPreviewEnabled(boolean previewEnabled) {
+            this.mPreviewEnabled = previewEnabled;
+            return this;
+        }
+
+        /**
+         * Sets the maximum duration of the listing of a directory, in milliseconds. On slow
+         * volumes (network, FUSE...), the entries read after this duration are displayed, with an
+         * item to list the directory again. Default value is 3000.
+         *
+         * @return this builder object to allow for chaining of calls to set methods
+         */
+        public Builder setListingTimeout(long listingTimeout) {
+            this.mListingTimeout = Math.max(0, listingTimeout);
+            return this;
+        }
+
+        /**
+         * Enable/Disable the listing snapshots. When enabled, the listings displayed are saved in
+         * the cache directory of the application, and displayed at once on the next opening while
+         * the directory is listed again in background, only the changes are then applied to the
+         * list. Default value is false.
+         *
+         * @return this builder object to allow for chaining of calls to set methods
+         */
+        public Builder setSnapshotsEnabled(boolean snapshotsEnabled) {
+            this.mSnapshotsEnabled = snapshotsEnabled;
+            return this;
+        }
+
+        /**
+         * Sets the number of files of the "newest files" and "largest files" views. When greater
+         * than 0, the toolbar menu offers both views, which list the most recently modified and
+         * the largest files under the root directory. Default value is 0 (disabled).
+         *
+         * @return this builder object to allow for chaining of calls to set methods
+         */
+        public Builder setTopFilesCount(int topFilesCount) {
+            this.mTopFilesCount = Math.max(0, topFilesCount);
+            return this;
+        }
+
+        /**
+         * Show/Hide the directories which contain no matching file, at any depth. Only used when
+         * the show mode is {@link FilePickerDialog#FILES}. The directories are checked in
+         * background and displayed as pending until then, the results are kept for all the
+         * pickers. Default value is false.
+         *
+         * @return this builder object to allow for chaining of calls to set methods
+         */
+        public Builder setPruneEmptyDirs(boolean pruneEmptyDirs) {
+            this.mPruneEmptyDirs = pruneEmptyDirs;
+            return this;
+        }
+
+        /**
+         * Add a directory to the merged directories. When at least one is added, the dialog opens
+         * on a virtual directory displaying the content of all the merged directories in a single
+         * sorted list, each item shows its directory.
+         *
+         * <p>Ex. /sdcard/Download
+         *
+         * @return this builder object to allow for chaining of calls to set methods
+         */
+        public Builder addMergedRoot(@NonNull CharSequence mergedRoot) {
+            return this.addMergedRoot(new File(mergedRoot.toString()));
+        }
+
+        /**
+         * Add a directory to the merged directories. When at least one is added, the dialog opens
+         * on a virtual directory displaying the content of all the merged directories in a single
+         * sorted list, each item shows its directory.
+         *
+         * <p>Ex. /sdcard/Download
+         *
+         * @return this builder object to allow for chaining of calls to set methods
+         */
+        public Builder addMergedRoot(@NonNull File mergedRoot) {
+            ArrayList<File> mergedRoots = new ArrayList<>(Arrays.asList(this.mMergedRoots));
+
+            mergedRoots.add(mergedRoot);
+
+            this.mMergedRoots = mergedRoots.toArray(new File[0]);
+
+            return this;
+        }
+
+        /**
+         * Enable/Disable the flat view. When enabled, the dialog displays all the matching files
+         * under the directory in a single sorted list, without the directories, each item shows
+         * its path. The files are gathered in background and the list is updated meanwhile, the
+         * items are only created when displayed. Default value is false.
+         *
+         * @return this builder object to allow for chaining of calls to set methods
+         */
+        public Builder setFlatMode(boolean flatMode) {
+            this.mFlatMode = flatMode;
+            return this;
+        }
+
+        /**
+         * Enable/Disable the duplicates view. When enabled, the toolbar menu offers a view of the
+         * identical files under the root directory, grouped, so that the copies can be picked in
+         * multiple selection mode. Default value is false.
+         *
+         * @return this builder object to allow for chaining of calls to set methods
+         */
+        public Builder setDuplicatesEnabled(boolean duplicatesEnabled) {
+            this.mDuplicatesEnabled = duplicatesEnabled;
+            return this;
+        }
+
         /**
          * Sets the callback that will be called if the dialog is validated (single selection mode).
          *
@@ -1422,6 +3862,67 @@ public class FilePickerDialog extends ListPickerDialogBase implements PickerInte
             return this;
         }
 
+        /**
+         * Sets the callback that will be called with the picked file if the dialog is validated
+         * (single selection mode). The file is read ahead as soon as it is picked, its content is
+         * available as a memory-mapped buffer.
+         *
+         * @return this builder object to allow for chaining of calls to set methods
+         */
+        public Builder setOnSingleChoicePickedFileListener(
+                OnSingleChoiceValidationListener<PickedFile> listener) {
+            this.mOnSingleChoicePickedFileListener = listener;
+
+            return this;
+        }
+
+        /**
+         * Sets the callback that will be called with the picked files if the dialog is validated
+         * (multiple selection mode). The files are read ahead as soon as they are picked, their
+         * contents are available as memory-mapped buffers.
+         *
+         * @return this builder object to allow for chaining of calls to set methods
+         */
+        public Builder setOnMultiChoicePickedFileListener(
+                OnMultiChoiceValidationListener<PickedFile> listener) {
+            this.mOnMultiChoicePickedFileListener = listener;
+
+            return this;
+        }
+
+        /**
+         * Sets the callback that will be called with the statistics of the file system operations
+         * of each navigation: listings, reads of attributes, permission checks and reads, each one
+         * counted and timed. The operations are only recorded when this callback is set.
+         *
+         * @return this builder object to allow for chaining of calls to set methods
+         */
+        public Builder setOnNavigationStatsListener(OnNavigationStatsListener listener) {
+            this.mOnNavigationStatsListener = listener;
+
+            return this;
+        }
+
+        /**
+         * Creates the {@link FilePickerDialog} with the arguments supplied to this builder and
+         * starts loading the content of its first directory in background, so that the next call
+         * to show() displays an already populated dialog. Must be called once the builder is
+         * configured, the changes made after this call are not applied to the prefetched dialog.
+         *
+         * <p>Ex. call it on screen entry, and show() when the user asks for a file.
+         *
+         * @return this builder object to allow for chaining of calls to set methods
+         */
+        public Builder prefetch() {
+            if (this.mPrefetchedDialog == null) {
+                this.mPrefetchedDialog = new FilePickerDialog(this);
+
+                this.mPrefetchedDialog.prefetch();
+            }
+
+            return this;
+        }
+
         /**
          * Creates an {@link FilePickerDialog} with the arguments supplied to this builder and
          * immediately displays the dialog.
@@ -1431,7 +3932,12 @@ public class FilePickerDialog extends ListPickerDialogBase implements PickerInte
          * @return a FilePickerDialog dialog.
          */
         public FilePickerDialog show() {
-            final FilePickerDialog dialog = new FilePickerDialog(this);
+            final FilePickerDialog dialog =
+                    (this.mPrefetchedDialog != null)
+                            ? this.mPrefetchedDialog
+                            : new FilePickerDialog(this);
+
+            this.mPrefetchedDialog = null;
 
             dialog.show();
 
@@ -0,0 +1,890 @@
+/*
+ * Copyright (C) 2020 Nicolas Dagnas
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.ndagnas.pickers;
+
+import android.text.TextUtils;
+import android.webkit.MimeTypeMap;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Defines a composable filter of the files displayed by a file picker.
+ *
+ * <p>Ex. FilePickerFilter.extensions("pdf", "odt").and(FilePickerFilter.sizeBetween(0, 1 << 20))
+ *
+ * <p>Before use, a filter is compiled into a single predicate whose clauses only using the name of
+ * the files (globs, extensions, mime types) are evaluated before the clauses reading the file
+ * attributes (size, modification date). Most of the rejected files then cost no system call.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public abstract class FilePickerFilter {
+    /** Result of a clause evaluated on the name only: the file is rejected. */
+    static final int REJECTED = 0;
+
+    /** Result of a clause evaluated on the name only: the file is accepted. */
+    static final int ACCEPTED = 1;
+
+    /** Result of a clause evaluated on the name only: the attributes of the file are needed. */
+    static final int UNKNOWN = 2;
+
+    /** Cost of a clause which only uses the name of the file. */
+    static final int COST_NAME = 0;
+
+    /** Cost of a clause which reads the attributes of the file. */
+    static final int COST_ATTRIBUTES = 1;
+
+    /** Defines a file being filtered, whose attributes are read once and only when needed. */
+    static final class Entry {
+        private final File mFile;
+        private final String mName;
+        private BasicFileAttributes mAttributes = null;
+        private boolean mAttributesRead = false;
+        private int mCanRead = UNKNOWN;
+
+        /**
+         * Object initialisation.
+         *
+         * @param file filtered file.
+         */
+        Entry(@NonNull File file) {
+            this.mFile = file;
+            this.mName = file.getName();
+        }
+
+        /**
+         * Get the filtered file.
+         *
+         * @return a file.
+         */
+        @NonNull File getFile() {
+            return this.mFile;
+        }
+
+        /**
+         * Get the name of the file, without system call.
+         *
+         * @return a string contains the name of the file.
+         */
+        @NonNull String getName() {
+            return this.mName;
+        }
+
+        /**
+         * Get the attributes of the file, read with a single system call.
+         *
+         * @return the attributes of the file, or null if they cannot be read.
+         */
+        @Nullable BasicFileAttributes getAttributes() {
+            if (!this.mAttributesRead) {
+                this.mAttributesRead = true;
+
+                long start = IoStats.start();
+
+                try {
+                    this.mAttributes =
+                            Files.readAttributes(this.mFile.toPath(), BasicFileAttributes.class);
+                } catch (Exception Err) {
+                    this.mAttributes = null;
+                }
+
+                IoStats.record(IoStats.STAT, this.mFile, start);
+            }
+
+            return this.mAttributes;
+        }
+
+        /**
+         * Indicates if the file is a directory.
+         *
+         * @return a boolean value who indicates if the file is a directory.
+         */
+        boolean isDirectory() {
+            BasicFileAttributes attributes = this.getAttributes();
+
+            return (attributes != null && attributes.isDirectory());
+        }
+
+        /**
+         * Indicates if the file is a regular file.
+         *
+         * @return a boolean value who indicates if the file is a regular file.
+         */
+        boolean isFile() {
+            BasicFileAttributes attributes = this.getAttributes();
+
+            return (attributes != null && attributes.isRegularFile());
+        }
+
+        /**
+         * Get the size of the file.
+         *
+         * @return the size of the file in bytes, or 0 if unknown.
+         */
+        long length() {
+            BasicFileAttributes attributes = this.getAttributes();
+
+            return (attributes != null) ? attributes.size() : 0;
+        }
+
+        /**
+         * Get the modification date of the file.
+         *
+         * @return the modification date of the file in milliseconds, or 0 if unknown.
+         */
+        long lastModified() {
+            BasicFileAttributes attributes = this.getAttributes();
+
+            return (attributes != null) ? attributes.lastModifiedTime().toMillis() : 0;
+        }
+
+        /**
+         * Indicates if the file can be read by the application.
+         *
+         * @return a boolean value who indicates if the file can be read.
+         */
+        boolean canRead() {
+            if (this.mCanRead == UNKNOWN) {
+                long start = IoStats.start();
+
+                this.mCanRead = this.mFile.canRead() ? ACCEPTED : REJECTED;
+
+                IoStats.record(IoStats.ACCESS, this.mFile, start);
+            }
+
+            return (this.mCanRead == ACCEPTED);
+        }
+
+        /**
+         * Get the lower case extension of the file name.
+         *
+         * @return a string contains the extension, or an empty string.
+         */
+        @NonNull String getExtension() {
+            int index = this.mName.lastIndexOf('.');
+
+            return (index > 0 && index < this.mName.length() - 1)
+                    ? this.mName.substring(index + 1).toLowerCase(Locale.US)
+                    : "";
+        }
+    }
+
+    /** Object initialisation, only the filters defined in this class are supported. */
+    FilePickerFilter() {}
+
+    /* ---- Factories ---- */
+
+    /**
+     * Creates a filter accepting the files whose name matches one of the globs. Supports '*', '?',
+     * '[...]' and '{a,b}', the comparison ignores case.
+     *
+     * <p>Ex. "*.pdf", "report-??.{doc,docx}"
+     *
+     * @param globs globs matched against the file name.
+     * @return a filter object.
+     */
+    public static FilePickerFilter glob(@NonNull String... globs) {
+        return new GlobFilter(globs);
+    }
+
+    /**
+     * Creates a filter accepting the files with one of the extensions, ignoring case.
+     *
+     * <p>Ex. "pdf", "odt"
+     *
+     * @param extensions file extensions, with or without leading dot.
+     * @return a filter object.
+     */
+    public static FilePickerFilter extensions(@NonNull String... extensions) {
+        return new ExtensionsFilter(extensions);
+    }
+
+    /**
+     * Creates a filter accepting the files whose mime type, guessed from the extension, belongs to
+     * one of the families.
+     *
+     * <p>Ex. "image/*", "application/pdf"
+     *
+     * @param mimeTypes mime types or mime type families.
+     * @return a filter object.
+     */
+    public static FilePickerFilter mimeTypes(@NonNull String... mimeTypes) {
+        return new MimeTypesFilter(mimeTypes);
+    }
+
+    /**
+     * Creates a filter accepting the files whose size is in the range.
+     *
+     * @param minBytes minimum size in bytes, inclusive.
+     * @param maxBytes maximum size in bytes, inclusive.
+     * @return a filter object.
+     */
+    public static FilePickerFilter sizeBetween(long minBytes, long maxBytes) {
+        return new SizeFilter(minBytes, maxBytes);
+    }
+
+    /**
+     * Creates a filter accepting the files whose modification date is in the range.
+     *
+     * @param fromMillis minimum modification date in milliseconds, inclusive.
+     * @param toMillis maximum modification date in milliseconds, inclusive.
+     * @return a filter object.
+     */
+    public static FilePickerFilter modifiedBetween(long fromMillis, long toMillis) {
+        return new LastModifiedFilter(fromMillis, toMillis);
+    }
+
+    /**
+     * Creates a filter accepting the files accepted by all filters.
+     *
+     * @param filters filters to combine.
+     * @return a filter object.
+     */
+    public static FilePickerFilter allOf(@NonNull FilePickerFilter... filters) {
+        return new CompositeFilter(true, filters);
+    }
+
+    /**
+     * Creates a filter accepting the files accepted by at least one filter.
+     *
+     * @param filters filters to combine.
+     * @return a filter object.
+     */
+    public static FilePickerFilter anyOf(@NonNull FilePickerFilter... filters) {
+        return new CompositeFilter(false, filters);
+    }
+
+    /**
+     * Creates a filter accepting the files rejected by a filter.
+     *
+     * @param filter filter to invert.
+     * @return a filter object.
+     */
+    public static FilePickerFilter not(@NonNull FilePickerFilter filter) {
+        return new NotFilter(filter);
+    }
+
+    /**
+     * Creates a filter accepting the files accepted by this filter and another one.
+     *
+     * @param other other filter.
+     * @return a filter object.
+     */
+    public FilePickerFilter and(@NonNull FilePickerFilter other) {
+        return allOf(this, other);
+    }
+
+    /**
+     * Creates a filter accepting the files accepted by this filter or another one.
+     *
+     * @param other other filter.
+     * @return a filter object.
+     */
+    public FilePickerFilter or(@NonNull FilePickerFilter other) {
+        return anyOf(this, other);
+    }
+
+    /* ---- Evaluation ---- */
+
+    /**
+     * Get the cost of the evaluation of this filter.
+     *
+     * @return COST_NAME or COST_ATTRIBUTES.
+     */
+    abstract int getCost();
+
+    /**
+     * Evaluate the filter.
+     *
+     * @param entry filtered file.
+     * @return a boolean value who indicates if the file is accepted.
+     */
+    abstract boolean accept(@NonNull Entry entry);
+
+    /**
+     * Evaluate the filter using the name of the file only.
+     *
+     * @param entry filtered file.
+     * @return ACCEPTED, REJECTED or UNKNOWN if the attributes of the file are needed.
+     */
+    int acceptName(@NonNull Entry entry) {
+        if (this.getCost() != COST_NAME) return UNKNOWN;
+
+        return this.accept(entry) ? ACCEPTED : REJECTED;
+    }
+
+    /**
+     * Compile the filter: nested combinations of the same kind are flattened and the clauses of
+     * each combination are ordered by cost.
+     *
+     * @return a compiled filter.
+     */
+    FilePickerFilter compile() {
+        return this;
+    }
+
+    /* ---- Filters ---- */
+
+    /** Defines a filter on name globs. */
+    static final class GlobFilter extends FilePickerFilter {
+        private final String[] mGlobs;
+        private final Pattern[] mPatterns;
+
+        /**
+         * Object initialisation.
+         *
+         * @param globs globs matched against the file name.
+         */
+        GlobFilter(@NonNull String[] globs) {
+            this.mGlobs = globs.clone();
+            this.mPatterns = new Pattern[globs.length];
+
+            for (int index = 0; index < globs.length; index++) {
+                this.mPatterns[index] =
+                        Pattern.compile(
+                                globToRegex(globs[index]),
+                                Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+            }
+        }
+
+        /**
+         * Get the cost of the evaluation of this filter.
+         *
+         * @return COST_NAME or COST_ATTRIBUTES.
+         */
+        @Override
+        int getCost() {
+            return COST_NAME;
+        }
+
+        /**
+         * Evaluate the filter.
+         *
+         * @param entry filtered file.
+         * @return a boolean value who indicates if the file is accepted.
+         */
+        @Override
+        boolean accept(@NonNull Entry entry) {
+            for (Pattern pattern : this.mPatterns) {
+                if (pattern.matcher(entry.getName()).matches()) return true;
+            }
+
+            return false;
+        }
+
+        /**
+         * Returns a string representation of the object.
+         *
+         * @return a string representation of the object.
+         */
+        @Override
+        public @NonNull String toString() {
+            return "glob" + Arrays.toString(this.mGlobs);
+        }
+
+        /**
+         * Convert a glob into a regular expression.
+         *
+         * @param glob a glob.
+         * @return a string contains the regular expression.
+         */
+        private static String globToRegex(@NonNull String glob) {
+            StringBuilder regex = new StringBuilder();
+
+            boolean inGroup = false;
+            boolean inClass = false;
+
+            for (int index = 0; index < glob.length(); index++) {
+                char character = glob.charAt(index);
+
+                if (inClass) {
+                    if (character == ']') inClass = false;
+                    if (character == '\\') regex.append('\\');
+
+                    regex.append(character);
+
+                    continue;
+                }
+
+                switch (character) {
+                    case '*':
+                        regex.append(".*");
+                        break;
+                    case '?':
+                        regex.append('.');
+                        break;
+                    case '[':
+                        inClass = true;
+                        regex.append('[');
+                        if (index + 1 < glob.length() && glob.charAt(index + 1) == '!') {
+                            regex.append('^');
+                            index++;
+                        }
+                        break;
+                    case '{':
+                        inGroup = true;
+                        regex.append("(?:");
+                        break;
+                    case '}':
+                        if (inGroup) {
+                            inGroup = false;
+                            regex.append(')');
+                        } else {
+                            regex.append("\\}");
+                        }
+                        break;
+                    case ',':
+                        regex.append(inGroup ? "|" : ",");
+                        break;
+                    default:
+                        if ("\\.^$+()|".indexOf(character) >= 0) regex.append('\\');
+                        regex.append(character);
+                        break;
+                }
+            }
+
+            return regex.toString();
+        }
+    }
+
+    /** Defines a filter on file extensions. */
+    static final class ExtensionsFilter extends FilePickerFilter {
+        private final HashSet<String> mExtensions = new HashSet<>();
+
+        /**
+         * Object initialisation.
+         *
+         * @param extensions file extensions, with or without leading dot.
+         */
+        ExtensionsFilter(@NonNull String[] extensions) {
+            for (String extension : extensions) {
+                if (extension.startsWith(".")) extension = extension.substring(1);
+
+                if (!TextUtils.isEmpty(extension))
+                    this.mExtensions.add(extension.toLowerCase(Locale.US));
+            }
+        }
+
+        /**
+         * Get the cost of the evaluation of this filter.
+         *
+         * @return COST_NAME or COST_ATTRIBUTES.
+         */
+        @Override
+        int getCost() {
+            return COST_NAME;
+        }
+
+        /**
+         * Evaluate the filter.
+         *
+         * @param entry filtered file.
+         * @return a boolean value who indicates if the file is accepted.
+         */
+        @Override
+        boolean accept(@NonNull Entry entry) {
+            return this.mExtensions.contains(entry.getExtension());
+        }
+
+        /**
+         * Returns a string representation of the object.
+         *
+         * @return a string representation of the object.
+         */
+        @Override
+        public @NonNull String toString() {
+            ArrayList<String> extensions = new ArrayList<>(this.mExtensions);
+
+            Collections.sort(extensions);
+
+            return "ext" + extensions.toString();
+        }
+    }
+
+    /** Defines a filter on mime types guessed from the file extension. */
+    static final class MimeTypesFilter extends FilePickerFilter {
+        private final String[] mMimeTypes;
+
+        /**
+         * Object initialisation.
+         *
+         * @param mimeTypes mime types or mime type families.
+         */
+        MimeTypesFilter(@NonNull String[] mimeTypes) {
+            this.mMimeTypes = new String[mimeTypes.length];
+
+            for (int index = 0; index < mimeTypes.length; index++) {
+                String mimeType = mimeTypes[index].toLowerCase(Locale.US);
+
+                // "image/*" is a family, matched by prefix.
+
+                if (mimeType.endsWith("/*"))
+                    mimeType = mimeType.substring(0, mimeType.length() - 1);
+
+                this.mMimeTypes[index] = mimeType;
+            }
+        }
+
+        /**
+         * Get the cost of the evaluation of this filter.
+         *
+         * @return COST_NAME or COST_ATTRIBUTES.
+         */
+        @Override
+        int getCost() {
+            return COST_NAME;
+        }
+
+        /**
+         * Evaluate the filter.
+         *
+         * @param entry filtered file.
+         * @return a boolean value who indicates if the file is accepted.
+         */
+        @Override
+        boolean accept(@NonNull Entry entry) {
+            String extension = entry.getExtension();
+
+            if (extension.isEmpty()) return false;
+
+            String mimeType = MimeTypeMap.getSingleton().getMimeTypeFromExtension(extension);
+
+            if (mimeType == null) return false;
+
+            for (String acceptedType : this.mMimeTypes) {
+                if (acceptedType.endsWith("/")
+                        ? mimeType.startsWith(acceptedType)
+                        : mimeType.equals(acceptedType)) return true;
+            }
+
+            return false;
+        }
+
+        /**
+         * Returns a string representation of the object.
+         *
+         * @return a string representation of the object.
+         */
+        @Override
+        public @NonNull String toString() {
+            return "mime" + Arrays.toString(this.mMimeTypes);
+        }
+    }
+
+    /** Defines a filter on file size. */
+    static final class SizeFilter extends FilePickerFilter {
+        private final long mMinBytes;
+        private final long mMaxBytes;
+
+        /**
+         * Object initialisation.
+         *
+         * @param minBytes minimum size in bytes, inclusive.
+         * @param maxBytes maximum size in bytes, inclusive.
+         */
+        SizeFilter(long minBytes, long maxBytes) {
+            this.mMinBytes = minBytes;
+            this.mMaxBytes = maxBytes;
+        }
+
+        /**
+         * Get the cost of the evaluation of this filter.
+         *
+         * @return COST_NAME or COST_ATTRIBUTES.
+         */
+        @Override
+        int getCost() {
+            return COST_ATTRIBUTES;
+        }
+
+        /**
+         * Evaluate the filter.
+         *
+         * @param entry filtered file.
+         * @return a boolean value who indicates if the file is accepted.
+         */
+        @Override
+        boolean accept(@NonNull Entry entry) {
+            long length = entry.length();
+
+            return (length >= this.mMinBytes && length <= this.mMaxBytes);
+        }
+
+        /**
+         * Returns a string representation of the object.
+         *
+         * @return a string representation of the object.
+         */
+        @Override
+        public @NonNull String toString() {
+            return "size[" + this.mMinBytes + ".." + this.mMaxBytes + "]";
+        }
+    }
+
+    /** Defines a filter on file modification date. */
+    static final class LastModifiedFilter extends FilePickerFilter {
+        private final long mFromMillis;
+        private final long mToMillis;
+
+        /**
+         * Object initialisation.
+         *
+         * @param fromMillis minimum modification date in milliseconds, inclusive.
+         * @param toMillis maximum modification date in milliseconds, inclusive.
+         */
+        LastModifiedFilter(long fromMillis, long toMillis) {
+            this.mFromMillis = fromMillis;
+            this.mToMillis = toMillis;
+        }
+
+        /**
+         * Get the cost of the evaluation of this filter.
+         *
+         * @return COST_NAME or COST_ATTRIBUTES.
+         */
+        @Override
+        int getCost() {
+            return COST_ATTRIBUTES;
+        }
+
+        /**
+         * Evaluate the filter.
+         *
+         * @param entry filtered file.
+         * @return a boolean value who indicates if the file is accepted.
+         */
+        @Override
+        boolean accept(@NonNull Entry entry) {
+            long lastModified = entry.lastModified();
+
+            return (lastModified >= this.mFromMillis && lastModified <= this.mToMillis);
+        }
+
+        /**
+         * Returns a string representation of the object.
+         *
+         * @return a string representation of the object.
+         */
+        @Override
+        public @NonNull String toString() {
+            return "mtime[" + this.mFromMillis + ".." + this.mToMillis + "]";
+        }
+    }
+
+    /** Defines the inversion of a filter. */
+    static final class NotFilter extends FilePickerFilter {
+        private final FilePickerFilter mFilter;
+
+        /**
+         * Object initialisation.
+         *
+         * @param filter filter to invert.
+         */
+        NotFilter(@NonNull FilePickerFilter filter) {
+            this.mFilter = filter;
+        }
+
+        /**
+         * Get the cost of the evaluation of this filter.
+         *
+         * @return COST_NAME or COST_ATTRIBUTES.
+         */
+        @Override
+        int getCost() {
+            return this.mFilter.getCost();
+        }
+
+        /**
+         * Evaluate the filter.
+         *
+         * @param entry filtered file.
+         * @return a boolean value who indicates if the file is accepted.
+         */
+        @Override
+        boolean accept(@NonNull Entry entry) {
+            return !this.mFilter.accept(entry);
+        }
+
+        /**
+         * Evaluate the filter using the name of the file only.
+         *
+         * @param entry filtered file.
+         * @return ACCEPTED, REJECTED or UNKNOWN if the attributes of the file are needed.
+         */
+        @Override
+        int acceptName(@NonNull Entry entry) {
+            int result = this.mFilter.acceptName(entry);
+
+            if (result == UNKNOWN) return UNKNOWN;
+
+            return (result == ACCEPTED) ? REJECTED : ACCEPTED;
+        }
+
+        /**
+         * Compile the filter.
+         *
+         * @return a compiled filter.
+         */
+        @Override
+        FilePickerFilter compile() {
+            return new NotFilter(this.mFilter.compile());
+        }
+
+        /**
+         * Returns a string representation of the object.
+         *
+         * @return a string representation of the object.
+         */
+        @Override
+        public @NonNull String toString() {
+            return "not(" + this.mFilter + ")";
+        }
+    }
+
+    /** Defines a combination of filters. */
+    static final class CompositeFilter extends FilePickerFilter {
+        private final boolean mAll;
+        private final FilePickerFilter[] mFilters;
+        private final int mCost;
+
+        /**
+         * Object initialisation.
+         *
+         * @param all true if all filters have to accept the file, false if only one.
+         * @param filters combined filters.
+         */
+        CompositeFilter(boolean all, @NonNull FilePickerFilter[] filters) {
+            this.mAll = all;
+            this.mFilters = filters.clone();
+
+            int cost = COST_NAME;
+
+            for (FilePickerFilter filter : filters) cost = Math.max(cost, filter.getCost());
+
+            this.mCost = cost;
+        }
+
+        /**
+         * Get the cost of the evaluation of this filter.
+         *
+         * @return COST_NAME or COST_ATTRIBUTES.
+         */
+        @Override
+        int getCost() {
+            return this.mCost;
+        }
+
+        /**
+         * Evaluate the filter.
+         *
+         * @param entry filtered file.
+         * @return a boolean value who indicates if the file is accepted.
+         */
+        @Override
+        boolean accept(@NonNull Entry entry) {
+            for (FilePickerFilter filter : this.mFilters) {
+                boolean accepted = filter.accept(entry);
+
+                if (this.mAll && !accepted) return false;
+                if (!this.mAll && accepted) return true;
+            }
+
+            return this.mAll;
+        }
+
+        /**
+         * Evaluate the filter using the name of the file only.
+         *
+         * @param entry filtered file.
+         * @return ACCEPTED, REJECTED or UNKNOWN if the attributes of the file are needed.
+         */
+        @Override
+        int acceptName(@NonNull Entry entry) {
+            boolean unknown = false;
+
+            for (FilePickerFilter filter : this.mFilters) {
+                int result = filter.acceptName(entry);
+
+                if (result == UNKNOWN) unknown = true;
+                else if (this.mAll && result == REJECTED) return REJECTED;
+                else if (!this.mAll && result == ACCEPTED) return ACCEPTED;
+            }
+
+            if (unknown) return UNKNOWN;
+
+            return this.mAll ? ACCEPTED : REJECTED;
+        }
+
+        /**
+         * Compile the filter.
+         *
+         * @return a compiled filter.
+         */
+        @Override
+        FilePickerFilter compile() {
+            ArrayList<FilePickerFilter> filters = new ArrayList<>();
+
+            for (FilePickerFilter filter : this.mFilters) {
+                FilePickerFilter compiled = filter.compile();
+
+                if (compiled instanceof CompositeFilter
+                        && ((CompositeFilter) compiled).mAll == this.mAll) {
+                    filters.addAll(Arrays.asList(((CompositeFilter) compiled).mFilters));
+                } else {
+                    filters.add(compiled);
+                }
+            }
+
+            // Stable sort, the name only clauses come first.
+
+            Collections.sort(
+                    filters,
+                    new Comparator<FilePickerFilter>() {
+                        @Override
+                        public int compare(FilePickerFilter lht, FilePickerFilter rht) {
+                            return Integer.compare(lht.getCost(), rht.getCost());
+                        }
+                    });
+
+            if (filters.size() == 1) return filters.get(0);
+
+            return new CompositeFilter(this.mAll, filters.toArray(new FilePickerFilter[0]));
+        }
+
+        /**
+         * Returns a string representation of the object.
+         *
+         * @return a string representation of the object.
+         */
+        @Override
+        public @NonNull String toString() {
+            return (this.mAll ? "all" : "any") + Arrays.toString(this.mFilters);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2020 Nicolas Dagnas
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.ndagnas.pickers;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Defines the loader of the text previews of files. Only the first bytes of a file are mapped in
+ * memory, read-only, and decoded. The previews are cached by path and modification date.
+ */
+final class FilePreviewLoader {
+    /** Maximum number of bytes read from a file. */
+    static final int PREVIEW_BYTES = 4096;
+
+    /** Maximum number of previews kept in memory. */
+    private static final int MAX_ENTRIES = 32;
+
+    /** Maximum part of control characters accepted in a text file, in percent. */
+    private static final int MAX_CONTROL_CHARS_PERCENT = 10;
+
+    private static final LinkedHashMap<String, Entry> sEntries =
+            new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    return (this.size() > MAX_ENTRIES);
+                }
+            };
+
+    /** Defines a cached preview. */
+    static class Entry {
+        /** Modification date of the file when it was read. */
+        final long lastModified;
+
+        /** Text of the preview, or null if the file is not a text file. */
+        final String text;
+
+        /**
+         * Object initialisation.
+         *
+         * @param lastModified modification date of the file when it was read.
+         * @param text text of the preview, or null if the file is not a text file.
+         */
+        Entry(long lastModified, @Nullable String text) {
+            this.lastModified = lastModified;
+            this.text = text;
+        }
+    }
+
+    /** Object initialisation. */
+    private FilePreviewLoader() {}
+
+    /**
+     * Load the preview of a file. Must be called from a background thread.
+     *
+     * @param file file to preview.
+     * @return the beginning of the file, or null if it is not a text file or cannot be read.
+     */
+    static @Nullable String load(@NonNull File file) {
+        String key = file.getAbsolutePath();
+
+        long lastModified = file.lastModified();
+
+        synchronized (sEntries) {
+            Entry entry = sEntries.get(key);
+
+            if (entry != null && entry.lastModified == lastModified) return entry.text;
+        }
+
+        String text = read(file);
+
+        if (lastModified != 0) {
+            synchronized (sEntries) {
+                sEntries.put(key, new Entry(lastModified, text));
+            }
+        }
+
+        return text;
+    }
+
+    /**
+     * Read the beginning of a file.
+     *
+     * @param file file to read.
+     * @return the beginning of the file, or null if it is not a text file or cannot be read.
+     */
+    private static @Nullable String read(@NonNull File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = Math.min(channel.size(), PREVIEW_BYTES);
+
+            if (size == 0) return "";
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            if (!isText(buffer)) return null;
+
+            CharsetDecoder decoder =
+                    StandardCharsets.UTF_8
+                            .newDecoder()
+                            .onMalformedInput(CodingErrorAction.REPLACE)
+                            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+            return decoder.decode(buffer).toString();
+        } catch (Exception Err) {
+            Log.e("FilePreview.read", "Exception: " + Err.toString());
+        }
+
+        return null;
+    }
+
+    /**
+     * Indicates if bytes look like text: no null byte and few control characters.
+     *
+     * @param buffer bytes to check, its position is not changed.
+     * @return a boolean value who indicates if the bytes look like text.
+     */
+    private static boolean isText(@NonNull MappedByteBuffer buffer) {
+        int controlChars = 0;
+        int limit = buffer.limit();
+
+        for (int index = buffer.position(); index < limit; index++) {
+            // The bytes are signed: the bytes of multi-byte UTF-8 characters are not controls.
+
+            int value = buffer.get(index) & 0xFF;
+
+            if (value == 0) return false;
+
+            if (value < 0x20 && value != '\n' && value != '\r' && value != '\t' && value != '\f')
+                controlChars++;
+        }
+
+        return (controlChars * 100 <= limit * MAX_CONTROL_CHARS_PERCENT);
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright (C) 2020 Nicolas Dagnas
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.ndagnas.pickers;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Defines the walker gathering all the files under a directory, for the flat view. The files are
+ * kept as compact records (relative path, size and modification date), and the listener receives
+ * sorted snapshots of the records as the walk progresses. The symbolic links are not followed.
+ */
+final class FlatFileWalker implements Runnable {
+    /** Maximum number of files gathered. */
+    static final int MAX_FILES = PathIndex.MAX_PATHS;
+
+    /** Minimum delay between two updates of the listener, in milliseconds. */
+    private static final long UPDATE_INTERVAL = 500;
+
+    /** Defines a sorted snapshot of the gathered files. */
+    static class Snapshot {
+        private final String[] mPaths;
+        private final long[] mLengths;
+        private final long[] mLastModified;
+        private final int mCount;
+        private final Integer[] mOrder;
+
+        /**
+         * Object initialisation, the records are sorted.
+         *
+         * @param paths paths of the files, relative to the walked directory.
+         * @param lengths sizes of the files.
+         * @param lastModified modification dates of the files.
+         * @param count number of records.
+         * @param sortBy sort type, one of the FilePickerDialog.SORT_BY constants.
+         * @param reversed indicates if the sort order is reversed.
+         */
+        Snapshot(
+                @NonNull String[] paths,
+                @NonNull long[] lengths,
+                @NonNull long[] lastModified,
+                int count,
+                int sortBy,
+                boolean reversed) {
+            this.mPaths = paths;
+            this.mLengths = lengths;
+            this.mLastModified = lastModified;
+            this.mCount = count;
+            this.mOrder = new Integer[count];
+
+            for (int index = 0; index < count; index++) {
+                this.mOrder[index] = index;
+            }
+
+            Arrays.sort(this.mOrder, this.createComparator(sortBy, reversed ? -1 : 1));
+        }
+
+        /**
+         * Get the same records, sorted in another order.
+         *
+         * @param sortBy sort type, one of the FilePickerDialog.SORT_BY constants.
+         * @param reversed indicates if the sort order is reversed.
+         * @return a snapshot.
+         */
+        @NonNull
+        Snapshot sort(int sortBy, boolean reversed) {
+            return new Snapshot(
+                    this.mPaths, this.mLengths, this.mLastModified, this.mCount, sortBy, reversed);
+        }
+
+        /**
+         * Get the number of files.
+         *
+         * @return a integer contains the number of files.
+         */
+        int size() {
+            return this.mCount;
+        }
+
+        /**
+         * Get the path of a file, relative to the walked directory.
+         *
+         * @param index position of the file in the sorted snapshot.
+         * @return a string contains the path of the file.
+         */
+        @NonNull
+        String getPath(int index) {
+            return this.mPaths[this.mOrder[index]];
+        }
+
+        /**
+         * Get the size of a file.
+         *
+         * @param index position of the file in the sorted snapshot.
+         * @return the size of the file.
+         */
+        long getLength(int index) {
+            return this.mLengths[this.mOrder[index]];
+        }
+
+        /**
+         * Get the modification date of a file.
+         *
+         * @param index position of the file in the sorted snapshot.
+         * @return the modification date of the file.
+         */
+        long getLastModified(int index) {
+            return this.mLastModified[this.mOrder[index]];
+        }
+
+        /**
+         * Create the comparator of the records, the name of the files breaks ties.
+         *
+         * @param sortBy sort type, one of the FilePickerDialog.SORT_BY constants.
+         * @param reversed -1 if the sort order is reversed, 1 otherwise.
+         * @return a comparator of record indexes.
+         */
+        private Comparator<Integer> createComparator(final int sortBy, final int reversed) {
+            return new Comparator<Integer>() {
+                @Override
+                public int compare(Integer lht, Integer rht) {
+                    int result = 0;
+
+                    if (sortBy == FilePickerDialog.SORT_BY_LAST_MODIFIED) {
+                        result =
+                                Long.compare(
+                                        Snapshot.this.mLastModified[lht],
+                                        Snapshot.this.mLastModified[rht]);
+                    } else if (sortBy == FilePickerDialog.SORT_BY_SIZE) {
+                        result =
+                                Long.compare(
+                                        Snapshot.this.mLengths[lht], Snapshot.this.mLengths[rht]);
+                    }
+
+                    if (result == 0)
+                        result =
+                                getName(Snapshot.this.mPaths[lht])
+                                        .compareToIgnoreCase(getName(Snapshot.this.mPaths[rht]));
+
+                    return result * reversed;
+                }
+            };
+        }
+
+        /**
+         * Get the name of a file from its path.
+         *
+         * @param path path of the file.
+         * @return a string contains the name of the file.
+         */
+        private static String getName(@NonNull String path) {
+            return path.substring(path.lastIndexOf('/') + 1);
+        }
+    }
+
+    /** Defines the listener of the walk. */
+    interface Listener {
+        /**
+         * Called from the walker thread with the files gathered so far.
+         *
+         * @param snapshot sorted snapshot of the files.
+         * @param finished indicates if the walk is finished.
+         */
+        void onUpdate(@NonNull Snapshot snapshot, boolean finished);
+    }
+
+    // Attributes
+
+    private final File mRoot;
+    private final FileFilter mFilter;
+    private final int mSortBy;
+    private final boolean mReversed;
+    private final Listener mListener;
+    private String[] mPaths = new String[1024];
+    private long[] mLengths = new long[1024];
+    private long[] mLastModified = new long[1024];
+    private int mCount = 0;
+
+    /**
+     * Object initialisation.
+     *
+     * @param root walked directory.
+     * @param filter filter of the walked files and directories.
+     * @param sortBy sort type, one of the FilePickerDialog.SORT_BY constants.
+     * @param reversed indicates if the sort order is reversed.
+     * @param listener listener of the walk.
+     */
+    FlatFileWalker(
+            @NonNull File root,
+            @NonNull FileFilter filter,
+            int sortBy,
+            boolean reversed,
+            @NonNull Listener listener) {
+        this.mRoot = root;
+        this.mFilter = filter;
+        this.mSortBy = sortBy;
+        this.mReversed = reversed;
+        this.mListener = listener;
+    }
+
+    /** Walk the tree. Stops as soon as the thread is interrupted. */
+    @Override
+    public void run() {
+        ArrayDeque<File> directories = new ArrayDeque<>();
+
+        int rootLength = this.mRoot.getAbsolutePath().length() + 1;
+
+        directories.push(this.mRoot);
+
+        long lastUpdate = SystemClock.elapsedRealtime();
+        int lastCount = 0;
+
+        while (!directories.isEmpty() && this.mCount < MAX_FILES) {
+            if (Thread.currentThread().isInterrupted()) return;
+
+            File directory = directories.pop();
+
+            // The volumes found slow are skipped, their listings would block the walk.
+
+            if (VolumeGovernor.isSlow(directory)) continue;
+
+            File[] files = directory.listFiles(this.mFilter);
+
+            if (files == null) continue;
+
+            for (File file : files) {
+                try {
+                    BasicFileAttributes attributes =
+                            Files.readAttributes(
+                                    file.toPath(),
+                                    BasicFileAttributes.class,
+                                    LinkOption.NOFOLLOW_LINKS);
+
+                    String path = file.getAbsolutePath();
+
+                    if (path.length() <= rootLength) continue;
+
+                    if (attributes.isDirectory()) {
+                        directories.push(file);
+                    } else if (attributes.isRegularFile() && this.mCount < MAX_FILES) {
+                        this.add(
+                                path.substring(rootLength),
+                                attributes.size(),
+                                attributes.lastModifiedTime().toMillis());
+                    }
+                } catch (Exception Err) {
+                    Log.e("FlatFileWalker.run", "Exception: " + Err.toString());
+                }
+            }
+
+            long now = SystemClock.elapsedRealtime();
+
+            if (this.mCount != lastCount && now - lastUpdate >= UPDATE_INTERVAL) {
+                this.publish(false);
+
+                lastUpdate = SystemClock.elapsedRealtime();
+                lastCount = this.mCount;
+            }
+        }
+
+        this.publish(true);
+    }
+
+    /**
+     * Add a record. The arrays grow by copy, so that the published snapshots keep their arrays.
+     *
+     * @param path path of the file, relative to the walked directory.
+     * @param length size of the file.
+     * @param lastModified modification date of the file.
+     */
+    private void add(@NonNull String path, long length, long lastModified) {
+        if (this.mCount == this.mPaths.length) {
+            int capacity = this.mCount * 2;
+
+            this.mPaths = Arrays.copyOf(this.mPaths, capacity);
+            this.mLengths = Arrays.copyOf(this.mLengths, capacity);
+            this.mLastModified = Arrays.copyOf(this.mLastModified, capacity);
+        }
+
+        this.mPaths[this.mCount] = path;
+        this.mLengths[this.mCount] = length;
+        this.mLastModified[this.mCount] = lastModified;
+
+        this.mCount++;
+    }
+
+    /**
+     * Send a sorted snapshot of the records to the listener.
+     *
+     * @param finished indicates if the walk is finished.
+     */
+    private void publish(boolean finished) {
+        this.mListener.onUpdate(
+                new Snapshot(
+                        this.mPaths,
+                        this.mLengths,
+                        this.mLastModified,
+                        this.mCount,
+                        this.mSortBy,
+                        this.mReversed),
+                finished);
+    }
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright (C) 2020 Nicolas Dagnas
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.ndagnas.pickers;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * Defines the accounting of the file system operations of a navigation: listings, reads of
+ * attributes, permission checks and reads of files, each one counted and timed with its path. The
+ * operations are recorded by the thread running the navigation, and by the threads it delegates
+ * to, nothing is recorded outside of a navigation.
+ */
+@SuppressWarnings({"unused"})
+public final class IoStats {
+    /** LISTING identifies the listings of directories. */
+    public static final int LISTING = 0;
+
+    /** STAT identifies the reads of the attributes of files. */
+    public static final int STAT = 1;
+
+    /** ACCESS identifies the checks of the permissions of files. */
+    public static final int ACCESS = 2;
+
+    /** READ identifies the reads of the content of files. */
+    public static final int READ = 3;
+
+    /** Maximum number of operations kept with their path. */
+    private static final int MAX_OPERATIONS = 512;
+
+    /** Names of the operations, for the dump. */
+    private static final String[] NAMES = {"listing", "stat", "access", "read"};
+
+    private static final ThreadLocal<IoStats> sCurrent = new ThreadLocal<>();
+
+    /** Defines a recorded operation. */
+    private static class Operation {
+        final int type;
+        final String path;
+        final long duration;
+
+        /**
+         * Object initialisation.
+         *
+         * @param type type of the operation.
+         * @param path path of the file.
+         * @param duration duration of the operation, in nanoseconds.
+         */
+        Operation(int type, @NonNull String path, long duration) {
+            this.type = type;
+            this.path = path;
+            this.duration = duration;
+        }
+    }
+
+    // Attributes
+
+    private final String mPath;
+    private final long[] mCounts = new long[NAMES.length];
+    private final long[] mDurations = new long[NAMES.length];
+    private final ArrayList<Operation> mOperations = new ArrayList<>();
+    private final long mStart = System.nanoTime();
+    private long mDuration = 0;
+    private boolean mFinished = false;
+
+    /**
+     * Object initialisation.
+     *
+     * @param path path of the navigated directory.
+     */
+    IoStats(@NonNull String path) {
+        this.mPath = path;
+    }
+
+    /* ---- Recording ---- */
+
+    /**
+     * Make the statistics the current ones of the calling thread.
+     *
+     * @param stats statistics recording the operations, or null to record nothing.
+     * @return the previous statistics of the thread, to give back to {@link #end(IoStats)}.
+     */
+    static @Nullable IoStats begin(@Nullable IoStats stats) {
+        IoStats previous = sCurrent.get();
+
+        sCurrent.set(stats);
+
+        return previous;
+    }
+
+    /**
+     * Restore the previous statistics of the calling thread.
+     *
+     * @param previous statistics returned by {@link #begin(IoStats)}.
+     */
+    static void end(@Nullable IoStats previous) {
+        if (previous != null) {
+            sCurrent.set(previous);
+        } else {
+            sCurrent.remove();
+        }
+    }
+
+    /**
+     * Get the current statistics of the calling thread.
+     *
+     * @return the statistics, or null if the thread is not running a navigation.
+     */
+    static @Nullable IoStats current() {
+        return sCurrent.get();
+    }
+
+    /**
+     * Get the start time of an operation, only read when the operations are recorded.
+     *
+     * @return the current time in nanoseconds, or 0 if the operations are not recorded.
+     */
+    static long start() {
+        return (sCurrent.get() != null) ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Record an operation in the current statistics of the calling thread, if any.
+     *
+     * @param type type of the operation, one of the LISTING, STAT, ACCESS or READ constants.
+     * @param file file of the operation.
+     * @param start start time returned by {@link #start()}.
+     */
+    static void record(int type, @NonNull File file, long start) {
+        if (start == 0) return;
+
+        IoStats stats = sCurrent.get();
+
+        if (stats != null) stats.add(type, file.getPath(), System.nanoTime() - start);
+    }
+
+    /**
+     * Add an operation, ignored once the navigation is finished.
+     *
+     * @param type type of the operation.
+     * @param path path of the file.
+     * @param duration duration of the operation, in nanoseconds.
+     */
+    synchronized void add(int type, @NonNull String path, long duration) {
+        if (this.mFinished) return;
+
+        this.mCounts[type]++;
+        this.mDurations[type] += duration;
+
+        if (this.mOperations.size() < MAX_OPERATIONS)
+            this.mOperations.add(new Operation(type, path, duration));
+    }
+
+    /** Finish the navigation, the later operations are no longer recorded. */
+    synchronized void finish() {
+        if (this.mFinished) return;
+
+        this.mFinished = true;
+        this.mDuration = System.nanoTime() - this.mStart;
+    }
+
+    /* ---- Totals ---- */
+
+    /**
+     * Get the path of the navigated directory.
+     *
+     * @return a string contains the path of the directory.
+     */
+    public @NonNull String getPath() {
+        return this.mPath;
+    }
+
+    /**
+     * Get the number of operations of a type.
+     *
+     * @param type type of the operations, one of the LISTING, STAT, ACCESS or READ constants.
+     * @return the number of operations.
+     */
+    public synchronized long getCount(int type) {
+        return this.mCounts[type];
+    }
+
+    /**
+     * Get the total duration of the operations of a type.
+     *
+     * @param type type of the operations, one of the LISTING, STAT, ACCESS or READ constants.
+     * @return the total duration, in nanoseconds.
+     */
+    public synchronized long getDuration(int type) {
+        return this.mDurations[type];
+    }
+
+    /**
+     * Get the number of operations of all types.
+     *
+     * @return the number of operations.
+     */
+    public synchronized long getTotalCount() {
+        long count = 0;
+
+        for (long typeCount : this.mCounts) {
+            count += typeCount;
+        }
+
+        return count;
+    }
+
+    /**
+     * Get the total duration of the operations of all types.
+     *
+     * @return the total duration, in nanoseconds.
+     */
+    public synchronized long getTotalDuration() {
+        long duration = 0;
+
+        for (long typeDuration : this.mDurations) {
+            duration += typeDuration;
+        }
+
+        return duration;
+    }
+
+    /**
+     * Get the duration of the navigation.
+     *
+     * @return the duration from the start to the end of the navigation, in nanoseconds.
+     */
+    public synchronized long getNavigationDuration() {
+        return (this.mFinished) ? this.mDuration : System.nanoTime() - this.mStart;
+    }
+
+    /**
+     * Get a detailed dump of the statistics, for debugging: the totals by type, then each
+     * operation with its path, in order.
+     *
+     * @return a multi-line string.
+     */
+    public synchronized @NonNull String dump() {
+        StringBuilder dump = new StringBuilder(this.toString());
+
+        for (Operation operation : this.mOperations) {
+            dump.append(
+                    String.format(
+                            Locale.US,
+                            "%n  %-7s %8.3f ms  %s",
+                            NAMES[operation.type],
+                            operation.duration / 1e6,
+                            operation.path));
+        }
+
+        long count = this.getTotalCount();
+
+        if (count > this.mOperations.size())
+            dump.append(
+                    String.format(
+                            Locale.US, "%n  ... %d more", count - this.mOperations.size()));
+
+        return dump.toString();
+    }
+
+    /**
+     * Get a summary of the statistics.
+     *
+     * @return a string contains the totals by type.
+     */
+    @Override
+    public synchronized @NonNull String toString() {
+        StringBuilder summary =
+                new StringBuilder(
+                        String.format(
+                                Locale.US,
+                                "%s: %.3f ms",
+                                this.mPath,
+                                this.getNavigationDuration() / 1e6));
+
+        for (int type = 0; type < NAMES.length; type++) {
+            summary.append(
+                    String.format(
+                            Locale.US,
+                            ", %d %s (%.3f ms)",
+                            this.mCounts[type],
+                            NAMES[type],
+                            this.mDurations[type] / 1e6));
+        }
+
+        return summary.toString();
+    }
+}
@@ -0,0 +1,396 @@
+/*
+ * Copyright (C) 2020 Nicolas Dagnas
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.ndagnas.pickers;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+
+/**
+ * Defines the path of a field of a json node, compiled once into a chain of field names and array
+ * positions. A path is a field name, or a dotted path like "meta.label.en", or a JSONPath-style
+ * path like "$.meta['label'].en" or "names[0]". A field name containing a dot is written between
+ * brackets and quotes, like "['a.b']". The paths of the fields of a tree can be equal, but a path
+ * cannot lead inside the value of another one, since that value is read or skipped as a whole.
+ */
+final class JSonFieldPath {
+    // Attributes
+
+    private final String mText;
+    private final String[] mNames;
+    private final int[] mIndexes;
+
+    /**
+     * Object initialisation.
+     *
+     * @param text path as written.
+     * @param names field name of each segment, or null for an array position.
+     * @param indexes array position of each segment, or -1 for a field name.
+     */
+    private JSonFieldPath(@NonNull String text, @NonNull String[] names, @NonNull int[] indexes) {
+        this.mText = text;
+        this.mNames = names;
+        this.mIndexes = indexes;
+    }
+
+    /**
+     * Compile a path.
+     *
+     * @param text a path.
+     * @return a compiled path.
+     * @throws IllegalArgumentException if the path is empty or not valid.
+     */
+    static @NonNull JSonFieldPath compile(@NonNull String text) {
+        ArrayList<String> names = new ArrayList<>();
+        ArrayList<Integer> indexes = new ArrayList<>();
+
+        int position = 0;
+
+        boolean first = true;
+
+        if (text.startsWith("$")) {
+            position = 1;
+            first = false;
+        }
+
+        while (position < text.length()) {
+            char current = text.charAt(position);
+
+            if (current == '[') {
+                int end = text.indexOf(']', position);
+
+                if (end < 0) throw invalid(text);
+
+                String segment = text.substring(position + 1, end).trim();
+
+                if (segment.length() >= 2
+                        && (segment.charAt(0) == '\'' || segment.charAt(0) == '"')
+                        && segment.charAt(segment.length() - 1) == segment.charAt(0)) {
+                    names.add(segment.substring(1, segment.length() - 1));
+                    indexes.add(-1);
+                } else {
+                    try {
+                        int index = Integer.parseInt(segment);
+
+                        if (index < 0) throw invalid(text);
+
+                        names.add(null);
+                        indexes.add(index);
+                    } catch (NumberFormatException Err) {
+                        throw invalid(text);
+                    }
+                }
+
+                position = end + 1;
+            } else {
+                if (!first) {
+                    if (current != '.') throw invalid(text);
+
+                    position++;
+                }
+
+                int end = position;
+
+                while (end < text.length()
+                        && text.charAt(end) != '.'
+                        && text.charAt(end) != '[') end++;
+
+                if (end == position) throw invalid(text);
+
+                names.add(text.substring(position, end));
+                indexes.add(-1);
+
+                position = end;
+            }
+
+            first = false;
+        }
+
+        if (names.isEmpty()) throw invalid(text);
+
+        int[] segmentIndexes = new int[indexes.size()];
+
+        for (int index = 0; index < segmentIndexes.length; index++) {
+            segmentIndexes[index] = indexes.get(index);
+        }
+
+        return new JSonFieldPath(text, names.toArray(new String[0]), segmentIndexes);
+    }
+
+    /**
+     * Get the number of segments.
+     *
+     * @return the number of field names and array positions.
+     */
+    int length() {
+        return this.mNames.length;
+    }
+
+    /**
+     * Check if a segment is a field name.
+     *
+     * @param depth position of the segment.
+     * @param name a field name.
+     * @return true if the segment is the field name.
+     */
+    boolean matches(int depth, @NonNull String name) {
+        return name.equals(this.mNames[depth]);
+    }
+
+    /**
+     * Check if a segment is an array position.
+     *
+     * @param depth position of the segment.
+     * @param index an array position.
+     * @return true if the segment is the array position.
+     */
+    boolean matches(int depth, int index) {
+        return (this.mIndexes[depth] == index);
+    }
+
+    /**
+     * Check if a path is a strict prefix of another one, or the other way round, so that one of
+     * the two fields lies inside the value of the other.
+     *
+     * @param other another path.
+     * @return true if the shorter path is a strict prefix of the longer one.
+     */
+    boolean overlaps(@NonNull JSonFieldPath other) {
+        int length = Math.min(this.mNames.length, other.mNames.length);
+
+        if (this.mNames.length == other.mNames.length) return false;
+
+        for (int depth = 0; depth < length; depth++) {
+            if (this.mNames[depth] != null) {
+                if (!this.mNames[depth].equals(other.mNames[depth])) return false;
+            } else if (other.mNames[depth] != null
+                    || this.mIndexes[depth] != other.mIndexes[depth]) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Get the field name of a segment.
+     *
+     * @param depth position of the segment.
+     * @return the field name, or null if the segment is an array position.
+     */
+    @Nullable
+    String getName(int depth) {
+        return this.mNames[depth];
+    }
+
+    /**
+     * Get the value of the field in a json object.
+     *
+     * @param object a json object.
+     * @return the value, or null if the field is missing or null.
+     */
+    @Nullable
+    Object get(@NonNull JSONObject object) {
+        Object value = object;
+
+        for (int depth = 0; depth < this.mNames.length; depth++) {
+            value = this.opt(value, depth);
+
+            if (value == null || value == JSONObject.NULL) return null;
+        }
+
+        return value;
+    }
+
+    /**
+     * Get the value of the field in a json object as a string.
+     *
+     * @param object a json object.
+     * @return a string contains the value, or null if the field is missing, null or not a scalar.
+     */
+    @Nullable
+    String getString(@NonNull JSONObject object) {
+        Object value = this.get(object);
+
+        if (value == null || value instanceof JSONObject || value instanceof JSONArray) return null;
+
+        return value.toString();
+    }
+
+    /**
+     * Set the value of the field in a json object, creating the missing parent fields.
+     *
+     * @param object a json object.
+     * @param value value of the field.
+     * @throws JSONException if a parent field is not a container of the right type.
+     */
+    void put(@NonNull JSONObject object, @NonNull Object value) throws JSONException {
+        Object container = object;
+
+        for (int depth = 0; depth < this.mNames.length - 1; depth++) {
+            Object child = this.opt(container, depth);
+
+            if (child == null || child == JSONObject.NULL) {
+                child = (this.mNames[depth + 1] != null) ? new JSONObject() : new JSONArray();
+
+                this.set(container, depth, child);
+            }
+
+            container = child;
+        }
+
+        this.set(container, this.mNames.length - 1, value);
+    }
+
+    /**
+     * Get the fields of some paths, as a bit mask.
+     *
+     * @param paths field paths, null for an undefined field.
+     * @return a bit mask of the defined fields, by position in the array.
+     */
+    static int all(@NonNull JSonFieldPath[] paths) {
+        int fields = 0;
+
+        for (int field = 0; field < paths.length; field++) {
+            if (paths[field] != null) fields |= (1 << field);
+        }
+
+        return fields;
+    }
+
+    /**
+     * Get, among some fields, the ones whose path ends at a depth.
+     *
+     * @param paths field paths.
+     * @param fields bit mask of the fields.
+     * @param depth number of segments read.
+     * @return a bit mask of the ended fields.
+     */
+    static int ended(@NonNull JSonFieldPath[] paths, int fields, int depth) {
+        int ended = 0;
+
+        for (int field = 0; field < paths.length; field++) {
+            if ((fields & (1 << field)) != 0 && paths[field].length() == depth)
+                ended |= (1 << field);
+        }
+
+        return ended;
+    }
+
+    /**
+     * Get, among some fields, the ones whose path continues with a field name.
+     *
+     * @param paths field paths.
+     * @param fields bit mask of the fields, whose paths continue after the depth.
+     * @param depth position of the segment.
+     * @param name a field name.
+     * @return a bit mask of the matching fields.
+     */
+    static int match(@NonNull JSonFieldPath[] paths, int fields, int depth, @NonNull String name) {
+        int matched = 0;
+
+        for (int field = 0; field < paths.length; field++) {
+            if ((fields & (1 << field)) != 0 && paths[field].matches(depth, name))
+                matched |= (1 << field);
+        }
+
+        return matched;
+    }
+
+    /**
+     * Get, among some fields, the ones whose path continues with an array position.
+     *
+     * @param paths field paths.
+     * @param fields bit mask of the fields, whose paths continue after the depth.
+     * @param depth position of the segment.
+     * @param index an array position.
+     * @return a bit mask of the matching fields.
+     */
+    static int match(@NonNull JSonFieldPath[] paths, int fields, int depth, int index) {
+        int matched = 0;
+
+        for (int field = 0; field < paths.length; field++) {
+            if ((fields & (1 << field)) != 0 && paths[field].matches(depth, index))
+                matched |= (1 << field);
+        }
+
+        return matched;
+    }
+
+    /**
+     * Get the path as written.
+     *
+     * @return a string contains the path.
+     */
+    @Override
+    public @NonNull String toString() {
+        return this.mText;
+    }
+
+    /**
+     * Get a segment of a container.
+     *
+     * @param container a json object or array.
+     * @param depth position of the segment.
+     * @return the value of the segment, or null if it is missing or the container is not of the
+     *     right type.
+     */
+    private @Nullable Object opt(@Nullable Object container, int depth) {
+        if (this.mNames[depth] != null) {
+            return (container instanceof JSONObject)
+                    ? ((JSONObject) container).opt(this.mNames[depth])
+                    : null;
+        }
+
+        return (container instanceof JSONArray)
+                ? ((JSONArray) container).opt(this.mIndexes[depth])
+                : null;
+    }
+
+    /**
+     * Set a segment of a container.
+     *
+     * @param container a json object or array.
+     * @param depth position of the segment.
+     * @param value value of the segment.
+     * @throws JSONException if the container is not of the right type.
+     */
+    private void set(@NonNull Object container, int depth, @NonNull Object value)
+            throws JSONException {
+        if (this.mNames[depth] != null && container instanceof JSONObject) {
+            ((JSONObject) container).put(this.mNames[depth], value);
+        } else if (this.mNames[depth] == null && container instanceof JSONArray) {
+            ((JSONArray) container).put(this.mIndexes[depth], value);
+        } else {
+            throw new JSONException("Field path " + this.mText + " does not match the node");
+        }
+    }
+
+    /**
+     * Create the exception of an invalid path.
+     *
+     * @param text the path.
+     * @return an exception.
+     */
+    private static @NonNull IllegalArgumentException invalid(@NonNull String text) {
+        return new IllegalArgumentException("Invalid field path: " + text);
+    }
+}
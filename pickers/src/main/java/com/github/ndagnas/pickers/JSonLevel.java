@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2020 Nicolas Dagnas
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.ndagnas.pickers;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Defines a level of a json picker, the children of a node projected once into parallel arrays:
+ * title, sub-title and number of children of each node, and the display order of the nodes as
+ * positions in the arrays. Sorting and row creation only read the arrays.
+ */
+final class JSonLevel {
+    /** Below this number of nodes, the runs are sorted by insertion. */
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    // Attributes
+
+    private final JSonPickerDialog.JSONItem[] mItems;
+    private final String[] mTitles;
+    private final String[] mSubTitles;
+    private final int[] mChildCounts;
+    private final int[] mOrder;
+    private int mCount = 0;
+    private boolean mHaveChildrenFirst = false;
+    private boolean mSubTitlesCompared = false;
+    private int mReversed = 1;
+
+    /**
+     * Object initialisation.
+     *
+     * @param capacity maximum number of nodes.
+     */
+    JSonLevel(int capacity) {
+        this.mItems = new JSonPickerDialog.JSONItem[capacity];
+        this.mTitles = new String[capacity];
+        this.mSubTitles = new String[capacity];
+        this.mChildCounts = new int[capacity];
+        this.mOrder = new int[capacity];
+    }
+
+    /**
+     * Add a node, at the end of the display order.
+     *
+     * @param item json node.
+     * @param title title of the node.
+     * @param subTitle sub-title of the node, or null.
+     * @param childCount number of children of the node, or -1 if it has no children field.
+     */
+    void add(
+            @NonNull JSonPickerDialog.JSONItem item,
+            @NonNull String title,
+            @Nullable String subTitle,
+            int childCount) {
+        this.mItems[this.mCount] = item;
+        this.mTitles[this.mCount] = title;
+        this.mSubTitles[this.mCount] = subTitle;
+        this.mChildCounts[this.mCount] = childCount;
+        this.mOrder[this.mCount] = this.mCount;
+
+        this.mCount++;
+    }
+
+    /**
+     * Get the number of nodes.
+     *
+     * @return a integer contains the number of nodes.
+     */
+    int size() {
+        return this.mCount;
+    }
+
+    /**
+     * Get the original position of a node, the position in the display order.
+     *
+     * @param position position in the display order.
+     * @return the position in the arrays, the order of the children in the json.
+     */
+    int getIndex(int position) {
+        return this.mOrder[position];
+    }
+
+    /**
+     * Get a json node.
+     *
+     * @param index position in the arrays.
+     * @return a json node.
+     */
+    @NonNull
+    JSonPickerDialog.JSONItem getItem(int index) {
+        return this.mItems[index];
+    }
+
+    /**
+     * Get the title of a node.
+     *
+     * @param index position in the arrays.
+     * @return a string contains the title.
+     */
+    @NonNull
+    String getTitle(int index) {
+        return this.mTitles[index];
+    }
+
+    /**
+     * Get the sub-title of a node.
+     *
+     * @param index position in the arrays.
+     * @return a string contains the sub-title, or null if the node has no sub-title.
+     */
+    @Nullable
+    String getSubTitle(int index) {
+        return this.mSubTitles[index];
+    }
+
+    /**
+     * Get the number of children of a node.
+     *
+     * @param index position in the arrays.
+     * @return the number of children, or -1 if the node has no children field.
+     */
+    int getChildCount(int index) {
+        return this.mChildCounts[index];
+    }
+
+    /**
+     * Sort the display order, by title then by sub-title. The nodes which compare equal keep the
+     * order of the json, reversed with the rest of the nodes. The sort is stable.
+     *
+     * @param haveChildrenFirst true to put the nodes having children before the other ones.
+     * @param subTitlesCompared true to compare the sub-titles of the nodes of same title.
+     * @param reversed true to sort by reverse order.
+     */
+    void sort(boolean haveChildrenFirst, boolean subTitlesCompared, boolean reversed) {
+        this.mHaveChildrenFirst = haveChildrenFirst;
+        this.mSubTitlesCompared = subTitlesCompared;
+        this.mReversed = (reversed) ? -1 : 1;
+
+        if (this.mCount > 1) this.sort(this.mOrder.clone(), this.mOrder, 0, this.mCount);
+    }
+
+    /**
+     * Sort a range of the display order, by merge of sorted halves.
+     *
+     * @param source display order to sort, modified.
+     * @param target display order receiving the sorted range, holding the same range as source.
+     * @param low first position of the range.
+     * @param high position following the range.
+     */
+    private void sort(int[] source, int[] target, int low, int high) {
+        if (high - low < INSERTION_SORT_THRESHOLD) {
+            for (int position = low + 1; position < high; position++) {
+                int index = target[position];
+                int previous = position - 1;
+
+                while (previous >= low && this.compare(target[previous], index) > 0) {
+                    target[previous + 1] = target[previous];
+                    previous--;
+                }
+
+                target[previous + 1] = index;
+            }
+
+            return;
+        }
+
+        int middle = (low + high) >>> 1;
+
+        this.sort(target, source, low, middle);
+        this.sort(target, source, middle, high);
+
+        for (int position = low, left = low, right = middle; position < high; position++) {
+            if (right >= high || (left < middle && this.compare(source[left], source[right]) <= 0))
+                target[position] = source[left++];
+            else target[position] = source[right++];
+        }
+    }
+
+    /**
+     * Compare two nodes.
+     *
+     * @param lht position of a node in the arrays.
+     * @param rht position of another node in the arrays.
+     * @return a negative integer, zero, or a positive integer if the first node is displayed
+     *     before, with, or after the second one.
+     */
+    private int compare(int lht, int rht) {
+        if (this.mHaveChildrenFirst) {
+            boolean lhtHaveChildren = (this.mChildCounts[lht] > 0);
+            boolean rhtHaveChildren = (this.mChildCounts[rht] > 0);
+
+            if (lhtHaveChildren && !rhtHaveChildren) return -1 * this.mReversed;
+            if (!lhtHaveChildren && rhtHaveChildren) return this.mReversed;
+        }
+
+        String lhtTitle = this.mTitles[lht];
+        String rhtTitle = this.mTitles[rht];
+
+        if (!lhtTitle.equals(rhtTitle)) {
+            int result = lhtTitle.compareToIgnoreCase(rhtTitle);
+
+            if (result != 0) return result * this.mReversed;
+        }
+
+        if (this.mSubTitlesCompared) {
+            String lhtSubTitle = (this.mSubTitles[lht] != null) ? this.mSubTitles[lht] : "";
+            String rhtSubTitle = (this.mSubTitles[rht] != null) ? this.mSubTitles[rht] : "";
+
+            if (!lhtSubTitle.equals(rhtSubTitle)) {
+                int result = lhtSubTitle.compareToIgnoreCase(rhtSubTitle);
+
+                if (result != 0) return result * this.mReversed;
+            }
+        }
+
+        return (lht - rht) * this.mReversed;
+    }
+}
@@ -21,9 +21,11 @@ package com.github.ndagnas.pickers;
 
 import android.content.Context;
 import android.graphics.drawable.Drawable;
+import android.os.Looper;
 import android.os.Parcelable;
 import android.text.TextUtils;
 import android.util.Log;
+import android.util.LruCache;
 import android.view.View;
 import android.widget.Toast;
 
@@ -36,10 +38,14 @@ import androidx.annotation.StyleRes;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /** Defines a json picker dialog. */
 @SuppressWarnings({"unused", "WeakerAccess"})
@@ -70,7 +76,21 @@ public class JSonPickerDialog extends ListPickerDialogBase implements PickerInte
     /** SORT_ORDER_NORMAL specifies that list of json nodes is sorted by reverse order. */
     public static final int SORT_ORDER_REVERSE = 2;
 
-    /** Defines an item of the list. */
+    /**
+     * NODE_ID_NAME specifies the field holding the id of a node, in the json objects returned for
+     * the nodes of a json text. The ids are the positions of the nodes in the text of the json
+     * document holding them, so they are only unique along with SHARD_REFERENCE_NAME.
+     */
+    public static final String NODE_ID_NAME = "nodeId";
+
+    /**
+     * SHARD_REFERENCE_NAME specifies the field holding the children reference of the json document
+     * holding a node, in the json objects returned for the nodes loaded through the shard loader.
+     * The nodes of the root json have no such field.
+     */
+    public static final String SHARD_REFERENCE_NAME = "shardReference";
+
+    /** Defines an item of the list, a json object or a node of a json tree. */
     static class JSONItem {
         /**
          * Object initialisation.
@@ -80,24 +100,76 @@ public class JSonPickerDialog extends ListPickerDialogBase implements PickerInte
          */
         public JSONItem(JSONObject object, JSONItem parent) {
             this.object = object;
+            this.tree = null;
+            this.node = -1;
+            this.parent = parent;
+            this.listViewState = null;
+        }
+
+        /**
+         * Object initialisation.
+         *
+         * @param tree json tree.
+         * @param node id of the node in the tree.
+         * @param parent json node parent.
+         */
+        public JSONItem(JSonTree tree, int node, JSONItem parent) {
+            this.object = null;
+            this.tree = tree;
+            this.node = node;
             this.parent = parent;
             this.listViewState = null;
         }
 
-        /** Json node object. */
+        /** Json node object, or null for a node of a json tree. */
         public JSONObject object;
 
+        /** Json tree, or null for a json object. */
+        public final JSonTree tree;
+
+        /** Id of the node in the json tree. */
+        public final int node;
+
         /** List view state. */
         public Parcelable listViewState;
 
         /** Json node parent. */
         public JSONItem parent;
+
+        /** Path of the node from the root, built once from the one of its parent. */
+        public String breadcrumb;
+    }
+
+    /**
+     * Defines a loader of the json documents holding the children of the nodes, named by the
+     * children reference of the nodes.
+     */
+    public interface ShardLoader {
+        /**
+         * Open a json document holding children. Called from a background thread.
+         *
+         * @param reference children reference of a node.
+         * @return a reader of the json document, whose root node holds the children in its
+         *     children field. The reader is closed once read.
+         * @throws IOException if the document cannot be opened.
+         */
+        @NonNull
+        Reader openShard(@NonNull String reference) throws IOException;
     }
 
     // Constants
 
     private static java.util.Locale DEF_LOCAL = java.util.Locale.getDefault();
 
+    /** Maximum number of loaded json documents of children kept in memory. */
+    private static final int MAX_SHARDS = 16;
+
+    /**
+     * Number of children of a node whose children are in a json document not loaded yet. Only
+     * its sign is used, to display the node as having children.
+     */
+    private static final int UNLOADED_CHILD_COUNT = Integer.MAX_VALUE;
+
     // Attributes
 
     private final Context mContext;
@@ -109,6 +181,7 @@ public class JSonPickerDialog extends ListPickerDialogBase implements PickerInte
     private final String mSubTitleMask;
     private final CharSequence mBackItemTitle;
     private final JSONObject mRootNode;
+    private final PickerExecutors.ListenableTask<JSonTree> mRootTree;
     private final int mSortBy;
     private final int mSortOrder;
     private final OnSingleChoiceValidationListener<JSONObject> mOnSingleChoiceValidationListener;
@@ -117,7 +190,15 @@ public class JSonPickerDialog extends ListPickerDialogBase implements PickerInte
     private final boolean mTitleNodeNameDefined;
     private final boolean mSubTitleNodeNameDefined;
     private final boolean mChildrenNodeNameDefined;
-    private final Comparator<JSONItem> mSorter;
+    private final JSonFieldPath[] mPaths;
+    private final boolean mSearchEnabled;
+    private final PickerExecutors.ListenableTask<JSonSearchIndex> mSearchIndex;
+    private final AtomicInteger mSearchGeneration = new AtomicInteger();
+    private final ShardLoader mShardLoader;
+    private final boolean mShardsEnabled;
+    private final LruCache<String, JSonTree> mShards = new LruCache<>(MAX_SHARDS);
+    private int mShardGeneration = 0;
+    private boolean mWaitingRootTree = false;
 
     /**
      * Create a list picker dialog.
@@ -140,6 +221,7 @@ public class JSonPickerDialog extends ListPickerDialogBase implements PickerInte
                 (builder.mSubTitleMask != null) ? builder.mSubTitleMask.toString() : "";
         this.mBackItemTitle = builder.mBackItemTitle;
         this.mRootNode = builder.mRootNode;
+        this.mRootTree = builder.getRootTree();
         this.mSortBy = builder.mSortBy;
         this.mSortOrder = builder.mSortOrder;
         this.mOnSingleChoiceValidationListener = builder.mOnSingleChoiceValidationListener;
@@ -150,130 +232,15 @@ public class JSonPickerDialog extends ListPickerDialogBase implements PickerInte
         this.mTitleNodeNameDefined = (!TextUtils.isEmpty(this.mTitleNodeName));
         this.mSubTitleNodeNameDefined = (!TextUtils.isEmpty(this.mSubTitleNodeName));
         this.mChildrenNodeNameDefined = (!TextUtils.isEmpty(this.mChildrenNodeName));
+        this.mPaths = builder.mPaths.clone();
 
-        this.mSorter = createComparator(this);
-    }
-
-    /**
-     * Create comparator for sort objects in list.
-     *
-     * @return A comparator object for sort list.
-     */
-    private static Comparator<JSONItem> createComparator(final JSonPickerDialog dialog) {
-        if (dialog.mSortOrder == JSonPickerDialog.SORT_ORDER_DISABLE) return null;
-
-        final Comparator<JSONItem> comparator;
-
-        final int reversed = ((dialog.mSortOrder == JSonPickerDialog.SORT_ORDER_REVERSE) ? -1 : 1);
-
-        if (dialog.mSortBy == JSonPickerDialog.SORT_BY_HAVE_CHILDREN) {
-
-            comparator =
-                    new Comparator<JSONItem>() {
-                        @Override
-                        public int compare(JSONItem lht, JSONItem rht) {
-                            try {
-                                if (dialog.mChildrenNodeNameDefined) {
-                                    boolean lhtHaveChildren =
-                                            (lht.object.has(dialog.mChildrenNodeName)
-                                                    && lht.object
-                                                                    .getJSONArray(
-                                                                            dialog.mChildrenNodeName)
-                                                                    .length()
-                                                            > 0);
-
-                                    boolean rhtHaveChildren =
-                                            (rht.object.has(dialog.mChildrenNodeName)
-                                                    && rht.object
-                                                                    .getJSONArray(
-                                                                            dialog.mChildrenNodeName)
-                                                                    .length()
-                                                            > 0);
-
-                                    if (lhtHaveChildren && !rhtHaveChildren) return -1 * reversed;
-                                    if (!lhtHaveChildren && rhtHaveChildren) return reversed;
-                                }
-
-                                if (dialog.mTitleNodeNameDefined) {
-                                    String lhtTitle =
-                                            (lht.object.has(dialog.mTitleNodeName)
-                                                    ? lht.object.getString(dialog.mTitleNodeName)
-                                                    : "");
-                                    String rhtTitle =
-                                            (rht.object.has(dialog.mTitleNodeName)
-                                                    ? rht.object.getString(dialog.mTitleNodeName)
-                                                    : "");
-
-                                    if (!lhtTitle.equals(rhtTitle))
-                                        return lhtTitle.compareToIgnoreCase(rhtTitle) * reversed;
-                                }
-
-                                if (dialog.mSubTitleNodeNameDefined) {
-                                    String lhtSubTitle =
-                                            (lht.object.has(dialog.mSubTitleNodeName)
-                                                    ? lht.object.getString(dialog.mSubTitleNodeName)
-                                                    : "");
-                                    String rhtSubTitle =
-                                            (rht.object.has(dialog.mSubTitleNodeName)
-                                                    ? rht.object.getString(dialog.mSubTitleNodeName)
-                                                    : "");
-
-                                    if (!lhtSubTitle.equals(rhtSubTitle))
-                                        return lhtSubTitle.compareToIgnoreCase(rhtSubTitle)
-                                                * reversed;
-                                }
-                            } catch (Exception Err) {
-                                Log.e("JSonPicker.comparator", "Exception: " + Err.toString());
-                            }
-
-                            // Same as above but order of occurrence is different.
-                            return -1 * reversed;
-                        }
-                    };
-        } else {
-            comparator =
-                    new Comparator<JSONItem>() {
-                        @Override
-                        public int compare(JSONItem lht, JSONItem rht) {
-                            try {
-                                if (dialog.mTitleNodeNameDefined) {
-                                    String lhtTitle =
-                                            (lht.object.has(dialog.mTitleNodeName)
-                                                    ? lht.object.getString(dialog.mTitleNodeName)
-                                                    : "");
-                                    String rhtTitle =
-                                            (rht.object.has(dialog.mTitleNodeName)
-                                                    ? rht.object.getString(dialog.mTitleNodeName)
-                                                    : "");
-
-                                    if (!lhtTitle.equals(rhtTitle))
-                                        return lhtTitle.compareToIgnoreCase(rhtTitle) * reversed;
-                                }
-
-                                if (dialog.mSubTitleNodeNameDefined) {
-                                    String lhtSubTitle =
-                                            (lht.object.has(dialog.mSubTitleNodeName)
-                                                    ? lht.object.getString(dialog.mSubTitleNodeName)
-                                                    : "");
-                                    String rhtSubTitle =
-                                            (rht.object.has(dialog.mSubTitleNodeName)
-                                                    ? rht.object.getString(dialog.mSubTitleNodeName)
-                                                    : "");
-
-                                    if (!lhtSubTitle.equals(rhtSubTitle))
-                                        return lhtSubTitle.compareToIgnoreCase(rhtSubTitle)
-                                                * reversed;
-                                }
-                            } catch (Exception Err) {
-                                Log.e("JSonPicker.comparator", "Exception: " + Err.toString());
-                            }
-
-                            return -1 * reversed;
-                        }
-                    };
-        }
+        this.mShardLoader = builder.mShardLoader;
+        this.mShardsEnabled =
+                (this.mShardLoader != null
+                        && this.mPaths[JSonTree.CHILDREN_REFERENCE_FIELD] != null);
 
-        return comparator;
+        this.mSearchEnabled = builder.mSearchEnabled;
+        this.mSearchIndex = (this.mSearchEnabled) ? this.startSearchIndex(builder.mRootFile) : null;
     }
 
     /* ---- Derived Methods ---- */
@@ -323,52 +290,25 @@ public class JSonPickerDialog extends ListPickerDialogBase implements PickerInte
      */
     @Override
     protected Collection<PickerItem> getChildrenFor(ItemBase item) {
-        ArrayList<PickerItem> itemList = new ArrayList<>();
-
         if (item != null && this.mTitleNodeNameDefined && this.mChildrenNodeNameDefined) {
             Object itemTag = item.getTag();
 
             if (itemTag instanceof JSONItem) {
                 JSONItem jsonTag = (JSONItem) itemTag;
 
-                if (jsonTag.object.has(this.mChildrenNodeName)) {
-                    try {
-                        ArrayList<JSONItem> sortedObjects = new ArrayList<>();
-
-                        JSONArray children = jsonTag.object.getJSONArray(this.mChildrenNodeName);
-
-                        for (int index = 0; index < children.length(); index++) {
-                            try {
-                                JSONObject jsonChild = children.getJSONObject(index);
-
-                                if (jsonChild.has(this.mTitleNodeName))
-                                    sortedObjects.add(new JSONItem(jsonChild, jsonTag));
-                            } catch (Exception Err) {
-                                Log.e("JSonPicker.childrenFor", "Exception: " + Err.toString());
-                            }
-                        }
+                // Off the main thread, a json document of children is read in place.
 
-                        if (this.mSorter != null) Collections.sort(sortedObjects, this.mSorter);
+                JSONItem source =
+                        this.getChildrenSource(
+                                jsonTag, Looper.myLooper() != Looper.getMainLooper());
 
-                        for (JSONItem newObject : sortedObjects) {
-                            PickerItem newItem = this.createItem(newObject);
+                if (source != null) return this.getChildren(jsonTag, source);
 
-                            if (newItem != null) itemList.add(newItem);
-                        }
-                    } catch (Exception Err) {
-                        Log.e("JSonPicker.childrenFor", "Exception: " + Err.toString());
-                    }
-                } else {
-                    Toast.makeText(
-                                    this.mContext,
-                                    R.string.json_picker_dialog_error_dir_access,
-                                    Toast.LENGTH_SHORT)
-                            .show();
-                }
+                this.loadShard(item, jsonTag);
             }
         }
 
-        return itemList;
+        return new ArrayList<>();
     }
 
     /**
@@ -378,10 +318,29 @@ public class JSonPickerDialog extends ListPickerDialogBase implements PickerInte
      */
     @Override
     protected ItemBase getRootItem() {
-        if (this.mRootNode != null && this.mTitleNodeNameDefined && this.mChildrenNodeNameDefined) {
-            if (this.mRootNode.has(this.mTitleNodeName)
-                    && this.mRootNode.has(this.mChildrenNodeName)) {
-                return this.createItem(new JSONItem(this.mRootNode, null));
+        if (this.mTitleNodeNameDefined && this.mChildrenNodeNameDefined) {
+            if (this.mRootTree != null && !this.mRootTree.isDone()) {
+                // The root level is displayed once the json tree is parsed, see onRootTreeParsed().
+
+                this.waitForRootTree();
+
+                return null;
+            }
+
+            JSONItem rootItem = null;
+
+            JSonTree rootTree = this.getRootTree();
+
+            if (rootTree != null && rootTree.size() > 0) {
+                rootItem = new JSONItem(rootTree, 0, null);
+            } else if (this.mRootNode != null) {
+                rootItem = new JSONItem(this.mRootNode, null);
+            }
+
+            if (rootItem != null
+                    && this.getTitle(rootItem) != null
+                    && this.getChildCount(rootItem) >= 0) {
+                return this.createItem(rootItem);
             }
         }
 
@@ -409,36 +368,13 @@ public class JSonPickerDialog extends ListPickerDialogBase implements PickerInte
                 JSONItem jsonTag = (JSONItem) itemTag;
 
                 try {
-                    String tTitle = jsonTag.object.getString(this.mTitleNodeName);
-
-                    StringBuilder subTitle = new StringBuilder();
-
-                    JSONItem parent = ((JSONItem) itemTag);
-
-                    while (parent != null) {
-                        if (parent.parent != null) {
-                            if (this.mSubTitleNodeNameDefined) {
-                                if (parent.object.has(this.mSubTitleNodeName)) {
-                                    subTitle.insert(
-                                            0,
-                                            "/" + parent.object.getString(this.mSubTitleNodeName));
-                                } else {
-                                    subTitle.insert(
-                                            0, "/" + parent.object.getString(this.mTitleNodeName));
-                                }
-                            } else {
-                                subTitle.insert(
-                                        0, "/" + parent.object.getString(this.mTitleNodeName));
-                            }
-                        }
+                    String tTitle = this.getTitle(jsonTag);
 
-                        parent = parent.parent;
-                    }
+                    String subTitle = this.getBreadcrumb(jsonTag);
 
-                    if (subTitle.length() == 0) subTitle.append("/");
+                    if (subTitle.isEmpty()) subTitle = "/";
 
-                    return new ItemBase(
-                            tTitle, subTitle.toString(), R.drawable.ic_json_picker_header);
+                    return new ItemBase(tTitle, subTitle, R.drawable.ic_json_picker_header);
                 } catch (Exception Err) {
                     Log.e("JSonPicker.getTitleItem", "Exception: " + Err.toString());
                 }
@@ -458,6 +394,75 @@ public class JSonPickerDialog extends ListPickerDialogBase implements PickerInte
         return (this.mOnMultiChoiceValidationListener != null);
     }
 
+    /**
+     * Indicates if the search view is displayed under the toolbar.
+     *
+     * @return a boolean value who indicates if the search view is displayed.
+     */
+    @Override
+    protected boolean isSearchEnabled() {
+        return this.mSearchEnabled;
+    }
+
+    /**
+     * Called on each change of the search query. The previous search is cancelled, and the nodes
+     * matching the query are searched in the index, in background.
+     *
+     * @param query new search query, trimmed.
+     */
+    @Override
+    protected void onSearchQueryChanged(@NonNull final String query) {
+        final int generation = this.mSearchGeneration.incrementAndGet();
+
+        if (query.isEmpty() || this.mSearchIndex == null) return;
+
+        // No thread waits for the index: the search starts once it is built, if still current.
+
+        this.mSearchIndex.whenDone(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        if (JSonPickerDialog.this.mSearchGeneration.get() != generation) return;
+
+                        PickerExecutors.io()
+                                .execute(
+                                        new Runnable() {
+                                            @Override
+                                            public void run() {
+                                                JSonPickerDialog.this.searchNodes(
+                                                        query, generation);
+                                            }
+                                        });
+                    }
+                });
+    }
+
+    /**
+     * Called on item long click. A long click on a search result displays the level of the node.
+     *
+     * @param item item long clicked.
+     * @return true if the long click has been consumed.
+     */
+    @Override
+    protected boolean onItemLongClick(ItemBase item) {
+        if (item == null || !(item.getTag() instanceof JSONItem)) return false;
+
+        JSONItem jsonItem = (JSONItem) item.getTag();
+
+        ItemBase currentItem = this.getCurrentItem();
+
+        if (jsonItem.parent == null
+                || (currentItem != null && currentItem.getTag() == jsonItem.parent)) return false;
+
+        PickerItem parentItem = this.createItem(jsonItem.parent);
+
+        if (parentItem == null) return false;
+
+        this.navigateTo(parentItem);
+
+        return true;
+    }
+
     /**
      * Called for validation of the selection.
      *
@@ -472,7 +477,7 @@ public class JSonPickerDialog extends ListPickerDialogBase implements PickerInte
                 Object itemTag = item.getTag();
 
                 if (itemTag instanceof JSONItem) {
-                    result.add(((JSONItem) itemTag).object);
+                    result.add(this.toJSONObject((JSONItem) itemTag));
                 }
             }
 
@@ -487,6 +492,550 @@ public class JSonPickerDialog extends ListPickerDialogBase implements PickerInte
 
     /* ---- Privates Methods ---- */
 
+    /**
+     * Start indexing the words of all the nodes in background, once the json tree is parsed. The
+     * index of a json file is saved, and loaded again as long as the file is unchanged.
+     *
+     * @param rootFile root json file, or null.
+     * @return the future index.
+     */
+    private PickerExecutors.ListenableTask<JSonSearchIndex> startSearchIndex(
+            @Nullable final File rootFile) {
+        final String configKey =
+                this.mTitleNodeName
+                        + '\u0000'
+                        + this.mSubTitleNodeName
+                        + '\u0000'
+                        + this.mChildrenNodeName;
+
+        final PickerExecutors.ListenableTask<JSonSearchIndex> task =
+                new PickerExecutors.ListenableTask<>(
+                        new Callable<JSonSearchIndex>() {
+                            @Override
+                            public JSonSearchIndex call() {
+                                return JSonPickerDialog.this.buildSearchIndex(rootFile, configKey);
+                            }
+                        });
+
+        if (this.mRootTree == null) {
+            PickerExecutors.io().execute(task);
+        } else {
+            // Not queued behind the parsing, which would hold an io thread waiting for it.
+
+            this.mRootTree.whenDone(
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            PickerExecutors.io().execute(task);
+                        }
+                    });
+        }
+
+        return task;
+    }
+
+    /**
+     * Build or load the index of the words of all the nodes. Must be called from a background
+     * thread.
+     *
+     * @param rootFile root json file, or null.
+     * @param configKey key of the names of the fields.
+     * @return an index, or null if there is no root node.
+     */
+    private @Nullable JSonSearchIndex buildSearchIndex(
+            @Nullable File rootFile, @NonNull String configKey) {
+        if (!this.mTitleNodeNameDefined || !this.mChildrenNodeNameDefined) return null;
+
+        JSonTree rootTree = this.getRootTree();
+
+        if (rootTree != null) {
+            JSonSearchIndex index =
+                    (rootFile != null)
+                            ? JSonSearchIndex.load(this.mContext, configKey, rootFile, rootTree)
+                            : null;
+
+            if (index == null) {
+                index = JSonSearchIndex.build(rootTree);
+
+                if (rootFile != null) index.save(this.mContext, configKey, rootFile);
+            }
+
+            return index;
+        }
+
+        if (this.mRootNode != null)
+            return JSonSearchIndex.build(this.mRootNode, this.mPaths);
+
+        return null;
+    }
+
+    /**
+     * Search the nodes matching a query and display them, each one with the path of its parent.
+     * Must be called from a background thread.
+     *
+     * @param query search query.
+     * @param generation generation of this search.
+     */
+    private void searchNodes(@NonNull String query, final int generation) {
+        try {
+            JSonSearchIndex index = this.mSearchIndex.get();
+
+            if (index == null) return;
+
+            int[] nodes = index.search(query, this.mSearchGeneration, generation);
+
+            if (nodes == null || this.mSearchGeneration.get() != generation) return;
+
+            final ArrayList<PickerItem> items = new ArrayList<>(nodes.length);
+
+            for (int node : nodes) {
+                JSONItem jsonItem = index.createItem(node);
+
+                String breadcrumb =
+                        (jsonItem.parent != null) ? this.getBreadcrumb(jsonItem.parent) : "";
+
+                PickerItem item =
+                        this.createItem(
+                                jsonItem,
+                                this.getTitle(jsonItem),
+                                (breadcrumb.isEmpty()) ? "/" : breadcrumb,
+                                (this.mChildrenNodeNameDefined)
+                                        ? this.getChildCount(jsonItem)
+                                        : -1);
+
+                if (item != null) items.add(item);
+            }
+
+            PickerExecutors.runOnUiThread(
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            if (JSonPickerDialog.this.mSearchGeneration.get() == generation)
+                                JSonPickerDialog.this.showSearchResults(items);
+                        }
+                    });
+        } catch (Exception Err) {
+            Log.e("JSonPicker.searchNodes", "Exception: " + Err.toString());
+        }
+    }
+
+    /** Display the root level once the json tree is parsed, without blocking the main thread. */
+    private void waitForRootTree() {
+        if (this.mWaitingRootTree) return;
+
+        this.mWaitingRootTree = true;
+
+        this.mRootTree.whenDone(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        PickerExecutors.postOnUiThread(
+                                new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        JSonPickerDialog.this.onRootTreeParsed();
+                                    }
+                                });
+                    }
+                });
+    }
+
+    /** Called on the main thread once the json tree is parsed. Displays the root level if shown. */
+    private void onRootTreeParsed() {
+        this.mWaitingRootTree = false;
+
+        if (this.isShowing()) this.reload();
+    }
+
+    /**
+     * Get the json tree of the root json text or file, waiting for the end of its parsing.
+     *
+     * @return a json tree, or null if there is no root json text or file or it cannot be parsed.
+     */
+    private @Nullable JSonTree getRootTree() {
+        if (this.mRootTree == null) return null;
+
+        try {
+            return this.mRootTree.get();
+        } catch (Exception Err) {
+            Log.e("JSonPicker.getRootTree", "Exception: " + Err.toString());
+        }
+
+        return null;
+    }
+
+    /**
+     * Get the title of a node.
+     *
+     * @param jsonItem a json node.
+     * @return a string contains the title, or null if the node has no title.
+     */
+    private @Nullable String getTitle(@NonNull JSONItem jsonItem) {
+        if (jsonItem.tree != null) return jsonItem.tree.getTitle(jsonItem.node);
+
+        return this.getString(jsonItem.object, JSonTree.TITLE_FIELD);
+    }
+
+    /**
+     * Get the sub-title of a node.
+     *
+     * @param jsonItem a json node.
+     * @return a string contains the sub-title, or null if the node has no sub-title.
+     */
+    private @Nullable String getSubTitle(@NonNull JSONItem jsonItem) {
+        if (jsonItem.tree != null) return jsonItem.tree.getSubTitle(jsonItem.node);
+
+        return this.getString(jsonItem.object, JSonTree.SUB_TITLE_FIELD);
+    }
+
+    /**
+     * Get the number of children of a node, read from the loaded json document of its children
+     * if they are not in the node.
+     *
+     * @param jsonItem a json node.
+     * @return the number of children, UNLOADED_CHILD_COUNT if the json document of its children
+     *     is not loaded yet, or -1 if the node has no children field nor children reference.
+     */
+    private int getChildCount(@NonNull JSONItem jsonItem) {
+        int count = this.getInlineChildCount(jsonItem);
+
+        if (count >= 0 || !this.mShardsEnabled) return count;
+
+        String reference = this.getChildrenReference(jsonItem);
+
+        if (reference == null) return -1;
+
+        JSonTree shard = this.mShards.get(reference);
+
+        return (shard != null) ? shard.getChildCount(0) : UNLOADED_CHILD_COUNT;
+    }
+
+    /**
+     * Get the children reference of a node.
+     *
+     * @param jsonItem a json node.
+     * @return a string contains the reference, or null if the node has no children reference.
+     */
+    private @Nullable String getChildrenReference(@NonNull JSONItem jsonItem) {
+        if (jsonItem.tree != null) return jsonItem.tree.getChildrenReference(jsonItem.node);
+
+        return this.getString(jsonItem.object, JSonTree.CHILDREN_REFERENCE_FIELD);
+    }
+
+    /**
+     * Get the number of children in the children field of a node.
+     *
+     * @param jsonItem a json node.
+     * @return the number of children, or -1 if the node has no children field.
+     */
+    private int getInlineChildCount(@NonNull JSONItem jsonItem) {
+        if (jsonItem.tree != null) return jsonItem.tree.getChildCount(jsonItem.node);
+
+        JSonFieldPath path = this.mPaths[JSonTree.CHILDREN_FIELD];
+
+        Object children = (path != null) ? path.get(jsonItem.object) : null;
+
+        if (children == null) return -1;
+
+        return (children instanceof JSONArray) ? ((JSONArray) children).length() : 0;
+    }
+
+    /**
+     * Get the children of a node which have a title, projected once into a level: their title,
+     * sub-title and number of children are read here and nowhere else.
+     *
+     * @param jsonItem a json node, parent of the children.
+     * @param source the node holding the children in its children field, the node itself or the
+     *     root node of the json document of its children.
+     * @return a level, in the order of the json.
+     */
+    private JSonLevel getLevel(@NonNull JSONItem jsonItem, @NonNull JSONItem source)
+            throws Exception {
+        if (source.tree != null) {
+            JSonTree tree = source.tree;
+
+            int count = tree.getChildCount(source.node);
+
+            JSonLevel level = new JSonLevel(Math.max(count, 0));
+
+            for (int index = 0; index < count; index++) {
+                int child = tree.getChild(source.node, index);
+
+                String title = tree.getTitle(child);
+
+                if (title != null) {
+                    JSONItem childItem = new JSONItem(tree, child, jsonItem);
+
+                    level.add(
+                            childItem,
+                            title,
+                            (this.mSubTitleNodeNameDefined) ? tree.getSubTitle(child) : null,
+                            this.getChildCount(childItem));
+                }
+            }
+
+            return level;
+        }
+
+        Object children = this.mPaths[JSonTree.CHILDREN_FIELD].get(source.object);
+
+        if (!(children instanceof JSONArray)) return new JSonLevel(0);
+
+        JSONArray jsonChildren = (JSONArray) children;
+
+        JSonLevel level = new JSonLevel(jsonChildren.length());
+
+        for (int index = 0; index < jsonChildren.length(); index++) {
+            try {
+                JSONObject jsonChild = jsonChildren.optJSONObject(index);
+
+                if (jsonChild == null) continue;
+
+                JSONItem childItem = new JSONItem(jsonChild, jsonItem);
+
+                String title = this.getTitle(childItem);
+
+                if (title != null)
+                    level.add(
+                            childItem,
+                            title,
+                            (this.mSubTitleNodeNameDefined) ? this.getSubTitle(childItem) : null,
+                            (this.mChildrenNodeNameDefined) ? this.getChildCount(childItem) : -1);
+            } catch (Exception Err) {
+                Log.e("JSonPicker.childrenFor", "Exception: " + Err.toString());
+            }
+        }
+
+        return level;
+    }
+
+    /**
+     * Create the items of the children of a node.
+     *
+     * @param jsonItem a json node, parent of the children.
+     * @param source the node holding the children in its children field, the node itself or the
+     *     root node of the json document of its children.
+     * @return a list of PickerItem objects, in display order.
+     */
+    private @NonNull ArrayList<PickerItem> getChildren(
+            @NonNull JSONItem jsonItem, @NonNull JSONItem source) {
+        ArrayList<PickerItem> itemList = new ArrayList<>();
+
+        if (this.getInlineChildCount(source) < 0) {
+            this.showMessage(R.string.json_picker_dialog_error_dir_access);
+
+            return itemList;
+        }
+
+        try {
+            JSonLevel level = this.getLevel(jsonItem, source);
+
+            if (this.mSortOrder != JSonPickerDialog.SORT_ORDER_DISABLE)
+                level.sort(
+                        this.mSortBy == JSonPickerDialog.SORT_BY_HAVE_CHILDREN,
+                        this.mSubTitleNodeNameDefined,
+                        this.mSortOrder == JSonPickerDialog.SORT_ORDER_REVERSE);
+
+            itemList.ensureCapacity(level.size());
+
+            for (int position = 0; position < level.size(); position++) {
+                int index = level.getIndex(position);
+
+                PickerItem newItem =
+                        this.createItem(
+                                level.getItem(index),
+                                level.getTitle(index),
+                                this.formatSubTitle(level.getSubTitle(index)),
+                                level.getChildCount(index));
+
+                if (newItem != null) itemList.add(newItem);
+            }
+        } catch (Exception Err) {
+            Log.e("JSonPicker.childrenFor", "Exception: " + Err.toString());
+        }
+
+        return itemList;
+    }
+
+    /**
+     * Get the node holding the children of a node in its children field: the node itself, or
+     * the root node of the json document named by its children reference.
+     *
+     * @param jsonItem a json node.
+     * @param read true to read the json document of the children if it is not loaded, from a
+     *     background thread.
+     * @return the node holding the children, or null if the json document of the children is not
+     *     loaded.
+     */
+    private @Nullable JSONItem getChildrenSource(@NonNull JSONItem jsonItem, boolean read) {
+        if (!this.mShardsEnabled || this.getInlineChildCount(jsonItem) >= 0) return jsonItem;
+
+        String reference = this.getChildrenReference(jsonItem);
+
+        if (reference == null) return jsonItem;
+
+        JSonTree shard = (read) ? this.readShard(reference) : this.mShards.get(reference);
+
+        if (shard != null) return new JSONItem(shard, 0, null);
+
+        // A json document which cannot be read leaves the node without children.
+
+        return (read) ? jsonItem : null;
+    }
+
+    /**
+     * Load in background the json document of the children of a node, and display the children
+     * once loaded. Must be called from the main thread.
+     *
+     * @param item item of the node.
+     * @param jsonItem a json node, whose children are in a json document not loaded yet.
+     */
+    private void loadShard(@NonNull final ItemBase item, @NonNull final JSONItem jsonItem) {
+        final int generation = ++this.mShardGeneration;
+
+        final String reference = this.getChildrenReference(jsonItem);
+
+        if (reference == null) return;
+
+        PickerExecutors.io()
+                .execute(
+                        new Runnable() {
+                            @Override
+                            public void run() {
+                                JSonTree shard = JSonPickerDialog.this.readShard(reference);
+
+                                if (shard == null) {
+                                    JSonPickerDialog.this.showMessage(
+                                            R.string.json_picker_dialog_error_dir_access);
+
+                                    return;
+                                }
+
+                                // The level is built and sorted here, only the items are posted.
+
+                                final ArrayList<PickerItem> items =
+                                        JSonPickerDialog.this.getChildren(
+                                                jsonItem, new JSONItem(shard, 0, null));
+
+                                PickerExecutors.runOnUiThread(
+                                        new Runnable() {
+                                            @Override
+                                            public void run() {
+                                                JSonPickerDialog.this.onShardLoaded(
+                                                        item, generation, items);
+                                            }
+                                        });
+                            }
+                        });
+    }
+
+    /**
+     * Called on the main thread once the children of a node are read from their json document.
+     *
+     * @param item item of the node.
+     * @param generation generation of the loading.
+     * @param items children of the node, in display order.
+     */
+    private void onShardLoaded(
+            @NonNull ItemBase item, int generation, @NonNull ArrayList<PickerItem> items) {
+        if (generation != this.mShardGeneration) return;
+
+        this.replaceChildren(item, items);
+    }
+
+    /**
+     * Get the json tree of a json document of children, read through the shard loader and parsed
+     * on first call, then kept in a bounded cache. Must be called from a background thread.
+     *
+     * @param reference children reference of a node.
+     * @return a json tree, or null if the document cannot be read.
+     */
+    private @Nullable JSonTree readShard(@NonNull String reference) {
+        JSonTree shard = this.mShards.get(reference);
+
+        if (shard != null) return shard;
+
+        try {
+            shard = CompactJSonTree.parse(this.mShardLoader.openShard(reference), this.mPaths);
+
+            this.mShards.put(reference, shard);
+
+            return shard;
+        } catch (Exception Err) {
+            Log.e("JSonPicker.readShard", "Exception: " + Err.toString());
+        }
+
+        return null;
+    }
+
+    /**
+     * Get the path of a node from the root, each node named by its sub-title or else its title.
+     * The path is cached on the node, and built from the cached path of its parent.
+     *
+     * @param jsonItem a json node.
+     * @return a string contains the path, empty for the root node.
+     */
+    private @NonNull String getBreadcrumb(@NonNull JSONItem jsonItem) {
+        if (jsonItem.breadcrumb == null) {
+            if (jsonItem.parent == null) {
+                jsonItem.breadcrumb = "";
+            } else {
+                String name = (this.mSubTitleNodeNameDefined) ? this.getSubTitle(jsonItem) : null;
+
+                if (name == null) name = this.getTitle(jsonItem);
+
+                jsonItem.breadcrumb = this.getBreadcrumb(jsonItem.parent) + "/" + name;
+            }
+        }
+
+        return jsonItem.breadcrumb;
+    }
+
+    /**
+     * Get a node as a json object.
+     *
+     * @param jsonItem a json node.
+     * @return the json object of the node, or a json object holding the title, the sub-title and
+     *     the id of a node of a json tree, and the reference of its json document if it has been
+     *     loaded through the shard loader.
+     */
+    private JSONObject toJSONObject(@NonNull JSONItem jsonItem) {
+        if (jsonItem.tree == null) return jsonItem.object;
+
+        JSONObject object = jsonItem.tree.toJSONObject(jsonItem.node);
+
+        // The node referencing the json document is the first ancestor out of its tree.
+
+        JSONItem ancestor = jsonItem.parent;
+
+        while (ancestor != null && ancestor.tree == jsonItem.tree) ancestor = ancestor.parent;
+
+        String reference = (ancestor != null) ? this.getChildrenReference(ancestor) : null;
+
+        if (reference != null) {
+            try {
+                object.put(SHARD_REFERENCE_NAME, reference);
+            } catch (Exception Err) {
+                Log.e("JSonPicker.toJSONObject", "Exception: " + Err.toString());
+            }
+        }
+
+        return object;
+    }
+
+    /**
+     * Get a field of a json object as a string.
+     *
+     * @param object a json object.
+     * @param field the field, TITLE_FIELD or SUB_TITLE_FIELD.
+     * @return a string contains the value of the field, or null if the object has no such field.
+     */
+    private @Nullable String getString(@NonNull JSONObject object, int field) {
+        JSonFieldPath path = this.mPaths[field];
+
+        return (path != null) ? path.getString(object) : null;
+    }
+
     /**
      * Create picker item corresponding to the specified file.
      *
@@ -494,42 +1043,58 @@ public class JSonPickerDialog extends ListPickerDialogBase implements PickerInte
      * @return a picker item corresponding to the specified file.
      */
     private PickerItem createItem(@NonNull JSONItem jsonItem) {
+        return this.createItem(
+                jsonItem,
+                this.getTitle(jsonItem),
+                this.formatSubTitle(
+                        (this.mSubTitleNodeNameDefined) ? this.getSubTitle(jsonItem) : null),
+                (this.mChildrenNodeNameDefined) ? this.getChildCount(jsonItem) : -1);
+    }
+
+    /**
+     * Format the sub-title of a node with the sub-title mask.
+     *
+     * @param nodeSubTitle sub-title of the node, or null.
+     * @return a string contains the displayed sub-title, empty if the node has no sub-title.
+     */
+    private @NonNull String formatSubTitle(@Nullable String nodeSubTitle) {
+        if (!this.mSubTitleNodeNameDefined || nodeSubTitle == null) return "";
+
+        if (!TextUtils.isEmpty(this.mSubTitleMask) && this.mSubTitleMask.contains("%s"))
+            return String.format(DEF_LOCAL, this.mSubTitleMask, nodeSubTitle);
+
+        return nodeSubTitle;
+    }
+
+    /**
+     * Create picker item corresponding to the specified node, from its projected fields.
+     *
+     * @param jsonItem a json object.
+     * @param title title of the node, or null.
+     * @param subTitle displayed sub-title of the node.
+     * @param childCount number of children of the node, or -1 if it has no children field.
+     * @return a picker item corresponding to the specified node.
+     */
+    private PickerItem createItem(
+            @NonNull JSONItem jsonItem,
+            @Nullable String title,
+            @NonNull String subTitle,
+            int childCount) {
         if (this.mTitleNodeNameDefined) {
             // Mode Sélectionnable ?
 
             boolean isPickable = !this.mOneClickMode;
 
             try {
-                String title = jsonItem.object.getString(this.mTitleNodeName);
+                if (title == null) return null;
 
                 if (!TextUtils.isEmpty(this.mTitleMask) && this.mTitleMask.contains("%s"))
                     title = String.format(DEF_LOCAL, this.mTitleMask, title);
 
-                String subTitle = "";
-
-                if (this.mSubTitleNodeNameDefined) {
-                    if (jsonItem.object.has(this.mSubTitleNodeName)) {
-                        subTitle = jsonItem.object.getString(this.mSubTitleNodeName);
-
-                        if (!TextUtils.isEmpty(this.mSubTitleMask)
-                                && this.mSubTitleMask.contains("%s"))
-                            subTitle = String.format(DEF_LOCAL, this.mSubTitleMask, subTitle);
-                    }
-                }
-
                 boolean hasChildren = false;
 
                 if (this.mChildrenNodeNameDefined) {
-                    if (jsonItem.object.has(this.mChildrenNodeName)) {
-                        try {
-                            JSONArray jsonArray =
-                                    jsonItem.object.getJSONArray(this.mChildrenNodeName);
-
-                            hasChildren = (jsonArray.length() > 0);
-                        } catch (Exception Err) {
-                            Log.e("JSonPicker.createItem", "Exception: " + Err.toString());
-                        }
-                    }
+                    hasChildren = (childCount > 0);
 
                     if (hasChildren) {
                         if (this.mSelectionType == JSonPickerDialog.ALL_NODE_SELECT)
@@ -584,14 +1149,23 @@ public class JSonPickerDialog extends ListPickerDialogBase implements PickerInte
         private CharSequence mTitleNodeName;
         private CharSequence mSubTitleNodeName;
         private CharSequence mChildrenNodeName;
+        private final JSonFieldPath[] mPaths = new JSonFieldPath[4];
         private CharSequence mTitleMask;
         private CharSequence mSubTitleMask;
         private CharSequence mBackItemTitle;
         private JSONObject mRootNode;
+        private String mRootText;
+        private Reader mRootReader;
+        private File mRootFile;
+        private boolean mSearchEnabled = false;
+        private boolean mSnapshotEnabled = false;
+        private ShardLoader mShardLoader;
+        private PickerExecutors.ListenableTask<JSonTree> mRootTree;
         private int mSortBy = JSonPickerDialog.SORT_BY_TITLE;
         private int mSortOrder = JSonPickerDialog.SORT_ORDER_DISABLE;
         private OnSingleChoiceValidationListener<JSONObject> mOnSingleChoiceValidationListener;
         private OnMultiChoiceValidationListener<JSONObject> mOnMultiChoiceValidationListener;
+        private JSonPickerDialog mPrefetchedDialog = null;
 
         /**
          * Creates a builder for a json picker dialog that uses the default dialog dialog theme.
@@ -771,32 +1345,81 @@ public class JSonPickerDialog extends ListPickerDialogBase implements PickerInte
         }
 
         /**
-         * Sets name of json node contains title item.
+         * Sets name of json node contains title item. The name can be the path of a nested
+         * field, dotted like "meta.label.en" or JSONPath-style like "$.meta['label'].en" or
+         * "names[0]", compiled once here and read lazily for each displayed node. A dot now
+         * separates the fields of a path, so a field name containing a dot is written between
+         * brackets and quotes, like "['a.b']". The path cannot be a strict prefix of the path of
+         * another field, nor the other way round, like "meta" and "meta.label".
          *
          * @return this builder object to allow for chaining of calls to set methods
+         * @throws IllegalArgumentException if the path is not valid, or overlaps the path of
+         *     another field.
          */
         public Builder setTitleNodeName(@NonNull CharSequence titleNodeName) {
+            this.setPath(JSonTree.TITLE_FIELD, titleNodeName);
             this.mTitleNodeName = titleNodeName;
+            this.mRootTree = null;
             return this;
         }
 
         /**
-         * Sets name of json node contains sub-title item.
+         * Sets name of json node contains sub-title item. The name can be the path of a nested
+         * field, like the title name.
          *
          * @return this builder object to allow for chaining of calls to set methods
+         * @throws IllegalArgumentException if the path is not valid, or overlaps the path of
+         *     another field.
          */
         public Builder setSubTitleNodeName(@Nullable CharSequence subTitleNodeName) {
+            this.setPath(JSonTree.SUB_TITLE_FIELD, subTitleNodeName);
             this.mSubTitleNodeName = subTitleNodeName;
+            this.mRootTree = null;
             return this;
         }
 
         /**
-         * Sets name of json node contains child nodes.
+         * Sets name of json node contains child nodes. The name can be the path of a nested
+         * field, like the title name.
          *
          * @return this builder object to allow for chaining of calls to set methods
+         * @throws IllegalArgumentException if the path is not valid, or overlaps the path of
+         *     another field.
          */
         public Builder setChildrenNodeName(@NonNull CharSequence childrenNodeName) {
+            this.setPath(JSonTree.CHILDREN_FIELD, childrenNodeName);
             this.mChildrenNodeName = childrenNodeName;
+            this.mRootTree = null;
+            return this;
+        }
+
+        /**
+         * Sets name of json node contains the reference of the json document holding the child
+         * nodes, for the nodes without child nodes field. The name can be the path of a nested
+         * field, like the title name. The root node of the referenced document holds the child
+         * nodes in its child nodes field. Used with a shard loader.
+         *
+         * @return this builder object to allow for chaining of calls to set methods
+         * @throws IllegalArgumentException if the path is not valid, or overlaps the path of
+         *     another field.
+         */
+        public Builder setChildrenReferenceNodeName(
+                @Nullable CharSequence childrenReferenceNodeName) {
+            this.setPath(JSonTree.CHILDREN_REFERENCE_FIELD, childrenReferenceNodeName);
+            this.mRootTree = null;
+            return this;
+        }
+
+        /**
+         * Sets the loader of the json documents referenced by the nodes. A referenced document is
+         * read and parsed in background when its node is opened, and the last loaded documents
+         * are kept in memory. Only the root json is read when the dialog is created, the search
+         * view does not search the referenced documents.
+         *
+         * @return this builder object to allow for chaining of calls to set methods
+         */
+        public Builder setShardLoader(@Nullable ShardLoader loader) {
+            this.mShardLoader = loader;
             return this;
         }
 
@@ -837,6 +1460,93 @@ public class JSonPickerDialog extends ListPickerDialogBase implements PickerInte
          */
         public Builder setRootNode(@NonNull JSONObject rootNode) {
             this.mRootNode = rootNode;
+            this.mRootText = null;
+            this.mRootReader = null;
+            this.mRootFile = null;
+            this.mRootTree = null;
+            return this;
+        }
+
+        /**
+         * Sets root json node from a json text. The text is parsed in a single pass in
+         * background when the dialog is created, only the title, sub-title and children of the
+         * nodes are kept. The picked nodes are returned as json objects holding their title,
+         * their sub-title and their id, named NODE_ID_NAME.
+         *
+         * @return this builder object to allow for chaining of calls to set methods
+         */
+        public Builder setRootJson(@NonNull CharSequence json) {
+            this.mRootNode = null;
+            this.mRootText = json.toString();
+            this.mRootReader = null;
+            this.mRootFile = null;
+            this.mRootTree = null;
+            return this;
+        }
+
+        /**
+         * Sets root json node from a reader of json text. The text is parsed in a single pass
+         * in background when the dialog is created, only the title, sub-title and children of
+         * the nodes are kept, and the reader is closed. The picked nodes are returned as json
+         * objects holding their title, their sub-title and their id, named NODE_ID_NAME.
+         *
+         * @return this builder object to allow for chaining of calls to set methods
+         */
+        public Builder setRootJson(@NonNull Reader reader) {
+            this.mRootNode = null;
+            this.mRootText = null;
+            this.mRootReader = reader;
+            this.mRootFile = null;
+            this.mRootTree = null;
+            return this;
+        }
+
+        /**
+         * Sets root json node from a json file, encoded in UTF-8, which can be far bigger than the
+         * memory. The file is memory-mapped and indexed in a single scan in background when the
+         * dialog is created, the root level is displayed once the scan ends. The titles and
+         * sub-titles are only decoded when their level is displayed. The picked nodes are returned
+         * as json objects holding their title, their sub-title and their id, named NODE_ID_NAME.
+         *
+         * @return this builder object to allow for chaining of calls to set methods
+         */
+        public Builder setRootFile(@NonNull File file) {
+            this.mRootNode = null;
+            this.mRootText = null;
+            this.mRootReader = null;
+            this.mRootFile = file;
+            this.mRootTree = null;
+            return this;
+        }
+
+        /**
+         * Show/Hide the search view. When shown, the words of the titles and sub-titles of all
+         * the nodes are indexed in background when the dialog is created, the search view
+         * displays the nodes containing words starting with the words of the query, each one
+         * with the path of its parent. A long click on a result displays the level of the node.
+         * The index of a json file is saved in the cache of the application, until the file
+         * changes. Default value is false.
+         *
+         * @return this builder object to allow for chaining of calls to set methods
+         */
+        public Builder setSearchEnabled(boolean searchEnabled) {
+            this.mSearchEnabled = searchEnabled;
+            return this;
+        }
+
+        /**
+         * Enable/Disable the snapshots of the root json text or file. When enabled, the parsed
+         * tree is saved in background as a binary snapshot in the cache of the application, and
+         * the next dialogs of the same json text, or of the same json file until it changes,
+         * memory-map the snapshot instead of parsing the json. A json text is recognized by a
+         * hash of its content, a json file by its path, its length and its last modification
+         * date. Json readers are never snapshotted. Default value is false.
+         *
+         * @return this builder object to allow for chaining of calls to set methods
+         */
+        public Builder setSnapshotEnabled(boolean snapshotEnabled) {
+            this.mSnapshotEnabled = snapshotEnabled;
+            this.mRootTree = null;
             return this;
         }
 
@@ -889,6 +1599,167 @@ public class JSonPickerDialog extends ListPickerDialogBase implements PickerInte
             return this;
         }
 
+        /**
+         * Compile the path of a field.
+         *
+         * @param name name or path of the field, or null.
+         * @return a compiled path, or null if the name is empty.
+         * @throws IllegalArgumentException if the path is not valid.
+         */
+        private static JSonFieldPath compilePath(@Nullable CharSequence name) {
+            return (!TextUtils.isEmpty(name)) ? JSonFieldPath.compile(name.toString()) : null;
+        }
+
+        /**
+         * Set the path of a field, once checked against the paths of the other fields: the json
+         * trees read or skip the value of a field as a whole, so a path leading inside it would
+         * never be reached.
+         *
+         * @param field the field.
+         * @param name name or path of the field, or null.
+         * @throws IllegalArgumentException if the path is not valid, or overlaps the path of
+         *     another field.
+         */
+        private void setPath(int field, @Nullable CharSequence name) {
+            JSonFieldPath path = compilePath(name);
+
+            for (int other = 0; path != null && other < this.mPaths.length; other++) {
+                if (other == field || this.mPaths[other] == null) continue;
+
+                if (path.overlaps(this.mPaths[other]))
+                    throw new IllegalArgumentException(
+                            "Field path " + path + " overlaps field path " + this.mPaths[other]);
+            }
+
+            this.mPaths[field] = path;
+        }
+
+        /**
+         * Get the json tree of the root json text or file, parsed in background on first call, or
+         * read from its snapshot if there is one.
+         *
+         * @return a future json tree, or null if there is no root json text nor file.
+         */
+        private PickerExecutors.ListenableTask<JSonTree> getRootTree() {
+            if (this.mRootTree == null
+                    && (this.mRootText != null
+                            || this.mRootReader != null
+                            || this.mRootFile != null)
+                    && !TextUtils.isEmpty(this.mTitleNodeName)
+                    && !TextUtils.isEmpty(this.mChildrenNodeName)) {
+                final Context context = this.P.context;
+                final String text = this.mRootText;
+                final Reader reader = this.mRootReader;
+                final File file = this.mRootFile;
+                final JSonFieldPath[] paths = this.mPaths.clone();
+                final boolean snapshotEnabled = this.mSnapshotEnabled && reader == null;
+
+                PickerExecutors.ListenableTask<JSonTree> task =
+                        new PickerExecutors.ListenableTask<>(
+                                new Callable<JSonTree>() {
+                                    @Override
+                                    public JSonTree call() throws IOException {
+                                        final String key =
+                                                (snapshotEnabled)
+                                                        ? getSnapshotKey(text, file, paths)
+                                                        : null;
+
+                                        if (key != null) {
+                                            JSonTree snapshot =
+                                                    SnapshotJSonTree.open(context, key, paths);
+
+                                            if (snapshot != null) return snapshot;
+                                        }
+
+                                        final JSonTree tree =
+                                                (file != null)
+                                                        ? MappedJSonTree.open(file, paths)
+                                                        : CompactJSonTree.parse(
+                                                                (text != null)
+                                                                        ? new StringReader(text)
+                                                                        : reader,
+                                                                paths);
+
+                                        if (key != null) {
+                                            PickerExecutors.io()
+                                                    .execute(
+                                                            new Runnable() {
+                                                                @Override
+                                                                public void run() {
+                                                                    SnapshotJSonTree.save(
+                                                                            context, key, tree);
+                                                                }
+                                                            });
+                                        }
+
+                                        return tree;
+                                    }
+                                });
+
+                PickerExecutors.io().execute(task);
+
+                this.mRootReader = null;
+                this.mRootTree = task;
+            }
+
+            return this.mRootTree;
+        }
+
+        /**
+         * Get the key of the snapshot of a json text or file: the paths of the fields, then the
+         * length and a hash of the text, or the path, the length and the last modification date
+         * of the file. Must be called from a background thread.
+         *
+         * @param text root json text, or null.
+         * @param file root json file, or null.
+         * @param paths paths of the title, sub-title and children fields, by field.
+         * @return a string contains the key.
+         */
+        private static String getSnapshotKey(
+                @Nullable String text, @Nullable File file, @NonNull JSonFieldPath[] paths) {
+            StringBuilder key = new StringBuilder();
+
+            for (JSonFieldPath path : paths) {
+                key.append((path != null) ? path.toString() : "").append('\0');
+            }
+
+            if (file != null) {
+                key.append(file.getAbsolutePath())
+                        .append('\0')
+                        .append(file.length())
+                        .append('\0')
+                        .append(file.lastModified());
+            } else if (text != null) {
+                long hash = 1125899906842597L;
+
+                for (int index = 0; index < text.length(); index++) {
+                    hash = 31 * hash + text.charAt(index);
+                }
+
+                key.append(text.length()).append('\0').append(Long.toHexString(hash));
+            }
+
+            return key.toString();
+        }
+
+        /**
+         * Creates the {@link JSonPickerDialog} with the arguments supplied to this builder and
+         * starts loading the children of the root node in background, so that the next call to
+         * show() displays an already populated dialog. Must be called once the builder is
+         * configured, the changes made after this call are not applied to the prefetched dialog.
+         *
+         * @return this builder object to allow for chaining of calls to set methods
+         */
+        public Builder prefetch() {
+            if (this.mPrefetchedDialog == null) {
+                this.mPrefetchedDialog = new JSonPickerDialog(this);
+
+                this.mPrefetchedDialog.prefetch();
+            }
+
+            return this;
+        }
+
         /**
          * Creates an {@link JSonPickerDialog} with the arguments supplied to this builder and
          * immediately displays the dialog.
@@ -898,7 +1769,12 @@ public class JSonPickerDialog extends ListPickerDialogBase implements PickerInte
          * @return a FilePickerDialog dialog.
          */
         public JSonPickerDialog show() {
-            final JSonPickerDialog dialog = new JSonPickerDialog(this);
+            final JSonPickerDialog dialog =
+                    (this.mPrefetchedDialog != null)
+                            ? this.mPrefetchedDialog
+                            : new JSonPickerDialog(this);
+
+            this.mPrefetchedDialog = null;
 
             dialog.show();
 
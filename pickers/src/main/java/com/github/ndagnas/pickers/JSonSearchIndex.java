@@ -0,0 +1,577 @@
+/*
+ * Copyright (C) 2020 Nicolas Dagnas
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.ndagnas.pickers;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Defines an inverted index of the words of the titles and sub-titles of all the nodes of a json
+ * picker, used for full-text searches. The words are sorted, each one with the list of the nodes
+ * containing it, so that a query only reads the lists of the words it starts.
+ *
+ * <p>The indexes of json files are kept in the private cache directory of the application. Format:
+ * magic, version, key, count of nodes, parent of each node, count of words, then for each word the
+ * word and the list of its nodes. The node ids are checked when the index is loaded, a corrupt
+ * index is ignored.
+ */
+final class JSonSearchIndex {
+    /** Maximum number of results of a search. */
+    static final int MAX_RESULTS = 100;
+
+    /** Name of the directory of the saved indexes. */
+    private static final String DIRECTORY_NAME = "pickers-json-search";
+
+    /** Identifies the index files. */
+    private static final int MAGIC = 0x504a5331;
+
+    /** Version of the file format. */
+    private static final int VERSION = 1;
+
+    /** Maximum number of indexes kept. */
+    private static final int MAX_INDEXES = 8;
+
+    /** Number of words read between two checks of the cancellation. */
+    private static final int CANCELLATION_CHECK_INTERVAL = 1024;
+
+    /** Defines a growable list of node ids. */
+    private static class Postings {
+        int[] nodes = new int[4];
+        int count = 0;
+
+        /**
+         * Add a node, once.
+         *
+         * @param node id of the node.
+         */
+        void add(int node) {
+            if (this.count > 0 && this.nodes[this.count - 1] == node) return;
+
+            if (this.count == this.nodes.length)
+                this.nodes = Arrays.copyOf(this.nodes, this.count * 2);
+
+            this.nodes[this.count++] = node;
+        }
+    }
+
+    // Attributes
+
+    private final JSonTree mTree;
+    private final JSONObject[] mObjects;
+    private final int[] mParents;
+    private final String[] mWords;
+    private final int[] mFirstNodes;
+    private final int[] mNodes;
+
+    /**
+     * Object initialisation.
+     *
+     * @param tree indexed json tree, or null.
+     * @param objects indexed json objects by node id, or null.
+     * @param parents parent of each node, -1 for the root node and the nodes not indexed.
+     * @param words sorted words.
+     * @param firstNodes position of the first node of each word, followed by the end position.
+     * @param nodes nodes of all the words.
+     */
+    private JSonSearchIndex(
+            @Nullable JSonTree tree,
+            @Nullable JSONObject[] objects,
+            @NonNull int[] parents,
+            @NonNull String[] words,
+            @NonNull int[] firstNodes,
+            @NonNull int[] nodes) {
+        this.mTree = tree;
+        this.mObjects = objects;
+        this.mParents = parents;
+        this.mWords = words;
+        this.mFirstNodes = firstNodes;
+        this.mNodes = nodes;
+    }
+
+    /**
+     * Index the nodes of a json tree reachable through nodes having a title. Must be called from a
+     * background thread.
+     *
+     * @param tree json tree.
+     * @return an index of the nodes.
+     */
+    static @NonNull JSonSearchIndex build(@NonNull JSonTree tree) {
+        HashMap<String, Postings> postings = new HashMap<>();
+
+        int[] parents = new int[tree.size()];
+
+        Arrays.fill(parents, -1);
+
+        ArrayDeque<Integer> nodes = new ArrayDeque<>();
+
+        if (tree.size() > 0 && tree.getTitle(0) != null) nodes.push(0);
+
+        while (!nodes.isEmpty()) {
+            if (Thread.currentThread().isInterrupted()) break;
+
+            int node = nodes.pop();
+
+            addWords(postings, tree.getTitle(node), node);
+            addWords(postings, tree.getSubTitle(node), node);
+
+            for (int index = tree.getChildCount(node) - 1; index >= 0; index--) {
+                int child = tree.getChild(node, index);
+
+                if (tree.getTitle(child) == null) continue;
+
+                parents[child] = node;
+
+                nodes.push(child);
+            }
+        }
+
+        return create(tree, null, parents, postings);
+    }
+
+    /**
+     * Index the nodes of a json object reachable through nodes having a title. Must be called from
+     * a background thread.
+     *
+     * @param root root json object.
+     * @param paths paths of the title, sub-title and children fields, by field, the sub-title
+     *     path being null if there is no sub-title.
+     * @return an index of the nodes.
+     */
+    static @NonNull JSonSearchIndex build(
+            @NonNull JSONObject root, @NonNull JSonFieldPath[] paths) {
+        JSonFieldPath titlePath = paths[JSonTree.TITLE_FIELD];
+        JSonFieldPath subTitlePath = paths[JSonTree.SUB_TITLE_FIELD];
+        JSonFieldPath childrenPath = paths[JSonTree.CHILDREN_FIELD];
+
+        HashMap<String, Postings> postings = new HashMap<>();
+
+        ArrayList<JSONObject> objects = new ArrayList<>();
+        ArrayList<Integer> parents = new ArrayList<>();
+
+        ArrayDeque<Integer> nodes = new ArrayDeque<>();
+
+        if (titlePath.getString(root) != null) {
+            objects.add(root);
+            parents.add(-1);
+            nodes.push(0);
+        }
+
+        while (!nodes.isEmpty()) {
+            if (Thread.currentThread().isInterrupted()) break;
+
+            int node = nodes.pop();
+
+            JSONObject object = objects.get(node);
+
+            addWords(postings, titlePath.getString(object), node);
+
+            if (subTitlePath != null) addWords(postings, subTitlePath.getString(object), node);
+
+            Object children = childrenPath.get(object);
+
+            if (!(children instanceof JSONArray)) continue;
+
+            JSONArray jsonChildren = (JSONArray) children;
+
+            int first = objects.size();
+
+            for (int index = 0; index < jsonChildren.length(); index++) {
+                JSONObject child = jsonChildren.optJSONObject(index);
+
+                if (child == null || titlePath.getString(child) == null) continue;
+
+                objects.add(child);
+                parents.add(node);
+            }
+
+            for (int child = objects.size() - 1; child >= first; child--) {
+                nodes.push(child);
+            }
+        }
+
+        int[] parentIds = new int[parents.size()];
+
+        for (int index = 0; index < parentIds.length; index++) {
+            parentIds[index] = parents.get(index);
+        }
+
+        return create(null, objects.toArray(new JSONObject[0]), parentIds, postings);
+    }
+
+    /**
+     * Create an index, once the words of the nodes are gathered.
+     *
+     * @param tree indexed json tree, or null.
+     * @param objects indexed json objects by node id, or null.
+     * @param parents parent of each node.
+     * @param postings nodes of each word.
+     * @return an index of the nodes.
+     */
+    private static @NonNull JSonSearchIndex create(
+            @Nullable JSonTree tree,
+            @Nullable JSONObject[] objects,
+            @NonNull int[] parents,
+            @NonNull HashMap<String, Postings> postings) {
+        String[] words = postings.keySet().toArray(new String[0]);
+
+        Arrays.sort(words);
+
+        int[] firstNodes = new int[words.length + 1];
+
+        int count = 0;
+
+        for (int index = 0; index < words.length; index++) {
+            firstNodes[index] = count;
+
+            count += postings.get(words[index]).count;
+        }
+
+        firstNodes[words.length] = count;
+
+        int[] nodes = new int[count];
+
+        for (int index = 0; index < words.length; index++) {
+            Postings wordPostings = postings.get(words[index]);
+
+            System.arraycopy(wordPostings.nodes, 0, nodes, firstNodes[index], wordPostings.count);
+        }
+
+        return new JSonSearchIndex(tree, objects, parents, words, firstNodes, nodes);
+    }
+
+    /**
+     * Load the saved index of a json file.
+     *
+     * @param context the parent context.
+     * @param configKey key of the picker configuration used to build the tree.
+     * @param file json file.
+     * @param tree json tree of the file.
+     * @return an index, or null if there is none, or it is stale or corrupt.
+     */
+    static @Nullable JSonSearchIndex load(
+            @NonNull Context context,
+            @NonNull String configKey,
+            @NonNull File file,
+            @NonNull JSonTree tree) {
+        String key = createKey(configKey, file);
+
+        File indexFile = CacheFiles.getFile(context, DIRECTORY_NAME, key);
+
+        if (!indexFile.isFile()) return null;
+
+        try (DataInputStream input =
+                new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) return null;
+
+            if (!key.equals(input.readUTF())) return null;
+
+            int count = input.readInt();
+
+            if (count != tree.size()) return null;
+
+            int[] parents = new int[count];
+
+            // The nodes are numbered in pre-order, so a parent id is smaller than the id of its
+            // children, and the ancestors of a node never loop.
+
+            for (int index = 0; index < count; index++) {
+                parents[index] = input.readInt();
+
+                if (parents[index] < -1 || parents[index] >= index) {
+                    Log.e("JSonSearchIndex.load", "Corrupt index " + indexFile);
+
+                    return null;
+                }
+            }
+
+            int wordCount = input.readInt();
+
+            if (wordCount < 0) return null;
+
+            String[] words = new String[wordCount];
+            int[] firstNodes = new int[wordCount + 1];
+            int[] nodes = new int[Math.max(wordCount, 16)];
+
+            int nodeCount = 0;
+
+            for (int index = 0; index < wordCount; index++) {
+                words[index] = input.readUTF();
+                firstNodes[index] = nodeCount;
+
+                int wordNodes = input.readInt();
+
+                if (wordNodes < 0 || wordNodes > count) return null;
+
+                if (nodeCount + wordNodes > nodes.length)
+                    nodes = Arrays.copyOf(nodes, Math.max(nodes.length * 2, nodeCount + wordNodes));
+
+                for (int node = 0; node < wordNodes; node++) {
+                    nodes[nodeCount] = input.readInt();
+
+                    if (nodes[nodeCount] < 0 || nodes[nodeCount] >= count) {
+                        Log.e("JSonSearchIndex.load", "Corrupt index " + indexFile);
+
+                        return null;
+                    }
+
+                    nodeCount++;
+                }
+            }
+
+            firstNodes[wordCount] = nodeCount;
+
+            return new JSonSearchIndex(
+                    tree, null, parents, words, firstNodes, Arrays.copyOf(nodes, nodeCount));
+        } catch (Exception Err) {
+            Log.e("JSonSearchIndex.load", "Exception: " + Err.toString());
+        }
+
+        return null;
+    }
+
+    /**
+     * Save the index of a json file. Must be called from a background thread.
+     *
+     * @param context the parent context.
+     * @param configKey key of the picker configuration used to build the tree.
+     * @param file json file.
+     */
+    void save(@NonNull Context context, @NonNull String configKey, @NonNull File file) {
+        String key = createKey(configKey, file);
+
+        File indexFile = CacheFiles.getFile(context, DIRECTORY_NAME, key);
+        File tempFile = CacheFiles.getTempFile(indexFile);
+
+        if (tempFile == null) return;
+
+        try (DataOutputStream output =
+                new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeUTF(key);
+            output.writeInt(this.mParents.length);
+
+            for (int parentNode : this.mParents) {
+                output.writeInt(parentNode);
+            }
+
+            output.writeInt(this.mWords.length);
+
+            for (int index = 0; index < this.mWords.length; index++) {
+                output.writeUTF(this.mWords[index]);
+                output.writeInt(this.mFirstNodes[index + 1] - this.mFirstNodes[index]);
+
+                int end = this.mFirstNodes[index + 1];
+
+                for (int node = this.mFirstNodes[index]; node < end; node++) {
+                    output.writeInt(this.mNodes[node]);
+                }
+            }
+        } catch (Exception Err) {
+            Log.e("JSonSearchIndex.save", "Exception: " + Err.toString());
+
+            CacheFiles.discard(tempFile);
+
+            return;
+        }
+
+        CacheFiles.commit(tempFile, indexFile, MAX_INDEXES);
+    }
+
+    /**
+     * Search the nodes containing words starting with each word of a query, in the order of their
+     * ids. The query is cancelled as soon as the generation counter differs from the expected
+     * generation.
+     *
+     * @param query searched words.
+     * @param generationCounter generation counter of the searches.
+     * @param generation expected generation.
+     * @return ids of at most MAX_RESULTS nodes, or null if the search is cancelled.
+     */
+    @Nullable
+    int[] search(
+            @NonNull String query, @NonNull AtomicInteger generationCounter, int generation) {
+        ArrayList<String> queryWords = splitWords(query);
+
+        if (queryWords.isEmpty()) return new int[0];
+
+        BitSet matches = null;
+
+        int checked = 0;
+
+        for (String queryWord : queryWords) {
+            BitSet wordMatches = new BitSet(this.mParents.length);
+
+            int index = Arrays.binarySearch(this.mWords, queryWord);
+
+            if (index < 0) index = -index - 1;
+
+            for (; index < this.mWords.length; index++) {
+                if (!this.mWords[index].startsWith(queryWord)) break;
+
+                if (++checked % CANCELLATION_CHECK_INTERVAL == 0
+                        && generationCounter.get() != generation) return null;
+
+                int end = this.mFirstNodes[index + 1];
+
+                for (int node = this.mFirstNodes[index]; node < end; node++) {
+                    wordMatches.set(this.mNodes[node]);
+                }
+            }
+
+            if (matches == null) {
+                matches = wordMatches;
+            } else {
+                matches.and(wordMatches);
+            }
+
+            if (matches.isEmpty()) return new int[0];
+        }
+
+        int[] results = new int[Math.min(matches.cardinality(), MAX_RESULTS)];
+
+        int node = matches.nextSetBit(0);
+
+        for (int index = 0; index < results.length; index++) {
+            results[index] = node;
+
+            node = matches.nextSetBit(node + 1);
+        }
+
+        return results;
+    }
+
+    /**
+     * Create the json node of a node id, with the json nodes of its ancestors as parents.
+     *
+     * @param node id of the node.
+     * @return a json node.
+     */
+    @NonNull
+    JSonPickerDialog.JSONItem createItem(int node) {
+        int depth = 0;
+
+        for (int ancestor = node; ancestor >= 0; ancestor = this.mParents[ancestor]) depth++;
+
+        int[] path = new int[depth];
+
+        for (int ancestor = node; ancestor >= 0; ancestor = this.mParents[ancestor]) {
+            path[--depth] = ancestor;
+        }
+
+        JSonPickerDialog.JSONItem item = null;
+
+        for (int pathNode : path) {
+            item =
+                    (this.mTree != null)
+                            ? new JSonPickerDialog.JSONItem(this.mTree, pathNode, item)
+                            : new JSonPickerDialog.JSONItem(this.mObjects[pathNode], item);
+        }
+
+        return item;
+    }
+
+    /**
+     * Add the words of a text to the index.
+     *
+     * @param postings nodes of each word.
+     * @param text a title or a sub-title, or null.
+     * @param node id of the node of the text.
+     */
+    private static void addWords(
+            @NonNull HashMap<String, Postings> postings, @Nullable String text, int node) {
+        if (text == null) return;
+
+        for (String word : splitWords(text)) {
+            Postings wordPostings = postings.get(word);
+
+            if (wordPostings == null) {
+                wordPostings = new Postings();
+
+                postings.put(word, wordPostings);
+            }
+
+            wordPostings.add(node);
+        }
+    }
+
+    /**
+     * Split a text into lower case words of letters and digits.
+     *
+     * @param text a text.
+     * @return a list of words.
+     */
+    private static @NonNull ArrayList<String> splitWords(@NonNull String text) {
+        ArrayList<String> words = new ArrayList<>();
+
+        int start = -1;
+
+        for (int index = 0; index <= text.length(); index++) {
+            boolean isWordChar =
+                    (index < text.length()) && Character.isLetterOrDigit(text.charAt(index));
+
+            if (isWordChar && start < 0) {
+                start = index;
+            } else if (!isWordChar && start >= 0) {
+                words.add(text.substring(start, index).toLowerCase(Locale.ROOT));
+
+                start = -1;
+            }
+        }
+
+        return words;
+    }
+
+    /**
+     * Create the key of a saved index, which changes with the json file.
+     *
+     * @param configKey key of the picker configuration.
+     * @param file json file.
+     * @return a string contains the key of the index.
+     */
+    private static String createKey(@NonNull String configKey, @NonNull File file) {
+        return configKey
+                + '\u0000'
+                + file.getAbsolutePath()
+                + '\u0000'
+                + file.length()
+                + '\u0000'
+                + file.lastModified();
+    }
+}
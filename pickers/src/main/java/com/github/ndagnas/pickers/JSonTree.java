@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2020 Nicolas Dagnas
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.ndagnas.pickers;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONObject;
+
+/**
+ * Defines a read-only tree of json nodes, holding only the fields displayed by a json picker. The
+ * nodes are identified by integers, the root node first.
+ */
+interface JSonTree {
+    /** TITLE_FIELD identifies the title, in the field paths of a tree. */
+    int TITLE_FIELD = 0;
+
+    /** SUB_TITLE_FIELD identifies the sub-title, in the field paths of a tree. */
+    int SUB_TITLE_FIELD = 1;
+
+    /** CHILDREN_FIELD identifies the children, in the field paths of a tree. */
+    int CHILDREN_FIELD = 2;
+
+    /**
+     * CHILDREN_REFERENCE_FIELD identifies the reference of the children kept apart from the node,
+     * in the field paths of a tree.
+     */
+    int CHILDREN_REFERENCE_FIELD = 3;
+
+    /**
+     * Get the number of nodes.
+     *
+     * @return a integer contains the number of nodes.
+     */
+    int size();
+
+    /**
+     * Get the title of a node.
+     *
+     * @param node id of the node.
+     * @return a string contains the title, or null if the node has no title.
+     */
+    @Nullable
+    String getTitle(int node);
+
+    /**
+     * Get the sub-title of a node.
+     *
+     * @param node id of the node.
+     * @return a string contains the sub-title, or null if the node has no sub-title.
+     */
+    @Nullable
+    String getSubTitle(int node);
+
+    /**
+     * Get the children reference of a node, naming the json document holding its children.
+     *
+     * @param node id of the node.
+     * @return a string contains the reference, or null if the node has no children reference.
+     */
+    @Nullable
+    String getChildrenReference(int node);
+
+    /**
+     * Get the number of children of a node.
+     *
+     * @param node id of the node.
+     * @return the number of children, or -1 if the node has no children field.
+     */
+    int getChildCount(int node);
+
+    /**
+     * Get a child of a node.
+     *
+     * @param node id of the node.
+     * @param index position of the child.
+     * @return the id of the child.
+     */
+    int getChild(int node, int index);
+
+    /**
+     * Get a node as a json object, holding its title, its sub-title and its id.
+     *
+     * @param node id of the node.
+     * @return a json object.
+     */
+    @NonNull
+    JSONObject toJSONObject(int node);
+}
@@ -26,7 +26,9 @@ import android.content.Context;
 import android.content.DialogInterface;
 import android.os.Bundle;
 import android.os.Parcelable;
+import android.text.Editable;
 import android.text.TextUtils;
+import android.text.TextWatcher;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -36,19 +38,32 @@ import android.widget.BaseAdapter;
 import android.widget.Button;
 import android.widget.CheckBox;
 import android.widget.CompoundButton;
+import android.widget.EditText;
 import android.widget.ImageView;
 import android.widget.LinearLayout;
 import android.widget.ListView;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import androidx.annotation.DrawableRes;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.StringRes;
 import androidx.annotation.StyleRes;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 /** Defines a base picker dialog. */
 @SuppressWarnings({"unused", "WeakerAccess"})
@@ -294,15 +309,50 @@ public class ListPickerDialogBase extends Dialog {
         }
 
         /**
-         * Defines item as picked or not.
+         * Defines item as picked or not, the dialog is notified of the changes.
          *
          * @param value new value for picked status.
          */
         private void setPicked(boolean value) {
+            if (this.mIsPicked == value) return;
+
             this.mIsPicked = value;
+
+            ListPickerDialogBase.this.onItemPicked(this, value);
         }
     }
 
+    /**
+     * Defines a long list of items, created on demand by pages, so that only the displayed items
+     * exist.
+     */
+    protected interface LazyItemList {
+        /**
+         * Get the number of items.
+         *
+         * @return a integer contains the number of items.
+         */
+        int size();
+
+        /**
+         * Get the key of an item, which identifies it across the updates of the list.
+         *
+         * @param index position of the item.
+         * @return an object identifying the item.
+         */
+        @NonNull
+        Object getKey(int index);
+
+        /**
+         * Create an item.
+         *
+         * @param index position of the item.
+         * @return a picker item.
+         */
+        @NonNull
+        PickerItem createItem(int index);
+    }
+
     /** Defines a ViewItem for Adapter. */
     static class ItemViewHolder {
         private final View SelfView;
@@ -361,8 +411,27 @@ public class ListPickerDialogBase extends Dialog {
 
     /** Defines a adapter object use in ListView. */
     static class PickerAdapter extends BaseAdapter {
+        /** Number of items of a page of a lazy list. */
+        private static final int PAGE_SIZE = 64;
+
+        /** Maximum number of pages of a lazy list kept in memory. */
+        private static final int MAX_PAGES = 8;
+
         private final ListPickerDialogBase mOwner;
         private final ArrayList<ItemBase> mItems = new ArrayList<>();
+        private LazyItemList mLazyItems = null;
+        private final HashMap<Object, PickerItem> mPickedLazyItems = new HashMap<>();
+        private final LinkedHashMap<Integer, PickerItem[]> mPages =
+                new LinkedHashMap<Integer, PickerItem[]>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<Integer, PickerItem[]> eldest) {
+                        if (this.size() <= MAX_PAGES) return false;
+
+                        PickerAdapter.this.keepPickedItems(eldest.getKey(), eldest.getValue());
+
+                        return true;
+                    }
+                };
 
         /**
          * Object initialisation.
@@ -380,6 +449,10 @@ public class ListPickerDialogBase extends Dialog {
          * @param items new item list.
          */
         public void replaceAll(BackItem backItem, @NonNull Collection<PickerItem> items) {
+            Collection<PickerItem> pickedItems = this.getPickedItem();
+
+            this.clearLazyItems();
+
             this.mItems.clear();
 
             this.notifyDataSetChanged();
@@ -391,6 +464,227 @@ public class ListPickerDialogBase extends Dialog {
             }
 
             this.notifyDataSetChanged();
+
+            this.notifyPickedChanges(pickedItems);
+        }
+
+        /**
+         * Replace the items of the current adapter, keeping the item used for back action.
+         *
+         * @param items new item list.
+         */
+        void replaceItems(@NonNull Collection<PickerItem> items) {
+            Collection<PickerItem> pickedItems = this.getPickedItem();
+
+            ItemBase firstItem = (!this.mItems.isEmpty()) ? this.mItems.get(0) : null;
+
+            this.clearLazyItems();
+
+            this.mItems.clear();
+
+            if (firstItem instanceof BackItem) this.mItems.add(firstItem);
+
+            for (PickerItem item : items) {
+                if (item != null) this.mItems.add(item);
+            }
+
+            this.notifyDataSetChanged();
+
+            this.notifyPickedChanges(pickedItems);
+        }
+
+        /**
+         * Add items at the end of the current adapter.
+         *
+         * @param items items to add.
+         */
+        void addAll(@NonNull Collection<PickerItem> items) {
+            Collection<PickerItem> pickedItems = this.getPickedItem();
+
+            this.clearLazyItems();
+
+            for (PickerItem item : items) {
+                if (item != null) this.mItems.add(item);
+            }
+
+            this.notifyDataSetChanged();
+
+            this.notifyPickedChanges(pickedItems);
+        }
+
+        /**
+         * Remove and add items, keeping the other items and their picked status.
+         *
+         * @param removedItems items to remove.
+         * @param addedItems items to add.
+         * @param comparator order of the items, used to insert the added items.
+         */
+        void applyChanges(
+                @NonNull Collection<PickerItem> removedItems,
+                @NonNull Collection<PickerItem> addedItems,
+                @NonNull Comparator<PickerItem> comparator) {
+            if (this.mLazyItems != null) return;
+
+            Collection<PickerItem> pickedItems = this.getPickedItem();
+
+            if (!removedItems.isEmpty()) this.mItems.removeAll(removedItems);
+
+            for (PickerItem addedItem : addedItems) {
+                int index = 0;
+
+                while (index < this.mItems.size()) {
+                    ItemBase item = this.mItems.get(index);
+
+                    if (item instanceof PickerItem
+                            && comparator.compare((PickerItem) item, addedItem) > 0) break;
+
+                    index++;
+                }
+
+                this.mItems.add(index, addedItem);
+            }
+
+            this.notifyDataSetChanged();
+
+            this.notifyPickedChanges(pickedItems);
+        }
+
+        /**
+         * Replace the items of the current adapter by a lazy list, keeping the item used for back
+         * action. The picked items stay picked if they are still in the list.
+         *
+         * @param items new lazy list.
+         */
+        void replaceLazyItems(@NonNull LazyItemList items) {
+            Collection<PickerItem> pickedItems = this.getPickedItem();
+
+            ItemBase firstItem = (!this.mItems.isEmpty()) ? this.mItems.get(0) : null;
+
+            if (this.mLazyItems != null) {
+                for (Map.Entry<Integer, PickerItem[]> page : this.mPages.entrySet()) {
+                    this.keepPickedItems(page.getKey(), page.getValue());
+                }
+            } else {
+                this.mPickedLazyItems.clear();
+            }
+
+            this.mPages.clear();
+            this.mItems.clear();
+
+            if (firstItem instanceof BackItem) this.mItems.add(firstItem);
+
+            this.mLazyItems = items;
+
+            this.notifyDataSetChanged();
+
+            this.notifyPickedChanges(pickedItems);
+        }
+
+        /**
+         * Notify the owner of the picked items which have left the adapter, as unpicked, and of
+         * the items which have entered it already picked.
+         *
+         * @param pickedItems items picked before the content of the adapter changed.
+         */
+        private void notifyPickedChanges(@NonNull Collection<PickerItem> pickedItems) {
+            Collection<PickerItem> newPickedItems = this.getPickedItem();
+
+            if (pickedItems.isEmpty() && newPickedItems.isEmpty()) return;
+
+            Set<PickerItem> oldItems =
+                    Collections.newSetFromMap(new IdentityHashMap<PickerItem, Boolean>());
+            Set<PickerItem> newItems =
+                    Collections.newSetFromMap(new IdentityHashMap<PickerItem, Boolean>());
+
+            oldItems.addAll(pickedItems);
+            newItems.addAll(newPickedItems);
+
+            for (PickerItem item : oldItems) {
+                if (!newItems.contains(item)) this.mOwner.onItemPicked(item, false);
+            }
+
+            for (PickerItem item : newItems) {
+                if (!oldItems.contains(item)) this.mOwner.onItemPicked(item, true);
+            }
+        }
+
+        /** Leave the lazy list, if any. */
+        private void clearLazyItems() {
+            this.mLazyItems = null;
+
+            this.mPages.clear();
+            this.mPickedLazyItems.clear();
+        }
+
+        /**
+         * Keep the picked items of a page of the lazy list removed from memory, by key.
+         *
+         * @param pageIndex index of the page.
+         * @param page items of the page.
+         */
+        private void keepPickedItems(int pageIndex, @NonNull PickerItem[] page) {
+            if (this.mLazyItems == null) return;
+
+            for (int offset = 0; offset < page.length; offset++) {
+                if (page[offset] != null && page[offset].isPicked()) {
+                    Object key = this.mLazyItems.getKey(pageIndex * PAGE_SIZE + offset);
+
+                    this.mPickedLazyItems.put(key, page[offset]);
+                }
+            }
+        }
+
+        /**
+         * Get the items created so far: the items of a list, or the item used for back action,
+         * the items of the pages in memory and the picked items of a lazy list.
+         *
+         * @return a collection of items.
+         */
+        private Collection<ItemBase> getLoadedItems() {
+            if (this.mLazyItems == null) return this.mItems;
+
+            ArrayList<ItemBase> result = new ArrayList<>(this.mItems);
+
+            for (PickerItem[] page : this.mPages.values()) {
+                Collections.addAll(result, page);
+            }
+
+            result.addAll(this.mPickedLazyItems.values());
+
+            return result;
+        }
+
+        /**
+         * Get an item of the lazy list, its page is created if needed.
+         *
+         * @param index position of the item in the lazy list.
+         * @return a picker item.
+         */
+        private PickerItem getLazyItem(int index) {
+            int pageIndex = index / PAGE_SIZE;
+
+            PickerItem[] page = this.mPages.get(pageIndex);
+
+            if (page == null) {
+                int start = pageIndex * PAGE_SIZE;
+                int count = Math.min(PAGE_SIZE, this.mLazyItems.size() - start);
+
+                page = new PickerItem[count];
+
+                for (int offset = 0; offset < count; offset++) {
+                    int itemIndex = start + offset;
+
+                    Object key = this.mLazyItems.getKey(itemIndex);
+
+                    PickerItem item = this.mPickedLazyItems.remove(key);
+
+                    page[offset] = (item != null) ? item : this.mLazyItems.createItem(itemIndex);
+                }
+
+                this.mPages.put(pageIndex, page);
+            }
+
+            return page[index % PAGE_SIZE];
         }
 
         /**
@@ -416,7 +710,7 @@ public class ListPickerDialogBase extends Dialog {
                 Holder = (ItemViewHolder) ItemView.getTag();
             }
 
-            final ItemBase item = this.mItems.get(Index);
+            final ItemBase item = this.getItem(Index);
 
             if (item != null) {
                 Holder.applyData(item);
@@ -451,6 +745,14 @@ public class ListPickerDialogBase extends Dialog {
                             }
                         });
 
+                Holder.SelfView.setOnLongClickListener(
+                        new View.OnLongClickListener() {
+                            @Override
+                            public boolean onLongClick(View view) {
+                                return PickerAdapter.this.mOwner.onItemLongClick(item);
+                            }
+                        });
+
                 if (item instanceof PickerItem && ((PickerItem) item).isPickable()) {
                     Holder.mCheckbox.setOnCheckedChangeListener(
                             new CompoundButton.OnCheckedChangeListener() {
@@ -489,7 +791,7 @@ public class ListPickerDialogBase extends Dialog {
 
             if (!this.mOwner.isMultiSelectionMode()
                     || this.mOwner.mPositiveButtonVisibility != View.VISIBLE) {
-                for (ItemBase item : this.mItems) {
+                for (ItemBase item : this.getLoadedItems()) {
                     if (!item.equals(pickerItem) && item instanceof PickerItem) {
                         PickerItem otherPickerItem = (PickerItem) item;
 
@@ -500,6 +802,14 @@ public class ListPickerDialogBase extends Dialog {
                         }
                     }
                 }
+
+                // The unpicked items of a lazy list are no longer kept.
+
+                Iterator<PickerItem> iterator = this.mPickedLazyItems.values().iterator();
+
+                while (iterator.hasNext()) {
+                    if (!iterator.next().isPicked()) iterator.remove();
+                }
             }
 
             return result;
@@ -512,6 +822,8 @@ public class ListPickerDialogBase extends Dialog {
          */
         @Override
         public int getCount() {
+            if (this.mLazyItems != null) return this.mItems.size() + this.mLazyItems.size();
+
             return this.mItems.size();
         }
 
@@ -523,6 +835,9 @@ public class ListPickerDialogBase extends Dialog {
          */
         @Override
         public ItemBase getItem(int index) {
+            if (this.mLazyItems != null && index >= this.mItems.size())
+                return this.getLazyItem(index - this.mItems.size());
+
             return this.mItems.get(index);
         }
 
@@ -545,7 +860,7 @@ public class ListPickerDialogBase extends Dialog {
         protected Collection<PickerItem> getPickedItem() {
             ArrayList<PickerItem> result = new ArrayList<>();
 
-            for (ItemBase item : this.mItems) {
+            for (ItemBase item : this.getLoadedItems()) {
                 if (item instanceof PickerItem) {
                     PickerItem pickerItem = (PickerItem) item;
 
@@ -565,7 +880,7 @@ public class ListPickerDialogBase extends Dialog {
         protected int getPickedItemCount() {
             int result = 0;
 
-            for (ItemBase item : this.mItems) {
+            for (ItemBase item : this.getLoadedItems()) {
                 if (item instanceof PickerItem) {
                     PickerItem pickerItem = (PickerItem) item;
 
@@ -597,6 +912,15 @@ public class ListPickerDialogBase extends Dialog {
     private TextView mSubTitleView = null;
     private ListView mListView = null;
     private Button mPositiveButton = null;
+    private EditText mSearchView = null;
+    private boolean mSearchClearing = false;
+    private boolean mShowingSearchResults = false;
+    private ItemBase mPrefetchedItem = null;
+    private Future<Collection<PickerItem>> mPrefetchedChildren = null;
+    private ItemBase mLoadingItem = null;
+    private final ArrayList<Runnable> mPendingChanges = new ArrayList<>();
+    private ItemBase mPendingStateItem = null;
+    private Parcelable mPendingListViewState = null;
 
     /**
      * Create a list picker dialog.
@@ -711,6 +1035,40 @@ public class ListPickerDialogBase extends Dialog {
 
             if (headerLayout != null) headerLayout.addView(toolbarView);
         }
+
+        // Footer View
+
+        View footerView = this.getFooterView();
+
+        if (footerView != null) {
+            LinearLayout footerLayout = this.findViewById(R.id.list_picker_dialog_base_footer);
+
+            if (footerLayout != null) footerLayout.addView(footerView);
+        }
+
+        // Search view
+
+        this.mSearchView = this.findViewById(R.id.list_picker_dialog_base_search);
+
+        if (this.isSearchEnabled()) {
+            this.mSearchView.setVisibility(View.VISIBLE);
+
+            this.mSearchView.addTextChangedListener(
+                    new TextWatcher() {
+                        @Override
+                        public void beforeTextChanged(
+                                CharSequence text, int start, int count, int after) {}
+
+                        @Override
+                        public void onTextChanged(
+                                CharSequence text, int start, int before, int count) {}
+
+                        @Override
+                        public void afterTextChanged(Editable text) {
+                            mSelf.onSearchTextChanged(text.toString().trim());
+                        }
+                    });
+        }
     }
 
     /** Called on dialog show. */
@@ -718,13 +1076,74 @@ public class ListPickerDialogBase extends Dialog {
     public void show() {
         super.show();
 
-        this.navigateToItem(this.getRootItem());
+        ItemBase prefetchedItem = this.mPrefetchedItem;
+        Future<Collection<PickerItem>> prefetchedChildren = this.mPrefetchedChildren;
+
+        this.mPrefetchedItem = null;
+        this.mPrefetchedChildren = null;
+
+        if (prefetchedItem != null && prefetchedChildren != null) {
+            if (prefetchedChildren.isDone()) {
+                this.navigateToItem(prefetchedItem, getChildren(prefetchedChildren));
+            } else {
+                // The children are displayed once prefetched, see onPrefetched().
+
+                this.mLoadingItem = prefetchedItem;
+
+                this.navigateToItem(prefetchedItem, new ArrayList<PickerItem>());
+            }
+        } else {
+            this.navigateToItem(this.getRootItem());
+        }
+    }
+
+    /**
+     * Start loading the children of the root item in background, so that the dialog is already
+     * populated when it is shown. Must be called from the main thread, before show().
+     */
+    public void prefetch() {
+        if (this.mPrefetchedItem != null) return;
+
+        final ItemBase rootItem = this.getRootItem();
+
+        if (rootItem != null) {
+            FutureTask<Collection<PickerItem>> task =
+                    new FutureTask<Collection<PickerItem>>(
+                            new Callable<Collection<PickerItem>>() {
+                                @Override
+                                public Collection<PickerItem> call() {
+                                    return ListPickerDialogBase.this.getChildrenFor(rootItem);
+                                }
+                            }) {
+                        @Override
+                        protected void done() {
+                            final Future<Collection<PickerItem>> children = this;
+
+                            PickerExecutors.runOnUiThread(
+                                    new Runnable() {
+                                        @Override
+                                        public void run() {
+                                            ListPickerDialogBase.this.onPrefetched(
+                                                    rootItem, children);
+                                        }
+                                    });
+                        }
+                    };
+
+            this.mPrefetchedItem = rootItem;
+            this.mPrefetchedChildren = task;
+
+            PickerExecutors.io().execute(task);
+        }
     }
 
     /** Called on back-key is pressed. */
     @Override
     public void onBackPressed() {
-        if (this.mNavigator.size() > 1) {
+        if (this.mShowingSearchResults || !TextUtils.isEmpty(this.getSearchQuery())) {
+            this.clearSearch();
+            this.restoreListing();
+        } else if (this.mNavigator.size() > 1) {
             this.mNavigator.remove(this.mNavigator.size() - 1);
 
             ItemBase rootItem = this.mNavigator.remove(this.mNavigator.size() - 1);
@@ -748,7 +1167,17 @@ public class ListPickerDialogBase extends Dialog {
             if (pickedItemCount > 0) {
                 this.mPositiveButton.setEnabled(true);
 
-                if (pickedItemCount > 1) {
+                String detail = this.getPickedItemsDetail();
+
+                if (detail != null) {
+                    this.mPositiveButton.setText(
+                            String.format(
+                                    DEF_LOCAL,
+                                    "%s (%d, %s)",
+                                    this.mPositiveButtonText,
+                                    pickedItemCount,
+                                    detail));
+                } else if (pickedItemCount > 1) {
                     this.mPositiveButton.setText(
                             String.format(
                                     DEF_LOCAL,
@@ -794,7 +1223,23 @@ public class ListPickerDialogBase extends Dialog {
      * @param rootItem root item.
      */
     private void navigateToItem(ItemBase rootItem) {
+        this.navigateToItem(rootItem, null);
+    }
+
+    /**
+     * Navigate to specified item.
+     *
+     * @param rootItem root item.
+     * @param children children of the root item if already loaded, or null.
+     */
+    private void navigateToItem(ItemBase rootItem, Collection<PickerItem> children) {
         if (rootItem != null) {
+            if (this.mLoadingItem != rootItem) this.mLoadingItem = null;
+
+            this.mPendingStateItem = null;
+            this.mPendingListViewState = null;
+
+            this.clearSearch();
 
             this.mRootItem = rootItem;
 
@@ -802,7 +1247,8 @@ public class ListPickerDialogBase extends Dialog {
 
             this.actualizeTitle();
 
-            Collection<PickerItem> items = this.getChildrenFor(rootItem);
+            Collection<PickerItem> items =
+                    (children != null) ? children : this.getChildrenFor(rootItem);
 
             this.mListView.setAdapter(null);
 
@@ -813,21 +1259,159 @@ public class ListPickerDialogBase extends Dialog {
             if (rootItem instanceof BackItem) {
                 BackItem backItem = (BackItem) rootItem;
 
+                // Children listed in background are not there yet, the position of the list is
+                // restored once they are.
+
                 if (backItem.mListViewState != null) {
-                    try {
-                        this.mListView.onRestoreInstanceState(backItem.mListViewState);
-                    } catch (Exception Err) {
-                        Log.e("Picker.navigateToItem", "Exception: " + Err.toString());
-                    }
+                    this.mPendingStateItem = rootItem;
+                    this.mPendingListViewState = backItem.mListViewState;
+
+                    if (!items.isEmpty()) this.restoreListViewState(rootItem);
                 }
             }
 
             this.mNavigator.add(rootItem);
 
             this.actualizePositiveButtonText();
+
+            if (this.mLoadingItem == null) this.applyPendingChanges();
+        }
+    }
+
+    /**
+     * Restore the position of the list kept when navigating back to an item, once its children
+     * are displayed.
+     *
+     * @param item item whose children are displayed.
+     */
+    private void restoreListViewState(@NonNull ItemBase item) {
+        if (this.mPendingStateItem != item) return;
+
+        Parcelable listViewState = this.mPendingListViewState;
+
+        this.mPendingStateItem = null;
+        this.mPendingListViewState = null;
+
+        try {
+            this.mListView.onRestoreInstanceState(listViewState);
+        } catch (Exception Err) {
+            Log.e("Picker.restoreState", "Exception: " + Err.toString());
+        }
+    }
+
+    /**
+     * Called on the main thread once the children of an item are prefetched. Displays them if the
+     * item is displayed and waiting for them.
+     *
+     * @param item prefetched item.
+     * @param children children of the item.
+     */
+    private void onPrefetched(
+            @NonNull ItemBase item, @NonNull Future<Collection<PickerItem>> children) {
+        if (this.mLoadingItem != item) return;
+
+        this.mLoadingItem = null;
+
+        if (this.mAdapter != null && this.mRootItem == item && !this.mShowingSearchResults) {
+            this.mAdapter.replaceItems(getChildren(children));
+
+            this.restoreListViewState(item);
+
+            this.actualizePositiveButtonText();
+        }
+
+        this.applyPendingChanges();
+    }
+
+    /**
+     * Get the children of a completed prefetch.
+     *
+     * @param children children of an item, prefetched.
+     * @return a collection of PickerItem objects, empty if the prefetch failed.
+     */
+    private static @NonNull Collection<PickerItem> getChildren(
+            @NonNull Future<Collection<PickerItem>> children) {
+        try {
+            Collection<PickerItem> items = children.get();
+
+            if (items != null) return items;
+        } catch (Exception Err) {
+            Log.e("Picker.getChildren", "Exception: " + Err.toString());
+        }
+
+        return new ArrayList<>();
+    }
+
+    /**
+     * Keep a change of the children of an item until they are displayed: before the dialog is
+     * shown, or while they are being prefetched.
+     *
+     * @param item item whose children change.
+     * @param change the change, applied again once the children are displayed.
+     * @return true if the change is kept, false if it can be applied now.
+     */
+    private boolean deferChange(@NonNull ItemBase item, @NonNull Runnable change) {
+        if (this.mAdapter != null && this.mLoadingItem != item) return false;
+
+        this.mPendingChanges.add(change);
+
+        return true;
+    }
+
+    /** Apply the kept changes, the ones of items no longer displayed are ignored. */
+    private void applyPendingChanges() {
+        if (this.mPendingChanges.isEmpty()) return;
+
+        ArrayList<Runnable> changes = new ArrayList<>(this.mPendingChanges);
+
+        this.mPendingChanges.clear();
+
+        for (Runnable change : changes) {
+            change.run();
+        }
+    }
+
+    /** Clear the search view, without restoring the listing. */
+    private void clearSearch() {
+        this.mShowingSearchResults = false;
+
+        if (this.mSearchView != null && !TextUtils.isEmpty(this.mSearchView.getText())) {
+            this.mSearchClearing = true;
+
+            try {
+                this.mSearchView.setText("");
+            } finally {
+                this.mSearchClearing = false;
+            }
+        }
+    }
+
+    /** Display again the children of the current item, after a search. */
+    private void restoreListing() {
+        if (this.mRootItem != null && this.mAdapter != null) {
+            this.mShowingSearchResults = false;
+
+            this.mAdapter.replaceAll(
+                    this.getBackItem(this.mRootItem), this.getChildrenFor(this.mRootItem));
+
+            this.mListView.setSelection(0);
+
+            this.actualizePositiveButtonText();
         }
     }
 
+    /**
+     * Called when the text of the search view changes.
+     *
+     * @param query new search query.
+     */
+    private void onSearchTextChanged(@NonNull String query) {
+        if (!this.mSearchClearing && query.isEmpty() && this.mShowingSearchResults)
+            this.restoreListing();
+
+        this.onSearchQueryChanged(query);
+    }
+
     /**
      * Called on item click.
      *
@@ -917,6 +1501,49 @@ public class ListPickerDialogBase extends Dialog {
         return null;
     }
 
+    /**
+     * Obtains a footer view which will be placed between the list and the buttons.
+     *
+     * @return a view object.
+     */
+    protected View getFooterView() {
+        return null;
+    }
+
+    /**
+     * Called on item long click.
+     *
+     * @param item item clicked.
+     * @return a boolean value who indicates if the click has been consumed.
+     */
+    protected boolean onItemLongClick(ItemBase item) {
+        return false;
+    }
+
+    /**
+     * Called when an item is picked or unpicked, before the positive button is updated. A picked
+     * item removed from the list is notified as unpicked, a picked item added to the list as
+     * picked.
+     *
+     * @param item item whose picked status has changed.
+     * @param picked new picked status of the item.
+     */
+    protected void onItemPicked(@NonNull PickerItem item, boolean picked) {}
+
+    /**
+     * Get a detail of the picked items, displayed next to their count on the positive button.
+     *
+     * @return a string contains the detail, or null if there is none.
+     */
+    protected @Nullable String getPickedItemsDetail() {
+        return null;
+    }
+
+    /** Actualize the positive button label, once the detail of the picked items has changed. */
+    protected void actualizePickedItemsDetail() {
+        this.actualizePositiveButtonText();
+    }
+
     /**
      * Indicates if the picker is in multiple selection mode.
      *
@@ -926,6 +1553,24 @@ public class ListPickerDialogBase extends Dialog {
         return false;
     }
 
+    /**
+     * Indicates if the search view is displayed under the toolbar.
+     *
+     * @return a boolean value who indicates if the search view is displayed.
+     */
+    protected boolean isSearchEnabled() {
+        return false;
+    }
+
+    /**
+     * Called on each change of the search query, from the main thread. An empty query means that
+     * the search is over and that the pending searches can be cancelled, the children of the
+     * current item are displayed again by the dialog.
+     *
+     * @param query new search query, trimmed.
+     */
+    protected void onSearchQueryChanged(@NonNull String query) {}
+
     /**
      * Called for validation of the selection.
      *
@@ -935,6 +1580,206 @@ public class ListPickerDialogBase extends Dialog {
 
     /* ---- Protected Methods ---- */
 
+    /**
+     * Get the item whose children are currently displayed.
+     *
+     * @return an ItemBase object, or null if the dialog has not been shown yet.
+     */
+    protected ItemBase getCurrentItem() {
+        return this.mRootItem;
+    }
+
+    /**
+     * Navigate to specified item.
+     *
+     * @param item item whose children have to be displayed.
+     */
+    protected void navigateTo(ItemBase item) {
+        if (this.mListView != null) this.navigateToItem(item);
+    }
+
+    /**
+     * Apply changes to the children of an item, once they have been listed again in background.
+     * Kept until the children are displayed if the dialog is not shown yet or the children are
+     * still being prefetched, ignored if the item is no longer displayed. Must be called from the
+     * main thread.
+     *
+     * @param item item whose children have changed.
+     * @param removedItems displayed children to remove.
+     * @param addedItems children to add.
+     * @param comparator order of the children, used to insert the added ones.
+     */
+    protected void applyChildrenChanges(
+            @NonNull final ItemBase item,
+            @NonNull final Collection<PickerItem> removedItems,
+            @NonNull final Collection<PickerItem> addedItems,
+            @NonNull final Comparator<PickerItem> comparator) {
+        if (this.deferChange(
+                item,
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        ListPickerDialogBase.this.applyChildrenChanges(
+                                item, removedItems, addedItems, comparator);
+                    }
+                })) return;
+
+        if (this.mRootItem != item || this.mShowingSearchResults) return;
+
+        this.mAdapter.applyChanges(removedItems, addedItems, comparator);
+
+        this.actualizePositiveButtonText();
+    }
+
+    /**
+     * Replace the displayed children of an item. The items kept keep their picked status. Kept
+     * until the children are displayed if the dialog is not shown yet or the children are still
+     * being prefetched, ignored if the item is no longer displayed. The position of the list is
+     * restored if the item was navigated back to without its children. Must be called from the
+     * main thread.
+     *
+     * @param item item whose children are displayed.
+     * @param items new children of the item.
+     */
+    protected void replaceChildren(
+            @NonNull final ItemBase item, @NonNull final Collection<PickerItem> items) {
+        if (this.deferChange(
+                item,
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        ListPickerDialogBase.this.replaceChildren(item, items);
+                    }
+                })) return;
+
+        if (this.mRootItem != item || this.mShowingSearchResults) return;
+
+        this.mAdapter.replaceItems(items);
+
+        this.restoreListViewState(item);
+
+        this.actualizePositiveButtonText();
+    }
+
+    /**
+     * Replace the displayed children of an item by a lazy list, whose items are created as they
+     * are displayed. The items kept keep their picked status. Kept until the children are
+     * displayed if the dialog is not shown yet or the children are still being prefetched,
+     * ignored if the item is no longer displayed. Must be called from the main thread.
+     *
+     * @param item item whose children are displayed.
+     * @param items new children of the item.
+     */
+    protected void replaceChildren(
+            @NonNull final ItemBase item, @NonNull final LazyItemList items) {
+        if (this.deferChange(
+                item,
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        ListPickerDialogBase.this.replaceChildren(item, items);
+                    }
+                })) return;
+
+        if (this.mRootItem != item || this.mShowingSearchResults) return;
+
+        this.mAdapter.replaceLazyItems(items);
+
+        this.restoreListViewState(item);
+
+        this.actualizePositiveButtonText();
+    }
+
+    /**
+     * Get the current search query.
+     *
+     * @return a string contains the trimmed search query, empty if there is none.
+     */
+    protected @NonNull String getSearchQuery() {
+        if (this.mSearchView == null || this.mSearchView.getText() == null) return "";
+
+        return this.mSearchView.getText().toString().trim();
+    }
+
+    /**
+     * Display the results of a search in place of the children of the current item. Ignored if
+     * the search query has been cleared meanwhile. Must be called from the main thread.
+     *
+     * @param items items found.
+     */
+    protected void showSearchResults(@NonNull Collection<PickerItem> items) {
+        if (TextUtils.isEmpty(this.getSearchQuery())) return;
+
+        this.showResults(items);
+    }
+
+    /**
+     * Display items in place of the children of the current item, like search results, even if
+     * there is no search query. The back button displays the children again. Must be called from
+     * the main thread.
+     *
+     * @param items items to display.
+     */
+    protected void showResults(@NonNull Collection<PickerItem> items) {
+        if (this.mAdapter == null) return;
+
+        this.mShowingSearchResults = true;
+
+        this.mAdapter.replaceAll(null, items);
+
+        this.mListView.setSelection(0);
+
+        this.actualizePositiveButtonText();
+    }
+
+    /**
+     * Add results of a search at the end of the displayed ones, for searches streaming their
+     * results. Ignored if the search query has been cleared meanwhile. Must be called from the
+     * main thread.
+     *
+     * @param items items found.
+     */
+    protected void appendSearchResults(@NonNull Collection<PickerItem> items) {
+        if (TextUtils.isEmpty(this.getSearchQuery())) return;
+
+        this.appendResults(items);
+    }
+
+    /**
+     * Add items at the end of the displayed results, for views streaming their results, even if
+     * there is no search query. Must be called from the main thread.
+     *
+     * @param items items to add.
+     */
+    protected void appendResults(@NonNull Collection<PickerItem> items) {
+        if (!this.mShowingSearchResults) {
+            this.showResults(items);
+        } else if (this.mAdapter != null) {
+            this.mAdapter.addAll(items);
+
+            this.actualizePositiveButtonText();
+        }
+    }
+
+    /**
+     * Show a short message. Can be called from any thread.
+     *
+     * @param messageId resource id of the message.
+     */
+    protected void showMessage(@StringRes final int messageId) {
+        PickerExecutors.runOnUiThread(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        Toast.makeText(
+                                        ListPickerDialogBase.this.getContext(),
+                                        messageId,
+                                        Toast.LENGTH_SHORT)
+                                .show();
+                    }
+                });
+    }
+
     /**
      * Get list view state.
      *
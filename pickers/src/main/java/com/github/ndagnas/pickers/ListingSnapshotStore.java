@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2020 Nicolas Dagnas
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.ndagnas.pickers;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.Collection;
+
+/**
+ * Defines the store of the listing snapshots, kept in the private cache directory of the
+ * application. A snapshot contains the name and the attributes of the entries of a directory, so
+ * that a picker can display it immediately before listing the directory again.
+ *
+ * <p>Format: magic, version, key, modification date of the directory, count of entries, then for
+ * each entry its name, a directory flag, its size and its modification date.
+ */
+final class ListingSnapshotStore {
+    /** Name of the directory of the snapshots. */
+    private static final String DIRECTORY_NAME = "pickers-listings";
+
+    /** Identifies the snapshot files. */
+    private static final int MAGIC = 0x504c5331;
+
+    /** Version of the file format. */
+    private static final int VERSION = 1;
+
+    /** Maximum number of snapshots kept. */
+    private static final int MAX_SNAPSHOTS = 32;
+
+    /** Maximum number of entries of a snapshot. */
+    private static final int MAX_ENTRIES = 4096;
+
+    /** Defines an entry of a snapshot. */
+    static class Entry {
+        /** Name of the file. */
+        final String name;
+
+        /** Indicates if the file is a directory. */
+        final boolean isDirectory;
+
+        /** Size of the file. */
+        final long length;
+
+        /** Modification date of the file. */
+        final long lastModified;
+
+        /**
+         * Object initialisation.
+         *
+         * @param name name of the file.
+         * @param isDirectory indicates if the file is a directory.
+         * @param length size of the file.
+         * @param lastModified modification date of the file.
+         */
+        Entry(@NonNull String name, boolean isDirectory, long length, long lastModified) {
+            this.name = name;
+            this.isDirectory = isDirectory;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /** Defines the snapshot of a directory. */
+    static class Snapshot {
+        /** Modification date of the directory when it was listed. */
+        final long lastModified;
+
+        /** Entries of the directory. */
+        final Entry[] entries;
+
+        /**
+         * Object initialisation.
+         *
+         * @param lastModified modification date of the directory when it was listed.
+         * @param entries entries of the directory.
+         */
+        Snapshot(long lastModified, @NonNull Entry[] entries) {
+            this.lastModified = lastModified;
+            this.entries = entries;
+        }
+    }
+
+    /** Object initialisation. */
+    private ListingSnapshotStore() {}
+
+    /**
+     * Load the snapshot of a directory.
+     *
+     * @param context the parent context.
+     * @param configKey key of the picker configuration used to filter the listing.
+     * @param directory listed directory.
+     * @return a snapshot, or null if there is none.
+     */
+    static @Nullable Snapshot load(
+            @NonNull Context context, @NonNull String configKey, @NonNull File directory) {
+        String key = createKey(configKey, directory);
+
+        File file = CacheFiles.getFile(context, DIRECTORY_NAME, key);
+
+        long start = IoStats.start();
+
+        boolean isFile = file.isFile();
+
+        IoStats.record(IoStats.STAT, file, start);
+
+        if (!isFile) return null;
+
+        start = IoStats.start();
+
+        try (DataInputStream input =
+                new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) return null;
+
+            if (!key.equals(input.readUTF())) return null;
+
+            long lastModified = input.readLong();
+
+            int count = input.readInt();
+
+            if (count < 0 || count > MAX_ENTRIES) return null;
+
+            Entry[] entries = new Entry[count];
+
+            for (int index = 0; index < count; index++) {
+                entries[index] =
+                        new Entry(
+                                input.readUTF(),
+                                input.readBoolean(),
+                                input.readLong(),
+                                input.readLong());
+            }
+
+            return new Snapshot(lastModified, entries);
+        } catch (Exception Err) {
+            Log.e("ListingSnapshot.load", "Exception: " + Err.toString());
+        } finally {
+            IoStats.record(IoStats.READ, file, start);
+        }
+
+        return null;
+    }
+
+    /**
+     * Save the snapshot of a directory. Must be called from a background thread.
+     *
+     * @param context the parent context.
+     * @param configKey key of the picker configuration used to filter the listing.
+     * @param directory listed directory.
+     * @param lastModified modification date of the directory read before the listing.
+     * @param entries entries of the directory.
+     */
+    static void save(
+            @NonNull Context context,
+            @NonNull String configKey,
+            @NonNull File directory,
+            long lastModified,
+            @NonNull Collection<Entry> entries) {
+        if (lastModified == 0 || entries.size() > MAX_ENTRIES) return;
+
+        String key = createKey(configKey, directory);
+
+        File file = CacheFiles.getFile(context, DIRECTORY_NAME, key);
+        File tempFile = CacheFiles.getTempFile(file);
+
+        if (tempFile == null) return;
+
+        try (DataOutputStream output =
+                new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeUTF(key);
+            output.writeLong(lastModified);
+            output.writeInt(entries.size());
+
+            for (Entry entry : entries) {
+                output.writeUTF(entry.name);
+                output.writeBoolean(entry.isDirectory);
+                output.writeLong(entry.length);
+                output.writeLong(entry.lastModified);
+            }
+        } catch (Exception Err) {
+            Log.e("ListingSnapshot.save", "Exception: " + Err.toString());
+
+            CacheFiles.discard(tempFile);
+
+            return;
+        }
+
+        CacheFiles.commit(tempFile, file, MAX_SNAPSHOTS);
+    }
+
+    /**
+     * Create the key of a snapshot.
+     *
+     * @param configKey key of the picker configuration.
+     * @param directory listed directory.
+     * @return a string contains the key of the snapshot.
+     */
+    private static String createKey(@NonNull String configKey, @NonNull File directory) {
+        return configKey + '\u0000' + directory.getAbsolutePath();
+    }
+}
@@ -0,0 +1,688 @@
+/*
+ * Copyright (C) 2020 Nicolas Dagnas
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.ndagnas.pickers;
+
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Defines a json tree of a memory-mapped UTF-8 json file. A single sequential scan indexes, for
+ * each node, the offsets of its title, sub-title and children reference values and its children.
+ * The values are only decoded when they are displayed, so the heap holds the index and the
+ * displayed strings, whatever the size of the file.
+ */
+final class MappedJSonTree implements JSonTree {
+    /** Maximum number of decoded values kept in memory. */
+    private static final int MAX_DECODED = 2048;
+
+    // Attributes
+
+    private final ByteBuffer mBuffer;
+    private final int mLimit;
+    private final JSonFieldPath[] mPaths;
+    private final LruCache<Integer, String> mDecoded = new LruCache<>(MAX_DECODED);
+    private int[] mTitleOffsets = new int[1024];
+    private int[] mSubTitleOffsets = new int[1024];
+    private int[] mChildrenReferenceOffsets;
+    private int[] mFirstChildren = new int[1024];
+    private int[] mChildCounts = new int[1024];
+    private int mCount = 0;
+    private int[] mChildren = new int[1024];
+    private int mChildrenCount = 0;
+    private int mPosition = 0;
+    private boolean mEscaped = false;
+
+    /**
+     * Object initialisation.
+     *
+     * @param buffer content of the file.
+     * @param paths paths of the title, sub-title, children and children reference fields, by
+     *     field.
+     */
+    private MappedJSonTree(@NonNull ByteBuffer buffer, @NonNull JSonFieldPath[] paths) {
+        this.mBuffer = buffer;
+        this.mLimit = buffer.limit();
+        this.mPaths = paths;
+        this.mChildrenReferenceOffsets =
+                (paths.length > CHILDREN_REFERENCE_FIELD && paths[CHILDREN_REFERENCE_FIELD] != null)
+                        ? new int[1024]
+                        : null;
+    }
+
+    /**
+     * Map and index a json file, whose root is a node. Must be called from a background thread.
+     *
+     * @param file json file, encoded in UTF-8.
+     * @param paths paths of the title, sub-title, children and children reference fields, by
+     *     field, the sub-title and children reference paths being null if there are none.
+     * @return a json tree.
+     * @throws IOException if the file cannot be mapped or is not valid.
+     */
+    static @NonNull MappedJSonTree open(@NonNull File file, @NonNull JSonFieldPath[] paths)
+            throws IOException {
+        ByteBuffer buffer;
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+
+            if (size > Integer.MAX_VALUE) throw new IOException("The file is too large to map");
+
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+
+        MappedJSonTree tree = new MappedJSonTree(buffer, paths);
+
+        if (tree.peek() != '{') throw tree.error("The root of the document is not an object");
+
+        tree.scanNode();
+        tree.trim();
+
+        return tree;
+    }
+
+    /**
+     * Get the number of nodes.
+     *
+     * @return a integer contains the number of nodes.
+     */
+    @Override
+    public int size() {
+        return this.mCount;
+    }
+
+    /**
+     * Get the title of a node, decoded on first call.
+     *
+     * @param node id of the node.
+     * @return a string contains the title, or null if the node has no title.
+     */
+    @Override
+    public @Nullable String getTitle(int node) {
+        return this.getValue(this.mTitleOffsets[node]);
+    }
+
+    /**
+     * Get the sub-title of a node, decoded on first call.
+     *
+     * @param node id of the node.
+     * @return a string contains the sub-title, or null if the node has no sub-title.
+     */
+    @Override
+    public @Nullable String getSubTitle(int node) {
+        return this.getValue(this.mSubTitleOffsets[node]);
+    }
+
+    /**
+     * Get the children reference of a node, decoded on first call.
+     *
+     * @param node id of the node.
+     * @return a string contains the reference, or null if the node has no children reference.
+     */
+    @Override
+    public @Nullable String getChildrenReference(int node) {
+        return (this.mChildrenReferenceOffsets != null)
+                ? this.getValue(this.mChildrenReferenceOffsets[node])
+                : null;
+    }
+
+    /**
+     * Get the number of children of a node.
+     *
+     * @param node id of the node.
+     * @return the number of children, or -1 if the node has no children field.
+     */
+    @Override
+    public int getChildCount(int node) {
+        return this.mChildCounts[node];
+    }
+
+    /**
+     * Get a child of a node.
+     *
+     * @param node id of the node.
+     * @param index position of the child.
+     * @return the id of the child.
+     */
+    @Override
+    public int getChild(int node, int index) {
+        return this.mChildren[this.mFirstChildren[node] + index];
+    }
+
+    /**
+     * Get a node as a json object, holding its title, its sub-title and its id.
+     *
+     * @param node id of the node.
+     * @return a json object.
+     */
+    @Override
+    public @NonNull JSONObject toJSONObject(int node) {
+        JSONObject object = new JSONObject();
+
+        try {
+            String title = this.getTitle(node);
+            String subTitle = this.getSubTitle(node);
+
+            if (title != null) this.mPaths[TITLE_FIELD].put(object, title);
+
+            if (this.mPaths[SUB_TITLE_FIELD] != null && subTitle != null)
+                this.mPaths[SUB_TITLE_FIELD].put(object, subTitle);
+
+            object.put(JSonPickerDialog.NODE_ID_NAME, node);
+        } catch (Exception Err) {
+            Log.e("MappedJSonTree.toJSON", "Exception: " + Err.toString());
+        }
+
+        return object;
+    }
+
+    /* ---- Decoding ---- */
+
+    /**
+     * Get a scalar value, decoded on first call.
+     *
+     * @param offset offset of the value in the file, or -1.
+     * @return a string contains the value, or null if the offset is -1.
+     */
+    private @Nullable String getValue(int offset) {
+        if (offset < 0) return null;
+
+        String value = this.mDecoded.get(offset);
+
+        if (value == null) {
+            value = this.decode(offset);
+
+            this.mDecoded.put(offset, value);
+        }
+
+        return value;
+    }
+
+    /**
+     * Decode a scalar value: a string, a number or a boolean.
+     *
+     * @param offset offset of the value in the file.
+     * @return a string contains the value.
+     */
+    private @NonNull String decode(int offset) {
+        if (this.mBuffer.get(offset) != '"') {
+            int end = offset;
+
+            while (end < this.mLimit && !isDelimiter(this.mBuffer.get(end))) end++;
+
+            return this.getString(offset, end);
+        }
+
+        StringBuilder value = new StringBuilder();
+
+        int start = offset + 1;
+        int position = start;
+
+        while (position < this.mLimit) {
+            byte current = this.mBuffer.get(position);
+
+            if (current == '"') break;
+
+            if (current != '\\') {
+                position++;
+
+                continue;
+            }
+
+            value.append(this.getString(start, position));
+
+            byte escaped = (position + 1 < this.mLimit) ? this.mBuffer.get(position + 1) : 0;
+
+            position += 2;
+
+            switch (escaped) {
+                case 'b':
+                    value.append('\b');
+                    break;
+                case 'f':
+                    value.append('\f');
+                    break;
+                case 'n':
+                    value.append('\n');
+                    break;
+                case 'r':
+                    value.append('\r');
+                    break;
+                case 't':
+                    value.append('\t');
+                    break;
+                case 'u':
+                    if (position + 4 <= this.mLimit) {
+                        try {
+                            String hex = this.getString(position, position + 4);
+
+                            value.append((char) Integer.parseInt(hex, 16));
+                        } catch (NumberFormatException Err) {
+                            Log.e("MappedJSonTree.decode", "Exception: " + Err.toString());
+                        }
+
+                        position += 4;
+                    }
+                    break;
+                default:
+                    value.append((char) escaped);
+                    break;
+            }
+
+            start = position;
+        }
+
+        value.append(this.getString(start, Math.min(position, this.mLimit)));
+
+        return value.toString();
+    }
+
+    /**
+     * Get a range of the file as a string.
+     *
+     * @param start offset of the first byte.
+     * @param end offset following the last byte.
+     * @return a string decoded from UTF-8.
+     */
+    private @NonNull String getString(int start, int end) {
+        byte[] bytes = new byte[end - start];
+
+        ByteBuffer view = this.mBuffer.duplicate();
+
+        view.position(start);
+        view.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Check if a byte ends a scalar value.
+     *
+     * @param value a byte of the file.
+     * @return true if the byte is a white space or a structural character.
+     */
+    private static boolean isDelimiter(byte value) {
+        switch (value) {
+            case ',':
+            case ':':
+            case ']':
+            case '}':
+            case ' ':
+            case '\t':
+            case '\r':
+            case '\n':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /* ---- Scanning ---- */
+
+    /**
+     * Scan a node, and its children.
+     *
+     * @return the id of the node.
+     * @throws IOException if the document is not valid.
+     */
+    private int scanNode() throws IOException {
+        int node = this.addNode();
+
+        this.scanMember(node, JSonFieldPath.all(this.mPaths), 0);
+
+        return node;
+    }
+
+    /**
+     * Scan a value reached by the first segments of the paths of some fields of a node: the value
+     * of the fields whose path ends here, or else the values it contains along the paths.
+     *
+     * @param node id of the node.
+     * @param fields bit mask of the fields whose paths lead to the value.
+     * @param depth number of segments of the paths leading to the value.
+     * @throws IOException if the document is not valid.
+     */
+    private void scanMember(int node, int fields, int depth) throws IOException {
+        int ended = JSonFieldPath.ended(this.mPaths, fields, depth);
+
+        byte token = this.peek();
+
+        if ((ended & (1 << CHILDREN_FIELD)) != 0 && token == '[') {
+            this.scanChildren(node);
+        } else if (ended != 0) {
+            int valueStart = this.mPosition;
+
+            this.skipValue();
+
+            if (token != '{' && token != '[' && token != 'n') {
+                if ((ended & (1 << TITLE_FIELD)) != 0) this.mTitleOffsets[node] = valueStart;
+                if ((ended & (1 << SUB_TITLE_FIELD)) != 0) this.mSubTitleOffsets[node] = valueStart;
+                if ((ended & (1 << CHILDREN_REFERENCE_FIELD)) != 0)
+                    this.mChildrenReferenceOffsets[node] = valueStart;
+            }
+        } else if (token == '{') {
+            this.mPosition++;
+
+            if (this.peek() == '}') {
+                this.mPosition++;
+
+                return;
+            }
+
+            do {
+                int matched = this.matchKey(fields, depth, this.skipString());
+
+                this.expect(':');
+
+                if (matched != 0) {
+                    this.scanMember(node, matched, depth + 1);
+                } else {
+                    this.skipValue();
+                }
+            } while (this.next('}'));
+        } else if (token == '[') {
+            this.mPosition++;
+
+            if (this.peek() == ']') {
+                this.mPosition++;
+
+                return;
+            }
+
+            int index = 0;
+
+            do {
+                int matched = JSonFieldPath.match(this.mPaths, fields, depth, index++);
+
+                if (matched != 0) {
+                    this.scanMember(node, matched, depth + 1);
+                } else {
+                    this.skipValue();
+                }
+            } while (this.next(']'));
+        } else {
+            this.skipValue();
+        }
+    }
+
+    /**
+     * Scan the children of a node. The ids of the children are gathered first, then copied at the
+     * end of the shared array, once the nested nodes are scanned.
+     *
+     * @param node id of the parent node.
+     * @throws IOException if the document is not valid.
+     */
+    private void scanChildren(int node) throws IOException {
+        int[] children = new int[8];
+        int count = 0;
+
+        this.expect('[');
+
+        if (this.peek() == ']') {
+            this.mPosition++;
+        } else {
+            do {
+                if (this.peek() != '{') {
+                    this.skipValue();
+
+                    continue;
+                }
+
+                if (count == children.length) children = Arrays.copyOf(children, count * 2);
+
+                children[count++] = this.scanNode();
+            } while (this.next(']'));
+        }
+
+        if (this.mChildrenCount + count > this.mChildren.length)
+            this.mChildren =
+                    Arrays.copyOf(
+                            this.mChildren,
+                            Math.max(this.mChildren.length * 2, this.mChildrenCount + count));
+
+        System.arraycopy(children, 0, this.mChildren, this.mChildrenCount, count);
+
+        this.mFirstChildren[node] = this.mChildrenCount;
+        this.mChildCounts[node] = count;
+
+        this.mChildrenCount += count;
+    }
+
+    /**
+     * Skip a value of any type, nested values included.
+     *
+     * @throws IOException if the document is not valid.
+     */
+    private void skipValue() throws IOException {
+        int depth = 0;
+
+        do {
+            switch (this.peek()) {
+                case '"':
+                    this.skipString();
+                    break;
+                case '{':
+                case '[':
+                    depth++;
+                    this.mPosition++;
+                    break;
+                case '}':
+                case ']':
+                    depth--;
+                    this.mPosition++;
+                    break;
+                case ',':
+                case ':':
+                    this.mPosition++;
+                    break;
+                default:
+                    while (this.mPosition < this.mLimit
+                            && !isDelimiter(this.mBuffer.get(this.mPosition))) this.mPosition++;
+                    break;
+            }
+        } while (depth > 0);
+    }
+
+    /**
+     * Skip a string.
+     *
+     * @return the offset of the opening quote.
+     * @throws IOException if the document is not valid.
+     */
+    private int skipString() throws IOException {
+        int start = this.mPosition;
+
+        this.expect('"');
+
+        this.mEscaped = false;
+
+        while (this.mPosition < this.mLimit) {
+            byte current = this.mBuffer.get(this.mPosition++);
+
+            if (current == '"') return start;
+
+            if (current == '\\') {
+                this.mEscaped = true;
+                this.mPosition++;
+            }
+        }
+
+        throw this.error("Unterminated string");
+    }
+
+    /**
+     * Get, among some fields, the ones whose path continues with the last skipped string.
+     *
+     * @param fields bit mask of the fields, whose paths continue after the depth.
+     * @param depth position of the segment.
+     * @param keyStart offset of the opening quote of the string.
+     * @return a bit mask of the matching fields.
+     */
+    private int matchKey(int fields, int depth, int keyStart) {
+        int matched = 0;
+
+        for (int field = 0; field < this.mPaths.length; field++) {
+            if ((fields & (1 << field)) == 0) continue;
+
+            String name = this.mPaths[field].getName(depth);
+
+            if (name != null && this.isKey(keyStart, name)) matched |= (1 << field);
+        }
+
+        return matched;
+    }
+
+    /**
+     * Check if the last skipped string is a field name.
+     *
+     * @param keyStart offset of the opening quote of the string.
+     * @param name a field name.
+     * @return true if the string is the field name.
+     */
+    private boolean isKey(int keyStart, @NonNull String name) {
+        if (this.mEscaped) return name.equals(this.decode(keyStart));
+
+        int length = this.mPosition - keyStart - 2;
+
+        if (length != name.length()) {
+            return length > name.length() && name.equals(this.decode(keyStart));
+        }
+
+        for (int index = 0; index < length; index++) {
+            if (this.mBuffer.get(keyStart + 1 + index) != name.charAt(index))
+                return name.equals(this.decode(keyStart));
+        }
+
+        return true;
+    }
+
+    /**
+     * Skip the white spaces, and get the next byte.
+     *
+     * @return the next byte.
+     * @throws IOException if the end of the document is reached.
+     */
+    private byte peek() throws IOException {
+        while (this.mPosition < this.mLimit) {
+            byte current = this.mBuffer.get(this.mPosition);
+
+            if (current != ' ' && current != '\t' && current != '\r' && current != '\n')
+                return current;
+
+            this.mPosition++;
+        }
+
+        throw this.error("Unexpected end of document");
+    }
+
+    /**
+     * Consume an expected byte.
+     *
+     * @param expected the expected byte.
+     * @throws IOException if the next byte is another one.
+     */
+    private void expect(char expected) throws IOException {
+        if (this.peek() != expected) throw this.error("Expected '" + expected + "'");
+
+        this.mPosition++;
+    }
+
+    /**
+     * Consume the separator of the next member, or the end of the container.
+     *
+     * @param end byte ending the container.
+     * @return true if another member follows, false at the end of the container.
+     * @throws IOException if the next byte is neither a separator nor the end.
+     */
+    private boolean next(char end) throws IOException {
+        byte current = this.peek();
+
+        this.mPosition++;
+
+        if (current == ',') return true;
+        if (current == end) return false;
+
+        throw this.error("Expected ',' or '" + end + "'");
+    }
+
+    /**
+     * Create an exception locating the current position.
+     *
+     * @param message description of the error.
+     * @return an exception.
+     */
+    private @NonNull IOException error(@NonNull String message) {
+        return new IOException(
+                String.format(Locale.US, "%s at offset %d", message, this.mPosition));
+    }
+
+    /**
+     * Add a node, without title, sub-title, children nor children reference field.
+     *
+     * @return the id of the node.
+     */
+    private int addNode() {
+        if (this.mCount == this.mTitleOffsets.length) {
+            int capacity = this.mCount * 2;
+
+            this.mTitleOffsets = Arrays.copyOf(this.mTitleOffsets, capacity);
+            this.mSubTitleOffsets = Arrays.copyOf(this.mSubTitleOffsets, capacity);
+            this.mFirstChildren = Arrays.copyOf(this.mFirstChildren, capacity);
+            this.mChildCounts = Arrays.copyOf(this.mChildCounts, capacity);
+
+            if (this.mChildrenReferenceOffsets != null)
+                this.mChildrenReferenceOffsets =
+                        Arrays.copyOf(this.mChildrenReferenceOffsets, capacity);
+        }
+
+        this.mTitleOffsets[this.mCount] = -1;
+        this.mSubTitleOffsets[this.mCount] = -1;
+        this.mChildCounts[this.mCount] = -1;
+
+        if (this.mChildrenReferenceOffsets != null)
+            this.mChildrenReferenceOffsets[this.mCount] = -1;
+
+        return this.mCount++;
+    }
+
+    /** Release the unused capacity of the index, once the document is scanned. */
+    private void trim() {
+        this.mTitleOffsets = Arrays.copyOf(this.mTitleOffsets, this.mCount);
+        this.mSubTitleOffsets = Arrays.copyOf(this.mSubTitleOffsets, this.mCount);
+        this.mFirstChildren = Arrays.copyOf(this.mFirstChildren, this.mCount);
+        this.mChildCounts = Arrays.copyOf(this.mChildCounts, this.mCount);
+        this.mChildren = Arrays.copyOf(this.mChildren, this.mChildrenCount);
+
+        if (this.mChildrenReferenceOffsets != null)
+            this.mChildrenReferenceOffsets =
+                    Arrays.copyOf(this.mChildrenReferenceOffsets, this.mCount);
+    }
+}
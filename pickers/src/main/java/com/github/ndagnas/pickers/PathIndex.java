@@ -0,0 +1,535 @@
+/*
+ * Copyright (C) 2020 Nicolas Dagnas
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.ndagnas.pickers;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Defines an index of all the paths under a root directory, used for fuzzy quick-open searches.
+ *
+ * <p>Each path has a bitmap of the characters it contains, so that a query only scores the paths
+ * containing all of its characters. The scoring is split across the cores and gives a bonus to the
+ * characters matched at the start of a word and to the consecutive ones, like fzf does.
+ */
+final class PathIndex {
+    /** Maximum number of paths indexed. */
+    static final int MAX_PATHS = 262144;
+
+    /** Maximum number of results of a search. */
+    static final int MAX_RESULTS = 100;
+
+    /** Number of paths scored between two checks of the cancellation. */
+    private static final int CANCELLATION_CHECK_INTERVAL = 1024;
+
+    /** Value returned by the scoring when the path does not match. */
+    private static final int NO_MATCH = Integer.MIN_VALUE;
+
+    // Scores
+
+    private static final int SCORE_MATCH = 16;
+    private static final int SCORE_GAP_START = -3;
+    private static final int SCORE_GAP_EXTENSION = -1;
+    private static final int BONUS_BOUNDARY = 8;
+    private static final int BONUS_CAMEL_CASE = 7;
+    private static final int BONUS_CONSECUTIVE = 4;
+    private static final int BONUS_FIRST_CHAR_MULTIPLIER = 2;
+    private static final int BONUS_FILE_NAME = 16;
+
+    // Attributes
+
+    private final File mRoot;
+    private final String[] mPaths;
+    private final long[] mMasks;
+    private String mLastQuery = null;
+    private int[] mLastMatches = null;
+
+    /**
+     * Object initialisation.
+     *
+     * @param root root directory.
+     * @param paths paths relative to the root directory.
+     */
+    private PathIndex(@NonNull File root, @NonNull String[] paths) {
+        this.mRoot = root;
+        this.mPaths = paths;
+        this.mMasks = new long[paths.length];
+
+        for (int index = 0; index < paths.length; index++) {
+            this.mMasks[index] = createMask(paths[index]);
+        }
+    }
+
+    /**
+     * Index the paths under a root directory. Must be called from a background thread, stops at
+     * MAX_PATHS paths or when the thread is interrupted.
+     *
+     * @param root root directory.
+     * @param filter filter of the files and directories to index.
+     * @return an index of the paths.
+     */
+    static @NonNull PathIndex build(
+            @NonNull File root, @NonNull FilePickerDialog.ExtensionFilter filter) {
+        ArrayList<String> paths = new ArrayList<>();
+        ArrayDeque<File> directories = new ArrayDeque<>();
+
+        int rootLength = root.getAbsolutePath().length() + 1;
+
+        directories.push(root);
+
+        while (!directories.isEmpty() && paths.size() < MAX_PATHS) {
+            if (Thread.currentThread().isInterrupted()) break;
+
+            File directory = directories.pop();
+
+            // The volumes found slow are skipped, their listings would block the index.
+
+            if (VolumeGovernor.isSlow(directory)) continue;
+
+            String[] names = directory.list();
+
+            if (names == null) continue;
+
+            for (String name : names) {
+                // The attributes read by the filter tell the directories.
+
+                FilePickerFilter.Entry entry =
+                        new FilePickerFilter.Entry(new File(directory, name));
+
+                if (!filter.accept(entry)) continue;
+
+                String path = entry.getFile().getAbsolutePath();
+
+                if (path.length() <= rootLength) continue;
+
+                paths.add(path.substring(rootLength));
+
+                if (entry.isDirectory()) directories.push(entry.getFile());
+
+                if (paths.size() >= MAX_PATHS) break;
+            }
+        }
+
+        return new PathIndex(root, paths.toArray(new String[0]));
+    }
+
+    /**
+     * Get the number of indexed paths.
+     *
+     * @return a integer contains the number of paths.
+     */
+    int size() {
+        return this.mPaths.length;
+    }
+
+    /**
+     * Search the paths matching a query, the best first. The query is cancelled as soon as the
+     * generation counter differs from the expected generation.
+     *
+     * @param query searched characters, in order, spaces are ignored.
+     * @param generation generation counter of the searches.
+     * @param expectedGeneration generation of this search.
+     * @return a list of files, or null if the search has been cancelled.
+     */
+    @Nullable
+    List<File> search(
+            @NonNull String query,
+            @NonNull final AtomicInteger generation,
+            final int expectedGeneration) {
+        final char[] queryChars = normalizeQuery(query);
+
+        if (queryChars.length == 0) return Collections.emptyList();
+
+        final long queryMask = createMask(new String(queryChars));
+
+        // A path matching a query also matches all the prefixes of the query, so the candidates of
+        // an extended query are the matches of the previous one.
+
+        final int[] candidates;
+
+        synchronized (this) {
+            String queryString = new String(queryChars);
+
+            if (this.mLastQuery != null
+                    && this.mLastMatches != null
+                    && queryString.startsWith(this.mLastQuery)) {
+                candidates = this.mLastMatches;
+            } else {
+                candidates = null;
+            }
+        }
+
+        final int count = (candidates != null) ? candidates.length : this.mPaths.length;
+
+        // Score in parallel, each chunk keeps its own best results.
+
+        int chunkCount = Math.min(PickerExecutors.getComputeThreadCount(), count / 4096);
+
+        chunkCount = Math.max(1, chunkCount);
+
+        int chunkSize = (count + chunkCount - 1) / chunkCount;
+
+        ArrayList<Future<Chunk>> futures = new ArrayList<>(chunkCount);
+
+        for (int start = 0; start < count; start += chunkSize) {
+            final int chunkStart = start;
+            final int chunkEnd = Math.min(count, start + chunkSize);
+
+            futures.add(
+                    PickerExecutors.compute()
+                            .submit(
+                                    new Callable<Chunk>() {
+                                        @Override
+                                        public Chunk call() {
+                                            return PathIndex.this.scoreChunk(
+                                                    queryChars,
+                                                    queryMask,
+                                                    candidates,
+                                                    chunkStart,
+                                                    chunkEnd,
+                                                    generation,
+                                                    expectedGeneration);
+                                        }
+                                    }));
+        }
+
+        // Merge the chunks.
+
+        int matchCount = 0;
+
+        ArrayList<Chunk> chunks = new ArrayList<>(futures.size());
+
+        for (Future<Chunk> future : futures) {
+            Chunk chunk;
+
+            try {
+                chunk = future.get();
+            } catch (Exception Err) {
+                Log.e("PathIndex.search", "Exception: " + Err.toString());
+
+                chunk = null;
+            }
+
+            if (chunk == null) return null;
+
+            matchCount += chunk.matchCount;
+
+            chunks.add(chunk);
+        }
+
+        int[] matches = new int[matchCount];
+        long[] bestKeys = new long[0];
+
+        int offset = 0;
+
+        for (Chunk chunk : chunks) {
+            System.arraycopy(chunk.matches, 0, matches, offset, chunk.matchCount);
+
+            offset += chunk.matchCount;
+
+            long[] keys = new long[bestKeys.length + chunk.bestKeys.length];
+
+            System.arraycopy(bestKeys, 0, keys, 0, bestKeys.length);
+            System.arraycopy(chunk.bestKeys, 0, keys, bestKeys.length, chunk.bestKeys.length);
+
+            bestKeys = keys;
+        }
+
+        synchronized (this) {
+            this.mLastQuery = new String(queryChars);
+            this.mLastMatches = matches;
+        }
+
+        Arrays.sort(bestKeys);
+
+        ArrayList<File> result = new ArrayList<>(Math.min(MAX_RESULTS, bestKeys.length));
+
+        for (int index = bestKeys.length - 1; index >= 0 && result.size() < MAX_RESULTS; index--) {
+            int pathIndex = Integer.MAX_VALUE - (int) (bestKeys[index] & 0xFFFFFFFFL);
+
+            result.add(new File(this.mRoot, this.mPaths[pathIndex]));
+        }
+
+        return result;
+    }
+
+    /** Defines the result of the scoring of a chunk of paths. */
+    static class Chunk {
+        /** Indexes of the matching paths. */
+        int[] matches = new int[64];
+
+        /** Number of matching paths. */
+        int matchCount = 0;
+
+        /** Keys of the best matching paths, see createKey(). */
+        long[] bestKeys;
+    }
+
+    /**
+     * Score a chunk of paths.
+     *
+     * @param query normalized query.
+     * @param queryMask bitmap of the characters of the query.
+     * @param candidates indexes of the candidate paths, or null for all paths.
+     * @param start first candidate of the chunk.
+     * @param end end of the chunk (excluded).
+     * @param generation generation counter of the searches.
+     * @param expectedGeneration generation of this search.
+     * @return the result of the chunk, or null if the search has been cancelled.
+     */
+    private Chunk scoreChunk(
+            @NonNull char[] query,
+            long queryMask,
+            @Nullable int[] candidates,
+            int start,
+            int end,
+            @NonNull AtomicInteger generation,
+            int expectedGeneration) {
+        Chunk chunk = new Chunk();
+
+        PriorityQueue<Long> bestKeys = new PriorityQueue<>(MAX_RESULTS + 1);
+
+        for (int index = start; index < end; index++) {
+            if ((index - start) % CANCELLATION_CHECK_INTERVAL == 0
+                    && generation.get() != expectedGeneration) return null;
+
+            int pathIndex = (candidates != null) ? candidates[index] : index;
+
+            if ((this.mMasks[pathIndex] & queryMask) != queryMask) continue;
+
+            int score = score(this.mPaths[pathIndex], query);
+
+            if (score == NO_MATCH) continue;
+
+            if (chunk.matchCount == chunk.matches.length)
+                chunk.matches = Arrays.copyOf(chunk.matches, chunk.matchCount * 2);
+
+            chunk.matches[chunk.matchCount++] = pathIndex;
+
+            long key = createKey(score, pathIndex);
+
+            if (bestKeys.size() < MAX_RESULTS) {
+                bestKeys.add(key);
+            } else if (key > bestKeys.peek()) {
+                bestKeys.poll();
+                bestKeys.add(key);
+            }
+        }
+
+        chunk.bestKeys = new long[bestKeys.size()];
+
+        int index = 0;
+
+        for (Long key : bestKeys) {
+            chunk.bestKeys[index++] = key;
+        }
+
+        return chunk;
+    }
+
+    /**
+     * Create the sort key of a matching path, the best path has the highest key. Paths with the
+     * same score are ordered by index.
+     *
+     * @param score score of the path.
+     * @param pathIndex index of the path.
+     * @return a long value contains the key.
+     */
+    private static long createKey(int score, int pathIndex) {
+        return ((long) score << 32) | (Integer.MAX_VALUE - pathIndex);
+    }
+
+    /**
+     * Score a path against a query. The shortest window of the path containing the characters of
+     * the query is searched, then each matched character is scored.
+     *
+     * @param path path to score.
+     * @param query normalized query.
+     * @return a integer contains the score, or NO_MATCH if the path does not match.
+     */
+    static int score(@NonNull String path, @NonNull char[] query) {
+        int length = path.length();
+
+        // Forward pass, find the end of the first occurrence.
+
+        int queryIndex = 0;
+        int end = -1;
+
+        for (int index = 0; index < length; index++) {
+            if (toLowerCase(path.charAt(index)) == query[queryIndex]) {
+                if (++queryIndex == query.length) {
+                    end = index;
+                    break;
+                }
+            }
+        }
+
+        if (end < 0) return NO_MATCH;
+
+        // Backward pass, find the closest start.
+
+        int start = 0;
+
+        queryIndex = query.length - 1;
+
+        for (int index = end; index >= 0; index--) {
+            if (toLowerCase(path.charAt(index)) == query[queryIndex]) {
+                if (--queryIndex < 0) {
+                    start = index;
+                    break;
+                }
+            }
+        }
+
+        // Score the window.
+
+        int score = 0;
+        int previousMatch = -2;
+        int firstBonus = 0;
+
+        queryIndex = 0;
+
+        for (int index = start; index <= end; index++) {
+            char pathChar = path.charAt(index);
+
+            if (queryIndex < query.length && toLowerCase(pathChar) == query[queryIndex]) {
+                int bonus = getBonus(path, index);
+
+                if (queryIndex == 0) {
+                    bonus *= BONUS_FIRST_CHAR_MULTIPLIER;
+                } else if (previousMatch == index - 1) {
+                    bonus = Math.max(bonus, Math.max(firstBonus, BONUS_CONSECUTIVE));
+                }
+
+                if (previousMatch != index - 1) firstBonus = bonus;
+
+                score += SCORE_MATCH + bonus;
+
+                previousMatch = index;
+                queryIndex++;
+            } else {
+                score += (previousMatch == index - 1) ? SCORE_GAP_START : SCORE_GAP_EXTENSION;
+            }
+        }
+
+        // Prefer the matches in the file name, then the short paths.
+
+        if (start > path.lastIndexOf('/')) score += BONUS_FILE_NAME;
+
+        return score * 64 - Math.min(63, length / 4);
+    }
+
+    /**
+     * Get the bonus of a character matched at a position.
+     *
+     * @param path path to score.
+     * @param index position of the character.
+     * @return a integer contains the bonus.
+     */
+    private static int getBonus(@NonNull String path, int index) {
+        if (index == 0) return BONUS_BOUNDARY;
+
+        char previous = path.charAt(index - 1);
+        char current = path.charAt(index);
+
+        if (previous == '/'
+                || previous == '_'
+                || previous == '-'
+                || previous == '.'
+                || previous == ' ') return BONUS_BOUNDARY;
+
+        if (Character.isLowerCase(previous) && Character.isUpperCase(current))
+            return BONUS_CAMEL_CASE;
+
+        if (!Character.isDigit(previous) && Character.isDigit(current)) return BONUS_CAMEL_CASE;
+
+        return 0;
+    }
+
+    /**
+     * Normalize a query, lower case without spaces.
+     *
+     * @param query query to normalize.
+     * @return an array of characters.
+     */
+    static @NonNull char[] normalizeQuery(@NonNull String query) {
+        StringBuilder result = new StringBuilder(query.length());
+
+        for (int index = 0; index < query.length(); index++) {
+            char queryChar = query.charAt(index);
+
+            if (!Character.isWhitespace(queryChar)) result.append(toLowerCase(queryChar));
+        }
+
+        char[] chars = new char[result.length()];
+
+        result.getChars(0, chars.length, chars, 0);
+
+        return chars;
+    }
+
+    /**
+     * Create the bitmap of the characters of a text. Letters and digits have their own bit, the
+     * other characters share the remaining bits.
+     *
+     * @param text text to process.
+     * @return a long value contains the bitmap.
+     */
+    private static long createMask(@NonNull String text) {
+        long mask = 0;
+
+        for (int index = 0; index < text.length(); index++) {
+            char textChar = toLowerCase(text.charAt(index));
+
+            int bit;
+
+            if (textChar >= 'a' && textChar <= 'z') bit = textChar - 'a';
+            else if (textChar >= '0' && textChar <= '9') bit = 26 + (textChar - '0');
+            else bit = 36 + (textChar % 28);
+
+            mask |= (1L << bit);
+        }
+
+        return mask;
+    }
+
+    /**
+     * Convert a character to lower case, with a fast path for ASCII characters.
+     *
+     * @param value character to convert.
+     * @return the lower case character.
+     */
+    private static char toLowerCase(char value) {
+        if (value < 128) return (value >= 'A' && value <= 'Z') ? (char) (value + 32) : value;
+
+        return Character.toLowerCase(value);
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2020 Nicolas Dagnas
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.ndagnas.pickers;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+ * Defines a file picked in a file picker, ready to be read. The file is read ahead in background as
+ * soon as it is picked, and its content is available as a read-only memory-mapped buffer, or as a
+ * read-only channel, both opened on first use.
+ */
+@SuppressWarnings({"unused"})
+public final class PickedFile implements Closeable {
+    /** Maximum size of the files mapped and loaded in memory by the read-ahead. */
+    static final long MAX_READ_AHEAD_SIZE = 64L * 1024 * 1024;
+
+    // Attributes
+
+    private final File mFile;
+    private final Future<MappedByteBuffer> mReadAhead;
+    private FileChannel mChannel = null;
+    private ByteBuffer mBuffer = null;
+
+    /**
+     * Object initialisation.
+     *
+     * @param file picked file.
+     * @param readAhead read-ahead of the file, or null if it has not been started.
+     */
+    PickedFile(@NonNull File file, @Nullable Future<MappedByteBuffer> readAhead) {
+        this.mFile = file;
+        this.mReadAhead = readAhead;
+    }
+
+    /**
+     * Start reading a file in background, on the read-ahead thread: the file is mapped read-only
+     * and its pages are loaded in memory, if it is not too large.
+     *
+     * @param file file to read.
+     * @return the future buffer of the file, null if the file is too large or cannot be read.
+     */
+    static @NonNull Future<MappedByteBuffer> readAhead(@NonNull final File file) {
+        return PickerExecutors.readAhead()
+                .submit(
+                        new Callable<MappedByteBuffer>() {
+                            @Override
+                            public MappedByteBuffer call() {
+                                return PickedFile.map(file);
+                            }
+                        });
+    }
+
+    /**
+     * Map a file read-only and load its pages in memory.
+     *
+     * @param file file to map.
+     * @return a buffer, or null if the file is too large or cannot be read.
+     */
+    private static @Nullable MappedByteBuffer map(@NonNull File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+
+            if (size > MAX_READ_AHEAD_SIZE) return null;
+
+            // The mapping stays valid once the channel is closed.
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            if (Thread.currentThread().isInterrupted()) return null;
+
+            return buffer.load();
+        } catch (Exception Err) {
+            Log.e("PickedFile.map", "Exception: " + Err.toString());
+        }
+
+        return null;
+    }
+
+    /**
+     * Get the picked file.
+     *
+     * @return a file.
+     */
+    public @NonNull File getFile() {
+        return this.mFile;
+    }
+
+    /**
+     * Get the absolute path of the picked file.
+     *
+     * @return a string contains the path of the file.
+     */
+    public @NonNull String getPath() {
+        return this.mFile.getAbsolutePath();
+    }
+
+    /**
+     * Get the content of the file, as a read-only buffer. The buffer loaded by the read-ahead is
+     * used if it is ready, the file is mapped otherwise.
+     *
+     * @return a read-only buffer whose position is 0.
+     * @throws IOException if the file cannot be mapped.
+     */
+    public synchronized @NonNull ByteBuffer getBuffer() throws IOException {
+        if (this.mBuffer == null) {
+            MappedByteBuffer buffer = null;
+
+            if (this.mReadAhead != null && this.mReadAhead.isDone()) {
+                try {
+                    buffer = this.mReadAhead.get();
+                } catch (Exception Err) {
+                    Log.e("PickedFile.getBuffer", "Exception: " + Err.toString());
+                }
+            }
+
+            if (buffer == null) {
+                FileChannel channel = this.getChannel();
+
+                long size = channel.size();
+
+                if (size > Integer.MAX_VALUE) throw new IOException("File too large: " + size);
+
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+
+            this.mBuffer = buffer;
+        }
+
+        return this.mBuffer.duplicate();
+    }
+
+    /**
+     * Get a read-only channel on the file, opened on first use. The channel is closed by {@link
+     * #close()}.
+     *
+     * @return a file channel.
+     * @throws IOException if the file cannot be opened.
+     */
+    public synchronized @NonNull FileChannel getChannel() throws IOException {
+        if (this.mChannel == null)
+            this.mChannel = FileChannel.open(this.mFile.toPath(), StandardOpenOption.READ);
+
+        return this.mChannel;
+    }
+
+    /**
+     * Close the channel of the file, if opened, and forget the buffer.
+     *
+     * @throws IOException if the channel cannot be closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.mReadAhead != null) this.mReadAhead.cancel(true);
+
+        this.mBuffer = null;
+
+        if (this.mChannel != null) {
+            try {
+                this.mChannel.close();
+            } finally {
+                this.mChannel = null;
+            }
+        }
+    }
+
+    /**
+     * Get a string representation of the object.
+     *
+     * @return a string contains the path of the file.
+     */
+    @Override
+    public @NonNull String toString() {
+        return this.getPath();
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2020 Nicolas Dagnas
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.ndagnas.pickers;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Defines the background executors shared by all pickers. */
+final class PickerExecutors {
+    /** Maximum number of threads used for file system operations. */
+    private static final int IO_THREADS = 4;
+
+    /** Number of threads used for computations. */
+    private static final int COMPUTE_THREADS =
+            Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    private static ExecutorService sIoExecutor = null;
+    private static ExecutorService sComputeExecutor = null;
+    private static ExecutorService sReadAheadExecutor = null;
+    private static Handler sMainHandler = null;
+
+    /** Object initialisation. */
+    private PickerExecutors() {}
+
+    /**
+     * Get the executor used for blocking file system operations.
+     *
+     * @return a executor service.
+     */
+    static synchronized ExecutorService io() {
+        if (sIoExecutor == null) {
+            ThreadPoolExecutor executor =
+                    new ThreadPoolExecutor(
+                            IO_THREADS,
+                            IO_THREADS,
+                            30,
+                            TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<Runnable>(),
+                            new PickerThreadFactory("pickers-io"));
+
+            executor.allowCoreThreadTimeOut(true);
+
+            sIoExecutor = executor;
+        }
+
+        return sIoExecutor;
+    }
+
+    /**
+     * Get the executor used for computations split across the cores, like the scoring of a search.
+     * Its tasks must not block on file system operations.
+     *
+     * @return a executor service.
+     */
+    static synchronized ExecutorService compute() {
+        if (sComputeExecutor == null) {
+            ThreadPoolExecutor executor =
+                    new ThreadPoolExecutor(
+                            COMPUTE_THREADS,
+                            COMPUTE_THREADS,
+                            30,
+                            TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<Runnable>(),
+                            new PickerThreadFactory("pickers-compute"));
+
+            executor.allowCoreThreadTimeOut(true);
+
+            sComputeExecutor = executor;
+        }
+
+        return sComputeExecutor;
+    }
+
+    /**
+     * Get the executor loading the picked files in memory. Its single thread is not shared with
+     * the other background tasks, so that large files never delay the listings, and are loaded one
+     * at a time.
+     *
+     * @return a executor service.
+     */
+    static synchronized ExecutorService readAhead() {
+        if (sReadAheadExecutor == null) {
+            ThreadPoolExecutor executor =
+                    new ThreadPoolExecutor(
+                            1,
+                            1,
+                            30,
+                            TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<Runnable>(),
+                            new PickerThreadFactory("pickers-read-ahead"));
+
+            executor.allowCoreThreadTimeOut(true);
+
+            sReadAheadExecutor = executor;
+        }
+
+        return sReadAheadExecutor;
+    }
+
+    /**
+     * Get the number of threads used for computations.
+     *
+     * @return a integer contains the number of threads.
+     */
+    static int getComputeThreadCount() {
+        return COMPUTE_THREADS;
+    }
+
+    /**
+     * Run a task on the main thread.
+     *
+     * @param task task to run.
+     */
+    static void runOnUiThread(@NonNull Runnable task) {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            task.run();
+        } else {
+            postOnUiThread(task);
+        }
+    }
+
+    /**
+     * Post a task on the main thread.
+     *
+     * @param task task to run.
+     */
+    static void postOnUiThread(@NonNull Runnable task) {
+        postOnUiThread(task, 0);
+    }
+
+    /**
+     * Post a task on the main thread, run after a delay.
+     *
+     * @param task task to run.
+     * @param delay delay in milliseconds.
+     */
+    static void postOnUiThread(@NonNull Runnable task, long delay) {
+        synchronized (PickerExecutors.class) {
+            if (sMainHandler == null) sMainHandler = new Handler(Looper.getMainLooper());
+        }
+
+        if (delay > 0) sMainHandler.postDelayed(task, delay);
+        else sMainHandler.post(task);
+    }
+
+    /**
+     * Defines a task whose completion can be waited for without blocking a thread.
+     *
+     * @param <V> type of the result of the task.
+     */
+    static class ListenableTask<V> extends FutureTask<V> {
+        private ArrayList<Runnable> mListeners = new ArrayList<>();
+
+        /**
+         * Object initialisation.
+         *
+         * @param callable computation of the result.
+         */
+        ListenableTask(@NonNull Callable<V> callable) {
+            super(callable);
+        }
+
+        /**
+         * Run a listener once the task is done, on the thread ending it, or immediately on the
+         * calling thread if it is already done.
+         *
+         * @param listener listener to run.
+         */
+        void whenDone(@NonNull Runnable listener) {
+            synchronized (this) {
+                if (this.mListeners != null) {
+                    this.mListeners.add(listener);
+
+                    return;
+                }
+            }
+
+            listener.run();
+        }
+
+        /** Called once the task is done, runs the listeners. */
+        @Override
+        protected void done() {
+            ArrayList<Runnable> listeners;
+
+            synchronized (this) {
+                listeners = this.mListeners;
+
+                this.mListeners = null;
+            }
+
+            for (Runnable listener : listeners) listener.run();
+        }
+    }
+
+    /** Defines a factory of low priority daemon threads. */
+    static class PickerThreadFactory implements ThreadFactory {
+        private final String mPrefix;
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        /**
+         * Object initialisation.
+         *
+         * @param prefix prefix of the thread names.
+         */
+        PickerThreadFactory(@NonNull String prefix) {
+            this.mPrefix = prefix;
+        }
+
+        /**
+         * Create a new thread.
+         *
+         * @param task task run by the thread.
+         * @return a new thread.
+         */
+        @Override
+        public Thread newThread(@NonNull Runnable task) {
+            Thread thread = new Thread(task, this.mPrefix + "-" + this.mCount.incrementAndGet());
+
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+
+            return thread;
+        }
+    }
+}
@@ -107,4 +107,17 @@ public interface PickerInterface {
          */
         void onClick(PickerInterface sender, T[] result);
     }
+
+    /**
+     * Defines a listener that will be called with the file system operations of each navigation.
+     */
+    interface OnNavigationStatsListener {
+        /**
+         * Called on the main thread once the content of a directory has been listed.
+         *
+         * @param sender picker interface.
+         * @param stats statistics of the file system operations of the navigation.
+         */
+        void onNavigationStats(PickerInterface sender, IoStats stats);
+    }
 }
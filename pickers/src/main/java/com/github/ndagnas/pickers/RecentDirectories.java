@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2020 Nicolas Dagnas
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.ndagnas.pickers;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Defines the list of the most recently used directories of a file picker configuration. The list
+ * is kept in the private preferences of the application, one line per directory.
+ */
+final class RecentDirectories {
+    /** Name of the preferences file. */
+    private static final String PREFERENCES_NAME = "com.github.ndagnas.pickers.recent_dirs";
+
+    /** Separator of the directories in the preference value. */
+    private static final String SEPARATOR = "\n";
+
+    /** Object initialisation. */
+    private RecentDirectories() {}
+
+    /**
+     * Load the most recently used directories, the last used first.
+     *
+     * @param context the parent context.
+     * @param configKey key of the picker configuration.
+     * @return a list of directories.
+     */
+    static @NonNull List<File> load(@NonNull Context context, @NonNull String configKey) {
+        ArrayList<File> result = new ArrayList<>();
+
+        String value = getPreferences(context).getString(configKey, null);
+
+        if (!TextUtils.isEmpty(value)) {
+            for (String path : value.split(SEPARATOR)) {
+                if (!TextUtils.isEmpty(path)) result.add(new File(path));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Move a directory at the head of the most recently used directories.
+     *
+     * @param context the parent context.
+     * @param configKey key of the picker configuration.
+     * @param directory last used directory.
+     * @param maxCount maximum number of directories kept.
+     */
+    static void push(
+            @NonNull Context context,
+            @NonNull String configKey,
+            @NonNull File directory,
+            int maxCount) {
+        if (maxCount <= 0) return;
+
+        String path = directory.getAbsolutePath();
+
+        StringBuilder value = new StringBuilder(path);
+
+        int count = 1;
+
+        for (File recentDir : load(context, configKey)) {
+            if (count >= maxCount) break;
+
+            String recentPath = recentDir.getAbsolutePath();
+
+            if (!recentPath.equals(path)) {
+                value.append(SEPARATOR).append(recentPath);
+
+                count++;
+            }
+        }
+
+        getPreferences(context).edit().putString(configKey, value.toString()).apply();
+    }
+
+    /**
+     * Get the preferences used to store the directories.
+     *
+     * @param context the parent context.
+     * @return a preferences object.
+     */
+    private static SharedPreferences getPreferences(@NonNull Context context) {
+        return context.getApplicationContext()
+                .getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+}
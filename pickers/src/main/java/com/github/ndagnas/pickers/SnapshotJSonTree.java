@@ -0,0 +1,460 @@
+/*
+ * Copyright (C) 2020 Nicolas Dagnas
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.ndagnas.pickers;
+
+import android.content.Context;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Defines a json tree read from a snapshot, a binary copy of a parsed json tree kept in the
+ * private cache directory of the application. The snapshot is memory-mapped, so that a tree is
+ * navigable as soon as it is opened, without parsing the json again.
+ *
+ * <p>Format: magic, version, key, count of nodes, count of children, then the titles, sub-titles
+ * and children references, each one as its length and its UTF-8 bytes, then the position of the
+ * first child of each node, the number of children of each node, the offset of the title, the
+ * sub-title and the children reference of each node, and the children of all the nodes. The
+ * offsets and the children are checked when the snapshot is opened, a corrupt snapshot is ignored.
+ */
+final class SnapshotJSonTree implements JSonTree {
+    /** Name of the directory of the snapshots. */
+    private static final String DIRECTORY_NAME = "pickers-json-snapshots";
+
+    /** Identifies the snapshot files. */
+    private static final int MAGIC = 0x504a5431;
+
+    /** Version of the file format. */
+    private static final int VERSION = 2;
+
+    /** Maximum number of snapshots kept. */
+    private static final int MAX_SNAPSHOTS = 8;
+
+    /** Maximum number of decoded values kept in memory. */
+    private static final int MAX_DECODED = 2048;
+
+    // Attributes
+
+    private final ByteBuffer mBuffer;
+    private final IntBuffer mArrays;
+    private final int mStringsEnd;
+    private final int mCount;
+    private final JSonFieldPath[] mPaths;
+    private final LruCache<Integer, String> mDecoded = new LruCache<>(MAX_DECODED);
+
+    /**
+     * Object initialisation.
+     *
+     * @param buffer content of the snapshot.
+     * @param arrays arrays of the snapshot, following the strings.
+     * @param stringsEnd end of the strings in the snapshot.
+     * @param count number of nodes.
+     * @param paths paths of the title, sub-title, children and children reference fields, by
+     *     field.
+     */
+    private SnapshotJSonTree(
+            @NonNull ByteBuffer buffer,
+            @NonNull IntBuffer arrays,
+            int stringsEnd,
+            int count,
+            @NonNull JSonFieldPath[] paths) {
+        this.mBuffer = buffer;
+        this.mArrays = arrays;
+        this.mStringsEnd = stringsEnd;
+        this.mCount = count;
+        this.mPaths = paths;
+    }
+
+    /**
+     * Open the snapshot of a json source.
+     *
+     * @param context the parent context.
+     * @param key key of the json source and of the field paths.
+     * @param paths paths of the title, sub-title, children and children reference fields, by
+     *     field.
+     * @return a json tree, or null if there is no snapshot of the source, or if it is corrupt.
+     */
+    static @Nullable SnapshotJSonTree open(
+            @NonNull Context context, @NonNull String key, @NonNull JSonFieldPath[] paths) {
+        File file = CacheFiles.getFile(context, DIRECTORY_NAME, key);
+
+        if (!file.isFile()) return null;
+
+        int count;
+        int childrenCount;
+
+        try (DataInputStream input =
+                new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) return null;
+
+            if (!key.equals(input.readUTF())) return null;
+
+            count = input.readInt();
+            childrenCount = input.readInt();
+        } catch (Exception Err) {
+            Log.e("JSonSnapshot.open", "Exception: " + Err.toString());
+
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long arraysLength = 4L * (5L * count + childrenCount);
+
+            if (count < 0 || childrenCount < 0 || size > Integer.MAX_VALUE || arraysLength > size)
+                return null;
+
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            ByteBuffer arrays = buffer.duplicate();
+
+            int stringsEnd = (int) (size - arraysLength);
+
+            arrays.position(stringsEnd);
+
+            IntBuffer arraysBuffer = arrays.slice().asIntBuffer();
+
+            if (!isValid(arraysBuffer, count, childrenCount, stringsEnd)) {
+                Log.e("JSonSnapshot.open", "Corrupt snapshot " + file);
+
+                return null;
+            }
+
+            // The snapshot is touched, so that the oldest ones are pruned first.
+
+            if (!file.setLastModified(System.currentTimeMillis()))
+                Log.e("JSonSnapshot.open", "Cannot touch " + file);
+
+            return new SnapshotJSonTree(buffer, arraysBuffer, stringsEnd, count, paths);
+        } catch (Exception Err) {
+            Log.e("JSonSnapshot.open", "Exception: " + Err.toString());
+        }
+
+        return null;
+    }
+
+    /**
+     * Save the snapshot of a json tree. Must be called from a background thread.
+     *
+     * @param context the parent context.
+     * @param key key of the json source and of the field paths.
+     * @param tree json tree.
+     */
+    static void save(@NonNull Context context, @NonNull String key, @NonNull JSonTree tree) {
+        File file = CacheFiles.getFile(context, DIRECTORY_NAME, key);
+        File tempFile = CacheFiles.getTempFile(file);
+
+        if (tempFile == null) return;
+
+        int count = tree.size();
+
+        try (DataOutputStream output =
+                new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            int childrenCount = 0;
+
+            for (int node = 0; node < count; node++) {
+                childrenCount += Math.max(tree.getChildCount(node), 0);
+            }
+
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeUTF(key);
+            output.writeInt(count);
+            output.writeInt(childrenCount);
+
+            int[] titleOffsets = new int[count];
+            int[] subTitleOffsets = new int[count];
+            int[] referenceOffsets = new int[count];
+
+            // The written length is tracked as a long, the size of the stream saturates.
+
+            long position = output.size();
+
+            for (int node = 0; node < count; node++) {
+                position = writeString(output, position, tree.getTitle(node), titleOffsets, node);
+                position =
+                        writeString(
+                                output, position, tree.getSubTitle(node), subTitleOffsets, node);
+                position =
+                        writeString(
+                                output,
+                                position,
+                                tree.getChildrenReference(node),
+                                referenceOffsets,
+                                node);
+            }
+
+            if (position + 4L * (5L * count + childrenCount) > Integer.MAX_VALUE)
+                throw new IllegalStateException("The snapshot is too large");
+
+            for (int node = 0, first = 0; node < count; node++) {
+                output.writeInt(first);
+
+                first += Math.max(tree.getChildCount(node), 0);
+            }
+
+            for (int node = 0; node < count; node++) {
+                output.writeInt(tree.getChildCount(node));
+            }
+
+            for (int node = 0; node < count; node++) {
+                output.writeInt(titleOffsets[node]);
+            }
+
+            for (int node = 0; node < count; node++) {
+                output.writeInt(subTitleOffsets[node]);
+            }
+
+            for (int node = 0; node < count; node++) {
+                output.writeInt(referenceOffsets[node]);
+            }
+
+            for (int node = 0; node < count; node++) {
+                for (int index = 0; index < tree.getChildCount(node); index++) {
+                    output.writeInt(tree.getChild(node, index));
+                }
+            }
+        } catch (Exception Err) {
+            Log.e("JSonSnapshot.save", "Exception: " + Err.toString());
+
+            CacheFiles.discard(tempFile);
+
+            return;
+        }
+
+        CacheFiles.commit(tempFile, file, MAX_SNAPSHOTS);
+    }
+
+    /**
+     * Check the arrays of a snapshot, so that a corrupt snapshot never reads out of its bounds.
+     *
+     * @param arrays arrays of the snapshot.
+     * @param count number of nodes.
+     * @param childrenCount number of children of all the nodes.
+     * @param stringsEnd end of the strings in the snapshot.
+     * @return a boolean value who indicates if the arrays are consistent.
+     */
+    private static boolean isValid(
+            @NonNull IntBuffer arrays, int count, int childrenCount, int stringsEnd) {
+        for (int node = 0; node < count; node++) {
+            int first = arrays.get(node);
+            int childCount = arrays.get(count + node);
+
+            if (childCount < -1 || first < 0) return false;
+
+            if ((long) first + Math.max(childCount, 0) > childrenCount) return false;
+
+            for (int field = 2; field <= 4; field++) {
+                int offset = arrays.get(field * count + node);
+
+                if (offset < -1 || (long) offset + 4 > stringsEnd) return false;
+            }
+        }
+
+        for (int index = 0; index < childrenCount; index++) {
+            int child = arrays.get(5 * count + index);
+
+            if (child < 0 || child >= count) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Get the number of nodes.
+     *
+     * @return a integer contains the number of nodes.
+     */
+    @Override
+    public int size() {
+        return this.mCount;
+    }
+
+    /**
+     * Get the title of a node, decoded on first call.
+     *
+     * @param node id of the node.
+     * @return a string contains the title, or null if the node has no title.
+     */
+    @Override
+    public @Nullable String getTitle(int node) {
+        return this.getString(this.mArrays.get(2 * this.mCount + node));
+    }
+
+    /**
+     * Get the sub-title of a node, decoded on first call.
+     *
+     * @param node id of the node.
+     * @return a string contains the sub-title, or null if the node has no sub-title.
+     */
+    @Override
+    public @Nullable String getSubTitle(int node) {
+        return this.getString(this.mArrays.get(3 * this.mCount + node));
+    }
+
+    /**
+     * Get the children reference of a node, decoded on first call.
+     *
+     * @param node id of the node.
+     * @return a string contains the reference, or null if the node has no children reference.
+     */
+    @Override
+    public @Nullable String getChildrenReference(int node) {
+        return this.getString(this.mArrays.get(4 * this.mCount + node));
+    }
+
+    /**
+     * Get the number of children of a node.
+     *
+     * @param node id of the node.
+     * @return the number of children, or -1 if the node has no children field.
+     */
+    @Override
+    public int getChildCount(int node) {
+        return this.mArrays.get(this.mCount + node);
+    }
+
+    /**
+     * Get a child of a node.
+     *
+     * @param node id of the node.
+     * @param index position of the child.
+     * @return the id of the child.
+     */
+    @Override
+    public int getChild(int node, int index) {
+        return this.mArrays.get(5 * this.mCount + this.mArrays.get(node) + index);
+    }
+
+    /**
+     * Get a node as a json object, holding its title, its sub-title and its id.
+     *
+     * @param node id of the node.
+     * @return a json object.
+     */
+    @Override
+    public @NonNull JSONObject toJSONObject(int node) {
+        JSONObject object = new JSONObject();
+
+        try {
+            String title = this.getTitle(node);
+            String subTitle = this.getSubTitle(node);
+
+            if (title != null) this.mPaths[TITLE_FIELD].put(object, title);
+
+            if (this.mPaths[SUB_TITLE_FIELD] != null && subTitle != null)
+                this.mPaths[SUB_TITLE_FIELD].put(object, subTitle);
+
+            object.put(JSonPickerDialog.NODE_ID_NAME, node);
+        } catch (Exception Err) {
+            Log.e("JSonSnapshot.toJSON", "Exception: " + Err.toString());
+        }
+
+        return object;
+    }
+
+    /**
+     * Get a string of the snapshot, decoded on first call.
+     *
+     * @param offset offset of the string in the snapshot, or -1.
+     * @return a string, or null if the offset is -1, or if the string is corrupt.
+     */
+    private @Nullable String getString(int offset) {
+        if (offset < 0) return null;
+
+        String value = this.mDecoded.get(offset);
+
+        if (value == null) {
+            int length = this.mBuffer.getInt(offset);
+
+            if (length < 0 || length > this.mStringsEnd - offset - 4) {
+                Log.e("JSonSnapshot.getString", "Corrupt string at " + offset);
+
+                return null;
+            }
+
+            byte[] bytes = new byte[length];
+
+            ByteBuffer view = this.mBuffer.duplicate();
+
+            view.position(offset + 4);
+            view.get(bytes);
+
+            value = new String(bytes, StandardCharsets.UTF_8);
+
+            this.mDecoded.put(offset, value);
+        }
+
+        return value;
+    }
+
+    /**
+     * Write a string, as its length and its UTF-8 bytes.
+     *
+     * @param output snapshot stream.
+     * @param position length written so far.
+     * @param value a string, or null.
+     * @param offsets receives the offset of the string in the snapshot, or -1 if it is null.
+     * @param node id of the node of the string.
+     * @return the length written, including the string.
+     * @throws Exception if the string cannot be written, or the snapshot is too large.
+     */
+    private static long writeString(
+            @NonNull DataOutputStream output,
+            long position,
+            @Nullable String value,
+            @NonNull int[] offsets,
+            int node)
+            throws Exception {
+        if (value == null) {
+            offsets[node] = -1;
+
+            return position;
+        }
+
+        if (position > Integer.MAX_VALUE)
+            throw new IllegalStateException("The snapshot is too large");
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+        output.writeInt(bytes.length);
+        output.write(bytes);
+
+        offsets[node] = (int) position;
+
+        return position + 4 + bytes.length;
+    }
+}
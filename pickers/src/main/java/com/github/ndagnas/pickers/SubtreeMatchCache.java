@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2020 Nicolas Dagnas
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.ndagnas.pickers;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Defines a memory cache indicating whether directories contain files accepted by a filter, at any
+ * depth, shared by all file pickers. The check of a directory stops on the first accepted file, and
+ * the result of each checked sub-directory is remembered, so that a tree is walked only once. An
+ * entry is only valid as long as the modification date of its directory is unchanged, and for a
+ * directory without accepted files, as long as the entries of all its sub-directories are valid.
+ */
+final class SubtreeMatchCache {
+    /** Maximum number of directories kept in memory. */
+    private static final int MAX_ENTRIES = 4096;
+
+    /** Maximum depth of a check, the deeper directories are considered as containing matches. */
+    private static final int MAX_DEPTH = 32;
+
+    private static final LinkedHashMap<String, Entry> sEntries =
+            new LinkedHashMap<String, Entry>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    return (this.size() > MAX_ENTRIES);
+                }
+            };
+
+    /** Defines a cached result. */
+    static class Entry {
+        /** Modification date of the directory when it was checked. */
+        final long lastModified;
+
+        /** Indicates if the directory contains accepted files. */
+        final boolean containsMatch;
+
+        /** Checked sub-directories of a directory without accepted files, null otherwise. */
+        final File[] directories;
+
+        /**
+         * Object initialisation.
+         *
+         * @param lastModified modification date of the directory when it was checked.
+         * @param containsMatch indicates if the directory contains accepted files.
+         * @param directories checked sub-directories of a directory without accepted files.
+         */
+        Entry(long lastModified, boolean containsMatch, @Nullable File[] directories) {
+            this.lastModified = lastModified;
+            this.containsMatch = containsMatch;
+            this.directories = directories;
+        }
+    }
+
+    /** Object initialisation. */
+    private SubtreeMatchCache() {}
+
+    /**
+     * Get the cached result of a directory. Must be called from a background thread, the result
+     * of a directory without accepted files is checked against its whole sub-tree.
+     *
+     * @param configKey key of the picker configuration used to filter the files.
+     * @param directory checked directory.
+     * @return a boolean value who indicates if the directory contains accepted files, or null if
+     *     not cached or outdated.
+     */
+    static @Nullable Boolean get(@NonNull String configKey, @NonNull File directory) {
+        String key = createKey(configKey, directory);
+
+        Entry entry;
+
+        synchronized (sEntries) {
+            entry = sEntries.get(key);
+        }
+
+        if (entry == null) return null;
+
+        boolean valid = (entry.lastModified == directory.lastModified());
+
+        // A file may have been added at any depth, in a sub-directory whose entry is then invalid.
+
+        if (valid && !entry.containsMatch) {
+            for (File subDirectory : entry.directories) {
+                Boolean containsMatch = get(configKey, subDirectory);
+
+                if (containsMatch == null || containsMatch) {
+                    valid = false;
+
+                    break;
+                }
+            }
+        }
+
+        if (!valid) {
+            synchronized (sEntries) {
+                if (sEntries.get(key) == entry) sEntries.remove(key);
+            }
+
+            return null;
+        }
+
+        return entry.containsMatch;
+    }
+
+    /**
+     * Check whether a directory contains files accepted by a filter, at any depth. Must be called
+     * from a background thread. The directories on slow volumes, the symbolic links to directories
+     * and the directories deeper than the maximum depth are considered as containing accepted
+     * files, so that they are never hidden nor walked.
+     *
+     * @param configKey key of the picker configuration used to filter the files.
+     * @param directory directory to check.
+     * @param filter filter of the files and the directories.
+     * @param generation current generation of the checks.
+     * @param expected generation of this check, the check stops once it is outdated.
+     * @return a boolean value who indicates if the directory contains accepted files, or null if
+     *     the check has been stopped.
+     */
+    static @Nullable Boolean containsMatch(
+            @NonNull String configKey,
+            @NonNull File directory,
+            @NonNull FileFilter filter,
+            @NonNull AtomicInteger generation,
+            int expected) {
+        return containsMatch(configKey, directory, filter, generation, expected, 0);
+    }
+
+    /**
+     * Check whether a directory contains files accepted by a filter, at any depth.
+     *
+     * @param configKey key of the picker configuration used to filter the files.
+     * @param directory directory to check.
+     * @param filter filter of the files and the directories.
+     * @param generation current generation of the checks.
+     * @param expected generation of this check, the check stops once it is outdated.
+     * @param depth depth of the directory from the checked one.
+     * @return a boolean value who indicates if the directory contains accepted files, or null if
+     *     the check has been stopped.
+     */
+    private static @Nullable Boolean containsMatch(
+            @NonNull String configKey,
+            @NonNull File directory,
+            @NonNull FileFilter filter,
+            @NonNull AtomicInteger generation,
+            int expected,
+            int depth) {
+        if (generation.get() != expected) return null;
+
+        Boolean cached = get(configKey, directory);
+
+        if (cached != null) return cached;
+
+        if (depth >= MAX_DEPTH || VolumeGovernor.isSlow(directory)) return true;
+
+        long lastModified = directory.lastModified();
+
+        File[] files = directory.listFiles(filter);
+
+        if (files == null) return false;
+
+        // The files are checked first, they do not need to walk down the tree.
+
+        ArrayList<File> directories = new ArrayList<>();
+
+        boolean containsMatch = false;
+
+        for (File file : files) {
+            if (!file.isDirectory() || Files.isSymbolicLink(file.toPath())) {
+                containsMatch = true;
+
+                break;
+            }
+
+            directories.add(file);
+        }
+
+        for (int index = 0; !containsMatch && index < directories.size(); index++) {
+            Boolean subTreeMatch =
+                    containsMatch(
+                            configKey,
+                            directories.get(index),
+                            filter,
+                            generation,
+                            expected,
+                            depth + 1);
+
+            if (subTreeMatch == null) return null;
+
+            containsMatch = subTreeMatch;
+        }
+
+        put(
+                configKey,
+                directory,
+                lastModified,
+                containsMatch,
+                (containsMatch) ? null : directories.toArray(new File[0]));
+
+        return containsMatch;
+    }
+
+    /**
+     * Add the result of a directory in cache.
+     *
+     * @param configKey key of the picker configuration used to filter the files.
+     * @param directory checked directory.
+     * @param lastModified modification date of the directory read before the check.
+     * @param containsMatch indicates if the directory contains accepted files.
+     * @param directories checked sub-directories of a directory without accepted files.
+     */
+    private static void put(
+            @NonNull String configKey,
+            @NonNull File directory,
+            long lastModified,
+            boolean containsMatch,
+            @Nullable File[] directories) {
+        if (lastModified == 0) return;
+
+        Entry entry = new Entry(lastModified, containsMatch, directories);
+
+        synchronized (sEntries) {
+            sEntries.put(createKey(configKey, directory), entry);
+        }
+    }
+
+    /**
+     * Create the key of a cache entry.
+     *
+     * @param configKey key of the picker configuration.
+     * @param directory checked directory.
+     * @return a string contains the key of the entry.
+     */
+    private static String createKey(@NonNull String configKey, @NonNull File directory) {
+        return configKey + '\u0000' + directory.getAbsolutePath();
+    }
+}
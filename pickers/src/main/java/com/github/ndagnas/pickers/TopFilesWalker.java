@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2020 Nicolas Dagnas
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.ndagnas.pickers;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Defines the walker searching the most recently modified and the largest files under a root
+ * directory. Both rankings are computed by the same walk, each one keeps only a bounded min-heap of
+ * its best files, so that the memory does not depend on the size of the tree. The symbolic links
+ * are not followed, and the walk stops after MAX_FILES entries.
+ */
+final class TopFilesWalker implements Runnable {
+    /** Minimum delay between two updates of the listener, in milliseconds. */
+    private static final long UPDATE_INTERVAL = 250;
+
+    /** Maximum number of entries walked. */
+    static final int MAX_FILES = 262144;
+
+    /** Defines a ranked file. */
+    static class Candidate {
+        /** The file. */
+        final File file;
+
+        /** Size of the file. */
+        final long length;
+
+        /** Modification date of the file. */
+        final long lastModified;
+
+        /**
+         * Object initialisation.
+         *
+         * @param file the file.
+         * @param length size of the file.
+         * @param lastModified modification date of the file.
+         */
+        Candidate(@NonNull File file, long length, long lastModified) {
+            this.file = file;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /** Defines the listener of the rankings. */
+    interface Listener {
+        /**
+         * Called from the walker thread with the rankings found so far.
+         *
+         * @param newest the most recently modified files, the newest first.
+         * @param largest the largest files, the largest first.
+         * @param finished indicates if the walk is finished.
+         */
+        void onUpdate(@NonNull Candidate[] newest, @NonNull Candidate[] largest, boolean finished);
+    }
+
+    /** Orders the candidates by modification date, the oldest first. */
+    private static final Comparator<Candidate> BY_DATE =
+            new Comparator<Candidate>() {
+                @Override
+                public int compare(Candidate lht, Candidate rht) {
+                    return Long.compare(lht.lastModified, rht.lastModified);
+                }
+            };
+
+    /** Orders the candidates by size, the smallest first. */
+    private static final Comparator<Candidate> BY_SIZE =
+            new Comparator<Candidate>() {
+                @Override
+                public int compare(Candidate lht, Candidate rht) {
+                    return Long.compare(lht.length, rht.length);
+                }
+            };
+
+    // Attributes
+
+    private final File mRoot;
+    private final FileFilter mFilter;
+    private final int mCount;
+    private final Listener mListener;
+    private final PriorityQueue<Candidate> mNewest;
+    private final PriorityQueue<Candidate> mLargest;
+    private boolean mChanged = false;
+
+    /**
+     * Object initialisation.
+     *
+     * @param root root directory.
+     * @param filter filter of the walked files and directories.
+     * @param count number of files of each ranking.
+     * @param listener listener of the rankings.
+     */
+    TopFilesWalker(
+            @NonNull File root, @NonNull FileFilter filter, int count, @NonNull Listener listener) {
+        this.mRoot = root;
+        this.mFilter = filter;
+        this.mCount = Math.max(1, count);
+        this.mListener = listener;
+        this.mNewest = new PriorityQueue<>(this.mCount + 1, BY_DATE);
+        this.mLargest = new PriorityQueue<>(this.mCount + 1, BY_SIZE);
+    }
+
+    /** Walk the tree. Stops as soon as the thread is interrupted. */
+    @Override
+    public void run() {
+        ArrayDeque<File> directories = new ArrayDeque<>();
+
+        directories.push(this.mRoot);
+
+        long lastUpdate = SystemClock.elapsedRealtime();
+
+        int fileCount = 0;
+
+        while (!directories.isEmpty() && fileCount < MAX_FILES) {
+            if (Thread.currentThread().isInterrupted()) return;
+
+            File directory = directories.pop();
+
+            // The volumes found slow are skipped, their listings would block the walk.
+
+            if (VolumeGovernor.isSlow(directory)) continue;
+
+            File[] files = directory.listFiles(this.mFilter);
+
+            if (files == null) continue;
+
+            for (File file : files) {
+                if (++fileCount > MAX_FILES) break;
+
+                try {
+                    BasicFileAttributes attributes =
+                            Files.readAttributes(
+                                    file.toPath(),
+                                    BasicFileAttributes.class,
+                                    LinkOption.NOFOLLOW_LINKS);
+
+                    if (attributes.isDirectory()) {
+                        directories.push(file);
+                    } else if (attributes.isRegularFile()) {
+                        this.offer(
+                                new Candidate(
+                                        file,
+                                        attributes.size(),
+                                        attributes.lastModifiedTime().toMillis()));
+                    }
+                } catch (Exception Err) {
+                    Log.e("TopFilesWalker.run", "Exception: " + Err.toString());
+                }
+            }
+
+            long now = SystemClock.elapsedRealtime();
+
+            if (this.mChanged && now - lastUpdate >= UPDATE_INTERVAL) {
+                lastUpdate = now;
+
+                this.publish(false);
+            }
+        }
+
+        this.publish(true);
+    }
+
+    /**
+     * Offer a file to both rankings.
+     *
+     * @param candidate the file.
+     */
+    private void offer(@NonNull Candidate candidate) {
+        if (offer(this.mNewest, candidate, BY_DATE, this.mCount)) this.mChanged = true;
+
+        if (offer(this.mLargest, candidate, BY_SIZE, this.mCount)) this.mChanged = true;
+    }
+
+    /**
+     * Offer a file to a ranking, its heap never holds more than the count of files.
+     *
+     * @param heap min-heap of the ranking.
+     * @param candidate the file.
+     * @param comparator order of the ranking.
+     * @param count number of files of the ranking.
+     * @return a boolean value who indicates if the file has entered the ranking.
+     */
+    private static boolean offer(
+            @NonNull PriorityQueue<Candidate> heap,
+            @NonNull Candidate candidate,
+            @NonNull Comparator<Candidate> comparator,
+            int count) {
+        if (heap.size() < count) return heap.add(candidate);
+
+        if (comparator.compare(candidate, heap.peek()) <= 0) return false;
+
+        heap.poll();
+
+        return heap.add(candidate);
+    }
+
+    /**
+     * Send the current rankings to the listener.
+     *
+     * @param finished indicates if the walk is finished.
+     */
+    private void publish(boolean finished) {
+        this.mChanged = false;
+
+        this.mListener.onUpdate(
+                toSortedArray(this.mNewest, BY_DATE),
+                toSortedArray(this.mLargest, BY_SIZE),
+                finished);
+    }
+
+    /**
+     * Get the content of a heap, the best first.
+     *
+     * @param heap min-heap of a ranking.
+     * @param comparator order of the ranking.
+     * @return an array of files.
+     */
+    private static Candidate[] toSortedArray(
+            @NonNull PriorityQueue<Candidate> heap,
+            @NonNull Comparator<Candidate> comparator) {
+        Candidate[] candidates = heap.toArray(new Candidate[0]);
+
+        Arrays.sort(candidates, Collections.reverseOrder(comparator));
+
+        return candidates;
+    }
+}
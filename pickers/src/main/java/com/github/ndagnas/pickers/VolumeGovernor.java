@@ -0,0 +1,570 @@
+/*
+ * Copyright (C) 2020 Nicolas Dagnas
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.ndagnas.pickers;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Defines the governor of the file system operations, shared by all file pickers. The number of
+ * concurrent listings is limited per volume (mount point), and a listing taking too long returns
+ * the entries gathered so far. The volumes found slow are remembered for a while, so that the
+ * background work can skip them.
+ */
+final class VolumeGovernor {
+    /** Default timeout of a listing, in milliseconds. */
+    static final long DEFAULT_TIMEOUT = 3000;
+
+    /** Maximum number of concurrent listings per volume. */
+    private static final int MAX_OPERATIONS_PER_VOLUME = 2;
+
+    /** Duration of a listing above which the volume is considered slow, in milliseconds. */
+    private static final long SLOW_THRESHOLD = 1000;
+
+    /** Duration during which a volume stays slow, in milliseconds. */
+    private static final long SLOW_MEMORY = 10 * 60 * 1000;
+
+    /** File describing the mount points. */
+    private static final String MOUNTS_FILE = "/proc/mounts";
+
+    private static final HashMap<String, Semaphore> sPermits = new HashMap<>();
+    private static final HashMap<String, Long> sSlowVolumes = new HashMap<>();
+    private static final HashMap<String, Flight> sFlights = new HashMap<>();
+    private static String[] sMountPoints = null;
+    private static ExecutorService sExecutor = null;
+
+    /** Defines the result of a listing. */
+    static class Listing {
+        /** Filtered content of the directory. */
+        final File[] files;
+
+        /** Attributes of the files read by the filter, by position, or null if not read. */
+        final ListingSnapshotStore.Entry[] attributes;
+
+        /** Indicates if all the entries of the directory have been read. */
+        final boolean complete;
+
+        /**
+         * Object initialisation.
+         *
+         * @param files filtered content of the directory.
+         * @param attributes attributes of the files read by the filter, or null if not read.
+         * @param complete indicates if all the entries of the directory have been read.
+         */
+        Listing(
+                @NonNull File[] files,
+                @Nullable ListingSnapshotStore.Entry[] attributes,
+                boolean complete) {
+            this.files = files;
+            this.attributes = attributes;
+            this.complete = complete;
+        }
+    }
+
+    /** Defines a listing in progress, shared by the identical requests. */
+    private static class Flight {
+        /** Key of the listing, or null if it is not shared. */
+        final String key;
+
+        /** Entries read so far, locked on each addition. */
+        final ArrayList<File> entries = new ArrayList<>();
+
+        /** Attributes of the entries read so far, by position, locked with the entries. */
+        final ArrayList<ListingSnapshotStore.Entry> attributes = new ArrayList<>();
+
+        /** Indicates if the listing has not been able to start, the volume being busy. */
+        volatile boolean busy = false;
+
+        /** Task of the listing. */
+        FutureTask<Boolean> task = null;
+
+        /**
+         * Object initialisation.
+         *
+         * @param key key of the listing, or null if it is not shared.
+         */
+        Flight(@Nullable String key) {
+            this.key = key;
+        }
+    }
+
+    /** Object initialisation. */
+    private VolumeGovernor() {}
+
+    /**
+     * List the content of a directory. When the listing takes more than the timeout, the entries
+     * read so far are returned and the listing goes on in background, its result is then added to
+     * the listing cache. The identical requests share the listing in progress. No operation on the
+     * directory, not even waiting for a permit of its volume, is done on the calling thread, so a
+     * hung volume never blocks it longer than the timeout.
+     *
+     * @param directory directory to list.
+     * @param filter filter of the entries.
+     * @param timeout maximum duration of the listing, in milliseconds.
+     * @param configKey key of the picker configuration used to share the listing and to cache the
+     *     complete listing, or null to do neither.
+     * @return the listing, or null if the directory cannot be listed.
+     */
+    static @Nullable Listing list(
+            @NonNull final File directory,
+            @NonNull final FilePickerDialog.ExtensionFilter filter,
+            long timeout,
+            @Nullable final String configKey) {
+        final String volume = getVolume(directory);
+
+        final long start = SystemClock.elapsedRealtime();
+
+        String key = (configKey != null) ? createKey(configKey, directory) : null;
+
+        Flight flight = null;
+
+        if (key != null) {
+            synchronized (sFlights) {
+                flight = sFlights.get(key);
+            }
+        }
+
+        if (flight == null) {
+            flight = new Flight(key);
+
+            startFlight(flight, directory, filter, timeout, configKey, volume);
+        }
+
+        long remaining = Math.max(0, timeout - (SystemClock.elapsedRealtime() - start));
+
+        try {
+            if (!flight.task.get(remaining, TimeUnit.MILLISECONDS)) {
+                if (!flight.busy) return null;
+
+                // The listing has not been able to start, the volume is busy.
+
+                markSlow(volume);
+
+                return new Listing(new File[0], null, false);
+            }
+
+            return createListing(flight, true);
+        } catch (TimeoutException Err) {
+            markSlow(volume);
+
+            return createListing(flight, false);
+        } catch (CancellationException Err) {
+            markSlow(volume);
+
+            return new Listing(new File[0], null, false);
+        } catch (InterruptedException Err) {
+            Thread.currentThread().interrupt();
+        } catch (Exception Err) {
+            Log.e("VolumeGovernor.list", "Exception: " + Err.toString());
+        }
+
+        return null;
+    }
+
+    /**
+     * Create a listing of the entries read so far.
+     *
+     * @param flight the listing in progress.
+     * @param complete indicates if all the entries of the directory have been read.
+     * @return a listing.
+     */
+    private static @NonNull Listing createListing(@NonNull Flight flight, boolean complete) {
+        synchronized (flight.entries) {
+            return new Listing(
+                    flight.entries.toArray(new File[0]),
+                    flight.attributes.toArray(new ListingSnapshotStore.Entry[0]),
+                    complete);
+        }
+    }
+
+    /**
+     * Start a listing, shared with the identical requests until it ends. The task of the listing
+     * waits for a permit of the volume, and gives up if it cannot get one within the timeout. The
+     * modification date of the directory is read by the task, before the listing.
+     *
+     * @param flight the listing.
+     * @param directory directory to list.
+     * @param filter filter of the entries.
+     * @param timeout maximum duration of the listing, in milliseconds.
+     * @param configKey key used to cache the complete listing, or null to not cache it.
+     * @param volume mount point of the volume of the directory.
+     */
+    private static void startFlight(
+            @NonNull final Flight flight,
+            @NonNull final File directory,
+            @NonNull final FilePickerDialog.ExtensionFilter filter,
+            final long timeout,
+            @Nullable final String configKey,
+            @NonNull final String volume) {
+        final Semaphore permits = getPermits(volume);
+
+        // The operations of the listing are accounted to the navigation of the calling thread.
+
+        final IoStats stats = IoStats.current();
+
+        flight.task =
+                new FutureTask<>(
+                        new Callable<Boolean>() {
+                            @Override
+                            public Boolean call() throws InterruptedException {
+                                boolean acquired = false;
+
+                                try {
+                                    acquired = permits.tryAcquire(timeout, TimeUnit.MILLISECONDS);
+                                } finally {
+                                    if (!acquired) endFlight(flight);
+                                }
+
+                                if (!acquired) {
+                                    flight.busy = true;
+
+                                    return false;
+                                }
+
+                                IoStats previous = IoStats.begin(stats);
+
+                                long start = SystemClock.elapsedRealtime();
+
+                                try {
+                                    long statStart = IoStats.start();
+
+                                    long lastModified = directory.lastModified();
+
+                                    IoStats.record(IoStats.STAT, directory, statStart);
+
+                                    return VolumeGovernor.readDirectory(
+                                            directory,
+                                            filter,
+                                            flight,
+                                            (lastModified != 0) ? configKey : null,
+                                            lastModified);
+                                } finally {
+                                    IoStats.end(previous);
+
+                                    permits.release();
+
+                                    endFlight(flight);
+
+                                    long duration = SystemClock.elapsedRealtime() - start;
+
+                                    if (duration > SLOW_THRESHOLD) markSlow(volume);
+                                }
+                            }
+                        });
+
+        if (flight.key != null) {
+            synchronized (sFlights) {
+                sFlights.put(flight.key, flight);
+            }
+        }
+
+        try {
+            getExecutor().execute(flight.task);
+        } catch (Exception Err) {
+            flight.task.cancel(false);
+
+            endFlight(flight);
+
+            Log.e("VolumeGovernor.list", "Exception: " + Err.toString());
+        }
+    }
+
+    /**
+     * Stop sharing a listing, unless it has already been superseded.
+     *
+     * @param flight the listing.
+     */
+    private static void endFlight(@NonNull Flight flight) {
+        if (flight.key == null) return;
+
+        synchronized (sFlights) {
+            if (sFlights.get(flight.key) == flight) sFlights.remove(flight.key);
+        }
+    }
+
+    /**
+     * Create the key of a shared listing.
+     *
+     * @param configKey key of the picker configuration used to filter the listing.
+     * @param directory listed directory.
+     * @return a string contains the key of the listing.
+     */
+    private static String createKey(@NonNull String configKey, @NonNull File directory) {
+        return configKey + '\u0000' + directory.getAbsolutePath();
+    }
+
+    /**
+     * Indicates if a file is on a volume recently found slow. The background work should skip
+     * such files.
+     *
+     * @param file file to check.
+     * @return a boolean value who indicates if the volume of the file is slow.
+     */
+    static boolean isSlow(@NonNull File file) {
+        String volume = getVolume(file);
+
+        synchronized (sSlowVolumes) {
+            Long slowUntil = sSlowVolumes.get(volume);
+
+            if (slowUntil == null) return false;
+
+            if (slowUntil < SystemClock.elapsedRealtime()) {
+                sSlowVolumes.remove(volume);
+
+                return false;
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * Read the entries of a directory. The attributes read by the filter are kept with the
+     * accepted entries, so that an entry is not read again to be displayed.
+     *
+     * @param directory directory to list.
+     * @param filter filter of the entries.
+     * @param flight listing receiving the accepted entries, locked on each addition.
+     * @param configKey key used to cache the complete listing, or null to not cache it.
+     * @param lastModified modification date of the directory read before the listing.
+     * @return a boolean value who indicates if the directory has been listed.
+     */
+    private static boolean readDirectory(
+            @NonNull File directory,
+            @NonNull FilePickerDialog.ExtensionFilter filter,
+            @NonNull Flight flight,
+            @Nullable String configKey,
+            long lastModified) {
+        // The listing is timed without the filter, which records its own operations.
+
+        long listingDuration = 0;
+
+        long start = IoStats.start();
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory.toPath())) {
+            Iterator<Path> iterator = stream.iterator();
+
+            while (iterator.hasNext()) {
+                File file = iterator.next().toFile();
+
+                if (start != 0) listingDuration += System.nanoTime() - start;
+
+                FilePickerFilter.Entry entry = new FilePickerFilter.Entry(file);
+
+                if (filter.accept(entry)) {
+                    ListingSnapshotStore.Entry attributes =
+                            new ListingSnapshotStore.Entry(
+                                    entry.getName(),
+                                    entry.isDirectory(),
+                                    entry.length(),
+                                    entry.lastModified());
+
+                    synchronized (flight.entries) {
+                        flight.entries.add(file);
+                        flight.attributes.add(attributes);
+                    }
+                }
+
+                start = IoStats.start();
+            }
+
+            if (start != 0) listingDuration += System.nanoTime() - start;
+        } catch (Exception Err) {
+            Log.e("VolumeGovernor.read", "Exception: " + Err.toString());
+
+            return false;
+        } finally {
+            IoStats stats = IoStats.current();
+
+            if (stats != null) stats.add(IoStats.LISTING, directory.getPath(), listingDuration);
+        }
+
+        if (configKey != null) {
+            synchronized (flight.entries) {
+                DirectoryCache.put(
+                        configKey, directory, lastModified, flight.entries.toArray(new File[0]));
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Remember a volume as slow.
+     *
+     * @param volume mount point of the volume.
+     */
+    private static void markSlow(@NonNull String volume) {
+        synchronized (sSlowVolumes) {
+            sSlowVolumes.put(volume, SystemClock.elapsedRealtime() + SLOW_MEMORY);
+        }
+    }
+
+    /**
+     * Get the permits of the operations on a volume.
+     *
+     * @param volume mount point of the volume.
+     * @return a semaphore.
+     */
+    private static Semaphore getPermits(@NonNull String volume) {
+        synchronized (sPermits) {
+            Semaphore permits = sPermits.get(volume);
+
+            if (permits == null) {
+                permits = new Semaphore(MAX_OPERATIONS_PER_VOLUME);
+
+                sPermits.put(volume, permits);
+            }
+
+            return permits;
+        }
+    }
+
+    /**
+     * Get the executor running the listings. Its threads are not shared with the other background
+     * tasks, so that a hung listing never blocks them.
+     *
+     * @return a executor service.
+     */
+    private static synchronized ExecutorService getExecutor() {
+        if (sExecutor == null) {
+            sExecutor =
+                    new ThreadPoolExecutor(
+                            0,
+                            Integer.MAX_VALUE,
+                            30,
+                            TimeUnit.SECONDS,
+                            new SynchronousQueue<Runnable>(),
+                            new PickerExecutors.PickerThreadFactory("pickers-volume"));
+        }
+
+        return sExecutor;
+    }
+
+    /**
+     * Get the volume of a file.
+     *
+     * @param file a file.
+     * @return a string contains the mount point of the volume.
+     */
+    static @NonNull String getVolume(@NonNull File file) {
+        String path = file.getAbsolutePath();
+
+        for (String mountPoint : getMountPoints()) {
+            if (path.equals(mountPoint)
+                    || path.startsWith(mountPoint.endsWith("/") ? mountPoint : mountPoint + "/"))
+                return mountPoint;
+        }
+
+        return "/";
+    }
+
+    /**
+     * Get the mount points, the longest first.
+     *
+     * @return an array of paths.
+     */
+    private static synchronized String[] getMountPoints() {
+        if (sMountPoints == null) {
+            ArrayList<String> mountPoints = new ArrayList<>();
+
+            try (BufferedReader reader = new BufferedReader(new FileReader(MOUNTS_FILE))) {
+                String line;
+
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split(" ");
+
+                    if (fields.length > 1) mountPoints.add(unescape(fields[1]));
+                }
+            } catch (Exception Err) {
+                Log.e("VolumeGovernor.mounts", "Exception: " + Err.toString());
+            }
+
+            Collections.sort(
+                    mountPoints,
+                    new Comparator<String>() {
+                        @Override
+                        public int compare(String lht, String rht) {
+                            return Integer.compare(rht.length(), lht.length());
+                        }
+                    });
+
+            sMountPoints = mountPoints.toArray(new String[0]);
+        }
+
+        return sMountPoints;
+    }
+
+    /**
+     * Decode the octal escapes (spaces, tabs...) of a path of the mounts file.
+     *
+     * @param value escaped path.
+     * @return a string contains the path.
+     */
+    private static String unescape(@NonNull String value) {
+        if (value.indexOf('\\') < 0) return value;
+
+        StringBuilder result = new StringBuilder(value.length());
+
+        for (int index = 0; index < value.length(); index++) {
+            char valueChar = value.charAt(index);
+
+            if (valueChar == '\\' && index + 3 < value.length()) {
+                try {
+                    String octal = value.substring(index + 1, index + 4);
+
+                    result.append((char) Integer.parseInt(octal, 8));
+
+                    index += 3;
+
+                    continue;
+                } catch (NumberFormatException Err) {
+                    Log.e("VolumeGovernor.unescape", "Exception: " + Err.toString());
+                }
+            }
+
+            result.append(valueChar);
+        }
+
+        return result.toString();
+    }
+}